@@ -0,0 +1,238 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import de.syss.MifareClassicTool.Common.Operation;
+
+/**
+ * Precomputed decoding of the Access Conditions of a sector trailer.
+ * Only 12 bits of the 3 Access Condition bytes matter (C1, C2 and C3 for
+ * each of the 4 blocks), the other 12 bits are the inverted copy. So there
+ * are only 4096 combinations and the results of
+ * {@link Common#getOperationRequirements(byte, byte, byte, Operation,
+ * boolean, boolean)} for all blocks and operations are computed once
+ * and stored in a table. Each permission query is a single array lookup
+ * that does not allocate anything.<br /><br />
+ * Usage: Get the index of the Access Conditions with
+ * {@link #getIndex(byte[], int)} (-1 if they are invalid) and use it for
+ * {@link #getOperationRequirements(int, int, Operation)},
+ * {@link #isKeyBReadable(int)}, etc.
+ * @author agent
+ */
+public final class AccessConditions {
+
+    /**
+     * Number of possible Access Conditions (12 bits).
+     */
+    public static final int COUNT = 4096;
+    /**
+     * Index of the Access Condition bits of the sector trailer.
+     */
+    public static final int SECTOR_TRAILER = 3;
+
+    private static final int BITS_PER_RESULT = 3;
+    /**
+     * Slot of the first sector trailer operation. The slots before are
+     * the data block operations (4 per data block).
+     */
+    private static final int TRAILER_SLOT = 12;
+
+    /**
+     * The operation requirements of all blocks and operations, packed in
+     * one long per Access Condition index (18 results with 3 bits each,
+     * stored as requirement + 1).
+     */
+    private static final long[] TABLE = new long[COUNT];
+    private static final boolean[] KEY_B_READABLE = new boolean[COUNT];
+
+    static {
+        Operation[] ops = Operation.values();
+        for (int index = 0; index < COUNT; index++) {
+            byte[][] acMatrix = toACMatrix(index);
+            boolean keyBReadable = Common.isKeyBReadable(
+                    acMatrix[0][3], acMatrix[1][3], acMatrix[2][3]);
+            KEY_B_READABLE[index] = keyBReadable;
+            long packed = 0;
+            for (int block = 0; block < 4; block++) {
+                boolean isTrailer = block == SECTOR_TRAILER;
+                for (Operation op : ops) {
+                    int slot = getSlot(block, op);
+                    if (slot == -1) {
+                        continue;
+                    }
+                    int req = Common.getOperationRequirements(
+                            acMatrix[0][block], acMatrix[1][block],
+                            acMatrix[2][block], op, isTrailer, keyBReadable);
+                    packed |= (long) (req + 1) << (slot * BITS_PER_RESULT);
+                }
+            }
+            TABLE[index] = packed;
+        }
+    }
+
+    private AccessConditions() {
+    }
+
+    /**
+     * Get the index of the Access Conditions (the 12 C1-C3 bits)
+     * and check the inverted bits.
+     * @param acBytes The Access Condition bytes (byte 6-8 of the
+     * sector trailer).
+     * @param offset The offset of the Access Condition bytes in acBytes
+     * (e.g. 6 for a whole sector trailer).
+     * @return The index (0-4095) or -1 if the Access Conditions are
+     * invalid (inverted bits do not match).
+     */
+    public static int getIndex(byte[] acBytes, int offset) {
+        if (acBytes == null || acBytes.length < offset + 3) {
+            return -1;
+        }
+        int b6 = acBytes[offset] & 0xFF;
+        int b7 = acBytes[offset + 1] & 0xFF;
+        int b8 = acBytes[offset + 2] & 0xFF;
+        // C1 (byte 7, bit 4-7), C2 (byte 8, bit 0-3), C3 (byte 8, bit 4-7).
+        int index = (b7 >>> 4) | (b8 << 4);
+        // ~C1 (byte 6, bit 0-3), ~C2 (byte 6, bit 4-7), ~C3 (byte 7, bit 0-3).
+        int inverted = b6 | ((b7 & 0x0F) << 8);
+        if ((inverted ^ 0xFFF) != index) {
+            return -1;
+        }
+        return index;
+    }
+
+    /**
+     * Get the index of the Access Conditions (see
+     * {@link #getIndex(byte[], int)}).
+     * @param acBytes The Access Condition bytes (3 bytes).
+     * @return The index (0-4095) or -1 if the Access Conditions are
+     * invalid.
+     */
+    public static int getIndex(byte[] acBytes) {
+        return getIndex(acBytes, 0);
+    }
+
+    /**
+     * Check if the Access Conditions are valid (inverted bits match).
+     * @param acBytes The Access Condition bytes.
+     * @param offset The offset of the Access Condition bytes in acBytes.
+     * @return True if valid, false otherwise.
+     */
+    public static boolean isValid(byte[] acBytes, int offset) {
+        return getIndex(acBytes, offset) != -1;
+    }
+
+    /**
+     * Convert an index to the 3 Access Condition bytes (with the
+     * inverted bits).
+     * @param index The index of the Access Conditions (0-4095).
+     * @return The Access Condition bytes (3 bytes).
+     */
+    public static byte[] toACBytes(int index) {
+        int inverted = index ^ 0xFFF;
+        return new byte[] {
+                (byte) inverted,
+                (byte) (((index & 0x0F) << 4) | (inverted >>> 8)),
+                (byte) (index >>> 4) };
+    }
+
+    /**
+     * Get the Access Condition bits (C1, C2, C3) of a block.
+     * @param index The index of the Access Conditions (0-4095).
+     * @param block The index of the Access Condition bits (0-2 for the
+     * data blocks, {@link #SECTOR_TRAILER} for the sector trailer).
+     * @return The bits as C1 (bit 2), C2 (bit 1) and C3 (bit 0).
+     */
+    public static int getACBits(int index, int block) {
+        return (((index >>> block) & 1) << 2)
+                | (((index >>> (4 + block)) & 1) << 1)
+                | ((index >>> (8 + block)) & 1);
+    }
+
+    /**
+     * Check if key B is readable (see
+     * {@link Common#isKeyBReadable(byte, byte, byte)}).
+     * @param index The index of the Access Conditions (0-4095 or -1).
+     * @return True if key B is readable. False otherwise (or if
+     * the index is -1).
+     */
+    public static boolean isKeyBReadable(int index) {
+        return index >= 0 && KEY_B_READABLE[index];
+    }
+
+    /**
+     * Get the key required for an operation (see
+     * {@link Common#getOperationRequirements(byte, byte, byte, Operation,
+     * boolean, boolean)}).
+     * @param index The index of the Access Conditions (0-4095).
+     * @param block The index of the Access Condition bits (0-2 for the
+     * data blocks, {@link #SECTOR_TRAILER} for the sector trailer).
+     * @param op The operation.
+     * @return The operation "op" is possible with:<br />
+     * <ul>
+     * <li>0 - Never.</li>
+     * <li>1 - Key A.</li>
+     * <li>2 - Key B.</li>
+     * <li>3 - Key A or B.</li>
+     * <li>4 - Error (data block operation on the sector trailer).</li>
+     * <li>-1 - Error (invalid index or sector trailer operation on a
+     * data block).</li>
+     * </ul>
+     */
+    public static int getOperationRequirements(int index, int block,
+            Operation op) {
+        if (index < 0 || index >= COUNT || block < 0 || block > 3) {
+            return -1;
+        }
+        int slot = getSlot(block, op);
+        if (slot == -1) {
+            return (block == SECTOR_TRAILER) ? 4 : -1;
+        }
+        return (int) ((TABLE[index] >>> (slot * BITS_PER_RESULT)) & 0x07) - 1;
+    }
+
+    /**
+     * Get the position of a result in the packed table entry.
+     * @param block The index of the Access Condition bits (0-3).
+     * @param op The operation.
+     * @return The slot or -1 if the operation does not apply to the block.
+     */
+    private static int getSlot(int block, Operation op) {
+        int ordinal = op.ordinal();
+        if (block == SECTOR_TRAILER) {
+            // ReadKeyA, ReadKeyB, ReadAC, WriteKeyA, WriteKeyB, WriteAC.
+            int i = ordinal - Operation.ReadKeyA.ordinal();
+            return (i >= 0) ? TRAILER_SLOT + i : -1;
+        }
+        // Read, Write, Increment, DecTransRest.
+        if (ordinal > Operation.DecTransRest.ordinal()) {
+            return -1;
+        }
+        return block * 4 + ordinal;
+    }
+
+    private static byte[][] toACMatrix(int index) {
+        byte[][] acMatrix = new byte[3][4];
+        for (int block = 0; block < 4; block++) {
+            acMatrix[0][block] = (byte) ((index >>> block) & 1);
+            acMatrix[1][block] = (byte) ((index >>> (4 + block)) & 1);
+            acMatrix[2][block] = (byte) ((index >>> (8 + block)) & 1);
+        }
+        return acMatrix;
+    }
+}
@@ -29,6 +29,7 @@ import android.widget.TextView.BufferType;
 
 import androidx.core.content.ContextCompat;
 
+import de.syss.MifareClassicTool.AccessConditions;
 import de.syss.MifareClassicTool.Common;
 import de.syss.MifareClassicTool.Common.Operation;
 import de.syss.MifareClassicTool.R;
@@ -78,10 +79,9 @@ public class AccessConditionDecoder extends BasicActivity {
                 // b6 = bAC[0], b7 = bAC[1], ...
                 byte[] bAC = Common.hex2Bytes(accessConditions[j+1]);
 
-                // acMatrix[C1-C3][Block1-Block3 + Sector Trailer]
-                byte[][] acMatrix = Common.acBytesToACMatrix(bAC);
+                int acIndex = AccessConditions.getIndex(bAC);
                 String sectorNumber = accessConditions[j].split(": ")[1];
-                addSectorAC(acMatrix, getString(R.string.text_sector)
+                addSectorAC(acIndex, getString(R.string.text_sector)
                         + ": " + sectorNumber, hasMoreThan4Blocks);
             }
         } else {
@@ -93,20 +93,18 @@ public class AccessConditionDecoder extends BasicActivity {
     /**
      * Add full access condition information about one sector to the layout
      * table. (This method will trigger
-     * {@link #addBlockAC(byte[][], boolean)} and
-     * {@link #addSectorTrailerAC(byte[][])}
-     * @param acMatrix Matrix of access conditions bits (C1-C3) where the first
-     * dimension is the "C" parameter (C1-C3, Index 0-2) and the second
-     * dimension is the block number
-     * (Block0-Block2 + Sector Trailer, Index 0-3).
-     * If this parameter is null, a "invalid ACs" error will be added.
+     * {@link #addBlockAC(int, boolean)} and
+     * {@link #addSectorTrailerAC(int)}
+     * @param acIndex Index of the Access Conditions as generated by
+     * {@link AccessConditions#getIndex(byte[])}.
+     * If this parameter is -1, a "invalid ACs" error will be added.
      * @param sectorHeader The sector header to display (e.g. "Sector: 0").
      * @param hasMoreThan4Blocks True for the last 8 sectors
      * of a MIFARE Classic 4K tag.
-     * @see #addBlockAC(byte[][], boolean)
-     * @see #addSectorTrailerAC(byte[][])
+     * @see #addBlockAC(int, boolean)
+     * @see #addSectorTrailerAC(int)
      */
-    private void addSectorAC(byte[][] acMatrix, String sectorHeader,
+    private void addSectorAC(int acIndex, String sectorHeader,
             boolean hasMoreThan4Blocks) {
         // Add sector header.
         TextView header = new TextView(this);
@@ -122,7 +120,7 @@ public class AccessConditionDecoder extends BasicActivity {
                 LayoutParams.MATCH_PARENT,
                 LayoutParams.WRAP_CONTENT));
 
-        if (acMatrix == null) {
+        if (acIndex == -1) {
             TextView error = new TextView(this);
             String errorText = getString(R.string.text_invalid_ac);
             error.setText(Common.colorString(errorText,
@@ -138,27 +136,21 @@ public class AccessConditionDecoder extends BasicActivity {
                     LayoutParams.WRAP_CONTENT));
         } else {
             // Add Block 0-2.
-            addBlockAC(acMatrix, hasMoreThan4Blocks);
+            addBlockAC(acIndex, hasMoreThan4Blocks);
             // Add Sector Trailer.
-            addSectorTrailerAC(acMatrix);
+            addSectorTrailerAC(acIndex);
         }
     }
 
     /**
      * Add full access condition information of the 3 data blocks to the table.
-     * @param acMatrix A matrix of access conditions bits as generated by
-     * {@link Common#acBytesToACMatrix(byte[])}.
+     * @param acIndex Index of the Access Conditions as generated by
+     * {@link AccessConditions#getIndex(byte[])}.
      * @param hasMoreThan4Blocks True for the last 8 sectors
      * of a MIFARE Classic 4K tag, False otherwise.
      */
-    private void addBlockAC(byte[][] acMatrix, boolean hasMoreThan4Blocks) {
-        boolean isKeyBReadable = Common.isKeyBReadable(
-                acMatrix[0][3], acMatrix[1][3], acMatrix[2][3]);
-
+    private void addBlockAC(int acIndex, boolean hasMoreThan4Blocks) {
         for (int i = 0; i < 3; i++) {
-            byte c1 = acMatrix[0][i];
-            byte c2 = acMatrix[1][i];
-            byte c3 = acMatrix[2][i];
             // Create row and header.
             TableRow tr = new TableRow(this);
             String blockHeader;
@@ -180,14 +172,14 @@ public class AccessConditionDecoder extends BasicActivity {
             TextView decr = new TextView(this);
 
             // Set cell texts to colored permissions.
-            read.setText(getColoredPermissionText(c1, c2, c3,
-                    Operation.Read, false, isKeyBReadable));
-            write.setText(getColoredPermissionText(c1, c2, c3,
-                    Operation.Write, false, isKeyBReadable));
-            incr.setText(getColoredPermissionText(c1, c2, c3,
-                    Operation.Increment, false, isKeyBReadable));
-            decr.setText(getColoredPermissionText(c1, c2, c3,
-                    Operation.DecTransRest, false, isKeyBReadable));
+            read.setText(getColoredPermissionText(acIndex, i,
+                    Operation.Read));
+            write.setText(getColoredPermissionText(acIndex, i,
+                    Operation.Write));
+            incr.setText(getColoredPermissionText(acIndex, i,
+                    Operation.Increment));
+            decr.setText(getColoredPermissionText(acIndex, i,
+                    Operation.DecTransRest));
 
             // Add cells to row.
             tr.addView(location);
@@ -205,14 +197,11 @@ public class AccessConditionDecoder extends BasicActivity {
     /**
      * Add full access condition information of the sector trailer (last block)
      * to the table.
-     * @param acMatrix A matrix of access conditions bits as generated by
-     * {@link Common#acBytesToACMatrix(byte[])}.
-     * (Block0-Block2 + Sector Trailer, Index 0-3).
+     * @param acIndex Index of the Access Conditions as generated by
+     * {@link AccessConditions#getIndex(byte[])}.
      */
-    private void addSectorTrailerAC(byte[][] acMatrix) {
-        byte c1 = acMatrix[0][3];
-        byte c2 = acMatrix[1][3];
-        byte c3 = acMatrix[2][3];
+    private void addSectorTrailerAC(int acIndex) {
+        int trailer = AccessConditions.SECTOR_TRAILER;
         // Create rows.
         TextView[] read = new TextView[3];
         TextView[] write = new TextView[3];
@@ -222,18 +211,18 @@ public class AccessConditionDecoder extends BasicActivity {
         }
 
         // Set row texts to colored permissions.
-        read[0].setText(getColoredPermissionText(c1, c2, c3,
-                Operation.ReadKeyA, true, false));
-        write[0].setText(getColoredPermissionText(c1, c2, c3,
-                Operation.WriteKeyA, true, false));
-        read[1].setText(getColoredPermissionText(c1, c2, c3,
-                Operation.ReadAC, true, false));
-        write[1].setText(getColoredPermissionText(c1, c2, c3,
-                Operation.WriteAC, true, false));
-        read[2].setText(getColoredPermissionText(c1, c2, c3,
-                Operation.ReadKeyB, true, false));
-        write[2].setText(getColoredPermissionText(c1, c2, c3,
-                Common.Operation.WriteKeyB, true, false));
+        read[0].setText(getColoredPermissionText(acIndex, trailer,
+                Operation.ReadKeyA));
+        write[0].setText(getColoredPermissionText(acIndex, trailer,
+                Operation.WriteKeyA));
+        read[1].setText(getColoredPermissionText(acIndex, trailer,
+                Operation.ReadAC));
+        write[1].setText(getColoredPermissionText(acIndex, trailer,
+                Operation.WriteAC));
+        read[2].setText(getColoredPermissionText(acIndex, trailer,
+                Operation.ReadKeyB));
+        write[2].setText(getColoredPermissionText(acIndex, trailer,
+                Common.Operation.WriteKeyB));
 
         // Add rows to layout.
         String[] headers = new String[] {"Key A:", "AC Bits:", "Key B:"};
@@ -254,25 +243,24 @@ public class AccessConditionDecoder extends BasicActivity {
     }
 
     /**
-     * A helper function for {@link #addBlockAC(byte[][], boolean)} and
-     * {@link #addSectorTrailerAC(byte[][])} creating a colored text
+     * A helper function for {@link #addBlockAC(int, boolean)} and
+     * {@link #addSectorTrailerAC(int)} creating a colored text
      * depending on the Access Conditions and the requested operation
      * ({@link Operation}).
-     * @param c1 Access Condition byte "C1"
-     * @param c2 Access Condition byte "C2"
-     * @param c3 Access Condition byte "C3"
+     * @param acIndex Index of the Access Conditions as generated by
+     * {@link AccessConditions#getIndex(byte[])}.
+     * @param block Index of the Access Condition bits (0-2 for the data
+     * blocks, {@link AccessConditions#SECTOR_TRAILER} for the
+     * Sector Trailer).
      * @param op Operation on the tag (see {@link Operation}).
-     * @param isSectorTrailer True if it is a Sector Trailer, False otherwise.
-     * @param isKeyBReadable True if key B is readable, False otherwise.
      * @return A colored text depending on the return value of
-     * {@link Common#getOperationRequirements(byte, byte, byte, Operation,
-     * boolean, boolean)}. On Error an empty string will be returned.
+     * {@link AccessConditions#getOperationRequirements(int, int,
+     * Operation)}. On Error an empty string will be returned.
      */
-    private SpannableString getColoredPermissionText(byte c1, byte c2, byte c3,
-                                                     Operation op, boolean isSectorTrailer,
-                                                     boolean isKeyBReadable) {
-        switch (Common.getOperationRequirements(c1, c2, c3, op,
-                isSectorTrailer, isKeyBReadable)) {
+    private SpannableString getColoredPermissionText(int acIndex, int block,
+                                                     Operation op) {
+        switch (AccessConditions.getOperationRequirements(
+                acIndex, block, op)) {
         case 0:
             // Never.
             return Common.colorString(getString(R.string.text_never),
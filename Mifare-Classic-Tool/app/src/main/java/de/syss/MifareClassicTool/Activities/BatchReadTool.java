@@ -0,0 +1,358 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool.Activities;
+
+import android.app.AlertDialog;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.View;
+import android.widget.ScrollView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+
+import de.syss.MifareClassicTool.Common;
+import de.syss.MifareClassicTool.KeyDictionary;
+import de.syss.MifareClassicTool.KeyMapCache;
+import de.syss.MifareClassicTool.KeyStatistics;
+import de.syss.MifareClassicTool.MCReader;
+import de.syss.MifareClassicTool.R;
+import de.syss.MifareClassicTool.TagImage;
+
+/**
+ * Read many tags back to back. Every new tag is read as soon as it is
+ * detected and the dump is saved directly to the {@link Common#DUMPS_DIR}
+ * (named by UID and date), without showing the {@link DumpEditor}.
+ * The keys are taken from the {@link KeyMapCache} (keys of this tag),
+ * the last key map (the one of the previous tag) or, if none of them
+ * fit, a new key map is created with the chosen key files.
+ * @author agent
+ */
+public class BatchReadTool extends BasicActivity {
+
+    private static final String LOG_TAG =
+            BatchReadTool.class.getSimpleName();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private TextView mKeyFilesInfo;
+    private TextView mStats;
+    private TextView mLog;
+    private ScrollView mLogScroll;
+    private KeyDictionary mKeys;
+    private KeyMapCache mKeyMapCache;
+    private KeyStatistics mKeyStats;
+    // Loads the key map cache and the key statistics.
+    private Thread mLoader;
+    private SparseArray<byte[][]> mKeyMap;
+    private boolean mIsReading = false;
+    private int mTagsRead = 0;
+    private int mTagsFailed = 0;
+    private long mStartTime = -1;
+
+    /**
+     * Initialize the member variables and load the last used key files.
+     * The key map cache and the key statistics are loaded in a worker
+     * thread (the worker threads of {@link #readTag()} wait for it).
+     */
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_batch_read_tool);
+        mKeyFilesInfo = findViewById(R.id.textViewBatchReadToolKeyFiles);
+        mStats = findViewById(R.id.textViewBatchReadToolStats);
+        mLog = findViewById(R.id.textViewBatchReadToolLog);
+        mLogScroll = findViewById(R.id.scrollViewBatchReadToolLog);
+        mLoader = new Thread(() -> {
+            mKeyMapCache = KeyMapCache.load(
+                    Common.getFile(Common.KEY_MAP_CACHE_FILE));
+            mKeyStats = KeyStatistics.load(
+                    Common.getFile(Common.KEY_STATS_FILE));
+        });
+        mLoader.start();
+        // Start with the key map of the last tag read by the app.
+        mKeyMap = Common.getKeyMap();
+        updateStats();
+
+        // Load the last used key files (shared with the key map creator).
+        // All file names are stored in one string separated by "/".
+        SharedPreferences sharedPref = Common.getPreferences();
+        String selectedFilesChain = sharedPref.getString(
+                "last_used_key_files", null);
+        if (selectedFilesChain != null) {
+            loadKeyFiles(Arrays.asList(selectedFilesChain.split("/")));
+        }
+    }
+
+    /**
+     * Calls {@link BasicActivity#onNewIntent(Intent)} and then reads
+     * the new tag ({@link #readTag()}).
+     */
+    @Override
+    public void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        if (mIsReading) {
+            Toast.makeText(this, R.string.info_batch_read_busy,
+                    Toast.LENGTH_SHORT).show();
+            return;
+        }
+        readTag();
+    }
+
+    /**
+     * Show a dialog to choose the key files that are used if neither the
+     * cached keys nor the last key map fit a tag.
+     * @param view The View object that triggered the method
+     * (in this case the key files button).
+     */
+    public void onChooseKeyFiles(View view) {
+        File[] files = Common.getFile(Common.KEYS_DIR).listFiles();
+        if (files == null || files.length == 0) {
+            Toast.makeText(this, R.string.info_mapping_no_keyfile_found,
+                    Toast.LENGTH_LONG).show();
+            return;
+        }
+        Arrays.sort(files);
+        SharedPreferences sharedPref = Common.getPreferences();
+        String selectedFilesChain = sharedPref.getString(
+                "last_used_key_files", "");
+        List<String> selected = Arrays.asList(selectedFilesChain.split("/"));
+        final String[] names = new String[files.length];
+        final boolean[] checked = new boolean[files.length];
+        for (int i = 0; i < files.length; i++) {
+            names[i] = files[i].getName();
+            checked[i] = selected.contains(names[i]);
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.text_choose_key_files)
+                .setMultiChoiceItems(names, checked,
+                        (dialog, which, isChecked) -> checked[which] = isChecked)
+                .setPositiveButton(R.string.action_ok, (dialog, which) -> {
+                    ArrayList<String> fileNames = new ArrayList<>();
+                    for (int i = 0; i < names.length; i++) {
+                        if (checked[i]) {
+                            fileNames.add(names[i]);
+                        }
+                    }
+                    SharedPreferences.Editor e =
+                            Common.getPreferences().edit();
+                    e.putString("last_used_key_files",
+                            TextUtils.join("/", fileNames));
+                    e.apply();
+                    loadKeyFiles(fileNames);
+                })
+                .setNegativeButton(R.string.action_cancel,
+                        (dialog, which) -> { })
+                .show();
+    }
+
+    /**
+     * Load the key files (as {@link KeyDictionary}) in a worker thread.
+     * @param fileNames The names of the key files
+     * (in {@link Common#KEYS_DIR}).
+     */
+    private void loadKeyFiles(List<String> fileNames) {
+        final ArrayList<File> keyFiles = new ArrayList<>();
+        for (String fileName : fileNames) {
+            File keyFile = Common.getFile(Common.KEYS_DIR + "/" + fileName);
+            if (keyFile.exists()) {
+                keyFiles.add(keyFile);
+            }
+        }
+        mKeys = null;
+        if (keyFiles.size() == 0) {
+            mKeyFilesInfo.setText(R.string.text_batch_read_no_key_files);
+            return;
+        }
+        new Thread(() -> {
+            KeyDictionary keys = null;
+            try {
+                keys = KeyDictionary.get(keyFiles.toArray(new File[0]),
+                        Common.getFile(Common.KEY_DICTS_DIR));
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error while compiling key files.", e);
+            }
+            final KeyDictionary dict = keys;
+            mHandler.post(() -> {
+                mKeys = dict;
+                if (dict == null) {
+                    mKeyFilesInfo.setText(
+                            R.string.text_batch_read_no_key_files);
+                    Toast.makeText(this, R.string.info_key_dict_error,
+                            Toast.LENGTH_LONG).show();
+                } else {
+                    mKeyFilesInfo.setText(getString(
+                            R.string.text_batch_read_key_files,
+                            dict.size(), keyFiles.size()));
+                }
+            });
+        }).start();
+    }
+
+    /**
+     * Read the present tag and save the dump in a worker thread
+     * ({@link #readAndSave(MCReader, KeyDictionary)}). Update the log and
+     * the statistics afterwards.
+     */
+    private void readTag() {
+        final MCReader reader = Common.checkForTagAndCreateReader(this);
+        if (reader == null) {
+            return;
+        }
+        mIsReading = true;
+        if (mStartTime == -1) {
+            mStartTime = SystemClock.elapsedRealtime();
+        }
+        final String uid = reader.getUidHex();
+        final KeyDictionary keys = mKeys;
+        appendToLog(getString(R.string.text_batch_read_reading, uid));
+        new Thread(() -> {
+            File file = null;
+            try {
+                // The key map cache and the statistics must be loaded.
+                mLoader.join();
+                file = readAndSave(reader, keys);
+            } catch (InterruptedException e) {
+                Log.e(LOG_TAG, "Interrupted while loading the key map cache.");
+            }
+            final File dump = file;
+            reader.close();
+            mHandler.post(() -> {
+                mIsReading = false;
+                if (dump != null) {
+                    mTagsRead++;
+                    appendToLog(getString(R.string.text_batch_read_saved,
+                            uid, dump.getName()));
+                } else {
+                    mTagsFailed++;
+                    appendToLog(getString(R.string.text_batch_read_failed,
+                            uid));
+                }
+                updateStats();
+            });
+        }).start();
+    }
+
+    /**
+     * Create a key map (or use an existing one), read the tag and save
+     * the dump. This is done in the worker thread of {@link #readTag()}.
+     * @param reader A connected {@link MCReader}.
+     * @param keys The keys to create a new key map with (may be null).
+     * @return The dump file or null on error (no keys found,
+     * tag removed, file not written).
+     */
+    private File readAndSave(MCReader reader, KeyDictionary keys) {
+        String uid = reader.getUidHex();
+        int lastSector = reader.getSectorCount() - 1;
+        // Use the cached keys of this tag or the last key map (one
+        // authentication per key) before the key files.
+        SparseArray<byte[][]> keyMap = null;
+        KeyMapCache.Entry cached = mKeyMapCache.get(uid, reader.getSize());
+        if (cached != null && reader.isKeyMapValid(cached.getKeyMap())) {
+            keyMap = cached.getKeyMap();
+        } else if (mKeyMap != null && reader.isKeyMapValid(mKeyMap)) {
+            keyMap = mKeyMap;
+        }
+        TagImage image = null;
+        if (keyMap == null) {
+            // The statistics must be set before the keys (they are
+            // used to sort the keys).
+            reader.setKeyStatistics(mKeyStats);
+            if (keys == null || reader.setKeys(keys) < 1) {
+                return null;
+            }
+            reader.setMappingRange(0, lastSector);
+            reader.setReadWhileMapping(true);
+            int sector = 0;
+            while (sector != -1 && sector < lastSector) {
+                sector = reader.buildNextKeyMapPart();
+            }
+            mKeyStats.save();
+            if (sector == -1 || reader.getKeyMap().size() == 0) {
+                return null;
+            }
+            keyMap = reader.getKeyMap();
+            mKeyMapCache.put(uid, reader.getSize(), 0, lastSector, keyMap);
+            mKeyMapCache.save();
+            image = reader.getMappedDump();
+        }
+        mKeyMap = keyMap;
+
+        // Read the sectors that have not been read while mapping.
+        image = reader.readTagImage(keyMap, image);
+        if (image == null || image.getSectorsInImage() == 0) {
+            return null;
+        }
+
+        // Save the dump (named by UID + date + time).
+        GregorianCalendar calendar = new GregorianCalendar();
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss",
+                Locale.getDefault());
+        fmt.setCalendar(calendar);
+        String dateFormatted = fmt.format(calendar.getTime());
+        File file = Common.getFile(Common.DUMPS_DIR + "/UID_" + uid + "_"
+                + dateFormatted + ".mct");
+        if (!Common.saveFile(file, image.toDump(0, lastSector), false)) {
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Show the number of tags read, the failures and the throughput
+     * (tags per minute since the first tag).
+     */
+    private void updateStats() {
+        double tagsPerMinute = 0;
+        if (mStartTime != -1) {
+            long elapsed = SystemClock.elapsedRealtime() - mStartTime;
+            if (elapsed > 0) {
+                tagsPerMinute = (mTagsRead + mTagsFailed) * 60000.0 / elapsed;
+            }
+        }
+        mStats.setText(getString(R.string.text_batch_read_stats,
+                mTagsRead, mTagsFailed, tagsPerMinute));
+    }
+
+    /**
+     * Append a line to the log and scroll to the bottom.
+     * @param line The line to append.
+     */
+    private void appendToLog(String line) {
+        if (mLog.length() > 0) {
+            mLog.append("\n");
+        }
+        mLog.append(line);
+        mLogScroll.post(() -> mLogScroll.fullScroll(View.FOCUS_DOWN));
+    }
+}
@@ -36,8 +36,10 @@ import androidx.core.widget.TextViewCompat;
 import java.io.File;
 
 import de.syss.MifareClassicTool.Common;
+import de.syss.MifareClassicTool.DumpParser;
 import de.syss.MifareClassicTool.MCDiffUtils;
 import de.syss.MifareClassicTool.R;
+import de.syss.MifareClassicTool.TagImage;
 
 /**
  * A tool to show the difference between two dumps.
@@ -59,8 +61,8 @@ public class DiffTool extends BasicActivity {
     private LinearLayout mDiffContent;
     private Button mDumpFileButton1;
     private Button mDumpFileButton2;
-    private SparseArray<String[]> mDump1;
-    private SparseArray<String[]> mDump2;
+    private TagImage mDump1;
+    private TagImage mDump2;
 
     /**
      * Process {@link #EXTRA_DUMP} if they are part of the Intent and
@@ -78,7 +80,7 @@ public class DiffTool extends BasicActivity {
         // Check if one or both dumps are already chosen via Intent
         // (from DumpEditor).
         if (getIntent().hasExtra(EXTRA_DUMP)) {
-            mDump1 = convertDumpFormat(
+            mDump1 = TagImage.fromDump(
                     getIntent().getStringArrayExtra(EXTRA_DUMP));
             mDumpFileButton1.setText(R.string.text_dump_from_editor);
             mDumpFileButton1.setEnabled(false);
@@ -126,7 +128,7 @@ public class DiffTool extends BasicActivity {
 
     /**
      * Run diff if there are two dumps and show the result in the GUI.
-     * @see MCDiffUtils#diffIndices(SparseArray, SparseArray)
+     * @see MCDiffUtils#diffIndices(TagImage, TagImage)
      */
     @SuppressLint("SetTextI18n")
     private void runDiff() {
@@ -194,8 +196,8 @@ public class DiffTool extends BasicActivity {
                     StringBuilder diffString;
                     diffIndex.setTextColor(Color.RED);
                     // Populate the blocks of the diff entry.
-                    dump1.setText(mDump1.get(sector)[block]);
-                    dump2.setText(mDump2.get(sector)[block]);
+                    dump1.setText(mDump1.getBlockHex(sector, block));
+                    dump2.setText(mDump2.getBlockHex(sector, block));
 
                     if (blocks[block].length == 0) {
                         // Set diff line for identical blocks.
@@ -243,32 +245,26 @@ public class DiffTool extends BasicActivity {
 
     /**
      * Get the {@link FileChooser#EXTRA_CHOSEN_FILE} from the Intend,
-     * read the file, check it for errors using
-     * {@link Common#isValidDump(String[], boolean)} and convert its format
-     * using {@link #convertDumpFormat(String[])}.
+     * and read, check and convert the file in one pass using
+     * {@link DumpParser}.
      * This is a helper function for
      * {@link #onActivityResult(int, int, Intent)}.
      * @param data The Intent returned by the {@link FileChooser}
-     * @return The chosen dump in a key value pair format. The key is the sector
-     * number. The value is an String array. Each field of the array
-     * represents a block. If the dump was not valid null will be returned.
-     * @see Common#isValidDump(String[], boolean)
-     * @see Common#isValidDumpErrorToast(int, android.content.Context)
-     * @see Common#readFileLineByLine(File, boolean, android.content.Context)
-     * @see #convertDumpFormat(String[])
+     * @return The chosen dump. If the dump was not valid null will
+     * be returned.
+     * @see DumpParser
+     * @see Common#isValidDumpErrorToast(int, int, android.content.Context)
      */
-    private SparseArray<String[]> processChosenDump(Intent data) {
+    private TagImage processChosenDump(Intent data) {
         String path = data.getStringExtra(
                 FileChooser.EXTRA_CHOSEN_FILE);
-        File file = new File(path);
-        String[] dump = Common.readFileLineByLine(file, false, this);
-        int err = Common.isValidDump(dump, false);
-        if (err != 0) {
-            Common.isValidDumpErrorToast(err, this);
+        DumpParser parser = new DumpParser(false);
+        if (!parser.parse(new File(path))) {
+            Common.isValidDumpErrorToast(parser.getError(),
+                    parser.getErrorLine(), this);
             return null;
-        } else {
-            return convertDumpFormat(dump);
         }
+        return parser.getImage();
     }
 
     /**
@@ -288,34 +284,4 @@ public class DiffTool extends BasicActivity {
                 getString(R.string.action_open_dump_file));
         return intent;
     }
-
-    /**
-     * Convert the format of an dump.
-     * @param dump A dump in the same format a dump file is.
-     * (with no comments, not multiple dumps (appended) and validated by
-     * {@link Common#isValidDump(String[], boolean)})
-     * @return The dump in a key value pair format. The key is the sector
-     * number. The value is an String array. Each field of the array
-     * represents a block.
-     */
-    private static SparseArray<String[]> convertDumpFormat(String[] dump) {
-        SparseArray<String[]> ret = new SparseArray<>();
-        int i = 0;
-        int sector = 0;
-        for (String line : dump) {
-            if (line.startsWith("+")) {
-                String[] tmp = line.split(": ");
-                sector = Integer.parseInt(tmp[tmp.length-1]);
-                i = 0;
-                if (sector < 32) {
-                    ret.put(sector, new String[4]);
-                } else {
-                    ret.put(sector, new String[16]);
-                }
-            } else {
-                ret.get(sector)[i++] = line;
-            }
-        }
-        return ret;
-    }
 }
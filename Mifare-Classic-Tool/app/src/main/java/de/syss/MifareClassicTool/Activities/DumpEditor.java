@@ -28,17 +28,22 @@ import android.text.Editable;
 import android.text.InputFilter;
 import android.text.InputType;
 import android.text.SpannableString;
+import android.text.SpannableStringBuilder;
 import android.text.TextUtils;
 import android.text.TextWatcher;
+import android.text.style.ForegroundColorSpan;
 import android.text.style.UnderlineSpan;
-import android.util.Log;
+import android.util.SparseArray;
 import android.util.TypedValue;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
 import android.widget.EditText;
 import android.widget.LinearLayout;
 import android.widget.LinearLayout.LayoutParams;
+import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.TextView.BufferType;
 import android.widget.Toast;
@@ -49,6 +54,7 @@ import androidx.core.text.HtmlCompat;
 import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -56,13 +62,19 @@ import java.util.HashSet;
 import java.util.Locale;
 
 import de.syss.MifareClassicTool.Common;
+import de.syss.MifareClassicTool.DumpParser;
+import de.syss.MifareClassicTool.HexCodec;
 import de.syss.MifareClassicTool.MCReader;
 import de.syss.MifareClassicTool.R;
+import de.syss.MifareClassicTool.TagImage;
 
 
 /**
  * A simple hex editor for showing and editing tag dumps generated by the
- * {@link ReadTag}. Features are:
+ * {@link ReadTag}. The sectors are shown in a {@link ListView}, which only
+ * creates (and colors) the views of the visible sectors and recycles
+ * them while scrolling. The dump itself is kept in a {@link TagImage}.
+ * Features are:
  * <ul>
  * <li>Color<ul>
  *  <li>keys (A/B)</li>
@@ -93,7 +105,7 @@ public class DumpEditor extends BasicActivity
     private static final String LOG_TAG =
             DumpEditor.class.getSimpleName();
 
-    private LinearLayout mLayout;
+    private ListView mListView;
     private String mDumpName;
     private String mKeysName;
     private String mUID;
@@ -106,6 +118,37 @@ public class DumpEditor extends BasicActivity
      */
     private String[] mLines;
 
+    /**
+     * The dump that is being edited. Sectors marked with "*" ("no keys
+     * found or dead sector") are not part of the image. All changes of the
+     * user are written into it (see {@link #updateSector(int, String)}).
+     */
+    private TagImage mImage;
+
+    /**
+     * The sectors in the order of the dump. There is one row
+     * in {@link #mListView} for each sector.
+     */
+    private int[] mSectors;
+
+    /**
+     * The text of edited sectors that can not be stored in {@link #mImage}
+     * as it is (e.g. because it is not (yet) a valid sector).
+     */
+    private final SparseArray<String> mEdits = new SparseArray<>();
+
+    /**
+     * Incremented by {@link #onUpdateColors(View)} to force the
+     * visible sectors to be bound (and colored) again.
+     */
+    private int mBindGeneration;
+
+    private int mColorUidAndManuf;
+    private int mColorValueBlock;
+    private int mColorKeyA;
+    private int mColorKeyB;
+    private int mColorAC;
+
     /**
      * True if the user made changes to the dump.
      * Used by the "save before quitting" dialog.
@@ -125,31 +168,33 @@ public class DumpEditor extends BasicActivity
      * (or recreate instance state if the activity was killed).
      * Also it will color the caption of the dump editor.
      * @see #initEditor(String[])
+     * @see #initEditor(File)
      */
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_dump_editor);
 
-        mLayout = findViewById(
-                R.id.linearLayoutDumpEditor);
+        mListView = findViewById(R.id.listViewDumpEditor);
+        mListView.setItemsCanFocus(true);
+
+        mColorUidAndManuf = ContextCompat.getColor(this, R.color.purple);
+        mColorValueBlock = ContextCompat.getColor(this, R.color.yellow);
+        mColorKeyA = ContextCompat.getColor(this, R.color.light_green);
+        mColorKeyB = ContextCompat.getColor(this, R.color.dark_green);
+        mColorAC = ContextCompat.getColor(this, R.color.orange);
 
         // Color caption.
         SpannableString keyA = Common.colorString(
-                getString(R.string.text_keya),
-                ContextCompat.getColor(this, R.color.light_green));
+                getString(R.string.text_keya), mColorKeyA);
         SpannableString keyB =  Common.colorString(
-                getString(R.string.text_keyb),
-                ContextCompat.getColor(this, R.color.dark_green));
+                getString(R.string.text_keyb), mColorKeyB);
         SpannableString ac = Common.colorString(
-                getString(R.string.text_ac),
-                ContextCompat.getColor(this, R.color.orange));
+                getString(R.string.text_ac), mColorAC);
         SpannableString uidAndManuf = Common.colorString(
-                getString(R.string.text_uid_and_manuf),
-                ContextCompat.getColor(this, R.color.purple));
+                getString(R.string.text_uid_and_manuf), mColorUidAndManuf);
         SpannableString vb = Common.colorString(
-                getString(R.string.text_valueblock),
-                ContextCompat.getColor(this, R.color.yellow));
+                getString(R.string.text_valueblock), mColorValueBlock);
 
         TextView caption = findViewById(
                 R.id.textViewDumpEditorCaption);
@@ -183,7 +228,7 @@ public class DumpEditor extends BasicActivity
                     FileChooser.EXTRA_CHOSEN_FILE));
             mDumpName = file.getName();
             setTitle(getTitle() + " (" + mDumpName + ")");
-            initEditor(Common.readFileLineByLine(file, false, this));
+            initEditor(file);
             setIntent(null);
         } else if (savedInstanceState != null) {
             // Recreated after kill by Android (due to low memory).
@@ -217,6 +262,10 @@ public class DumpEditor extends BasicActivity
         outState.putString("keys_name", mKeysName);
         outState.putString("dump_name", mDumpName);
         outState.putString("uid", mUID);
+        if (mImage != null) {
+            // Save the latest valid state of the dump.
+            checkDumpAndUpdateLines();
+        }
         outState.putStringArray("lines", mLines);
     }
 
@@ -298,12 +347,12 @@ public class DumpEditor extends BasicActivity
     /**
      * Update the coloring. This method updates the colors if all
      * data are valid {@link #checkDumpAndUpdateLines()}.
-     * To do so, it re-initializes the whole editor... not quite beautiful.
+     * To do so, it binds the visible sectors again. The other sectors
+     * will be colored once they become visible.
      * @param view The View object that triggered the method
      * (in this case the update color text (color caption text)).
      * @see #checkDumpAndUpdateLines()
      * @see Common#isValidDumpErrorToast(int, Context)
-     * @see #initEditor(String[])
      */
     public void onUpdateColors(View view) {
         int err = checkDumpAndUpdateLines();
@@ -311,22 +360,34 @@ public class DumpEditor extends BasicActivity
             Common.isValidDumpErrorToast(err, this);
             return;
         }
-        // Backup focused view.
-        View focused = mLayout.getFocusedChild();
-        int focusIndex = -1;
-        if (focused != null) {
-            focusIndex = mLayout.indexOfChild(focused);
+        // Backup focused sector and cursor position.
+        View focused = getCurrentFocus();
+        int focusSector = -1;
+        int selection = 0;
+        if (focused instanceof EditText
+                && focused.getTag() instanceof SectorHolder) {
+            focusSector = ((SectorHolder) focused.getTag()).mSector;
+            selection = ((EditText) focused).getSelectionStart();
         }
-        initEditor(mLines);
-        if (focusIndex != -1) {
-            // Restore focused view.
-            while (focusIndex >= 0
-                    && mLayout.getChildAt(focusIndex) == null) {
-                focusIndex--;
-            }
-            if (focusIndex >= 0) {
-                mLayout.getChildAt(focusIndex).requestFocus();
-            }
+        mBindGeneration++;
+        ((BaseAdapter) mListView.getAdapter()).notifyDataSetChanged();
+        if (focusSector != -1) {
+            // Restore focused view (after the list has been laid out).
+            final int sector = focusSector;
+            final int cursor = selection;
+            mListView.post(() -> {
+                for (int i = 0; i < mListView.getChildCount(); i++) {
+                    SectorHolder holder = (SectorHolder)
+                            mListView.getChildAt(i).getTag();
+                    if (holder != null && holder.mSector == sector
+                            && holder.mData != null) {
+                        holder.mData.requestFocus();
+                        holder.mData.setSelection(Math.min(cursor,
+                                holder.mData.length()));
+                        break;
+                    }
+                }
+            });
         }
     }
 
@@ -491,154 +552,125 @@ public class DumpEditor extends BasicActivity
      */
     private int checkDumpAndUpdateLines() {
         ArrayList<String> checkedLines = new ArrayList<>();
-        for(int i = 0; i < mLayout.getChildCount(); i++) {
-            View child = mLayout.getChildAt(i);
-            if (child instanceof EditText) {
-                String[] lines = ((EditText)child).getText().toString()
-                        .split(System.getProperty("line.separator"));
-                if (lines.length != 4 && lines.length != 16) {
-                    // Not 4 or 16 lines.
-                    return 1;
-                }
-                for (int j = 0; j < lines.length; j++) {
-                    // Is hex or "-" == NO_KEY or NO_DATA.
-                    if (!lines[j].matches("[0-9A-Fa-f-]+")) {
-                        // Not pure hex.
-                        return 2;
-                    }
-                    if (lines[j].length() != 32) {
-                        // Not 32 chars per line.
-                        return 3;
-                    }
-                    lines[j] = lines[j].toUpperCase(Locale.getDefault());
-                    checkedLines.add(lines[j]);
-                }
-            } else if (child instanceof TextView) {
-                TextView tv = (TextView) child;
-                String tag = (String) tv.getTag();
-                // Only save real headers (not the headers
-                // of sectors with "no keys found or dead sector" error).
-                if (tag != null && tag.equals("real_header")) {
-                    // Mark headers (sectors) with "+"
-                    checkedLines.add("+Sector: "
-                            + tv.getText().toString().split(": ")[1]);
+        for (int sector : mSectors) {
+            // Only save real sectors (not the sectors
+            // with "no keys found or dead sector" error).
+            if (!mImage.hasSector(sector)) {
+                continue;
+            }
+            String[] lines;
+            String edit = mEdits.get(sector);
+            if (edit != null) {
+                lines = edit.split(System.getProperty("line.separator"));
+                int err = checkLines(lines);
+                if (err != 0) {
+                    return err;
                 }
+            } else {
+                lines = mImage.getSectorHex(sector);
             }
+            // Mark headers (sectors) with "+"
+            checkedLines.add("+Sector: " + sector);
+            checkedLines.addAll(Arrays.asList(lines));
         }
         // Update mLines.
         mLines = checkedLines.toArray(new String[0]);
         return 0;
     }
 
+    /**
+     * Check the lines (blocks) of a sector and convert them to upper case.
+     * @param lines The lines of the sector.
+     * @return The error code (see {@link #checkDumpAndUpdateLines()}).
+     */
+    private static int checkLines(String[] lines) {
+        if (lines.length != 4 && lines.length != 16) {
+            // Not 4 or 16 lines.
+            return 1;
+        }
+        for (int i = 0; i < lines.length; i++) {
+            // Is hex or "-" == NO_KEY or NO_DATA.
+            if (!HexCodec.isHexOrUnknown(lines[i])) {
+                // Not pure hex.
+                return 2;
+            }
+            if (lines[i].length() != 32) {
+                // Not 32 chars per line.
+                return 3;
+            }
+            lines[i] = lines[i].toUpperCase(Locale.getDefault());
+        }
+        return 0;
+    }
+
+    /**
+     * Write the text of an edited sector into the {@link #mImage}. If the
+     * text can not be stored in the image as it is (e.g. it is not a
+     * valid sector or it contains partly unknown blocks), it is kept in
+     * {@link #mEdits} until it is changed again.
+     * @param sector The sector.
+     * @param text The text of the sector (one block per line).
+     */
+    private void updateSector(int sector, String text) {
+        String[] lines = text.split(System.getProperty("line.separator"));
+        if (lines.length == TagImage.getBlockCountInSector(sector)
+                && checkLines(lines) == 0) {
+            mImage.setSectorHex(sector, lines);
+            if (Arrays.equals(mImage.getSectorHex(sector), lines)) {
+                mEdits.remove(sector);
+                return;
+            }
+        }
+        mEdits.put(sector, text);
+    }
+
     /**
      * Initialize the editor with the given lines. If the lines do not contain
      * a valid dump, an error Toast will be shown and the Activity exits.
      * @param lines Block data and header (e.g. "sector: 0"). Minimum is one
      * Sector (5 Lines, 1 Header + 4 Hex block data).
-     * @see Common#isValidDump(String[], boolean)
-     * @see Common#isValidDumpErrorToast(int, Context)
+     * @see #initEditor(DumpParser, boolean)
      */
-    @SuppressLint("SetTextI18n")
     private void initEditor(String[] lines) {
-        int err = Common.isValidDump(lines, true);
-        if (err != 0) {
-            Common.isValidDumpErrorToast(err, this);
+        DumpParser parser = new DumpParser(true);
+        initEditor(parser, parser.parse(lines));
+    }
+
+    /**
+     * Initialize the editor with a dump file. The file is parsed directly
+     * (without storing its lines). If it does not contain a valid dump,
+     * an error Toast will be shown and the Activity exits.
+     * @param file The dump file.
+     * @see #initEditor(DumpParser, boolean)
+     */
+    private void initEditor(File file) {
+        DumpParser parser = new DumpParser(true);
+        initEditor(parser, parser.parse(file));
+    }
+
+    /**
+     * Show the result of a {@link DumpParser} in the editor. Only the
+     * sectors that are visible will be turned into views
+     * (see {@link SectorAdapter}).
+     * @param parser The parser that parsed the dump.
+     * @param isValid The result of the parse call.
+     * @see Common#isValidDumpErrorToast(int, int, Context)
+     */
+    private void initEditor(DumpParser parser, boolean isValid) {
+        if (!isValid) {
+            Common.isValidDumpErrorToast(parser.getError(),
+                    parser.getErrorLine(), this);
             Toast.makeText(this, R.string.info_editor_init_error,
                     Toast.LENGTH_LONG).show();
             finish();
             return;
         }
-
-        // Parse dump and show it.
-        boolean tmpDumpChanged = mDumpChanged;
-        mLayout.removeAllViews();
-        boolean isFirstBlock = false;
-        EditText et = null;
-        ArrayList<SpannableString> blocks =
-                new ArrayList<>(4);
-        for (int i = 0; i < lines.length; i++) {
-            if (lines[i].startsWith("+")) {
-                // Line is a header.
-                isFirstBlock = lines[i].endsWith(" 0");
-                String sectorNumber = lines[i].split(": ")[1];
-                // Add sector header (TextView).
-                TextView tv = new TextView(this);
-                tv.setTextColor(
-                        ContextCompat.getColor(this, R.color.blue));
-                tv.setText(getString(R.string.text_sector) +
-                        ": " + sectorNumber);
-                mLayout.addView(tv);
-                // Add sector data (EditText) if not at the end and if the
-                // next line is not an error line ("*").
-                if (i+1 != lines.length && !lines[i+1].startsWith("*")) {
-                    // Add sector data (EditText).
-                    et = new EditText(this);
-                    et.setLayoutParams(new LayoutParams(
-                            LayoutParams.WRAP_CONTENT,
-                            LayoutParams.WRAP_CONTENT));
-                    et.setFilters(new InputFilter[] {new InputFilter.AllCaps()});
-                    et.setInputType(et.getInputType()
-                            |InputType.TYPE_TEXT_FLAG_NO_SUGGESTIONS
-                            |InputType.TYPE_TEXT_FLAG_CAP_CHARACTERS
-                            |InputType.TYPE_TEXT_VARIATION_VISIBLE_PASSWORD);
-                    et.setTypeface(Typeface.MONOSPACE);
-                    // Set text size of an EditText to the text size of
-                    // a TextView. (getTextSize() returns
-                    // pixels - unit is needed.)
-                    et.setTextSize(TypedValue.COMPLEX_UNIT_PX,
-                            new TextView(this).getTextSize());
-                    // Add a listener for changes to the text.
-                    et.addTextChangedListener(new TextWatcher(){
-                        @Override
-                        public void afterTextChanged(Editable s) {
-                            // Text was changed.
-                            mDumpChanged = true;
-                        }
-                        @Override
-                        public void beforeTextChanged(CharSequence s,
-                                int start, int count, int after) {}
-                        @Override
-                        public void onTextChanged(CharSequence s,
-                                int start, int before, int count) {}
-                    });
-                    mLayout.addView(et);
-                    // Tag headers of real sectors (sectors containing
-                    // data (EditText) and not errors ("*")).
-                    tv.setTag("real_header");
-                }
-            } else if (lines[i].startsWith("*")){
-                // Error Line: Line is a sector that could not be read.
-                TextView tv = new TextView(this);
-                tv.setTextColor(
-                        ContextCompat.getColor(this, R.color.red));
-                tv.setText("   " +  getString(
-                        R.string.text_no_key_io_error));
-                tv.setTag("error");
-                mLayout.addView(tv);
-            } else {
-                // Line is a block.
-                if (i+1 == lines.length || lines[i+1].startsWith("+")) {
-                    // Line is a sector trailer.
-                    blocks.add(colorSectorTrailer(lines[i]));
-                    // Add sector data to the EditText.
-                    CharSequence text = "";
-                    int j;
-                    for (j = 0; j < blocks.size()-1; j++) {
-                        text = TextUtils.concat(
-                                text, blocks.get(j), "\n");
-                    }
-                    text = TextUtils.concat(text, blocks.get(j));
-                    et.setText(text, BufferType.SPANNABLE);
-                    blocks = new ArrayList<>(4);
-                } else {
-                    // Add data block.
-                    blocks.add(colorDataBlock(lines[i], isFirstBlock));
-                    isFirstBlock = false;
-                }
-            }
-        }
-        // Initialization of the editor is not a change.
-        mDumpChanged = tmpDumpChanged;
+        mImage = parser.getImage();
+        mSectors = parser.getSectorOrder();
+        mEdits.clear();
+        mLines = null;
+        mBindGeneration++;
+        mListView.setAdapter(new SectorAdapter());
     }
 
     /**
@@ -985,57 +1017,222 @@ public class DumpEditor extends BasicActivity
     }
 
     /**
-     * Create a full colored string (representing one block).
-     * @param data Block data as hex string (16 Byte, 32 Chars.).
-     * @param hasUID True if the block is the first block of the entire tag
-     * (Sector 0, Block 0).
-     * @return A full colored string.
+     * Get the text of a sector (one block per line) and color it:
+     * UID and manuf. data, Value Blocks, keys and Access Conditions.
+     * Lines that are not valid blocks are not colored.
+     * @param sector The sector.
+     * @return The colored text of the sector.
      */
-    private SpannableString colorDataBlock(String data, boolean hasUID) {
-        SpannableString ret;
-        if (hasUID) {
-            // First block (UID, manuf. data).
-            ret = new SpannableString(TextUtils.concat(
-                    Common.colorString(data,
-                            ContextCompat.getColor(this, R.color.purple))));
-        } else {
-            if (Common.isValueBlock(data)) {
-                // Value block.
-                ret = Common.colorString(data,
-                        ContextCompat.getColor(this, R.color.yellow));
-            } else {
-                // Just data.
-                ret = new SpannableString(data);
+    private CharSequence colorSector(int sector) {
+        String text = mEdits.get(sector);
+        if (text == null) {
+            text = TextUtils.join("\n", mImage.getSectorHex(sector));
+        }
+        SpannableStringBuilder ret = new SpannableStringBuilder(text);
+        int start = 0;
+        int block = 0;
+        while (start <= text.length()) {
+            int end = text.indexOf('\n', start);
+            boolean isTrailer = end == -1;
+            if (isTrailer) {
+                end = text.length();
+            }
+            if (end - start == 32) {
+                if (isTrailer) {
+                    // Sector trailer (keys and Access Conditions).
+                    ret.setSpan(new ForegroundColorSpan(mColorKeyA),
+                            start, start + 12, 0);
+                    ret.setSpan(new ForegroundColorSpan(mColorAC),
+                            start + 12, start + 18, 0);
+                    ret.setSpan(new ForegroundColorSpan(mColorKeyB),
+                            start + 20, end, 0);
+                } else if (sector == 0 && block == 0) {
+                    // First block (UID, manuf. data).
+                    ret.setSpan(new ForegroundColorSpan(mColorUidAndManuf),
+                            start, end, 0);
+                } else if (Common.isValueBlock(text.substring(start, end))) {
+                    // Value block.
+                    ret.setSpan(new ForegroundColorSpan(mColorValueBlock),
+                            start, end, 0);
+                }
             }
+            start = end + 1;
+            block++;
         }
         return ret;
     }
 
     /**
-     * Create a full colored sector trailer (representing the last block of
-     * every sector).
-     * @param data Block data as hex string (16 Byte, 32 Chars.).
-     * @return A full colored string.
+     * The rows of the editor: one for each sector of the dump.
+     * Views of sectors that are scrolled out of sight are reused
+     * for the sectors that become visible.
      */
-    private SpannableString colorSectorTrailer(String data) {
-        // Get sector trailer colors.
-        int colorKeyA = ContextCompat.getColor(this, R.color.light_green);
-        int colorKeyB = ContextCompat.getColor(this, R.color.dark_green);
-        int colorAC = ContextCompat.getColor(this, R.color.orange);
-        try {
-            SpannableString keyA = Common.colorString(
-                    data.substring(0, 12), colorKeyA);
-            SpannableString keyB = Common.colorString(
-                    data.substring(20), colorKeyB);
-            SpannableString ac = Common.colorString(
-                    data.substring(12, 18), colorAC);
-            return new SpannableString(
-                    TextUtils.concat(keyA, ac,
-                            data.substring(18, 20), keyB));
-        } catch (IndexOutOfBoundsException e) {
-            Log.d(LOG_TAG, "Error while coloring " +
-                    "sector trailer");
+    private class SectorAdapter extends BaseAdapter {
+
+        private static final int TYPE_SECTOR = 0;
+        private static final int TYPE_ERROR = 1;
+
+        @Override
+        public int getCount() {
+            return mSectors.length;
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return mSectors[position];
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return mSectors[position];
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        @Override
+        public int getViewTypeCount() {
+            return 2;
         }
-        return new SpannableString(data);
+
+        @Override
+        public int getItemViewType(int position) {
+            // Sectors with "no keys found or dead sector" error
+            // are not part of the image.
+            return mImage.hasSector(mSectors[position])
+                    ? TYPE_SECTOR : TYPE_ERROR;
+        }
+
+        @Override
+        public boolean areAllItemsEnabled() {
+            return false;
+        }
+
+        @Override
+        public boolean isEnabled(int position) {
+            // Rows are not clickable (only their EditTexts are editable).
+            return false;
+        }
+
+        @Override
+        public View getView(int position, View convertView,
+                ViewGroup parent) {
+            SectorHolder holder;
+            if (convertView == null) {
+                holder = new SectorHolder(
+                        getItemViewType(position) == TYPE_SECTOR);
+                convertView = holder.mRow;
+            } else {
+                holder = (SectorHolder) convertView.getTag();
+            }
+            holder.bind(mSectors[position]);
+            return convertView;
+        }
+    }
+
+    /**
+     * The views of one row of the editor (sector header and sector data
+     * or error message). Changes to the sector data are written back to
+     * the dump as they happen.
+     */
+    private class SectorHolder implements TextWatcher {
+
+        private final LinearLayout mRow;
+        private final TextView mHeader;
+        private final EditText mData;
+        private int mSector = -1;
+        private int mGeneration;
+
+        /**
+         * Create the views of a row.
+         * @param hasData True if the row shows the data of a sector. False
+         * for sectors with "no keys found or dead sector" error.
+         */
+        @SuppressLint("SetTextI18n")
+        SectorHolder(boolean hasData) {
+            Context context = DumpEditor.this;
+            mRow = new LinearLayout(context);
+            mRow.setOrientation(LinearLayout.VERTICAL);
+            mRow.setTag(this);
+            // Add sector header (TextView).
+            mHeader = new TextView(context);
+            mHeader.setTextColor(
+                    ContextCompat.getColor(context, R.color.blue));
+            mRow.addView(mHeader);
+            if (hasData) {
+                // Add sector data (EditText).
+                mData = new EditText(context);
+                mData.setLayoutParams(new LayoutParams(
+                        LayoutParams.WRAP_CONTENT,
+                        LayoutParams.WRAP_CONTENT));
+                mData.setFilters(new InputFilter[] {new InputFilter.AllCaps()});
+                mData.setInputType(mData.getInputType()
+                        |InputType.TYPE_TEXT_FLAG_NO_SUGGESTIONS
+                        |InputType.TYPE_TEXT_FLAG_CAP_CHARACTERS
+                        |InputType.TYPE_TEXT_VARIATION_VISIBLE_PASSWORD);
+                mData.setTypeface(Typeface.MONOSPACE);
+                // Set text size of an EditText to the text size of
+                // a TextView. (getTextSize() returns
+                // pixels - unit is needed.)
+                mData.setTextSize(TypedValue.COMPLEX_UNIT_PX,
+                        mHeader.getTextSize());
+                mData.setTag(this);
+                // Add a listener for changes to the text.
+                mData.addTextChangedListener(this);
+                mRow.addView(mData);
+            } else {
+                // Error Line: Sector that could not be read.
+                mData = null;
+                TextView tv = new TextView(context);
+                tv.setTextColor(
+                        ContextCompat.getColor(context, R.color.red));
+                tv.setText("   " +  getString(
+                        R.string.text_no_key_io_error));
+                mRow.addView(tv);
+            }
+        }
+
+        /**
+         * Show a sector in this row.
+         * @param sector The sector.
+         */
+        @SuppressLint("SetTextI18n")
+        void bind(int sector) {
+            if (sector == mSector && mGeneration == mBindGeneration) {
+                // Still up to date (e.g. the list was laid out again
+                // because the soft keyboard was shown). Keep the text
+                // and the cursor.
+                return;
+            }
+            // Binding a sector is not a change.
+            mSector = -1;
+            mHeader.setText(getString(R.string.text_sector) +
+                    ": " + sector);
+            if (mData != null) {
+                mData.setText(colorSector(sector), BufferType.SPANNABLE);
+            }
+            mSector = sector;
+            mGeneration = mBindGeneration;
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+            if (mSector == -1) {
+                return;
+            }
+            // Text was changed.
+            mDumpChanged = true;
+            updateSector(mSector, s.toString());
+        }
+
+        @Override
+        public void beforeTextChanged(CharSequence s,
+                int start, int count, int after) {}
+
+        @Override
+        public void onTextChanged(CharSequence s,
+                int start, int before, int count) {}
     }
 }
@@ -24,6 +24,9 @@ import android.app.AlertDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -38,15 +41,22 @@ import android.widget.Toast;
 
 import java.io.File;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 
 import de.syss.MifareClassicTool.Common;
+import de.syss.MifareClassicTool.DumpPatternIndex;
+import de.syss.MifareClassicTool.DumpRepository;
 import de.syss.MifareClassicTool.R;
 
 
 /**
  * A simple generic file chooser that lets the user choose a file from
  * a given directory. Optionally, it is also possible to delete files or to
- * create new ones. This Activity should be called via startActivityForResult()
+ * create new ones. For the dump directory, the files can be searched
+ * by UID, content hash, tag or hex pattern and tagged
+ * (see {@link DumpRepository} and {@link DumpPatternIndex}).
+ * This Activity should be called via startActivityForResult()
  * with an Intent containing the {@link #EXTRA_DIR}.
  * The result codes are:
  * <ul>
@@ -121,6 +131,11 @@ public class FileChooser extends BasicActivity {
     private File mDir;
     private boolean mIsDirEmpty;
     private boolean mIsAllowNewFile;
+    private boolean mIsDumpDir;
+    private File[] mFiles;
+    private HashSet<String> mFilter;
+    private String mFilterQuery;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
 
     /**
      * Initialize class variables.
@@ -177,6 +192,7 @@ public class FileChooser extends BasicActivity {
                     return;
                 }
                 mDir = path;
+                mIsDumpDir = path.equals(Common.getFile(Common.DUMPS_DIR));
                 mIsDirEmpty = updateFileIndex(path);
             } else {
                 // Path does not exist.
@@ -208,6 +224,11 @@ public class FileChooser extends BasicActivity {
         newFile.setEnabled(mIsAllowNewFile);
         newFile.setVisible(mIsAllowNewFile);
 
+        // Searching and tagging is only possible for dump files.
+        menu.findItem(R.id.menuFileChooserSearch).setVisible(mIsDumpDir);
+        menu.findItem(R.id.menuFileChooserSearchPattern).setVisible(mIsDumpDir);
+        menu.findItem(R.id.menuFileChooserEditTags).setVisible(mIsDumpDir);
+
         return true;
     }
 
@@ -225,6 +246,15 @@ public class FileChooser extends BasicActivity {
         } else if (itemId == R.id.menuFileChooserDeleteFile) {
             onDeleteFile();
             return true;
+        } else if (itemId == R.id.menuFileChooserSearch) {
+            onSearch(false);
+            return true;
+        } else if (itemId == R.id.menuFileChooserSearchPattern) {
+            onSearch(true);
+            return true;
+        } else if (itemId == R.id.menuFileChooserEditTags) {
+            onEditTags();
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
@@ -267,13 +297,16 @@ public class FileChooser extends BasicActivity {
         if (path != null) {
             files = path.listFiles();
         }
+        mFiles = files;
         mGroupOfFiles.removeAllViews();
 
         // Refresh file list.
         if (files != null && files.length > 0) {
             Arrays.sort(files);
             for (File f : files) {
-                if (f.isFile()) { // Do not list directories.
+                // Do not list directories and files filtered by a search.
+                if (f.isFile() && (mFilter == null
+                        || mFilter.contains(f.getName()))) {
                     RadioButton r = new RadioButton(this);
                     r.setText(f.getName());
                     mGroupOfFiles.addView(r);
@@ -303,6 +336,10 @@ public class FileChooser extends BasicActivity {
         } else {
             chooserText += getString(R.string.text_chooser_info_text);
         }
+        if (mFilter != null) {
+            chooserText += "\n\n" + getString(R.string.text_dumps_found,
+                    mGroupOfFiles.getChildCount(), mFilterQuery);
+        }
         if (isEmpty) {
             chooserText += "\n\n   --- "
                     + getString(R.string.text_no_files_in_chooser)
@@ -394,6 +431,169 @@ public class FileChooser extends BasicActivity {
                 mGroupOfFiles.getCheckedRadioButtonId());
         File file = new File(mDir.getPath(), selected.getText().toString());
         file.delete();
+        Common.updateDumpRepository(file);
         mIsDirEmpty = updateFileIndex(mDir);
     }
+
+    /**
+     * Ask the user for a query (UID, content hash, tag, tag size or
+     * days, see {@link DumpRepository#search(String)}) or a hex pattern (see
+     * {@link DumpPatternIndex.Pattern#parse(String)}) and only list the
+     * dump files that match. An empty query lists all files again.
+     * The index of the dump files is brought up to date in the
+     * background before searching.
+     * @param isPattern True to search for a hex pattern in the block
+     * data. False to search the index (UID, content hash, tag, etc.).
+     */
+    private void onSearch(final boolean isPattern) {
+        View dialogLayout = inflateInputLayout(
+                getString(isPattern ? R.string.dialog_search_pattern
+                        : R.string.dialog_search_dumps), "");
+        final EditText input = dialogLayout.findViewById(
+                R.id.editTextDialogSaveFileName);
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.dialog_search_dumps_title)
+                .setIcon(android.R.drawable.ic_menu_search)
+                .setView(dialogLayout)
+                .setPositiveButton(R.string.action_ok,
+                        (dialog, whichButton) -> {
+                            String query = input.getText().toString().trim();
+                            if (query.equals("")) {
+                                mFilter = null;
+                                mFilterQuery = null;
+                                mIsDirEmpty = updateFileIndex(mDir);
+                            } else if (!isPattern) {
+                                searchDumps(query, null);
+                            } else {
+                                DumpPatternIndex.Pattern pattern =
+                                        DumpPatternIndex.Pattern.parse(query);
+                                if (pattern == null) {
+                                    Toast.makeText(this,
+                                            R.string.info_invalid_pattern,
+                                            Toast.LENGTH_LONG).show();
+                                    return;
+                                }
+                                searchDumps(query, pattern);
+                            }
+                        })
+                .setNegativeButton(R.string.action_cancel,
+                        (dialog, whichButton) -> {
+                            // Do nothing.
+                        })
+                .show();
+    }
+
+    /**
+     * Bring the index of the dump files up to date (using the current
+     * file list) and search it in the background. The file list will
+     * be filtered by the result.
+     * @param query The query (or the text of the pattern).
+     * @param pattern The hex pattern to search or null to search
+     * the index (see {@link DumpRepository#search(String)}).
+     * @see DumpRepository#search(String)
+     * @see DumpPatternIndex#searchFiles(DumpPatternIndex.Pattern)
+     */
+    private void searchDumps(final String query,
+            final DumpPatternIndex.Pattern pattern) {
+        final File[] files = (mFiles != null) ? mFiles : new File[0];
+        new Thread(() -> {
+            DumpRepository repo = Common.getDumpRepository();
+            repo.sync(files);
+            final HashSet<String> filter = new HashSet<>();
+            if (pattern == null) {
+                for (DumpRepository.Entry e : repo.search(query)) {
+                    filter.add(e.getFileName());
+                }
+            } else {
+                filter.addAll(Common.getDumpPatternIndex().searchFiles(pattern));
+            }
+            repo.save();
+            mHandler.post(() -> {
+                mFilter = filter;
+                mFilterQuery = query;
+                mIsDirEmpty = updateFileIndex(mDir);
+            });
+        }).start();
+    }
+
+    /**
+     * Ask the user for the tags (separated by commas) of the selected
+     * dump file and save them in the index of the dump files. The index
+     * is loaded and updated in the background.
+     * @see DumpRepository#setTags(File, java.util.Collection)
+     */
+    private void onEditTags() {
+        RadioButton selected = findViewById(
+                mGroupOfFiles.getCheckedRadioButtonId());
+        if (selected == null) {
+            return;
+        }
+        final File file = new File(mDir.getPath(), selected.getText().toString());
+        new Thread(() -> {
+            final DumpRepository repo = Common.getDumpRepository();
+            DumpRepository.Entry entry = repo.get(file.getName());
+            final String tags = (entry != null)
+                    ? TextUtils.join(", ", entry.getTags()) : "";
+            mHandler.post(() -> showEditTagsDialog(repo, file, tags));
+        }).start();
+    }
+
+    /**
+     * Show the dialog for editing the tags of a dump file
+     * (see {@link #onEditTags()}).
+     * @param repo The index of the dump files.
+     * @param file The dump file.
+     * @param tags The current tags (separated by commas).
+     */
+    private void showEditTagsDialog(final DumpRepository repo,
+            final File file, String tags) {
+        if (isFinishing()) {
+            return;
+        }
+        View dialogLayout = inflateInputLayout(
+                getString(R.string.dialog_edit_tags, file.getName()), tags);
+        final EditText input = dialogLayout.findViewById(
+                R.id.editTextDialogSaveFileName);
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.dialog_edit_tags_title)
+                .setIcon(android.R.drawable.ic_menu_edit)
+                .setView(dialogLayout)
+                .setPositiveButton(R.string.action_save,
+                        (dialog, whichButton) -> {
+                            final List<String> newTags = Arrays.asList(
+                                    input.getText().toString().split(","));
+                            new Thread(() -> {
+                                if (repo.setTags(file, newTags)) {
+                                    repo.save();
+                                }
+                            }).start();
+                        })
+                .setNegativeButton(R.string.action_cancel,
+                        (dialog, whichButton) -> {
+                            // Do nothing.
+                        })
+                .show();
+    }
+
+    /**
+     * Create the layout of a dialog with a message and a text input.
+     * @param message The message.
+     * @param prefill The initial text of the input.
+     * @return The layout (the input is
+     * {@code R.id.editTextDialogSaveFileName}).
+     */
+    private View inflateInputLayout(String message, String prefill) {
+        View dialogLayout = getLayoutInflater().inflate(
+                R.layout.dialog_save_file,
+                findViewById(android.R.id.content), false);
+        TextView text = dialogLayout.findViewById(
+                R.id.textViewDialogSaveFileMessage);
+        EditText input = dialogLayout.findViewById(
+                R.id.editTextDialogSaveFileName);
+        text.setText(message);
+        input.setText(prefill);
+        input.setSelection(prefill.length());
+        input.requestFocus();
+        return dialogLayout;
+    }
 }
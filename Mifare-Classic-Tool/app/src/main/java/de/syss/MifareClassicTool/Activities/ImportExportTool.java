@@ -29,6 +29,7 @@ import android.text.TextUtils;
 import android.view.ContextMenu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.util.Log;
 import android.view.View;
 import android.widget.Toast;
 
@@ -41,7 +42,11 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -52,8 +57,12 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import de.syss.MifareClassicTool.Common;
+import de.syss.MifareClassicTool.DumpParser;
+import de.syss.MifareClassicTool.HexCodec;
+import de.syss.MifareClassicTool.KeyFileParser;
 import de.syss.MifareClassicTool.MCReader;
 import de.syss.MifareClassicTool.R;
+import de.syss.MifareClassicTool.TagImage;
 
 
 /**
@@ -76,6 +85,9 @@ public class ImportExportTool extends BasicActivity {
     public final static String EXTRA_FILE_PATH =
             "de.syss.MifareClassicTool.Activity.ImportExportTool.FILE_PATH";
 
+    private static final String LOG_TAG =
+            ImportExportTool.class.getSimpleName();
+
     private final static int IMPORT_FILE_CHOSEN = 1;
     private final static int EXPORT_FILE_CHOSEN = 2;
     private final static int EXPORT_LOCATION_CHOSEN = 3;
@@ -86,7 +98,12 @@ public class ImportExportTool extends BasicActivity {
     private String mFile;
     private String[] mConvertedContent;
     private FileType mFileType;
-    private enum FileType {
+    /**
+     * The supported file types of {@link #convertDump(String[], FileType,
+     * FileType, Context)} and {@link #convertKeys(InputStream, FileType,
+     * OutputStream, FileType, Context)}.
+     */
+    public enum FileType {
         MCT(".mct"),
         KEYS(".keys"),
         JSON(".json"),
@@ -261,7 +278,11 @@ public class ImportExportTool extends BasicActivity {
             case EXPORT_LOCATION_CHOSEN: // Destination for exporting has been chosen.
                 if (resultCode == RESULT_OK) {
                     Uri uri = data.getData();
-                    saveConvertedDataToContent(mConvertedContent, uri);
+                    if (mIsDumpFile) {
+                        saveConvertedDataToContent(mConvertedContent, uri);
+                    } else {
+                        exportKeyFile(mFile, uri);
+                    }
                     break;
                 }
             case BACKUP_LOCATION_CHOSEN: // Destination for the backup has been chosen.
@@ -352,17 +373,21 @@ public class ImportExportTool extends BasicActivity {
 
     /**
      * Import the file(s) by reading, converting and saving them.
-     * The conversion is made by {@link #convertDump(String[], FileType, FileType)}.
+     * The conversion is made by {@link #convertDump(String[], FileType, FileType, Context)}.
      * @param files The file to read from.
      */
     private void readConvertAndSaveImportData(Uri[] files) {
         String[] content;
         for (Uri file : files) {
+            if (!mIsDumpFile) {
+                importKeyFile(file);
+                continue;
+            }
             try {
                 // Read file.
                 if (mFileType != FileType.BIN) {
-                    // Read text file (including comments, if it is a key file).
-                    content = Common.readUriLineByLine(file, !mIsDumpFile, this);
+                    // Read text file.
+                    content = Common.readUriLineByLine(file, false, this);
                 } else {
                     // Read binary file.
                     byte[] bytes = Common.readUriRaw(file, this);
@@ -392,20 +417,11 @@ public class ImportExportTool extends BasicActivity {
                 String destFileName = fileName;
                 String destPath;
 
-                // Convert key or dump file.
-                String[] convertedContent;
-                if (mIsDumpFile) {
-                    convertedContent = convertDump(
-                            content, mFileType, FileType.MCT);
-                    destFileName += FileType.MCT.toString();
-                    destPath = Common.DUMPS_DIR;
-                } else {
-                    convertedContent = convertKeys(
-                            content, mFileType, FileType.KEYS);
-                    // TODO (optional): Remove duplicates.
-                    destFileName += FileType.KEYS.toString();
-                    destPath = Common.KEYS_DIR;
-                }
+                // Convert dump file.
+                String[] convertedContent = convertDump(
+                        content, mFileType, FileType.MCT, this);
+                destFileName += FileType.MCT.toString();
+                destPath = Common.DUMPS_DIR;
                 if (convertedContent == null) {
                     // Error during conversion.
                     continue;
@@ -430,21 +446,59 @@ public class ImportExportTool extends BasicActivity {
         }
     }
 
+    /**
+     * Import a key file by converting it while reading (see
+     * {@link #convertKeys(InputStream, FileType, OutputStream, FileType,
+     * Context)}). The keys are never completely in memory, so the size
+     * of the key file is only limited by the storage. The converted
+     * file is written to a temporary file first, so an existing key file
+     * with the same name is only replaced on success.
+     * @param file The key file to import.
+     */
+    private void importKeyFile(Uri file) {
+        String fileName = Common.getFileName(file, this);
+        if (fileName.contains(".")) {
+            fileName = fileName.substring(0, fileName.lastIndexOf('.'));
+        }
+        File destination = Common.getFile(Common.KEYS_DIR + "/"
+                + fileName + FileType.KEYS.toString());
+        File tmp = new File(destination.getPath() + ".tmp");
+        boolean success;
+        try (InputStream in = getContentResolver().openInputStream(file);
+                OutputStream out = new FileOutputStream(tmp)) {
+            if (in == null) {
+                throw new IOException("No input stream.");
+            }
+            success = convertKeys(in, mFileType, out, FileType.KEYS, this);
+        } catch (IOException | SecurityException e) {
+            Log.e(LOG_TAG, "Error while importing key file.", e);
+            Toast.makeText(this, R.string.info_error_reading_file,
+                    Toast.LENGTH_LONG).show();
+            success = false;
+        }
+        if (success && tmp.renameTo(destination)) {
+            Toast.makeText(this, R.string.info_file_imported,
+                    Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (success) {
+            Toast.makeText(this, R.string.info_save_error,
+                    Toast.LENGTH_LONG).show();
+        }
+        if (tmp.exists() && !tmp.delete()) {
+            Log.d(LOG_TAG, "Could not delete " + tmp);
+        }
+    }
+
     /**
      * Export the file by reading, converting and showing the save to dialog.
-     * The conversion is made by {@link #convertDump(String[], FileType, FileType)}.
+     * The conversion is made by {@link #convertDump(String[], FileType, FileType, Context)}.
      * @param path The file to read from.
      * @see #showExportFileChooser(String, int)
      * @see #onActivityResult(int, int, Intent)
      */
     private void readAndConvertExportData(String path) {
         File source = new File(path);
-        // Include comments in key files that are exported as .keys/.txt/.dic.
-        boolean includeComments = !mIsDumpFile  && mFileType == FileType.KEYS;
-        String[] content = Common.readFileLineByLine(source, includeComments,this);
-        if (content == null) {
-            return;
-        }
 
         // Prepare file names and paths.
         String fileName = source.getName();
@@ -453,16 +507,33 @@ public class ImportExportTool extends BasicActivity {
         }
         String destFileName = fileName + mFileType.toString();
 
-        // Convert key or dump file.
-        String[] convertedContent;
-        if (mIsDumpFile) {
-            convertedContent = convertDump(
-                    content, FileType.MCT, mFileType);
+        if (!mIsDumpFile) {
+            // Key files are only checked here. They are converted while
+            // writing them to the destination (see exportKeyFile()).
+            boolean valid;
+            try (InputStream in = new FileInputStream(source)) {
+                valid = convertKeys(in, FileType.KEYS, null, mFileType, this);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error while reading key file.", e);
+                Toast.makeText(this, R.string.info_error_reading_file,
+                        Toast.LENGTH_LONG).show();
+                valid = false;
+            }
+            if (valid) {
+                mConvertedContent = null;
+                showExportFileChooser(destFileName, EXPORT_LOCATION_CHOSEN);
+            }
+            return;
+        }
 
-        } else {
-            convertedContent = convertKeys(
-                    content, FileType.KEYS, mFileType);
+        String[] content = Common.readFileLineByLine(source, false, this);
+        if (content == null) {
+            return;
         }
+
+        // Convert dump file.
+        String[] convertedContent = convertDump(
+                content, FileType.MCT, mFileType, this);
         if (convertedContent == null) {
             // Error during conversion.
             return;
@@ -478,8 +549,9 @@ public class ImportExportTool extends BasicActivity {
      * content URI and exit the activity if {@link #mIsCalledWithExportFile} is true.
      * This is only used by the export process.
      * @param convertedContent Converted content (output of
-     * {@link #convertDump(String[], FileType, FileType)} or
-     * {@link #convertKeys(String[], FileType, FileType)}).
+     * {@link #convertDump(String[], FileType, FileType, Context)} or
+     * {@link #convertKeys(InputStream, FileType, OutputStream, FileType,
+     * Context)}).
      * @param contentDestination Content URI to the destination where the data
      * should be stored.
      * @see Common#saveFile(Uri, String[], Context)
@@ -501,6 +573,40 @@ public class ImportExportTool extends BasicActivity {
             }
             success = Common.saveFile(contentDestination, bytes, this);
         }
+        onExportFinished(success);
+    }
+
+    /**
+     * Convert a key file (see {@link #convertKeys(InputStream, FileType,
+     * OutputStream, FileType, Context)}) with respect to {@link #mFileType}
+     * while writing it to a given content URI and exit the activity if
+     * {@link #mIsCalledWithExportFile} is true.
+     * @param path The key file to export.
+     * @param contentDestination Content URI to the destination where the
+     * data should be stored.
+     */
+    private void exportKeyFile(String path, Uri contentDestination) {
+        boolean success;
+        try (InputStream in = new FileInputStream(path);
+                OutputStream out = getContentResolver().openOutputStream(
+                        contentDestination, "rw")) {
+            if (out == null) {
+                throw new IOException("No output stream.");
+            }
+            success = convertKeys(in, FileType.KEYS, out, mFileType, this);
+        } catch (IOException | SecurityException e) {
+            Log.e(LOG_TAG, "Error while exporting key file.", e);
+            success = false;
+        }
+        onExportFinished(success);
+    }
+
+    /**
+     * Show the result of an export and exit the activity if
+     * {@link #mIsCalledWithExportFile} is true.
+     * @param success True if the export was successful.
+     */
+    private void onExportFinished(boolean success) {
         if (success) {
             Toast.makeText(this, R.string.info_file_exported,
                     Toast.LENGTH_LONG).show();
@@ -526,12 +632,13 @@ public class ImportExportTool extends BasicActivity {
      * @param source The data to be converted.
      * @param srcType The type of the {@code source} data.
      * @param destType The type for the return value.
+     * @param context The context in which error Toasts will be shown.
      * @return The converted data. Null on error.
      * @see FileType
      */
     @SuppressLint("DefaultLocale")
-    private String[] convertDump(String[] source, FileType srcType,
-            FileType destType) {
+    public static String[] convertDump(String[] source, FileType srcType,
+            FileType destType, Context context) {
         if (source == null || srcType == null || destType == null) {
             return null;
         }
@@ -549,26 +656,26 @@ public class ImportExportTool extends BasicActivity {
                 json = new ArrayList<>(Arrays.asList(source));
                 break;
             case MCT:
-                int err = Common.isValidDump(source, true);
-                if (err != 0) {
-                    Common.isValidDumpErrorToast(err, this);
+                DumpParser parser = new DumpParser(true);
+                if (!parser.parse(source)) {
+                    Common.isValidDumpErrorToast(parser.getError(),
+                            parser.getErrorLine(), context);
                     return null;
                 }
-                int sectorNumber;
-                int blockNumber = 0;
-                for (String line : source) {
-                    if (line.startsWith("+")) {
-                        sectorNumber = Integer.parseInt(line.split(": ")[1]);
-                        if (sectorNumber < 32) {
-                            blockNumber = sectorNumber * 4;
-                        } else {
-                            blockNumber =  32 * 4 + (sectorNumber - 32) * 16;
-                        }
+                TagImage image = parser.getImage();
+                for (int sector = 0; sector < image.getSectorCount();
+                        sector++) {
+                    if (!image.hasSector(sector)) {
                         continue;
                     }
-                    block = "    \"" + blockNumber + "\": \"" + line + "\",";
-                    json.add(block);
-                    blockNumber += 1;
+                    int blockNumber = TagImage.sectorToBlock(sector);
+                    String[] blocks = image.getSectorHex(sector);
+                    for (String line : blocks) {
+                        block = "    \"" + blockNumber + "\": \""
+                                + line + "\",";
+                        json.add(block);
+                        blockNumber++;
+                    }
                 }
                 break;
             case BIN:
@@ -576,7 +683,7 @@ public class ImportExportTool extends BasicActivity {
                 if (binary.length() != 320 && binary.length() != 1024 &&
                         binary.length() != 2048 && binary.length() != 4096) {
                     // Error. Not a complete dump (MIFARE mini, 1k, 2k, 4k).
-                    Toast.makeText(this, R.string.info_incomplete_dump,
+                    Toast.makeText(context, R.string.info_incomplete_dump,
                             Toast.LENGTH_LONG).show();
                     return null;
                 }
@@ -595,14 +702,14 @@ public class ImportExportTool extends BasicActivity {
                 if (source.length != 20 && source.length != 64 &&
                         source.length != 128 && source.length != 256) {
                     // Error. Not a complete dump (MIFARE mini, 1k, 2k, 4k).
-                    Toast.makeText(this, R.string.info_incomplete_dump,
+                    Toast.makeText(context, R.string.info_incomplete_dump,
                             Toast.LENGTH_LONG).show();
                     return null;
                 }
                 for (int i = 0; i < source.length; i++) {
                     if (source[i].equals("")) {
                         // Error. Empty line in .eml file.
-                        Toast.makeText(this, R.string.info_incomplete_dump,
+                        Toast.makeText(context, R.string.info_incomplete_dump,
                                 Toast.LENGTH_LONG).show();
                         return null;
                     }
@@ -622,7 +729,7 @@ public class ImportExportTool extends BasicActivity {
         // Check source conversion.
         if (json.size() <= 6) {
             // Error converting source file.
-            Toast.makeText(this, R.string.info_convert_error,
+            Toast.makeText(context, R.string.info_convert_error,
                     Toast.LENGTH_LONG).show();
             return null;
         }
@@ -636,7 +743,7 @@ public class ImportExportTool extends BasicActivity {
             }
         } catch (JSONException e) {
             // Error parsing json file.
-            Toast.makeText(this, R.string.info_convert_error,
+            Toast.makeText(context, R.string.info_convert_error,
                     Toast.LENGTH_LONG).show();
             return null;
         }
@@ -673,7 +780,7 @@ public class ImportExportTool extends BasicActivity {
                 if (blocks.length() != 20 && blocks.length() != 64 &&
                         blocks.length() != 128 && blocks.length() != 256) {
                     // Error. Not a complete dump (MIFARE mini, 1k, 2k, 4k).
-                    Toast.makeText(this, R.string.info_incomplete_dump,
+                    Toast.makeText(context, R.string.info_incomplete_dump,
                             Toast.LENGTH_LONG).show();
                     return null;
                 }
@@ -684,14 +791,14 @@ public class ImportExportTool extends BasicActivity {
                         block = blocks.getString(String.format("%d", i));
                     } catch (JSONException e) {
                         // Error. Not a complete dump (MIFARE mini, 1k, 2k, 4k).
-                        Toast.makeText(this, R.string.info_incomplete_dump,
+                        Toast.makeText(context, R.string.info_incomplete_dump,
                                 Toast.LENGTH_LONG).show();
                         return null;
                     }
                     byte[] bytes = Common.hex2Bytes(block);
                     if (bytes == null) {
                         // Error. Invalid block.
-                        Toast.makeText(this, R.string.info_convert_error,
+                        Toast.makeText(context, R.string.info_convert_error,
                                 Toast.LENGTH_LONG).show();
                         return null;
                     }
@@ -705,7 +812,7 @@ public class ImportExportTool extends BasicActivity {
                 if (blocks.length() != 20 && blocks.length() != 64 &&
                         blocks.length() != 128 && blocks.length() != 256) {
                     // Error. Not a complete dump (MIFARE mini, 1k, 2k, 4k).
-                    Toast.makeText(this, R.string.info_incomplete_dump,
+                    Toast.makeText(context, R.string.info_incomplete_dump,
                             Toast.LENGTH_LONG).show();
                     return null;
                 }
@@ -715,7 +822,7 @@ public class ImportExportTool extends BasicActivity {
                         dest[i] = blocks.getString(String.format("%d", i));
                     } catch (JSONException e) {
                         // Error. Not a complete dump (MIFARE mini, 1k, 2k, 4k).
-                        Toast.makeText(this, R.string.info_incomplete_dump,
+                        Toast.makeText(context, R.string.info_incomplete_dump,
                                 Toast.LENGTH_LONG).show();
                         return null;
                     }
@@ -726,87 +833,113 @@ public class ImportExportTool extends BasicActivity {
     }
 
     /**
-     * Convert keys {@code source} from {@code srcType} to {@code destType}.
-     * The formats .keys and .bin are supported. The
-     * intermediate is always a String. If the {@code srcType} or the
-     * {@code destType} is {@link FileType#BIN}, the the
-     * {@code source}/return value must be a string array with only
-     * one string with each char representing one byte (MSB=0).
+     * Convert keys from {@code srcType} to {@code destType} while reading
+     * them. The formats .keys and .bin are supported. The keys are parsed
+     * by a {@link KeyFileParser} and written to {@code dest} chunk by
+     * chunk, so only a small part of the keys is in memory at any time.
+     * Key files (.keys to .keys) are copied as they are (including
+     * comments) after they have been checked.
      * @param source The data to be converted.
      * @param srcType The type of the {@code source} data.
-     * @param destType The type for the return value.
-     * @return The converted data. Null on error.
+     * @param dest The stream for the converted data. If null, the
+     * {@code source} is only checked. On error, it might contain a part
+     * of the data.
+     * @param destType The type for the converted data.
+     * @param context The context in which error Toasts will be shown.
+     * @return True if the conversion was successful. False otherwise.
+     * @throws IOException If reading or writing failed.
      * @see FileType
      */
-    @SuppressLint("DefaultLocale")
-    private String[] convertKeys(String[] source, FileType srcType,
-                                 FileType destType) {
-        if (source == null || srcType == null || destType == null) {
-            return null;
+    public static boolean convertKeys(InputStream source, FileType srcType,
+            OutputStream dest, FileType destType, Context context)
+            throws IOException {
+        if (source == null || srcType == null || destType == null
+                || (srcType != FileType.KEYS && srcType != FileType.BIN)
+                || (destType != FileType.KEYS && destType != FileType.BIN)) {
+            Toast.makeText(context, R.string.info_convert_error,
+                    Toast.LENGTH_LONG).show();
+            return false;
         }
-        // Convert source to strings.
-        String[] keys = null;
-        switch (srcType) {
-            case KEYS:
-                int err = Common.isValidKeyFile(source);
-                if (err != 0) {
-                    Common.isValidKeyFileErrorToast(err, this);
-                    return null;
+        if (dest != null) {
+            dest = new BufferedOutputStream(dest);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        byte[] key = new byte[6];
+        int read;
+        boolean firstKey = true;
+        if (srcType == FileType.KEYS) {
+            KeyFileParser parser = new KeyFileParser(false);
+            while ((read = source.read(buffer)) != -1) {
+                parser.parse(buffer, 0, read);
+                if (dest != null && destType == FileType.KEYS) {
+                    dest.write(buffer, 0, read);
                 }
-                keys = source;
-                break;
-            case BIN:
-                String binary = source[0];
-                int len = binary.length();
-                if (len > 0 && len % 6 != 0) {
-                    // Error. Not multiple of 6 byte.
-                    Toast.makeText(this, R.string.info_invalid_key_file,
-                            Toast.LENGTH_LONG).show();
-                    return null;
+                writeBinaryKeys(parser, dest, destType, key);
+            }
+            parser.endOfFile();
+            writeBinaryKeys(parser, dest, destType, key);
+            int err = parser.getError();
+            if (err != 0) {
+                Common.isValidKeyFileErrorToast(err, context);
+                return false;
+            }
+        } else {
+            // Binary: 6 bytes per key.
+            long length = 0;
+            int pending = 0;
+            while ((read = source.read(buffer)) != -1) {
+                length += read;
+                if (dest != null && destType == FileType.BIN) {
+                    dest.write(buffer, 0, read);
+                    continue;
                 }
-                keys = new String[binary.length() / 6];
-                // In this case: chars = bytes. Get 6 bytes and convert.
-                for (int i = 0; i < len; i += 6) {
-                    byte[] keyBytes = new byte[6];
-                    for (int j = 0; j < 6; j++) {
-                        keyBytes[j] = (byte) binary.charAt(i + j);
+                for (int i = 0; i < read; i++) {
+                    key[pending++] = buffer[i];
+                    if (pending == 6) {
+                        pending = 0;
+                        if (dest != null) {
+                            if (!firstKey) {
+                                dest.write('\n');
+                            }
+                            dest.write(HexCodec.encode(key).getBytes(
+                                    StandardCharsets.US_ASCII));
+                        }
+                        firstKey = false;
                     }
-                    keys[i/6] = Common.bytes2Hex(keyBytes);
                 }
-                break;
+            }
+            if (length == 0 || length % 6 != 0) {
+                // Error. Not multiple of 6 byte.
+                Toast.makeText(context, R.string.info_invalid_key_file,
+                        Toast.LENGTH_LONG).show();
+                return false;
+            }
         }
-
-        if (keys == null) {
-            // Error converting source file.
-            Toast.makeText(this, R.string.info_convert_error,
-                    Toast.LENGTH_LONG).show();
-            return null;
+        if (dest != null) {
+            dest.flush();
         }
+        return true;
+    }
 
-        String[] dest = null;
-        switch (destType) {
-            case KEYS:
-                dest = keys;
-                break;
-            case BIN:
-                dest = new String[1];
-                StringBuilder sb = new StringBuilder();
-                for (String key : keys) {
-                    byte[] bytes = Common.hex2Bytes(key);
-                    if (bytes == null) {
-                        // Error. Invalid key.
-                        Toast.makeText(this, R.string.info_convert_error,
-                                Toast.LENGTH_LONG).show();
-                        return null;
-                    }
-                    for (byte b : bytes) {
-                        sb.append((char)b);
-                    }
-                }
-                dest[0] = sb.toString();
-                break;
+    /**
+     * Write (and drop) the keys parsed so far as binary, if this is the
+     * destination type. Otherwise the keys are only dropped.
+     * @param parser The parser containing the keys.
+     * @param dest The destination (might be null).
+     * @param destType The destination type.
+     * @param key Buffer for a key (6 bytes).
+     * @throws IOException If writing failed.
+     */
+    private static void writeBinaryKeys(KeyFileParser parser,
+            OutputStream dest, FileType destType, byte[] key)
+            throws IOException {
+        if (dest != null && destType == FileType.BIN) {
+            for (int i = 0; i < parser.size(); i++) {
+                parser.getKey(i, key, 0);
+                dest.write(key);
+            }
         }
-        return dest;
+        parser.clearKeys();
     }
 
     /**
@@ -39,6 +39,7 @@ import java.util.GregorianCalendar;
 import java.util.Locale;
 
 import de.syss.MifareClassicTool.Common;
+import de.syss.MifareClassicTool.KeyFileParser;
 import de.syss.MifareClassicTool.R;
 
 /**
@@ -358,21 +359,26 @@ public class KeyEditor extends BasicActivity
     }
 
     /**
-     * Remove duplicates (keys) from key file.
+     * Remove duplicates (keys) from key file. The keys are tracked by
+     * a {@link KeyFileParser}, so this is linear in the number of lines.
      */
     private void removeDuplicates() {
         if (Common.isValidKeyFileErrorToast(checkDumpAndUpdateLines(), this)) {
             ArrayList<String> newLines = new ArrayList<>();
+            KeyFileParser keys = new KeyFileParser(true);
             for (String line : mLines) {
                 line = line.trim();
-                if (line.equals("") || line.startsWith("#")) {
+                int keyCount = keys.getKeyCount();
+                keys.parseLine(line);
+                if (keys.getKeyCount() == keyCount) {
                     // Add comments for sure.
                     newLines.add(line);
                     continue;
                 }
-                if (!newLines.contains(line)) {
+                if (keys.size() > 0) {
                     // Add key if it is not already added.
                     newLines.add(line);
+                    keys.clearKeys();
                 }
             }
             mLines = newLines.toArray(new String[0]);
@@ -28,6 +28,8 @@ import android.content.SharedPreferences.Editor;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.text.format.DateUtils;
 import android.text.InputFilter;
 import android.text.InputType;
 import android.text.TextUtils.TruncateAt;
@@ -50,6 +52,9 @@ import java.util.Arrays;
 
 import de.syss.MifareClassicTool.Activities.Preferences.Preference;
 import de.syss.MifareClassicTool.Common;
+import de.syss.MifareClassicTool.KeyMapCache;
+import de.syss.MifareClassicTool.KeyMapCheckpoint;
+import de.syss.MifareClassicTool.KeyStatistics;
 import de.syss.MifareClassicTool.MCReader;
 import de.syss.MifareClassicTool.R;
 
@@ -111,6 +116,13 @@ public class KeyMapCreator extends BasicActivity {
      */
     public final static String EXTRA_BUTTON_TEXT =
             "de.syss.MifareClassicTool.Activity.BUTTON_TEXT";
+    /**
+     * Read the tag while mapping the keys. Optional (default: false).
+     * The data will be available by {@link Common#getMappedDump()}.
+     * @see MCReader#setReadWhileMapping(boolean)
+     */
+    public final static String EXTRA_READ_WHILE_MAPPING =
+            "de.syss.MifareClassicTool.Activity.READ_WHILE_MAPPING";
 
     // Output parameters.
     // For later use.
@@ -128,6 +140,8 @@ public class KeyMapCreator extends BasicActivity {
 
     private static final int DEFAULT_SECTOR_RANGE_FROM = 0;
     private static final int DEFAULT_SECTOR_RANGE_TO = 15;
+    // Update interval of the key mapping statistics in ms.
+    private static final int STATS_UPDATE_INTERVAL = 500;
 
     private Button mCreateKeyMap;
     private Button mCancel;
@@ -140,6 +154,22 @@ public class KeyMapCreator extends BasicActivity {
     private File mKeyDirPath;
     private int mFirstSector;
     private int mLastSector;
+    private KeyStatistics mKeyStats;
+    private KeyMapCache mKeyMapCache;
+    private TextView mStats;
+    private MCReader mReader;
+    private long mStatsStartTime;
+    private long mStatsStartKeys;
+    private long mStatsStartAuths;
+    private final Runnable mStatsUpdater = new Runnable() {
+        @Override
+        public void run() {
+            if (mReader != null) {
+                updateStats(mReader);
+                mHandler.postDelayed(this, STATS_UPDATE_INTERVAL);
+            }
+        }
+    };
 
     /**
      * Set layout, set the mapping range
@@ -159,6 +189,7 @@ public class KeyMapCreator extends BasicActivity {
         mKeyFilesGroup = findViewById(
                 R.id.linearLayoutCreateKeyMapKeyFiles);
         mProgressBar = findViewById(R.id.progressBarCreateKeyMap);
+        mStats = findViewById(R.id.textViewCreateKeyMapStats);
 
         // Init. sector range.
         Intent intent = getIntent();
@@ -215,6 +246,9 @@ public class KeyMapCreator extends BasicActivity {
         // Don't stop key map building if auto reconnect option is enabled.
         if (!autoReconnect) {
             mIsCreatingKeyMap = false;
+            if (mReader != null) {
+                mReader.cancelKeyMapping();
+            }
         }
     }
 
@@ -256,11 +290,16 @@ public class KeyMapCreator extends BasicActivity {
                 Preference.SaveLastUsedKeyFiles.toString(), true);
         ArrayList<String> selectedFiles = null;
         if (selectLastUsedKeyFiles) {
-            SharedPreferences sharedPref = getPreferences(Context.MODE_PRIVATE);
             // All previously selected key files are stored in one string
-            // separated by "/".
-            String selectedFilesChain = sharedPref.getString(
+            // separated by "/" (shared with the batch read tool).
+            String selectedFilesChain = Common.getPreferences().getString(
                     "last_used_key_files", null);
+            if (selectedFilesChain == null) {
+                // Older versions stored them in the preferences of
+                // this activity.
+                selectedFilesChain = getPreferences(Context.MODE_PRIVATE)
+                        .getString("last_used_key_files", null);
+            }
             if (selectedFilesChain != null) {
                 selectedFiles = new ArrayList<>(
                         Arrays.asList(selectedFilesChain.split("/")));
@@ -313,16 +352,21 @@ public class KeyMapCreator extends BasicActivity {
     }
 
     /**
-     * Inform the worker thread from {@link #createKeyMap(MCReader, Context)}
+     * Inform the worker thread from
+     * {@link #createKeyMap(MCReader, int, Context)}
      * to stop creating the key map. If the thread is already
      * informed or does not exists this button will finish the activity.
      * @param view The View object that triggered the method
      * (in this case the cancel button).
-     * @see #createKeyMap(MCReader, Context)
+     * @see #createKeyMap(MCReader, int, Context)
      */
     public void onCancelCreateKeyMap(View view) {
         if (mIsCreatingKeyMap) {
             mIsCreatingKeyMap = false;
+            // Stop immediately (not only after the current sector).
+            if (mReader != null) {
+                mReader.cancelKeyMapping();
+            }
             mCancel.setEnabled(false);
         } else {
             finish();
@@ -333,13 +377,13 @@ public class KeyMapCreator extends BasicActivity {
      * Create a key map and save it to
      * {@link Common#setKeyMap(android.util.SparseArray)}.
      * For doing so it uses other methods (
-     * {@link #createKeyMap(MCReader, Context)},
+     * {@link #createKeyMap(MCReader, int, Context)},
      * {@link #keyMapCreated(MCReader)}).
      * If {@link Preference#SaveLastUsedKeyFiles} is active, this will also
      * save the selected key files.
      * @param view The View object that triggered the method
      * (in this case the map keys to sectors button).
-     * @see #createKeyMap(MCReader, Context)
+     * @see #createKeyMap(MCReader, int, Context)
      * @see #keyMapCreated(MCReader)
      */
     public void onCreateKeyMap(View view) {
@@ -376,9 +420,7 @@ public class KeyMapCreator extends BasicActivity {
                 // Save last selected key files as "/"-separated string
                 // (if corresponding setting is active).
                 if (saveLastUsedKeyFiles) {
-                    SharedPreferences sharedPref = getPreferences(
-                            Context.MODE_PRIVATE);
-                    Editor e = sharedPref.edit();
+                    Editor e = Common.getPreferences().edit();
                     e.putString("last_used_key_files",
                             lastSelectedKeyFiles.substring(
                                     0, lastSelectedKeyFiles.length() - 1));
@@ -425,16 +467,15 @@ public class KeyMapCreator extends BasicActivity {
                     return;
                 }
                 Common.setKeyMapRange(mFirstSector, mLastSector);
+                reader.setReadWhileMapping(getIntent().getBooleanExtra(
+                        EXTRA_READ_WHILE_MAPPING, false));
                 // Init. GUI elements.
                 mProgressStatus = -1;
                 mProgressBar.setMax((mLastSector-mFirstSector)+1);
                 mCreateKeyMap.setEnabled(false);
                 mIsCreatingKeyMap = true;
-                String message = numberOfLoadedKeys + " " + getString(
-                        R.string.info_keys_loaded_please_wait);
-                Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
                 // Read as much as possible with given key file.
-                createKeyMap(reader, this);
+                createKeyMap(reader, numberOfLoadedKeys, this);
             }
             else{
                 Toast.makeText(this, R.string.info_mapping_no_keyfile_found, Toast.LENGTH_LONG).show();
@@ -450,12 +491,54 @@ public class KeyMapCreator extends BasicActivity {
      * method starts a worker thread that first creates a key map and then
      * calls {@link #keyMapCreated(MCReader)}.
      * It also updates the progress bar in the UI thread.
-     * @param reader A connected {@link MCReader}.
+     * The key statistics ({@link KeyStatistics}) and the key map cache
+     * ({@link KeyMapCache}) are loaded by the worker thread, before an
+     * interrupted key mapping of this tag is resumed
+     * (see {@link KeyMapCheckpoint}).
+     * @param reader A connected {@link MCReader} (with keys and range).
+     * @param numberOfLoadedKeys Number of keys set for the reader.
      * @see #onCreateKeyMap(View)
      * @see #keyMapCreated(MCReader)
      */
-    private void createKeyMap(final MCReader reader, final Context context) {
+    private void createKeyMap(final MCReader reader,
+            final int numberOfLoadedKeys, final Context context) {
+        // Show the key mapping statistics.
+        mReader = reader;
+        mStatsStartTime = SystemClock.elapsedRealtime();
+        mStatsStartKeys = reader.getKeysTested();
+        mStatsStartAuths = reader.getAuthAttempts();
+        mStats.setText("");
+        mStats.setVisibility(View.VISIBLE);
+        mHandler.postDelayed(mStatsUpdater, STATS_UPDATE_INTERVAL);
         new Thread(() -> {
+            // Use the key statistics to try the most likely keys first.
+            mKeyStats = KeyStatistics.load(
+                    Common.getFile(Common.KEY_STATS_FILE));
+            reader.setKeyStatistics(mKeyStats);
+            // Verify the cached keys of this tag (if any) before
+            // using the key files.
+            mKeyMapCache = KeyMapCache.load(
+                    Common.getFile(Common.KEY_MAP_CACHE_FILE));
+            reader.setCachedKeyMap(mKeyMapCache.get(
+                    reader.getUidHex(), reader.getSize()));
+            // Resume an interrupted key mapping of this tag
+            // (if there is one with the same keys and range).
+            KeyMapCheckpoint resumed = KeyMapCheckpoint.get(
+                    reader.getUidHex());
+            final String message;
+            if (reader.resumeFrom(resumed)) {
+                mProgressStatus = resumed.getSector() - 1;
+                message = getString(R.string.info_key_map_resumed,
+                        resumed.getSector());
+            } else {
+                message = numberOfLoadedKeys + " " + getString(
+                        R.string.info_keys_loaded_please_wait);
+            }
+            final int progress = mProgressStatus - mFirstSector + 1;
+            mHandler.post(() -> {
+                mProgressBar.setProgress(Math.max(progress, 0));
+                Toast.makeText(context, message, Toast.LENGTH_SHORT).show();
+            });
             // Build key map parts and update the progress bar.
             while (mProgressStatus < mLastSector) {
                 mProgressStatus = reader.buildNextKeyMapPart();
@@ -467,10 +550,35 @@ public class KeyMapCreator extends BasicActivity {
                 mHandler.post(() -> mProgressBar.setProgress(
                         (mProgressStatus - mFirstSector) + 1));
             }
+            // Save the key statistics (also for canceled or failed runs,
+            // the keys found so far are valid).
+            mKeyStats.save();
+            // Remember the progress of canceled or failed runs, so they
+            // can be resumed.
+            KeyMapCheckpoint checkpoint = null;
+            if (mProgressStatus == -1 || !mIsCreatingKeyMap) {
+                checkpoint = reader.createCheckpoint();
+            }
+            if (checkpoint != null) {
+                KeyMapCheckpoint.put(checkpoint);
+            } else {
+                KeyMapCheckpoint.remove(reader.getUidHex());
+            }
+            final boolean isResumable = checkpoint != null;
+            // Cache the key map of this tag.
+            if (mIsCreatingKeyMap && mProgressStatus != -1
+                    && reader.getKeyMap().size() > 0) {
+                mKeyMapCache.put(reader.getUidHex(), reader.getSize(),
+                        mFirstSector, mLastSector, reader.getKeyMap());
+                mKeyMapCache.save();
+            }
 
             mHandler.post(() -> {
                 getWindow().clearFlags(
                         WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+                mHandler.removeCallbacks(mStatsUpdater);
+                mReader = null;
+                mStats.setVisibility(View.GONE);
                 mProgressBar.setProgress(0);
                 mCreateKeyMap.setEnabled(true);
                 reader.close();
@@ -480,13 +588,17 @@ public class KeyMapCreator extends BasicActivity {
                 } else if (mIsCreatingKeyMap && mProgressStatus == -1 ){
                     // Error during key map creation.
                     Common.setKeyMap(null);
+                    Common.setMappedDump(null);
                     Common.setKeyMapRange(-1, -1);
                     mCancel.setEnabled(true);
-                    Toast.makeText(context, R.string.info_key_map_error,
+                    Toast.makeText(context, isResumable
+                            ? R.string.info_key_map_error_resumable
+                            : R.string.info_key_map_error,
                             Toast.LENGTH_LONG).show();
                 } else {
                     // Key map creation was canceled by the user.
                     Common.setKeyMap(null);
+                    Common.setMappedDump(null);
                     Common.setKeyMapRange(-1, -1);
                     mCancel.setEnabled(true);
                 }
@@ -496,24 +608,61 @@ public class KeyMapCreator extends BasicActivity {
     }
 
     /**
-     * Triggered by {@link #createKeyMap(MCReader, Context)}, this method
+     * Show the throughput of the running key mapping (authentications per
+     * second), the keys left for the current sector and the estimated
+     * (maximum) time for the current sector and the whole mapping range.
+     * The estimation assumes that all keys have to be tested.
+     * @param reader The reader that is creating the key map.
+     * @see #mStatsUpdater
+     */
+    private void updateStats(MCReader reader) {
+        double seconds = (SystemClock.elapsedRealtime()
+                - mStatsStartTime) / 1000.0;
+        if (seconds <= 0) {
+            return;
+        }
+        double keysPerSecond = (reader.getKeysTested() - mStatsStartKeys)
+                / seconds;
+        double authsPerSecond = (reader.getAuthAttempts()
+                - mStatsStartAuths) / seconds;
+        int keyCount = reader.getKeyCount();
+        int sector = Math.min(reader.getKeyMapStatus(), mLastSector);
+        int keysLeft = Math.max(0, keyCount - reader.getKeysTestedInSector());
+        String etaSector = "-";
+        String etaAll = "-";
+        if (keysPerSecond > 0) {
+            long sectorSeconds = (long) (keysLeft / keysPerSecond);
+            long allSeconds = sectorSeconds + (long) ((double) (mLastSector
+                    - sector) * keyCount / keysPerSecond);
+            etaSector = DateUtils.formatElapsedTime(sectorSeconds);
+            etaAll = DateUtils.formatElapsedTime(allSeconds);
+        }
+        mStats.setText(getString(R.string.text_key_map_stats,
+                Math.round(authsPerSecond), sector, keysLeft,
+                etaSector, etaAll));
+    }
+
+    /**
+     * Triggered by {@link #createKeyMap(MCReader, int, Context)}, this method
      * sets the result code to {@link Activity#RESULT_OK},
      * saves the created key map to
      * {@link Common#setKeyMap(android.util.SparseArray)}
      * and finishes this Activity.
      * @param reader A {@link MCReader}.
-     * @see #createKeyMap(MCReader, Context)
+     * @see #createKeyMap(MCReader, int, Context)
      * @see #onCreateKeyMap(View)
      */
     private void keyMapCreated(MCReader reader) {
         // LOW: Return key map in intent.
         if (reader.getKeyMap().size() == 0) {
             Common.setKeyMap(null);
+            Common.setMappedDump(null);
             // Error. No valid key found.
             Toast.makeText(this, R.string.info_no_key_found,
                     Toast.LENGTH_LONG).show();
         } else {
             Common.setKeyMap(reader.getKeyMap());
+            Common.setMappedDump(reader.getMappedDump());
 //            Intent intent = new Intent();
 //            intent.putExtra(EXTRA_KEY_MAP, mMCReader);
 //            setResult(Activity.RESULT_OK, intent);
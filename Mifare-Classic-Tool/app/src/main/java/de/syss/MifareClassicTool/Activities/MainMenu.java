@@ -648,6 +648,9 @@ public class MainMenu extends Activity {
         // Enable/Disable UID clone info tool depending on NFC availability.
         menu.findItem(R.id.menuMainCloneUidTool).setEnabled(
                 !Common.useAsEditorOnly());
+        // Enable/Disable batch read tool depending on NFC availability.
+        menu.findItem(R.id.menuMainBatchReadTool).setEnabled(
+                !Common.useAsEditorOnly());
     }
 
     /**
@@ -842,6 +845,7 @@ public class MainMenu extends Activity {
      * @see TagInfoTool
      * @see ValueBlockTool
      * @see AccessConditionTool
+     * @see BatchReadTool
      */
     @Override
     public boolean onContextItemSelected(MenuItem item) {
@@ -883,6 +887,10 @@ public class MainMenu extends Activity {
             intent = new Intent(this, DataConversionTool.class);
             startActivity(intent);
             return true;
+        } else if (id == R.id.menuMainBatchReadTool) {
+            intent = new Intent(this, BatchReadTool.class);
+            startActivity(intent);
+            return true;
         }
         return super.onContextItemSelected(item);
     }
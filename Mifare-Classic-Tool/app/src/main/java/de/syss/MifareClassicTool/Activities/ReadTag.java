@@ -19,6 +19,7 @@
 package de.syss.MifareClassicTool.Activities;
 
 import android.app.Activity;
+import android.app.AlertDialog;
 import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
@@ -26,39 +27,148 @@ import android.os.Looper;
 import android.util.SparseArray;
 import android.widget.Toast;
 
-import java.util.ArrayList;
-import java.util.Collections;
-
 import de.syss.MifareClassicTool.Common;
+import de.syss.MifareClassicTool.KeyMapCache;
 import de.syss.MifareClassicTool.MCReader;
 import de.syss.MifareClassicTool.R;
+import de.syss.MifareClassicTool.ReadCheckpoint;
+import de.syss.MifareClassicTool.TagImage;
 
 
 /**
  * Create a key map with the {@link KeyMapCreator} and then
- * read the tag.
+ * read the tag. If the tag gets removed during reading, the sectors
+ * read so far are kept (see {@link ReadCheckpoint}) and the reading can be
+ * continued once the same tag is presented again.
  * @author Gerhard Klostermeier
  */
-public class ReadTag extends Activity {
+public class ReadTag extends BasicActivity {
 
     private final static int KEY_MAP_CREATOR = 1;
 
     private final Handler mHandler = new Handler(Looper.getMainLooper());
-    private SparseArray<String[]> mRawDump;
+    private TagImage mRawDump;
+    private ReadCheckpoint mWaitingCheckpoint;
+    private AlertDialog mWaitingDialog;
 
     /**
-     * Show the {@link KeyMapCreator}.
+     * Offer to continue an interrupted read of this tag
+     * (see {@link ReadCheckpoint}). Otherwise call
+     * {@link #prepareKeyMap()}.
      */
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_read_tag);
 
+        byte[] uid = Common.getUID();
+        final ReadCheckpoint checkpoint = (uid != null)
+                ? ReadCheckpoint.get(Common.bytes2Hex(uid)) : null;
+        if (checkpoint == null) {
+            prepareKeyMap();
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.dialog_resume_read_title)
+                .setMessage(getString(R.string.dialog_resume_read,
+                        checkpoint.getSector(), checkpoint.getSectorsRead()))
+                .setPositiveButton(R.string.action_continue,
+                        (dialog, which) -> resumeRead(checkpoint))
+                .setNegativeButton(R.string.action_start_over,
+                        (dialog, which) -> {
+                            ReadCheckpoint.remove(checkpoint.getUid());
+                            prepareKeyMap();
+                        })
+                .setOnCancelListener(dialog -> finish())
+                .show();
+    }
+
+    /**
+     * If a read was interrupted (see {@link #waitForTag(ReadCheckpoint)})
+     * and the same tag is presented again, continue the reading.
+     */
+    @Override
+    public void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        if (mWaitingCheckpoint == null) {
+            return;
+        }
+        byte[] uid = Common.getUID();
+        if (uid != null && Common.bytes2Hex(uid).equals(
+                mWaitingCheckpoint.getUid())) {
+            ReadCheckpoint checkpoint = mWaitingCheckpoint;
+            mWaitingCheckpoint = null;
+            if (mWaitingDialog != null) {
+                mWaitingDialog.dismiss();
+                mWaitingDialog = null;
+            }
+            resumeRead(checkpoint);
+        } else {
+            Toast.makeText(this, R.string.info_read_wrong_tag,
+                    Toast.LENGTH_LONG).show();
+        }
+    }
+
+    /**
+     * Read the tag with the cached key map (see {@link KeyMapCache}) if
+     * all of its keys are still valid. Otherwise show the
+     * {@link KeyMapCreator}.
+     */
+    private void prepareKeyMap() {
+        byte[] uid = Common.getUID();
+        final MCReader reader = MCReader.get(Common.getTag());
+        if (uid == null || reader == null) {
+            startKeyMapCreator();
+            return;
+        }
+        final String uidHex = Common.bytes2Hex(uid);
+        new Thread(() -> {
+            KeyMapCache cache = KeyMapCache.load(
+                    Common.getFile(Common.KEY_MAP_CACHE_FILE));
+            final KeyMapCache.Entry cached = cache.get(uidHex,
+                    reader.getSize());
+            // Verify the cached keys (one authentication per key).
+            boolean isValid = false;
+            if (cached != null) {
+                try {
+                    reader.connect();
+                    isValid = reader.isKeyMapValid(cached.getKeyMap());
+                } catch (Exception e) {
+                    // Tag lost. Let the key map creator handle this.
+                }
+                reader.close();
+            }
+            if (isValid) {
+                // Remember that this entry was used recently.
+                cache.save();
+            }
+            final boolean useCache = isValid;
+            mHandler.post(() -> {
+                if (useCache) {
+                    Common.setKeyMap(cached.getKeyMap());
+                    Common.setMappedDump(null);
+                    Common.setKeyMapRange(cached.getFirstSector(),
+                            cached.getLastSector());
+                    Toast.makeText(this, R.string.info_key_map_from_cache,
+                            Toast.LENGTH_SHORT).show();
+                    readTag();
+                } else {
+                    startKeyMapCreator();
+                }
+            });
+        }).start();
+    }
+
+    /**
+     * Show the {@link KeyMapCreator}.
+     */
+    private void startKeyMapCreator() {
         Intent intent = new Intent(this, KeyMapCreator.class);
         intent.putExtra(KeyMapCreator.EXTRA_KEYS_DIR,
                 Common.getFile(Common.KEYS_DIR).getAbsolutePath());
         intent.putExtra(KeyMapCreator.EXTRA_BUTTON_TEXT,
                 getString(R.string.action_create_key_map_and_read));
+        intent.putExtra(KeyMapCreator.EXTRA_READ_WHILE_MAPPING, true);
         startActivityForResult(intent, KEY_MAP_CREATOR);
     }
 
@@ -91,51 +201,150 @@ public class ReadTag extends Activity {
 
     /**
      * Triggered by {@link #onActivityResult(int, int, Intent)}
+     * (or {@link #prepareKeyMap()} if a cached key map was used)
      * this method starts a worker thread that first reads the tag and then
-     * calls {@link #createTagDump(SparseArray)}.
+     * calls {@link #readFinished(ReadCheckpoint)}.
      */
     private void readTag() {
+        // Sectors already read while creating the key map.
+        final TagImage mappedDump = Common.getMappedDump();
+        Common.setMappedDump(null);
+        if (isComplete(mappedDump, Common.getKeyMap())) {
+            createTagDump(mappedDump);
+            return;
+        }
         final MCReader reader = Common.checkForTagAndCreateReader(this);
         if (reader == null) {
             return;
         }
         new Thread(() -> {
             // Get key map from glob. variable.
-            mRawDump = reader.readAsMuchAsPossible(
-                    Common.getKeyMap());
+            mRawDump = reader.readTagImage(Common.getKeyMap(), mappedDump);
+            // Keep the sectors read so far if the tag was removed.
+            final ReadCheckpoint checkpoint = reader.createReadCheckpoint(
+                    Common.getKeyMapRangeFrom(), Common.getKeyMapRangeTo());
 
             reader.close();
 
-            mHandler.post(() -> createTagDump(mRawDump));
+            mHandler.post(() -> readFinished(checkpoint));
         }).start();
     }
 
+    /**
+     * Continue an interrupted read with the sector where it stopped. The
+     * new sectors will be merged with the ones of the checkpoint.
+     * @param checkpoint The checkpoint of the interrupted read.
+     * @see MCReader#resumeRead(ReadCheckpoint)
+     */
+    private void resumeRead(final ReadCheckpoint checkpoint) {
+        final MCReader reader = Common.checkForTagAndCreateReader(this);
+        if (reader == null) {
+            waitForTag(checkpoint);
+            return;
+        }
+        Common.setKeyMap(checkpoint.getKeyMap());
+        Common.setKeyMapRange(checkpoint.getFirstSector(),
+                checkpoint.getLastSector());
+        Toast.makeText(this, getString(R.string.info_read_resumed,
+                checkpoint.getSector()), Toast.LENGTH_SHORT).show();
+        new Thread(() -> {
+            mRawDump = reader.resumeRead(checkpoint);
+            final ReadCheckpoint next = reader.createReadCheckpoint(
+                    checkpoint.getFirstSector(), checkpoint.getLastSector());
+
+            reader.close();
+
+            mHandler.post(() -> readFinished(next));
+        }).start();
+    }
+
+    /**
+     * Show the dump ({@link #createTagDump(TagImage)}) or, if the tag was
+     * removed during reading, store the checkpoint and wait for the tag
+     * ({@link #waitForTag(ReadCheckpoint)}).
+     * @param checkpoint The checkpoint of the read or null if the reading
+     * was not interrupted by a removed tag.
+     */
+    private void readFinished(ReadCheckpoint checkpoint) {
+        if (mRawDump == null && checkpoint != null) {
+            ReadCheckpoint.put(checkpoint);
+            waitForTag(checkpoint);
+            return;
+        }
+        byte[] uid = Common.getUID();
+        if (mRawDump != null && uid != null) {
+            ReadCheckpoint.remove(Common.bytes2Hex(uid));
+        }
+        createTagDump(mRawDump);
+    }
+
+    /**
+     * Show a dialog that asks the user to present the tag again. Once
+     * the same tag is found ({@link #onNewIntent(Intent)}), the reading
+     * will be continued. The user can also show the sectors read so far
+     * (partial dump).
+     * @param checkpoint The checkpoint of the interrupted read.
+     */
+    private void waitForTag(final ReadCheckpoint checkpoint) {
+        mWaitingCheckpoint = checkpoint;
+        mWaitingDialog = new AlertDialog.Builder(this)
+                .setTitle(R.string.dialog_read_interrupted_title)
+                .setMessage(getString(R.string.dialog_read_interrupted,
+                        checkpoint.getSector(), checkpoint.getSectorsRead()))
+                .setIcon(android.R.drawable.ic_dialog_alert)
+                .setPositiveButton(R.string.action_show_partial_dump,
+                        (dialog, which) -> {
+                            mWaitingCheckpoint = null;
+                            Common.setKeyMapRange(checkpoint.getFirstSector(),
+                                    checkpoint.getLastSector());
+                            createTagDump(checkpoint.getImage());
+                        })
+                .setNegativeButton(R.string.action_cancel,
+                        (dialog, which) -> dialog.cancel())
+                .setOnCancelListener(dialog -> {
+                    // The checkpoint is kept. The reading can be continued
+                    // the next time this tag is read.
+                    mWaitingCheckpoint = null;
+                    finish();
+                })
+                .show();
+    }
+
+    /**
+     * Check if all sectors of a key map have been read already.
+     * @param dump The tag data read so far (may be null).
+     * @param keyMap The key map.
+     * @return True if there is data for every sector of the key map.
+     */
+    private static boolean isComplete(TagImage dump,
+            SparseArray<byte[][]> keyMap) {
+        if (dump == null || keyMap == null) {
+            return false;
+        }
+        for (int i = 0; i < keyMap.size(); i++) {
+            if (!dump.hasSector(keyMap.keyAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Create a tag dump in a format the {@link DumpEditor}
      * can read (format: headers (sectors) marked with "+", errors
      * marked with "*"), and then start the dump editor with this dump.
-     * @param rawDump A tag dump like {@link MCReader#readAsMuchAsPossible()}
-     * returns.
+     * @param rawDump The tag data like {@link MCReader#readTagImage(SparseArray)}
+     * returns it.
      * @see DumpEditor#EXTRA_DUMP
      * @see DumpEditor
      */
-    private void createTagDump(SparseArray<String[]> rawDump) {
-        ArrayList<String> tmpDump = new ArrayList<>();
+    private void createTagDump(TagImage rawDump) {
         if (rawDump != null) {
-            if (rawDump.size() != 0) {
-                for (int i = Common.getKeyMapRangeFrom();
-                        i <= Common.getKeyMapRangeTo(); i++) {
-                    String[] val = rawDump.get(i);
-                    // Mark headers (sectors) with "+".
-                    tmpDump.add("+Sector: " + i);
-                    if (val != null ) {
-                        Collections.addAll(tmpDump, val);
-                    } else {
-                        // Mark sector as not readable ("*").
-                        tmpDump.add("*No keys found or dead sector");
-                    }
-                }
-                String[] dump = tmpDump.toArray(new String[0]);
+            if (rawDump.getSectorsInImage() != 0) {
+                // Headers (sectors) are marked with "+", not readable
+                // sectors with "*".
+                String[] dump = rawDump.toDump(Common.getKeyMapRangeFrom(),
+                        Common.getKeyMapRangeTo());
 
                 // Show Dump Editor Activity.
                 Intent intent = new Intent(this, DumpEditor.class);
@@ -18,32 +18,53 @@
 
 package de.syss.MifareClassicTool.Activities;
 
+import android.app.AlertDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
-import android.text.TextUtils;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
+import android.widget.Button;
+import android.widget.EditText;
 import android.widget.TextView;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.List;
 
 import de.syss.MifareClassicTool.Common;
 import de.syss.MifareClassicTool.R;
+import de.syss.MifareClassicTool.UidLog;
 
 /**
  * Tool to display and share the UIDs of previously detected tags.
+ * The log is shown page by page (newest first, see {@link #PAGE_SIZE}),
+ * so opening the tool does not depend on the size of the log.
  * @author Gerhard Klostermeier
  * @see Common#treatAsNewTag(Intent, Context)
  * @see Common#logUid(String)
- * @see Common#UID_LOG_FILE
+ * @see UidLog
  */
 public class UidLogTool extends BasicActivity {
 
+    /**
+     * Number of entries loaded at once.
+     */
+    private static final int PAGE_SIZE = 500;
+
     TextView mUidLog;
+    private Button mMoreButton;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final StringBuilder mShownEntries = new StringBuilder();
+    private int mShownCount = 0;
+    private String mFilterUid = null;
+    /**
+     * Incremented on each reset of the list, so pages of an old
+     * list that are loaded later will be dropped.
+     */
+    private int mGeneration = 0;
 
     /**
      * Calls {@link #updateUidLog()} (and initialize some member
@@ -54,6 +75,7 @@ public class UidLogTool extends BasicActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_uid_log_tool);
         mUidLog = findViewById(R.id.textViewUidLogToolUids);
+        mMoreButton = findViewById(R.id.buttonUidLogToolMore);
         updateUidLog();
     }
 
@@ -68,7 +90,7 @@ public class UidLogTool extends BasicActivity {
     }
 
     /**
-     * Add the menu with the share/clear functions to the Activity.
+     * Add the menu with the share/search/clear functions to the Activity.
      */
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
@@ -87,6 +109,9 @@ public class UidLogTool extends BasicActivity {
         if (id == R.id.menuUidLogToolShare) {
             shareUidLog();
             return true;
+        } else if (id == R.id.menuUidLogToolSearch) {
+            searchUid();
+            return true;
         } else if (id == R.id.menuUidLogToolClear) {
             clearUidLog();
             return true;
@@ -95,48 +120,155 @@ public class UidLogTool extends BasicActivity {
     }
 
     /**
-     * Read the UID log file {@link Common#UID_LOG_FILE} and
-     * display its content.
+     * Load and display the next page of the log.
+     * @param view The View object that triggered the method
+     * (in this case the show more button).
+     */
+    public void onShowMore(View view) {
+        mMoreButton.setEnabled(false);
+        loadPage();
+    }
+
+    /**
+     * Reset the displayed log and load the first page (newest entries).
      */
     private void updateUidLog() {
-        File log = new File(this.getFilesDir(),
-                Common.HOME_DIR + File.separator + Common.UID_LOG_FILE);
-        String[] logEntries = Common.readFileLineByLine(log, false, this);
-        if (logEntries != null) {
-            // Reverse order (newest top).
-            ArrayList<String> tempEntries =
-                    new ArrayList<>(Arrays.asList(logEntries));
-            Collections.reverse(tempEntries);
-            mUidLog.setText(TextUtils.join(
-                    System.getProperty("line.separator"), tempEntries));
-        } else {
-            // No log yet.
-            mUidLog.setText(R.string.text_no_uid_logs);
+        mGeneration++;
+        mShownEntries.setLength(0);
+        mShownCount = 0;
+        mMoreButton.setVisibility(View.GONE);
+        loadPage();
+    }
+
+    /**
+     * Load the next {@link #PAGE_SIZE} entries of the log in the
+     * background and append them to the displayed log. If there is a
+     * filter, only entries of this UID will be loaded
+     * (see {@link UidLog#query(String, long, long, int)}).
+     */
+    private void loadPage() {
+        final int generation = mGeneration;
+        final int offset = mShownCount;
+        final String uid = mFilterUid;
+        new Thread(() -> {
+            UidLog log = Common.getUidLog();
+            // Load one more entry to know if there are more.
+            List<UidLog.Entry> entries;
+            if (uid == null) {
+                entries = log.getEntries(offset, PAGE_SIZE + 1);
+            } else {
+                entries = log.query(uid, Long.MIN_VALUE, Long.MAX_VALUE,
+                        offset + PAGE_SIZE + 1);
+                entries = entries.subList(
+                        Math.min(offset, entries.size()), entries.size());
+            }
+            final boolean hasMore = entries.size() > PAGE_SIZE;
+            final int count = Math.min(entries.size(), PAGE_SIZE);
+            final StringBuilder page = new StringBuilder();
+            String newLine = System.getProperty("line.separator");
+            for (int i = 0; i < count; i++) {
+                UidLog.Entry e = entries.get(i);
+                page.append(newLine).append(
+                        log.format(e.getTime(), e.getUid()));
+            }
+            mHandler.post(() -> {
+                if (generation != mGeneration) {
+                    return;
+                }
+                showPage(page, count, hasMore);
+            });
+        }).start();
+    }
+
+    /**
+     * Append a page to the displayed log.
+     * @param page The entries of the page (each with a leading new line).
+     * @param count The number of entries.
+     * @param hasMore True if there are older entries.
+     */
+    private void showPage(CharSequence page, int count, boolean hasMore) {
+        String newLine = System.getProperty("line.separator");
+        if (mShownCount == 0 && mFilterUid != null) {
+            mShownEntries.append(getString(R.string.text_uid_log_filter,
+                    mFilterUid));
+        }
+        mShownEntries.append(page);
+        mShownCount += count;
+        if (mShownCount == 0) {
+            // No (matching) log entries.
+            mShownEntries.append(newLine).append(
+                    getString(R.string.text_no_uid_logs));
         }
+        // Remove the leading new line.
+        int start = (mShownEntries.indexOf(newLine) == 0)
+                ? newLine.length() : 0;
+        mUidLog.setText(mShownEntries.subSequence(
+                start, mShownEntries.length()));
+        mMoreButton.setVisibility(hasMore ? View.VISIBLE : View.GONE);
+        mMoreButton.setEnabled(true);
     }
 
     /**
-     * Delete the UID log file {@link Common#UID_LOG_FILE} and
+     * Ask the user for a UID and only show its entries.
+     * An empty UID shows all entries again.
+     */
+    private void searchUid() {
+        View dialogLayout = getLayoutInflater().inflate(
+                R.layout.dialog_save_file,
+                findViewById(android.R.id.content), false);
+        TextView message = dialogLayout.findViewById(
+                R.id.textViewDialogSaveFileMessage);
+        final EditText input = dialogLayout.findViewById(
+                R.id.editTextDialogSaveFileName);
+        message.setText(R.string.dialog_search_uid);
+        input.setText((mFilterUid != null) ? mFilterUid : "");
+        input.requestFocus();
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.action_search_uid)
+                .setIcon(android.R.drawable.ic_menu_search)
+                .setView(dialogLayout)
+                .setPositiveButton(R.string.action_ok,
+                        (dialog, whichButton) -> {
+                            String uid = input.getText().toString().trim();
+                            mFilterUid = uid.equals("") ? null : uid;
+                            updateUidLog();
+                        })
+                .setNegativeButton(R.string.action_cancel,
+                        (dialog, whichButton) -> {
+                            // Do nothing.
+                        })
+                .show();
+    }
+
+    /**
+     * Delete the UID log (see {@link UidLog#clear()}) and
      * update the UI (call {@link #updateUidLog()}).
      */
     private void clearUidLog() {
-        File log = new File(this.getFilesDir(),
-                Common.HOME_DIR + File.separator + Common.UID_LOG_FILE);
-        if (log.exists()){
-            log.delete();
-        }
-        updateUidLog();
+        new Thread(() -> {
+            Common.getUidLog().clear();
+            mHandler.post(this::updateUidLog);
+        }).start();
     }
 
     /**
-     * Share the UID log file {@link Common#UID_LOG_FILE} as
-     * text file.
+     * Export the UID log to {@link Common#UID_LOG_FILE} (in
+     * {@link Common#TMP_DIR}) and share it as text file.
      */
     private void shareUidLog() {
-        File log = new File(this.getFilesDir(),
-                Common.HOME_DIR + File.separator + Common.UID_LOG_FILE);
-        if (log.exists()) {
-            Common.shareTextFile(this, log);
-        }
+        final File log = Common.getFile(
+                Common.TMP_DIR + "/" + Common.UID_LOG_FILE);
+        new Thread(() -> {
+            File parent = log.getParentFile();
+            if (parent != null && !parent.exists()) {
+                parent.mkdirs();
+            }
+            final boolean exported = Common.getUidLog().export(log);
+            mHandler.post(() -> {
+                if (exported && log.length() > 0) {
+                    Common.shareTextFile(this, log);
+                }
+            });
+        }).start();
     }
 }
@@ -27,6 +27,7 @@ import android.nfc.tech.MifareClassic;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.SparseArray;
 import android.view.Gravity;
 import android.view.View;
@@ -47,17 +48,27 @@ import androidx.core.widget.TextViewCompat;
 
 import java.io.File;
 import java.io.Serializable;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import de.syss.MifareClassicTool.AccessConditions;
 import de.syss.MifareClassicTool.Common;
+import de.syss.MifareClassicTool.DumpParser;
+import de.syss.MifareClassicTool.KeyMapCache;
 import de.syss.MifareClassicTool.MCReader;
 import de.syss.MifareClassicTool.R;
+import de.syss.MifareClassicTool.TagImage;
+import de.syss.MifareClassicTool.WritePlan;
 
 /**
  * Write data to tag. The user can choose to write
@@ -79,6 +90,10 @@ public class WriteTag extends BasicActivity {
     private static final int CKM_WRITE_BLOCK = 3;
     private static final int CKM_FACTORY_FORMAT = 4;
     private static final int CKM_WRITE_NEW_VALUE = 5;
+    // Appends the results of the provisioning mode to the log file
+    // (one after another, off the UI thread).
+    private static final ExecutorService mBatchLogWriter =
+            Executors.newSingleThreadExecutor();
 
     private EditText mSectorTextBlock;
     private EditText mBlockTextBlock;
@@ -91,9 +106,22 @@ public class WriteTag extends BasicActivity {
     private ArrayList<View> mWriteModeLayouts;
     private CheckBox mWriteManufBlock;
     private CheckBox mEnableStaticAC;
+    private CheckBox mBatchWrite;
+    private CheckBox mDifferentialWrite;
+    private CheckBox mVerifyWrite;
     private HashMap<Integer, HashMap<Integer, byte[]>> mDumpWithPos;
     private boolean mWriteDumpFromEditor = false;
     private String[] mDumpFromEditor;
+    private HashMap<Integer, HashMap<Integer, Integer>> mBatchWriteOnPos;
+    private SparseArray<byte[][]> mBatchKeyMap;
+    private WritePlan mBatchPlan;
+    private KeyMapCache mKeyMapCache;
+    private AlertDialog mBatchDialog;
+    private TextView mBatchStatus;
+    private boolean mIsBatchWriting = false;
+    private int mBatchWritten;
+    private int mBatchFailed;
+    private long mBatchStartTime;
 
 
     /**
@@ -125,6 +153,10 @@ public class WriteTag extends BasicActivity {
                 R.id.checkBoxWriteTagDumpStaticAC);
         mWriteManufBlock = findViewById(
                 R.id.checkBoxWriteTagDumpWriteManuf);
+        mBatchWrite = findViewById(R.id.checkBoxWriteTagDumpBatch);
+        mDifferentialWrite = findViewById(
+                R.id.checkBoxWriteTagDumpDifferential);
+        mVerifyWrite = findViewById(R.id.checkBoxWriteTagDumpVerify);
 
         mWriteModeLayouts = new ArrayList<>();
         mWriteModeLayouts.add(findViewById(
@@ -181,6 +213,25 @@ public class WriteTag extends BasicActivity {
         outState.putSerializable("dump_with_pos", mDumpWithPos);
     }
 
+    /**
+     * Calls {@link BasicActivity#onNewIntent(Intent)} and, if the
+     * provisioning mode is active, writes the dump to the new tag
+     * ({@link #batchWriteTag()}).
+     */
+    @Override
+    public void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        if (mBatchWriteOnPos == null) {
+            return;
+        }
+        if (mIsBatchWriting) {
+            Toast.makeText(this, R.string.info_batch_write_busy,
+                    Toast.LENGTH_SHORT).show();
+            return;
+        }
+        batchWriteTag();
+    }
+
     /**
      * Update the layout to the current selected write mode.
      * @param view The View object that triggered the method
@@ -200,7 +251,7 @@ public class WriteTag extends BasicActivity {
      * {@link FileChooser}.
      * @see #writeBlock()
      * @see #checkDumpAgainstTag()
-     * @see #checkDumpAndShowSectorChooserDialog(String[])
+     * @see #checkDumpAndShowSectorChooserDialog(DumpParser)
      * @see #createFactoryFormattedDump()
      * @see #writeValueBlock()
      */
@@ -487,9 +538,9 @@ public class WriteTag extends BasicActivity {
      */
     private int checkAccessConditions(String sectorTrailer, boolean showToasts) {
         // Check if Access Conditions are valid.
-        byte[] acBytes = Common.hex2Bytes(sectorTrailer.substring(12, 18));
-        byte[][] acMatrix = Common.acBytesToACMatrix(acBytes);
-        if (acMatrix == null) {
+        int acIndex = AccessConditions.getIndex(
+                Common.hex2Bytes(sectorTrailer.substring(12, 18)));
+        if (acIndex == -1) {
             // Error. Invalid ACs.
             if (showToasts) {
                 Toast.makeText(this, R.string.info_ac_format_error,
@@ -498,11 +549,8 @@ public class WriteTag extends BasicActivity {
             return 1;
         }
         // Check if Access Conditions are irreversible.
-        boolean keyBReadable = Common.isKeyBReadable(
-                acMatrix[0][3], acMatrix[1][3], acMatrix[2][3]);
-        int writeAC = Common.getOperationRequirements(
-                acMatrix[0][3], acMatrix[1][3], acMatrix[2][3],
-                Common.Operation.WriteAC, true, keyBReadable);
+        int writeAC = AccessConditions.getOperationRequirements(acIndex,
+                AccessConditions.SECTOR_TRAILER, Common.Operation.WriteAC);
         if (writeAC == 0) {
             // Warning. Access Conditions can not be changed after writing.
             if (showToasts) {
@@ -531,6 +579,61 @@ public class WriteTag extends BasicActivity {
                 }).show();
     }
 
+    /**
+     * Show information on the differential write option (only write the
+     * blocks that differ from the data on the tag).
+     * @param view The View object that triggered the method
+     * (in this case the info on "differential write" button).
+     * @see WritePlan#execute(MCReader, boolean, boolean)
+     */
+    public void onShowDifferentialWriteInfo(View view) {
+        new AlertDialog.Builder(this)
+        .setTitle(R.string.dialog_differential_write_info_title)
+        .setMessage(R.string.dialog_differential_write_info)
+        .setIcon(android.R.drawable.ic_dialog_info)
+        .setPositiveButton(R.string.action_ok,
+                (dialog, which) -> {
+                    // Do nothing.
+                }).show();
+    }
+
+    /**
+     * Show information on the verify option (read back the written
+     * blocks).
+     * @param view The View object that triggered the method
+     * (in this case the info on "verify" button).
+     * @see WritePlan#execute(MCReader, boolean, boolean)
+     */
+    public void onShowVerifyWriteInfo(View view) {
+        new AlertDialog.Builder(this)
+        .setTitle(R.string.dialog_verify_write_info_title)
+        .setMessage(R.string.dialog_verify_write_info)
+        .setIcon(android.R.drawable.ic_dialog_info)
+        .setPositiveButton(R.string.action_ok,
+                (dialog, which) -> {
+                    // Do nothing.
+                }).show();
+    }
+
+    /**
+     * Show information on the provisioning mode (writing the dump to
+     * many tags in a row).
+     * @param view The View object that triggered the method
+     * (in this case the info on "provisioning mode" button).
+     * @see #startBatchWrite(HashMap, SparseArray, WritePlan, String)
+     */
+    public void onShowBatchWriteInfo(View view) {
+        new AlertDialog.Builder(this)
+        .setTitle(R.string.dialog_batch_write_info_title)
+        .setMessage(getString(R.string.dialog_batch_write_info,
+                Common.BATCH_WRITE_LOG_FILE))
+        .setIcon(android.R.drawable.ic_dialog_info)
+        .setPositiveButton(R.string.action_ok,
+                (dialog, which) -> {
+                    // Do nothing.
+                }).show();
+    }
+
     /**
      * Helper function for {@link #onWriteBlock(View)} and
      * {@link #onWriteValue(android.view.View)} to show
@@ -637,13 +740,13 @@ public class WriteTag extends BasicActivity {
      * {@link #onActivityResult(int, int, Intent)}.
      * This method triggers the call chain: open {@link FileChooser}
      * (this method) -> read dump ({@link #readDumpFromFile(String)})
-     * -> check dump ({@link #checkDumpAndShowSectorChooserDialog(String[])}) ->
+     * -> check dump ({@link #checkDumpAndShowSectorChooserDialog(DumpParser)}) ->
      * open {@link KeyMapCreator} ({@link #createKeyMapForDump()})
      * -> run {@link #checkDumpAgainstTag()} -> run
      * {@link #writeDump(HashMap, SparseArray)}.<br />
      * Behavior if the dump is already there (from the {@link DumpEditor}):
      * The same as before except the call chain will directly start from
-     * {@link #checkDumpAndShowSectorChooserDialog(String[])}.<br />
+     * {@link #checkDumpAndShowSectorChooserDialog(DumpParser)}.<br />
      * (The static Access Conditions will be checked in any case, if the
      * option is enabled.)
      * @param view The View object that triggered the method
@@ -672,7 +775,9 @@ public class WriteTag extends BasicActivity {
         if (mWriteDumpFromEditor) {
             // Write dump directly from the dump editor.
             // (Dump has already been chosen.)
-            checkDumpAndShowSectorChooserDialog(mDumpFromEditor);
+            DumpParser parser = new DumpParser(false);
+            parser.parse(mDumpFromEditor);
+            checkDumpAndShowSectorChooserDialog(parser);
         } else {
             // Show file chooser (chose dump).
             Intent intent = new Intent(this, FileChooser.class);
@@ -689,43 +794,45 @@ public class WriteTag extends BasicActivity {
     }
 
     /**
-     * Read the dump and call {@link #checkDumpAndShowSectorChooserDialog(String[])}.
+     * Read the dump and call {@link #checkDumpAndShowSectorChooserDialog(DumpParser)}.
      * @param pathToDump path and filename of the dump
      * (selected by {@link FileChooser}).
-     * @see #checkDumpAndShowSectorChooserDialog(String[])
+     * @see #checkDumpAndShowSectorChooserDialog(DumpParser)
      */
     private void readDumpFromFile(String pathToDump) {
-        // Read dump.
-        File file = new File(pathToDump);
-        String[] dump = Common.readFileLineByLine(file, false, this);
-        checkDumpAndShowSectorChooserDialog(dump);
+        // Read and parse dump (in one pass).
+        DumpParser parser = new DumpParser(false);
+        parser.parse(new File(pathToDump));
+        checkDumpAndShowSectorChooserDialog(parser);
     }
 
     /**
      * Triggered after the dump was selected (by {@link FileChooser})
-     * and read (by {@link #readDumpFromFile(String)}), this method saves
+     * and parsed (by {@link #readDumpFromFile(String)}), this method saves
      * the data including its position in {@link #mDumpWithPos}.
      * If the "use static Access Condition" option is enabled, all the ACs
      * will be replaced by the static ones. After this it will show a dialog
      * in which the user can choose the sectors he wants
      * to write. When the sectors are chosen, this method calls
      * {@link #createKeyMapForDump()} to create a key map for the present tag.
-     * @param dump Dump selected by {@link FileChooser} or directly
-     * from the {@link DumpEditor} (via an Intent with{@link #EXTRA_DUMP})).
+     * @param parser The parser that parsed the dump selected by
+     * {@link FileChooser} or directly from the {@link DumpEditor}
+     * (via an Intent with{@link #EXTRA_DUMP})).
      * @see KeyMapCreator
      * @see #createKeyMapForDump()
      * @see #checkBlock0(String, boolean)
      */
     @SuppressLint("SetTextI18n")
-    private void checkDumpAndShowSectorChooserDialog(final String[] dump) {
-        int err = Common.isValidDump(dump, false);
-        if (err != 0) {
+    private void checkDumpAndShowSectorChooserDialog(DumpParser parser) {
+        final TagImage image = parser.getImage();
+        if (image == null) {
             // Error.
-            Common.isValidDumpErrorToast(err, this);
+            Common.isValidDumpErrorToast(parser.getError(),
+                    parser.getErrorLine(), this);
             return;
         }
 
-        initDumpWithPosFromDump(dump);
+        initDumpWithPosFromDump(image);
 
         // Create and show sector chooser dialog
         // (let the user select the sectors which will be written).
@@ -783,7 +890,7 @@ public class WriteTag extends BasicActivity {
         dialog.getButton(AlertDialog.BUTTON_POSITIVE).setOnClickListener(
                 v -> {
                     // Re-Init mDumpWithPos in order to remove unwanted sectors.
-                    initDumpWithPosFromDump(dump);
+                    initDumpWithPosFromDump(image);
                     for (CheckBox box : sectorBoxes) {
                         int sector = Integer.parseInt(box.getTag().toString());
                         if (!box.isChecked()) {
@@ -844,40 +951,38 @@ public class WriteTag extends BasicActivity {
 
     /**
      * Initialize {@link #mDumpWithPos} with the data from a dump.
-     * Transform the simple dump array into a structure (mDumpWithPos)
+     * Transform the parsed dump into a structure (mDumpWithPos)
      * where the sector and block information are known additionally.
      * Blocks containing unknown data ("-") are dropped.
-     * @param dump The dump to initialize the mDumpWithPos with.
+     * @param image The parsed dump to initialize the mDumpWithPos with.
      */
-    private void initDumpWithPosFromDump(String[] dump) {
+    private void initDumpWithPosFromDump(TagImage image) {
         mDumpWithPos = new HashMap<>();
-        int sector = 0;
-        int block = 0;
-        // Transform the simple dump array into a structure (mDumpWithPos)
-        // where the sector and block information are known additionally.
-        // Blocks containing unknown data ("-") are dropped.
-        for (int i = 0; i < dump.length; i++) {
-            if (dump[i].startsWith("+")) {
-                String[] tmp = dump[i].split(": ");
-                sector = Integer.parseInt(tmp[tmp.length-1]);
-                block = 0;
-                mDumpWithPos.put(sector, new HashMap<>());
-            } else if (!dump[i].contains("-")) {
+        byte[] staticAC = null;
+        if (mEnableStaticAC.isChecked()) {
+            staticAC = Common.hex2Bytes(mStaticAC.getText().toString());
+        }
+        for (int sector = 0; sector < image.getSectorCount(); sector++) {
+            if (!image.hasSector(sector)) {
+                continue;
+            }
+            HashMap<Integer, byte[]> blocks = new HashMap<>();
+            int blockCount = TagImage.getBlockCountInSector(sector);
+            for (int block = 0; block < blockCount; block++) {
+                // Blocks containing unknown data ("-") are dropped.
+                if (!image.isBlockComplete(sector, block)) {
+                    continue;
+                }
+                byte[] data = image.getBlock(sector, block);
                 // Use static Access Conditions for all sectors?
-                if (mEnableStaticAC.isChecked()
-                        && (i+1 == dump.length || dump[i+1].startsWith("+"))) {
+                if (staticAC != null && block == blockCount - 1) {
                     // This is a Sector Trailer. Replace its ACs
                     // with the static ones.
-                    String newBlock = dump[i].substring(0, 12)
-                            + mStaticAC.getText().toString()
-                            + dump[i].substring(18);
-                    dump[i] = newBlock;
+                    System.arraycopy(staticAC, 0, data, 6, 3);
                 }
-                mDumpWithPos.get(sector).put(block++,
-                        Common.hex2Bytes(dump[i]));
-            } else {
-                block++;
+                blocks.put(block, data);
             }
+            mDumpWithPos.put(sector, blocks);
         }
     }
 
@@ -913,8 +1018,8 @@ public class WriteTag extends BasicActivity {
      * write as much as possible(call {@link #writeDump(HashMap,
      * SparseArray)}).
      * @see MCReader#isWritableOnPositions(HashMap, SparseArray)
-     * @see Common#getOperationRequirements(byte, byte,
-     * byte, Common.Operation, boolean, boolean)
+     * @see AccessConditions#getOperationRequirements(int, int,
+     * Common.Operation)
      * @see #writeDump(HashMap, SparseArray)
      */
     private void checkDumpAgainstTag() {
@@ -1199,7 +1304,9 @@ public class WriteTag extends BasicActivity {
 
     /**
      * This method is triggered by {@link #checkDumpAgainstTag()} and writes a dump
-     * to a tag.
+     * to a tag. If the provisioning mode is enabled, the (checked) write
+     * positions and the key map will be kept to write the dump to more tags
+     * ({@link #startBatchWrite(HashMap, SparseArray, String)}).
      * @param writeOnPos A map within a map (all with type = Integer).
      * The key of the outer map is the sector number and the value is another
      * map with key = block number and value = write information. The write
@@ -1208,6 +1315,7 @@ public class WriteTag extends BasicActivity {
      * Attention: This method does not any checking. The position and write
      * information must be checked by {@link #checkDumpAgainstTag()}.
      * @param keyMap A key map generated by {@link KeyMapCreator}.
+     * @see WritePlan
      */
     private void writeDump(
             final HashMap<Integer, HashMap<Integer, Integer>> writeOnPos,
@@ -1220,6 +1328,15 @@ public class WriteTag extends BasicActivity {
             return;
         }
 
+        // Group the blocks by sector and key (one authentication per group).
+        final WritePlan plan = WritePlan.create(
+                mDumpWithPos, writeOnPos, keyMap);
+        if (plan == null) {
+            Toast.makeText(this, R.string.info_strange_error,
+                    Toast.LENGTH_LONG).show();
+            return;
+        }
+
         // Create reader.
         final MCReader reader = Common.checkForTagAndCreateReader(this);
         if (reader == null) {
@@ -1250,47 +1367,289 @@ public class WriteTag extends BasicActivity {
         // Start writing in new thread.
         final Activity a = this;
         final Handler handler = new Handler(Looper.getMainLooper());
+        final boolean isBatchWrite = mBatchWrite.isChecked();
+        final boolean differential = mDifferentialWrite.isChecked();
+        final boolean verify = mVerifyWrite.isChecked();
+        final String uid = reader.getUidHex();
         new Thread(() -> {
             // Write dump to tag.
-            for (int sector : writeOnPos.keySet()) {
-                byte[][] keys = keyMap.get(sector);
-                for (int block : writeOnPos.get(sector).keySet()) {
-                    // Select key with write privileges.
-                    byte[] writeKey = null;
-                    boolean useAsKeyB = true;
-                    int wi = writeOnPos.get(sector).get(block);
-                    if (wi == 1 || wi == 4) {
-                        writeKey = keys[0]; // Write with key A.
-                        useAsKeyB = false;
-                    } else if (wi == 2 || wi == 5 || wi == 6) {
-                        writeKey = keys[1]; // Write with key B.
-                    }
+            int result = plan.execute(reader, differential, verify);
+            reader.close();
+            warning.cancel();
+            if (result != 0) {
+                // Error. Some error while writing.
+                handler.post(() -> Toast.makeText(a,
+                        R.string.info_write_error,
+                        Toast.LENGTH_LONG).show());
+                return;
+            }
+            // Finished writing.
+            if (isBatchWrite) {
+                // Keep on writing the dump to other tags.
+                handler.post(() -> startBatchWrite(
+                        writeOnPos, keyMap, plan, uid));
+                return;
+            }
+            if (plan.getVerifyErrors().size() != 0
+                    || plan.getUnverified().size() != 0) {
+                // Show the blocks that could not be verified.
+                handler.post(() -> showVerifyIssues(plan));
+                return;
+            }
+            if (differential) {
+                handler.post(() -> Toast.makeText(a, getString(
+                        R.string.info_write_successful_differential,
+                        plan.getWrittenCount(), plan.getSkippedCount()),
+                        Toast.LENGTH_LONG).show());
+            } else {
+                handler.post(() -> Toast.makeText(a, verify
+                        ? R.string.info_write_verified
+                        : R.string.info_write_successful,
+                        Toast.LENGTH_LONG).show());
+            }
+            a.finish();
+        }).start();
+    }
 
-                    // Write block.
-                    int result = reader.writeBlock(sector, block,
-                            mDumpWithPos.get(sector).get(block),
-                            writeKey, useAsKeyB);
-
-                    if (result != 0) {
-                        // Error. Some error while writing.
-                        handler.post(() -> Toast.makeText(a,
-                                R.string.info_write_error,
-                                Toast.LENGTH_LONG).show());
-                        reader.close();
-                        warning.cancel();
-                        return;
+    /**
+     * Show a dialog with all blocks that were written but did not
+     * contain the same data when they were read back (or could not be
+     * read back). The activity will be closed afterwards.
+     * @param plan The executed write plan (with verification).
+     * @see WritePlan#execute(MCReader, boolean, boolean)
+     */
+    private void showVerifyIssues(WritePlan plan) {
+        List<HashMap<String, String>> list = new ArrayList<>();
+        for (int[] pos : plan.getVerifyErrors()) {
+            addToList(list, getString(R.string.text_sector) + ": " + pos[0]
+                    + ", " + getString(R.string.text_block) + ": " + pos[1],
+                    getString(R.string.text_verify_mismatch));
+        }
+        for (int[] pos : plan.getUnverified()) {
+            addToList(list, getString(R.string.text_sector) + ": " + pos[0]
+                    + ", " + getString(R.string.text_block) + ": " + pos[1],
+                    getString(R.string.text_verify_not_readable));
+        }
+        LinearLayout ll = new LinearLayout(this);
+        int pad = Common.dpToPx(5);
+        ll.setPadding(pad, pad, pad, pad);
+        ll.setOrientation(LinearLayout.VERTICAL);
+        TextView textView = new TextView(this);
+        textView.setText(R.string.dialog_verify_issues);
+        textView.setPadding(0,0,0, Common.dpToPx(5));
+        TextViewCompat.setTextAppearance(textView,
+                android.R.style.TextAppearance_Medium);
+        ListView listView = new ListView(this);
+        ll.addView(textView);
+        ll.addView(listView);
+        String[] from = new String[] {"position", "reason"};
+        int[] to = new int[] {android.R.id.text1, android.R.id.text2};
+        ListAdapter adapter = new SimpleAdapter(this, list,
+                android.R.layout.two_line_list_item, from, to);
+        listView.setAdapter(adapter);
+
+        new AlertDialog.Builder(this)
+            .setTitle(R.string.dialog_verify_issues_title)
+            .setIcon(android.R.drawable.ic_dialog_alert)
+            .setView(ll)
+            .setCancelable(false)
+            .setPositiveButton(R.string.action_ok,
+                    (dialog, which) -> finish())
+            .show();
+    }
+
+    /**
+     * Start the provisioning mode after the dump was written to the first
+     * tag. The write positions (checked by {@link #checkDumpAgainstTag()}
+     * only once) and the key map will be used for all following tags
+     * ({@link #batchWriteTag()}). A dialog with the results is shown until
+     * the user stops the provisioning mode.
+     * @param writeOnPos The checked write positions
+     * (see {@link #writeDump(HashMap, SparseArray)}).
+     * @param keyMap The key map of the first tag.
+     * @param plan The write plan for the key map.
+     * @param uid The UID of the first tag.
+     */
+    private void startBatchWrite(
+            HashMap<Integer, HashMap<Integer, Integer>> writeOnPos,
+            SparseArray<byte[][]> keyMap, WritePlan plan, String uid) {
+        mBatchWriteOnPos = writeOnPos;
+        mBatchKeyMap = keyMap;
+        mBatchPlan = plan;
+        // Loaded by the worker thread of batchWriteTag() when needed.
+        mKeyMapCache = null;
+        mBatchWritten = 0;
+        mBatchFailed = 0;
+        mBatchStartTime = SystemClock.elapsedRealtime();
+        mBatchStatus = new TextView(this);
+        int pad = Common.dpToPx(20);
+        mBatchStatus.setPadding(pad, pad, pad, pad);
+        mBatchStatus.setTextSize(18);
+        mBatchDialog = new AlertDialog.Builder(this)
+            .setTitle(R.string.dialog_batch_write_title)
+            .setView(mBatchStatus)
+            .setCancelable(false)
+            .setPositiveButton(R.string.action_stop,
+                    (dialog, which) -> {
+                        mBatchWriteOnPos = null;
+                        mBatchKeyMap = null;
+                        mBatchPlan = null;
+                        finish();
+                    })
+            .create();
+        mBatchDialog.show();
+        String error = null;
+        if (plan.getVerifyErrors().size() != 0) {
+            error = getString(R.string.text_batch_write_verify_error,
+                    plan.getVerifyErrors().size());
+        }
+        batchWriteFinished(uid, error, plan.getWrittenCount(),
+                plan.getSkippedCount());
+    }
+
+    /**
+     * Write the dump to the present tag (provisioning mode). The
+     * write positions will not be checked again. If the key map of the
+     * first tag does not fit, the cached keys of the tag
+     * ({@link KeyMapCache}) will be used. The result is logged by
+     * {@link #batchWriteFinished(String, String, int, int)}.
+     * @see #startBatchWrite(HashMap, SparseArray, WritePlan, String)
+     */
+    private void batchWriteTag() {
+        final MCReader reader = Common.checkForTagAndCreateReader(this);
+        if (reader == null) {
+            return;
+        }
+        mIsBatchWriting = true;
+        final String uid = reader.getUidHex();
+        final HashMap<Integer, HashMap<Integer, Integer>> writeOnPos =
+                mBatchWriteOnPos;
+        final SparseArray<byte[][]> batchKeyMap = mBatchKeyMap;
+        final WritePlan batchPlan = mBatchPlan;
+        final boolean differential = mDifferentialWrite.isChecked();
+        final boolean verify = mVerifyWrite.isChecked();
+        final Handler handler = new Handler(Looper.getMainLooper());
+        new Thread(() -> {
+            String error = null;
+            int written = 0;
+            int skipped = 0;
+            if (reader.getSectorCount() - 1 < Collections.max(
+                    writeOnPos.keySet())) {
+                error = getString(R.string.text_batch_write_tag_too_small);
+            } else {
+                // Use the key map of the first tag (cards of a batch
+                // usually share the keys) or the cached keys of this tag.
+                WritePlan plan = null;
+                if (reader.isKeyMapValid(batchKeyMap)) {
+                    plan = batchPlan;
+                } else {
+                    // Only one tag is written at a time
+                    // (see mIsBatchWriting).
+                    if (mKeyMapCache == null) {
+                        mKeyMapCache = KeyMapCache.load(
+                                Common.getFile(Common.KEY_MAP_CACHE_FILE));
+                    }
+                    KeyMapCache.Entry cached = mKeyMapCache.get(
+                            uid, reader.getSize());
+                    if (cached != null) {
+                        // Null if keys with write privileges are missing.
+                        plan = WritePlan.create(mDumpWithPos, writeOnPos,
+                                cached.getKeyMap());
+                        if (plan != null
+                                && !reader.isKeyMapValid(cached.getKeyMap())) {
+                            plan = null;
+                        }
                     }
                 }
+                if (plan == null) {
+                    error = getString(
+                            R.string.text_batch_write_keys_not_known);
+                } else {
+                    if (plan.execute(reader, differential, verify) != 0) {
+                        error = getString(R.string.text_batch_write_error);
+                    } else if (plan.getVerifyErrors().size() != 0) {
+                        error = getString(
+                                R.string.text_batch_write_verify_error,
+                                plan.getVerifyErrors().size());
+                    }
+                    written = plan.getWrittenCount();
+                    skipped = plan.getSkippedCount();
+                }
             }
-            // Finished writing.
             reader.close();
-            warning.cancel();
-            handler.post(() -> Toast.makeText(a, R.string.info_write_successful,
-                    Toast.LENGTH_LONG).show());
-            a.finish();
+            final String result = error;
+            final int blocksWritten = written;
+            final int blocksSkipped = skipped;
+            handler.post(() -> batchWriteFinished(
+                    uid, result, blocksWritten, blocksSkipped));
         }).start();
     }
 
+    /**
+     * Update the statistics of the provisioning mode and log the result
+     * of a tag to {@link Common#BATCH_WRITE_LOG_FILE} (CSV: date, UID,
+     * result, blocks written, blocks skipped, reason). The reason is
+     * quoted, because it is localized and may contain commas. The log
+     * file is written in the background ({@link #mBatchLogWriter}).
+     * @param uid The UID of the tag.
+     * @param error The reason why the tag could not be written or null if
+     * the dump was written successfully.
+     * @param written Number of blocks written.
+     * @param skipped Number of blocks skipped (differential write).
+     */
+    private void batchWriteFinished(String uid, String error,
+            int written, int skipped) {
+        mIsBatchWriting = false;
+        String line;
+        if (error == null) {
+            mBatchWritten++;
+            line = getString(R.string.text_batch_write_ok, uid,
+                    written, skipped);
+        } else {
+            mBatchFailed++;
+            line = getString(R.string.text_batch_write_failed, uid, error);
+        }
+        double tagsPerMinute = 0;
+        long elapsed = SystemClock.elapsedRealtime() - mBatchStartTime;
+        if (elapsed > 0) {
+            tagsPerMinute = (mBatchWritten + mBatchFailed) * 60000.0 / elapsed;
+        }
+        if (mBatchStatus != null) {
+            mBatchStatus.setText(getString(R.string.dialog_batch_write)
+                    + "\n\n" + getString(R.string.text_batch_write_stats,
+                    mBatchWritten, mBatchFailed, tagsPerMinute)
+                    + "\n" + line);
+        }
+
+        // Log to CSV file.
+        GregorianCalendar calendar = new GregorianCalendar();
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss",
+                Locale.getDefault());
+        fmt.setCalendar(calendar);
+        String dateFormatted = fmt.format(calendar.getTime());
+        final String entry = dateFormatted + "," + uid + ","
+                + ((error == null) ? "OK" : "FAILED") + "," + written + ","
+                + skipped + "," + ((error == null) ? "" : quoteCsv(error));
+        mBatchLogWriter.execute(() -> {
+            File log = Common.getFile(Common.BATCH_WRITE_LOG_FILE);
+            boolean hasHeader = log.exists();
+            String[] logEntry = hasHeader ? new String[] { entry }
+                    : new String[] { "date,uid,result,blocks_written,"
+                            + "blocks_skipped,reason", entry };
+            Common.saveFile(log, logEntry, hasHeader);
+        });
+    }
+
+    /**
+     * Quote a CSV field (RFC 4180): enclose it in double quotes and
+     * escape double quotes by doubling them.
+     * @param field The field.
+     * @return The quoted field.
+     */
+    private static String quoteCsv(String field) {
+        return "\"" + field.replace("\"", "\"\"") + "\"";
+    }
+
     /**
      * Open the clone UID tool.
      * @param view The View object that triggered the method
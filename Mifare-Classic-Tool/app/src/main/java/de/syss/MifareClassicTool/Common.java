@@ -61,13 +61,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.GregorianCalendar;
-import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import de.syss.MifareClassicTool.Activities.IActivityThatReactsToSave;
 
@@ -108,6 +105,13 @@ public class Common extends Application {
      */
     public static final String TMP_DIR = "tmp";
 
+    /**
+     * The directory name of the folder where the compiled key
+     * dictionaries are stored (see {@link KeyDictionary}).
+     * (sub directory of {@link #HOME_DIR}.)
+     */
+    public static final String KEY_DICTS_DIR = "key-dictionaries";
+
     /**
      * This file contains some standard MIFARE keys.
      * <ul>
@@ -129,9 +133,52 @@ public class Common extends Application {
 
     /**
      * Log file with UIDs which have been discovered in the past.
+     * This is the old format of the UID log. It will be moved into
+     * {@link #UID_LOG_DIR}. It is also the name of the exported log.
+     * @see UidLog
      */
     public static final String UID_LOG_FILE = "uid-log-file.txt";
 
+    /**
+     * The directory name of the UID log (segments and index).
+     * (sub directory of {@link #HOME_DIR}.)
+     * @see UidLog
+     */
+    public static final String UID_LOG_DIR = "uid-log";
+
+    /**
+     * File with the persistent key hit statistics of the key mapping.
+     * @see KeyStatistics
+     */
+    public static final String KEY_STATS_FILE = "key-statistics.bin";
+
+    /**
+     * File with the cached key maps of known tags (by UID).
+     * @see KeyMapCache
+     */
+    public static final String KEY_MAP_CACHE_FILE = "key-map-cache.bin";
+
+    /**
+     * File with the index of the dump files (UID, hash, tags, etc.).
+     * @see DumpRepository
+     */
+    public static final String DUMP_INDEX_FILE = "dump-index.bin";
+
+    /**
+     * File with the pattern search index of the block data of the
+     * dump files.
+     * @see DumpPatternIndex
+     */
+    public static final String DUMP_PATTERN_INDEX_FILE =
+            "dump-pattern-index.bin";
+
+    /**
+     * Log file (CSV) with the results of the provisioning mode
+     * (writing one dump to many tags).
+     * @see de.syss.MifareClassicTool.Activities.WriteTag
+     */
+    public static final String BATCH_WRITE_LOG_FILE = "batch-write-log.csv";
+
     /**
      * Possible operations the on a MIFARE Classic Tag.
      */
@@ -180,6 +227,34 @@ public class Common extends Application {
      */
     private static int mKeyMapTo = -1;
 
+    /**
+     * Global storage for the tag data read while the
+     * {@link de.syss.MifareClassicTool.Activities.KeyMapCreator} created
+     * the key map (if reading while mapping was requested).
+     * @see MCReader#getMappedDump()
+     */
+    private static TagImage mMappedDump = null;
+
+    /**
+     * The index of the dump files. It is loaded on first use
+     * (see {@link #getDumpRepository()}).
+     */
+    private static volatile DumpRepository mDumpRepository = null;
+
+    /**
+     * Background thread for updating the index of the dump files after
+     * a file was saved or deleted (see {@link #updateDumpRepository(File)}).
+     * One thread keeps the updates in order.
+     */
+    private static final ExecutorService mDumpRepositoryExecutor =
+            Executors.newSingleThreadExecutor();
+
+    /**
+     * The log of the UIDs of all detected tags. It is opened on first use
+     * (see {@link #getUidLog()}).
+     */
+    private static UidLog mUidLog = null;
+
     /**
      * The version code from the Android manifest.
      */
@@ -577,6 +652,9 @@ public class Common extends Application {
         } else {
             error = true;
         }
+        if (!error) {
+            updateDumpRepository(file);
+        }
         return !error;
     }
 
@@ -679,24 +757,31 @@ public class Common extends Application {
     }
 
     /**
-     * Log the UID to a file. This is called by {@link #treatAsNewTag(Intent, Context)}
+     * Log the UID. This is called by {@link #treatAsNewTag(Intent, Context)}
      * and needed for the {@link de.syss.MifareClassicTool.Activities.UidLogTool}.
-     * @param uid The UID to append to the log file.
-     * @see #UID_LOG_FILE
+     * The entry is written in the background (see {@link UidLog}).
+     * @param uid The UID to append to the log.
+     * @see #getUidLog()
      * @see #treatAsNewTag(Intent, Context)
      * @see de.syss.MifareClassicTool.Activities.UidLogTool
      */
     public static void logUid(String uid) {
-        File log = new File(mAppContext.getFilesDir(),
-                HOME_DIR + File.separator + UID_LOG_FILE);
-        GregorianCalendar calendar = new GregorianCalendar();
-        SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss",
-                Locale.getDefault());
-        fmt.setCalendar(calendar);
-        String dateFormatted = fmt.format(calendar.getTime());
-        String[] logEntry = new String[1];
-        logEntry[0] = dateFormatted + ": " + uid;
-        saveFile(log, logEntry, true);
+        getUidLog().log(uid);
+    }
+
+    /**
+     * Get the UID log. On first use, it will be opened from
+     * {@link #UID_LOG_DIR} (and an old {@link #UID_LOG_FILE} will be
+     * moved into it) by its background thread, so this does not
+     * read files on the calling thread.
+     * @return The UID log.
+     */
+    public static synchronized UidLog getUidLog() {
+        if (mUidLog == null) {
+            mUidLog = new UidLog(getFile(UID_LOG_DIR),
+                    getFile(UID_LOG_FILE));
+        }
+        return mUidLog;
     }
 
     /**
@@ -1333,8 +1418,7 @@ public class Common extends Application {
      * @return True if string is hex. False otherwise.
      */
     public static boolean isHex(String hex, Context context) {
-        if (!(hex != null && hex.length() % 2 == 0
-                && hex.matches("[0-9A-Fa-f]+"))) {
+        if (!HexCodec.isHex(hex)) {
             // Error, not hex.
             Toast.makeText(context, R.string.info_not_hex_data,
                     Toast.LENGTH_LONG).show();
@@ -1386,64 +1470,12 @@ public class Common extends Application {
      * (the dump editor->save->append function was used)</li>
      * <li>6 - There are no lines (lines == null or len(lines) == 0).</li>
      * </ul>
+     * @see DumpParser
      */
     public static int isValidDump(String[] lines, boolean ignoreAsterisk) {
-        ArrayList<Integer> knownSectors = new ArrayList<>();
-        int blocksSinceLastSectorHeader = 4;
-        boolean is16BlockSector = false;
-        if (lines == null || lines.length == 0) {
-            // There are no lines.
-            return 6;
-        }
-        for(String line : lines) {
-            if ((!is16BlockSector && blocksSinceLastSectorHeader == 4)
-                    || (is16BlockSector && blocksSinceLastSectorHeader == 16)) {
-                // A sector header is expected.
-                if (!line.matches("^\\+Sector: [0-9]{1,2}$")) {
-                    // Not a valid sector length or not a valid sector header.
-                    return 1;
-                }
-                int sector;
-                try {
-                    sector = Integer.parseInt(line.split(": ")[1]);
-                } catch (Exception ex) {
-                    // Not a valid sector header.
-                    // Should not occur due to the previous check (regex).
-                    return 1;
-                }
-                if (sector < 0 || sector > 39) {
-                    // Sector out of range.
-                    return 4;
-                }
-                if (knownSectors.contains(sector)) {
-                    // Two times the same sector number (index).
-                    // Maybe this is a file containing multiple dumps
-                    // (the dump editor->save->append function was used).
-                    return 5;
-                }
-                knownSectors.add(sector);
-                is16BlockSector = (sector >= 32);
-                blocksSinceLastSectorHeader = 0;
-                continue;
-            }
-            if (line.startsWith("*") && ignoreAsterisk) {
-                // Ignore line and move to the next sector.
-                // (The line was a "No keys found or dead sector" message.)
-                is16BlockSector = false;
-                blocksSinceLastSectorHeader = 4;
-                continue;
-            }
-            if (!line.matches("[0-9A-Fa-f-]+")) {
-                // Not pure hex (or NO_DATA).
-                return 2;
-            }
-            if (line.length() != 32) {
-                // Not 32 chars per line.
-                return 3;
-            }
-            blocksSinceLastSectorHeader++;
-        }
-        return 0;
+        DumpParser parser = new DumpParser(ignoreAsterisk);
+        parser.parse(lines);
+        return parser.getError();
     }
 
     /**
@@ -1457,46 +1489,22 @@ public class Common extends Application {
      * <li>2 - At least one key has invalid characters (not hex).</li>
      * <li>3 - At least one key has not 6 byte (12 chars).</li>
      * </ul>
+     * @see KeyFileParser
      */
     public static int isValidKeyFile(String[] lines) {
-        boolean keyFound = false;
         if (lines == null || lines.length == 0) {
             return 1;
         }
+        KeyFileParser parser = new KeyFileParser(false);
         for (String line : lines) {
-            // Remove comments.
-            if (line.startsWith("#")) {
-                continue;
-            }
-            line = line.split("#")[0];
-
-            // Ignore leading/tailing whitespaces.
-            line = line.trim();
-
-            // Ignore empty lines.
-            if (line.equals("")) {
-                continue;
-            }
-
-            // Is hex?
-            if (!line.matches("[0-9A-Fa-f]+")) {
-                return 2;
-            }
-
-            // Is 6 byte long (12 chars)?
-            if (line.length() != 12) {
-                return 3;
+            parser.parseLine(line);
+            if (parser.getErrorLine() != 0) {
+                break;
             }
-
-            // At least one key found.
-            keyFound = true;
-        }
-
-        if (!keyFound) {
-            // No key found.
-            return 1;
+            // Only the validation is needed, not the keys.
+            parser.clearKeys();
         }
-        return 0;
+        return parser.getError();
     }
 
     /**
@@ -1506,32 +1514,49 @@ public class Common extends Application {
      */
     public static void isValidDumpErrorToast(int errorCode,
             Context context) {
+        isValidDumpErrorToast(errorCode, 0, context);
+    }
+
+    /**
+     * Show a Toast message with error information according to
+     * {@link DumpParser#getError()} including the line of the error.
+     * @param errorCode The error (see {@link DumpParser#getError()}).
+     * @param line The line of the error (see
+     * {@link DumpParser#getErrorLine()}). 0 if unknown.
+     * @param context The Context in which the Toast will be shown.
+     * @see DumpParser
+     */
+    public static void isValidDumpErrorToast(int errorCode, int line,
+            Context context) {
+        int message;
         switch (errorCode) {
         case 1:
-            Toast.makeText(context, R.string.info_valid_dump_not_4_or_16_lines,
-                    Toast.LENGTH_LONG).show();
+            message = R.string.info_valid_dump_not_4_or_16_lines;
             break;
         case 2:
-            Toast.makeText(context, R.string.info_valid_dump_not_hex,
-                    Toast.LENGTH_LONG).show();
+            message = R.string.info_valid_dump_not_hex;
             break;
         case 3:
-            Toast.makeText(context, R.string.info_valid_dump_not_16_bytes,
-                    Toast.LENGTH_LONG).show();
+            message = R.string.info_valid_dump_not_16_bytes;
             break;
         case 4:
-            Toast.makeText(context, R.string.info_valid_dump_sector_range,
-                    Toast.LENGTH_LONG).show();
+            message = R.string.info_valid_dump_sector_range;
             break;
         case 5:
-            Toast.makeText(context, R.string.info_valid_dump_double_sector,
-                    Toast.LENGTH_LONG).show();
+            message = R.string.info_valid_dump_double_sector;
             break;
         case 6:
-            Toast.makeText(context, R.string.info_valid_dump_empty_dump,
-                    Toast.LENGTH_LONG).show();
+            message = R.string.info_valid_dump_empty_dump;
             break;
+        default:
+            return;
         }
+        String text = context.getString(message);
+        if (line > 0) {
+            text = context.getString(R.string.info_valid_dump_error_line,
+                    text, line);
+        }
+        Toast.makeText(context, text, Toast.LENGTH_LONG).show();
     }
 
     /**
@@ -1723,88 +1748,44 @@ public class Common extends Application {
 
     /**
      * Convert a hexadecimal string to a decimal string.
-     * Uses BigInteger only if the hexadecimal string is longer than 7 bytes.
      * @param hex The hexadecimal value to convert.
      * @return String representation of the decimal value of hexString.
+     * Null if hex is not a hex string.
+     * @see HexCodec#toDecimal(CharSequence)
      */
     public static String hex2Dec(String hex) {
-        if (!(hex != null && hex.length() % 2 == 0
-                && hex.matches("[0-9A-Fa-f]+"))) {
-            return null;
-        }
-        String ret;
-        if (hex == null || hex.isEmpty()) {
-            ret = "0";
-        } else if (hex.length() <= 14) {
-            ret = Long.toString(Long.parseLong(hex, 16));
-        } else {
-            BigInteger bigInteger = new BigInteger(hex , 16);
-            ret = bigInteger.toString();
-        }
-        return ret;
+        return HexCodec.toDecimal(hex);
     }
 
     /**
      * Convert an array of bytes into a string of hex values.
      * @param bytes Bytes to convert.
      * @return The bytes in hex string format.
+     * @see HexCodec#encode(byte[])
      */
     public static String bytes2Hex(byte[] bytes) {
-        StringBuilder ret = new StringBuilder();
-        if (bytes != null) {
-            for (Byte b : bytes) {
-                ret.append(String.format("%02X", b.intValue() & 0xFF));
-            }
-        }
-        return ret.toString();
+        return HexCodec.encode(bytes);
     }
 
     /**
      * Convert a string of hex data into a byte array.
-     * Original author is: Dave L. (http://stackoverflow.com/a/140861).
      * @param hex The hex string to convert
      * @return An array of bytes with the values of the string.
+     * Null if hex is not a hex string.
+     * @see HexCodec#decode(CharSequence)
      */
     public static byte[] hex2Bytes(String hex) {
-        if (!(hex != null && hex.length() % 2 == 0
-                && hex.matches("[0-9A-Fa-f]+"))) {
-            return null;
-        }
-        int len = hex.length();
-        byte[] data = new byte[len / 2];
-        try {
-            for (int i = 0; i < len; i += 2) {
-                data[i / 2] = (byte) ((Character.digit(hex.charAt(i), 16) << 4)
-                                     + Character.digit(hex.charAt(i+1), 16));
-            }
-        } catch (Exception e) {
-            Log.d(LOG_TAG, "Argument(s) for hexStringToByteArray(String s)"
-                    + "was not a hex string");
-        }
-        return data;
+        return HexCodec.decode(hex);
     }
 
     /**
      * Convert a hex string to ASCII string.
      * @param hex Hex string to convert.
      * @return Converted ASCII string. Null on error.
+     * @see HexCodec#toAscii(CharSequence)
      */
     public static String hex2Ascii(String hex) {
-        if (!(hex != null && hex.length() % 2 == 0
-                && hex.matches("[0-9A-Fa-f]+"))) {
-            return null;
-        }
-        byte[] bytes = hex2Bytes(hex);
-        String ret;
-        // Replace non printable ASCII with ".".
-        for(int i = 0; i < bytes.length; i++) {
-            if (bytes[i] < (byte)0x20 || bytes[i] == (byte)0x7F) {
-                bytes[i] = (byte)0x2E;
-            }
-        }
-        // Hex to ASCII.
-        ret = new String(bytes, StandardCharsets.US_ASCII);
-        return ret;
+        return HexCodec.toAscii(hex);
     }
 
     /**
@@ -1816,10 +1797,14 @@ public class Common extends Application {
         if (!(ascii != null && !ascii.equals(""))) {
             return null;
         }
-        char[] chars = ascii.toCharArray();
-        StringBuilder hex = new StringBuilder();
-        for (char aChar : chars) {
-            hex.append(String.format("%02X", (int) aChar));
+        StringBuilder hex = new StringBuilder(ascii.length() * 2);
+        for (int i = 0; i < ascii.length(); i++) {
+            char c = ascii.charAt(i);
+            if (c > 0xFF) {
+                hex.append(Integer.toHexString(c).toUpperCase());
+            } else {
+                HexCodec.append(hex, c);
+            }
         }
         return hex.toString();
     }
@@ -1828,36 +1813,20 @@ public class Common extends Application {
      * Convert a hex string to a binary string (with leading zeros).
      * @param hex Hex string to convert.
      * @return Converted binary string.
+     * @see HexCodec#toBinary(CharSequence)
      */
     public static String hex2Bin(String hex) {
-        if (!(hex != null && hex.length() % 2 == 0
-                && hex.matches("[0-9A-Fa-f]+"))) {
-            return null;
-        }
-        String bin = new BigInteger(hex, 16).toString(2);
-        // Pad left with zeros (have not found a better way...).
-        if(bin.length() < hex.length() * 4){
-            int diff = hex.length() * 4 - bin.length();
-            StringBuilder pad = new StringBuilder();
-            for(int i = 0; i < diff; i++){
-                pad.append("0");
-            }
-            pad.append(bin);
-            bin = pad.toString();
-        }
-        return bin;
+        return HexCodec.toBinary(hex);
     }
 
+    /**
+     * Convert a binary string to a hex string (with leading zeros).
+     * @param bin Binary string to convert (multiple of 8 chars).
+     * @return Converted hex string. Null if bin is not a binary string.
+     * @see HexCodec#fromBinary(CharSequence)
+     */
     public static String bin2Hex(String bin) {
-        if (!(bin != null && bin.length() % 8 == 0
-                && bin.matches("[0-1]+"))) {
-            return null;
-        }
-        String hex = new BigInteger(bin, 2).toString(16);
-        if (hex.length() % 2 != 0) {
-            hex = "0" + hex;
-        }
-        return hex;
+        return HexCodec.fromBinary(bin);
     }
 
     /**
@@ -2064,6 +2033,64 @@ public class Common extends Application {
         mKeyMap = value;
     }
 
+    /**
+     * Get the tag data read while creating the key map.
+     * @return The tag data (see {@link MCReader#getMappedDump()}) or null.
+     */
+    public static TagImage getMappedDump() {
+        return mMappedDump;
+    }
+
+    /**
+     * Get the index of the dump files. On first use, it will be loaded
+     * from {@link #DUMP_INDEX_FILE}. Call {@link DumpRepository#sync()}
+     * to bring it up to date with the dump files. This reads files and
+     * should therefore not be called on the UI thread.
+     * @return The index of the dump files.
+     */
+    public static synchronized DumpRepository getDumpRepository() {
+        if (mDumpRepository == null) {
+            mDumpRepository = DumpRepository.load(getFile(DUMP_INDEX_FILE),
+                    getFile(DUMPS_DIR));
+        }
+        return mDumpRepository;
+    }
+
+    /**
+     * Get the pattern index of the dump files (see
+     * {@link DumpRepository#getPatternIndex(File)}). On first use, it
+     * will be loaded from {@link #DUMP_PATTERN_INDEX_FILE}. This should
+     * not be called on the UI thread.
+     * @return The pattern index of the dump files.
+     */
+    public static DumpPatternIndex getDumpPatternIndex() {
+        return getDumpRepository().getPatternIndex(
+                getFile(DUMP_PATTERN_INDEX_FILE));
+    }
+
+    /**
+     * Update the index of the dump files after a file was saved or deleted
+     * (if the index is loaded, otherwise the next
+     * {@link DumpRepository#sync()} will detect the change).
+     * Files outside of {@link #DUMPS_DIR} are ignored. The file is
+     * parsed in the background, so this can be called on the UI thread.
+     * @param file The saved or deleted file.
+     */
+    public static void updateDumpRepository(final File file) {
+        final DumpRepository repo = mDumpRepository;
+        if (repo != null) {
+            mDumpRepositoryExecutor.execute(() -> repo.update(file));
+        }
+    }
+
+    /**
+     * Set the tag data read while creating the key map.
+     * @param value The tag data (see {@link MCReader#getMappedDump()}).
+     */
+    public static void setMappedDump(TagImage value) {
+        mMappedDump = value;
+    }
+
     /**
      * Set the compnent name of a new pending activity.
      * @param pendingActivity The new pending activities component name.
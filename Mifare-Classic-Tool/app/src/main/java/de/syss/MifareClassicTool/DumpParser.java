@@ -0,0 +1,411 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A single pass parser for dumps in the MCT format (.mct files). It reads
+ * the dump from a {@link Reader}, a file, a byte buffer or already split
+ * lines, checks it (like {@link Common#isValidDump(String[], boolean)})
+ * and writes the blocks directly into a {@link TagImage}. No regular
+ * expressions or intermediate strings are used. Parsing stops at the
+ * first error, which is reported with its cause (see {@link #getError()})
+ * and line number (see {@link #getErrorLine()}).<br /><br />
+ * When reading from a {@link Reader}, a file or a byte buffer, the input
+ * is treated like {@link Common#readFileLineByLine(File, boolean,
+ * android.content.Context)} does it: Leading/tailing whitespaces,
+ * comments (starting with "#") and empty lines are ignored.
+ * Line numbers always refer to the input (including ignored lines).
+ * @author agent
+ */
+public class DumpParser {
+
+    private static final String LOG_TAG = DumpParser.class.getSimpleName();
+    private static final String SECTOR_HEADER = "+Sector: ";
+    /**
+     * The longest line that is stored. All valid lines are shorter
+     * (block: 32 chars, header: 11 chars). For longer lines only the
+     * length and whether they contain invalid chars is tracked.
+     */
+    private static final int MAX_LINE_LENGTH = 64;
+
+    private final boolean mIgnoreAsterisk;
+    private final char[] mLine = new char[MAX_LINE_LENGTH];
+    private int mLineLength;
+    private boolean mLineHasInvalidChars;
+    private int mLineNumber;
+    private int mSpaces;
+    private boolean mInComment;
+    private boolean mLastWasCR;
+
+    private TagImage mImage;
+    private long mKnownSectors;
+    private final int[] mSectorOrder = new int[TagImage.MAX_SECTOR_COUNT];
+    private int mSectorOrderLength;
+    private int mMaxSector;
+    private int mSector;
+    private int mBlock;
+    private int mBlockCount;
+    private int mError;
+    private int mErrorLine;
+
+    /**
+     * Create a new parser.
+     * @param ignoreAsterisk Ignore lines starting with "*" and move on
+     * to the next sector (header). These lines are written for sectors
+     * that could not be read ("No keys found or dead sector").
+     */
+    public DumpParser(boolean ignoreAsterisk) {
+        mIgnoreAsterisk = ignoreAsterisk;
+    }
+
+    /**
+     * Parse a dump from a reader. The reader will not be closed.
+     * @param reader The reader.
+     * @return True if the dump is valid. False otherwise
+     * (see {@link #getError()}).
+     * @throws IOException If reading failed.
+     */
+    public boolean parse(Reader reader) throws IOException {
+        reset();
+        char[] buffer = new char[8192];
+        int len;
+        while ((len = reader.read(buffer)) != -1) {
+            for (int i = 0; i < len; i++) {
+                if (!nextChar(buffer[i])) {
+                    return false;
+                }
+            }
+        }
+        return finish();
+    }
+
+    /**
+     * Parse a dump file.
+     * @param file The dump file.
+     * @return True if the dump is valid. False otherwise
+     * (see {@link #getError()}). If the file could not be read,
+     * the error is 6 (empty dump).
+     */
+    public boolean parse(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            return parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error while reading dump file.", e);
+            mImage = null;
+            mError = 6;
+            mErrorLine = 0;
+            return false;
+        }
+    }
+
+    /**
+     * Parse a dump from a byte buffer (ASCII).
+     * @param data The buffer.
+     * @param offset The index of the first byte of the dump.
+     * @param length The length of the dump in bytes.
+     * @return True if the dump is valid. False otherwise
+     * (see {@link #getError()}).
+     */
+    public boolean parse(byte[] data, int offset, int length) {
+        reset();
+        for (int i = offset; i < offset + length; i++) {
+            if (!nextChar((char) (data[i] & 0xFF))) {
+                return false;
+            }
+        }
+        return finish();
+    }
+
+    /**
+     * Parse a dump that is already split into lines (without comments,
+     * e.g. read by {@link Common#readFileLineByLine(File, boolean,
+     * android.content.Context)}). Unlike the other parse functions, empty
+     * lines and comments are not ignored (they are errors).
+     * @param lines The lines of the dump.
+     * @return True if the dump is valid. False otherwise
+     * (see {@link #getError()}).
+     */
+    public boolean parse(String[] lines) {
+        reset();
+        if (lines == null) {
+            return finish();
+        }
+        for (String line : lines) {
+            mLineNumber++;
+            mLineLength = line.length();
+            mLineHasInvalidChars = false;
+            int stored = Math.min(mLineLength, MAX_LINE_LENGTH);
+            line.getChars(0, stored, mLine, 0);
+            for (int i = stored; i < mLineLength; i++) {
+                checkChar(line.charAt(i));
+            }
+            if (!processLine()) {
+                return false;
+            }
+            startLine();
+        }
+        return finish();
+    }
+
+    /**
+     * Get the result of the last parse call.
+     * @return The image with all sectors of the dump (sectors marked with
+     * "*" are not part of the image, blocks containing unknown data are
+     * not valid). The sector count is the highest sector of the dump plus
+     * one. Null if the dump was not valid.
+     */
+    public TagImage getImage() {
+        return mImage;
+    }
+
+    /**
+     * Get the sectors of the last parse call in the order of their headers
+     * in the dump. Unlike {@link #getImage()}, this includes the sectors
+     * marked with "*" (they are not part of the image).
+     * @return The sector numbers.
+     */
+    public int[] getSectorOrder() {
+        return Arrays.copyOf(mSectorOrder, mSectorOrderLength);
+    }
+
+    /**
+     * Get the error of the last parse call.
+     * @return <ul>
+     * <li>0 - Everything is (most likely) O.K.</li>
+     * <li>1 - Found a sector that has not 4 or 16 blocks.</li>
+     * <li>2 - Found a block that has invalid characters (not hex or "-" as
+     * marker for no key/no data).</li>
+     * <li>3 - Found a block that has not 16 bytes (32 chars).</li>
+     * <li>4 - A sector index is out of range.</li>
+     * <li>5 - Found two times the same sector number (index).
+     * Maybe this is a file containing multiple dumps
+     * (the dump editor->save->append function was used)</li>
+     * <li>6 - There are no lines (or the file could not be read).</li>
+     * </ul>
+     * @see Common#isValidDump(String[], boolean)
+     * @see Common#isValidDumpErrorToast(int, int, android.content.Context)
+     */
+    public int getError() {
+        return mError;
+    }
+
+    /**
+     * Get the line of the error of the last parse call.
+     * @return The line number (starting with 1) or 0 if there was no
+     * error or the error is not related to a line.
+     */
+    public int getErrorLine() {
+        return mErrorLine;
+    }
+
+    private void reset() {
+        mImage = new TagImage(TagImage.MAX_SECTOR_COUNT);
+        mKnownSectors = 0;
+        mSectorOrderLength = 0;
+        mMaxSector = -1;
+        mSector = -1;
+        mBlock = 0;
+        mBlockCount = 0;
+        mError = 0;
+        mErrorLine = 0;
+        mLineNumber = 0;
+        startLine();
+        mLastWasCR = false;
+    }
+
+    private void startLine() {
+        mLineLength = 0;
+        mLineHasInvalidChars = false;
+        mSpaces = 0;
+        mInComment = false;
+    }
+
+    /**
+     * Process the next char of a stream (reader or byte buffer).
+     * @param c The char.
+     * @return False if there was an error.
+     */
+    private boolean nextChar(char c) {
+        if (c == '\n' && mLastWasCR) {
+            // Second part of "\r\n".
+            mLastWasCR = false;
+            return true;
+        }
+        mLastWasCR = c == '\r';
+        if (c == '\n' || c == '\r') {
+            return endOfLine();
+        }
+        if (mInComment) {
+            return true;
+        }
+        if (c == '#') {
+            mInComment = true;
+        } else if (c <= ' ') {
+            // Whitespace. Only keep it if there is more content (trim).
+            if (mLineLength > 0) {
+                mSpaces++;
+            }
+        } else {
+            for (; mSpaces > 0; mSpaces--) {
+                append(' ');
+            }
+            append(c);
+        }
+        return true;
+    }
+
+    private void append(char c) {
+        if (mLineLength < MAX_LINE_LENGTH) {
+            mLine[mLineLength] = c;
+        } else {
+            checkChar(c);
+        }
+        mLineLength++;
+    }
+
+    /**
+     * Mark the current line as invalid if the char is not a hex digit
+     * and not "-" (unknown data).
+     * @param c The char.
+     */
+    private void checkChar(char c) {
+        if (c != '-' && HexCodec.digit(c) == -1) {
+            mLineHasInvalidChars = true;
+        }
+    }
+
+    private boolean endOfLine() {
+        mLineNumber++;
+        boolean ret = mLineLength == 0 || processLine();
+        startLine();
+        return ret;
+    }
+
+    private boolean finish() {
+        if (mLineLength > 0 || mInComment) {
+            // Last line without line break.
+            if (!endOfLine()) {
+                return false;
+            }
+        }
+        if (mMaxSector == -1) {
+            return error(6, 0);
+        }
+        if (mMaxSector + 1 < TagImage.MAX_SECTOR_COUNT) {
+            mImage = mImage.copy(mMaxSector + 1);
+        }
+        return true;
+    }
+
+    /**
+     * Check a (trimmed) line and write its data to the image.
+     * @return False if there was an error.
+     */
+    private boolean processLine() {
+        if (mBlock == mBlockCount) {
+            // A sector header is expected.
+            int sector = parseSectorHeader();
+            if (sector == -1) {
+                // Not a valid sector length or not a valid sector header.
+                return error(1, mLineNumber);
+            }
+            if (sector >= TagImage.MAX_SECTOR_COUNT) {
+                // Sector out of range.
+                return error(4, mLineNumber);
+            }
+            if ((mKnownSectors & (1L << sector)) != 0) {
+                // Two times the same sector number (index).
+                // Maybe this is a file containing multiple dumps
+                // (the dump editor->save->append function was used).
+                return error(5, mLineNumber);
+            }
+            mKnownSectors |= 1L << sector;
+            mSectorOrder[mSectorOrderLength++] = sector;
+            mMaxSector = Math.max(mMaxSector, sector);
+            mSector = sector;
+            mBlock = 0;
+            mBlockCount = TagImage.getBlockCountInSector(sector);
+            return true;
+        }
+        if (mIgnoreAsterisk && mLineLength > 0 && mLine[0] == '*') {
+            // Ignore line and move to the next sector.
+            // (The line was a "No keys found or dead sector" message.)
+            mBlock = mBlockCount;
+            return true;
+        }
+        int stored = Math.min(mLineLength, MAX_LINE_LENGTH);
+        for (int i = 0; i < stored; i++) {
+            checkChar(mLine[i]);
+        }
+        if (mLineLength == 0 || mLineHasInvalidChars) {
+            // Not pure hex (or NO_DATA).
+            return error(2, mLineNumber);
+        }
+        if (mLineLength != 32) {
+            // Not 32 chars per line.
+            return error(3, mLineNumber);
+        }
+        mImage.setBlockHex(mSector, mBlock++, mLine, 0);
+        return true;
+    }
+
+    /**
+     * Parse a sector header ("+Sector: " followed by 1 or 2 digits).
+     * @return The sector number or -1 if the line is not
+     * a sector header.
+     */
+    private int parseSectorHeader() {
+        int prefix = SECTOR_HEADER.length();
+        if (mLineLength <= prefix || mLineLength > prefix + 2) {
+            return -1;
+        }
+        for (int i = 0; i < prefix; i++) {
+            if (mLine[i] != SECTOR_HEADER.charAt(i)) {
+                return -1;
+            }
+        }
+        int sector = 0;
+        for (int i = prefix; i < mLineLength; i++) {
+            char c = mLine[i];
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            sector = sector * 10 + (c - '0');
+        }
+        return sector;
+    }
+
+    private boolean error(int error, int line) {
+        mImage = null;
+        mError = error;
+        mErrorLine = line;
+        return false;
+    }
+}
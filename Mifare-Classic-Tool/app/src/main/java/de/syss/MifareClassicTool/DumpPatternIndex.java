@@ -0,0 +1,759 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A searchable index of the block data of all dump files (see
+ * {@link DumpRepository#getPatternIndex(File)}). It is used to find the
+ * dumps that contain a hex pattern (e.g. a site code, a key or a value
+ * block counter), optionally only at a given sector/block.<br /><br />
+ * Blocks are stored only once (most blocks, like empty blocks or default
+ * sector trailers, are the same in many dumps). Each dump is a list of
+ * references to these unique blocks. Unknown bytes (e.g. unknown keys)
+ * are stored as masked out. A trigram (3 byte) inverted index over the
+ * unique blocks narrows a search down to the blocks that contain all
+ * fully known trigrams of the pattern. Only these candidates are
+ * compared with the pattern. Patterns without 3 consecutive fully known
+ * bytes are compared with all unique blocks.<br />
+ * The trigram index is not saved. It is rebuilt when needed (after
+ * loading or if many blocks were added since the last build). Blocks
+ * added since then are always compared.<br /><br />
+ * File format (big endian): magic "MCPI", version (int), block count
+ * (int) and per block: data (16 bytes), known byte mask (short, bit 0 =
+ * byte 0), dump count (int) and per dump: file name (UTF), file length
+ * (long), last modified (long, millis), block count (int) and the
+ * references (int each, -1 = unknown block).
+ * @author agent
+ */
+public class DumpPatternIndex {
+
+    private static final String LOG_TAG =
+            DumpPatternIndex.class.getSimpleName();
+    private static final int MAGIC = 0x4D435049; // "MCPI"
+    private static final int VERSION = 1;
+    private static final int BLOCK_SIZE = TagImage.BLOCK_SIZE;
+    /**
+     * Number of blocks that might be added before the trigram index
+     * gets rebuilt.
+     */
+    private static final int MAX_UNINDEXED_BLOCKS = 4096;
+
+    private final File mFile;
+    private final HashMap<String, Dump> mDumps = new HashMap<>();
+    private byte[] mBlockData = new byte[1024 * BLOCK_SIZE];
+    private short[] mBlockMasks = new short[1024];
+    private int mBlockCount = 0;
+    /**
+     * Open addressing hash table of the unique blocks (block + 1,
+     * 0 = empty slot).
+     */
+    private int[] mTable = new int[2048];
+    private int[] mGramKeys;
+    private int[] mGramStarts;
+    private int[] mGramBlocks;
+    private int mIndexedBlocks = 0;
+    private boolean mIsModified = false;
+
+    /**
+     * The block references of a dump file.
+     */
+    private static class Dump {
+        private final String mName;
+        private final long mLength;
+        private final long mLastModified;
+        private final int[] mBlocks;
+
+        private Dump(String name, long length, long lastModified,
+                int[] blocks) {
+            mName = name;
+            mLength = length;
+            mLastModified = lastModified;
+            mBlocks = blocks;
+        }
+    }
+
+    /**
+     * A hex pattern with wildcards (see {@link #parse(String)}).
+     */
+    public static class Pattern {
+        private final byte[] mValue;
+        private final byte[] mMask;
+        private final int mSector;
+        private final int mBlock;
+
+        private Pattern(byte[] value, byte[] mask, int sector, int block) {
+            mValue = value;
+            mMask = mask;
+            mSector = sector;
+            mBlock = block;
+        }
+
+        /**
+         * Parse a pattern. A pattern consists of hex bytes (1-16), each
+         * hex char can be replaced by "?" as wildcard. Spaces are ignored.
+         * Optionally, the position can be limited with "@sector" or
+         * "@sector:block" at the end (e.g. "4D?? 2A@1:2").
+         * @param pattern The pattern.
+         * @return The pattern or null if the pattern is invalid.
+         */
+        public static Pattern parse(String pattern) {
+            int sector = -1;
+            int block = -1;
+            int at = pattern.indexOf('@');
+            if (at != -1) {
+                String pos = pattern.substring(at + 1).trim();
+                pattern = pattern.substring(0, at);
+                int colon = pos.indexOf(':');
+                try {
+                    if (colon != -1) {
+                        block = Integer.parseInt(
+                                pos.substring(colon + 1).trim());
+                        pos = pos.substring(0, colon).trim();
+                        if (block < 0) {
+                            return null;
+                        }
+                    }
+                    sector = Integer.parseInt(pos);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                if (sector < 0 || sector >= TagImage.MAX_SECTOR_COUNT
+                        || block >= TagImage.getBlockCountInSector(sector)) {
+                    return null;
+                }
+            }
+            StringBuilder chars = new StringBuilder(pattern.length());
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c != ' ') {
+                    chars.append(c);
+                }
+            }
+            int length = chars.length() / 2;
+            if (chars.length() % 2 != 0 || length == 0 || length > BLOCK_SIZE) {
+                return null;
+            }
+            byte[] value = new byte[length];
+            byte[] mask = new byte[length];
+            for (int i = 0; i < chars.length(); i++) {
+                char c = chars.charAt(i);
+                int shift = (i % 2 == 0) ? 4 : 0;
+                if (c == '?') {
+                    continue;
+                }
+                int digit = HexCodec.digit(c);
+                if (digit == -1) {
+                    return null;
+                }
+                value[i / 2] |= (byte) (digit << shift);
+                mask[i / 2] |= (byte) (0x0F << shift);
+            }
+            return new Pattern(value, mask, sector, block);
+        }
+
+        /**
+         * Get the sector the pattern is limited to.
+         * @return The sector or -1 for all sectors.
+         */
+        public int getSector() {
+            return mSector;
+        }
+
+        /**
+         * Get the block the pattern is limited to.
+         * @return The block (relative to the sector) or -1 for all blocks.
+         */
+        public int getBlock() {
+            return mBlock;
+        }
+    }
+
+    /**
+     * Create an empty index that will be saved to the given file.
+     * Use {@link #load(File)} to read an existing index.
+     * @param file The file for {@link #save()}.
+     */
+    public DumpPatternIndex(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Load the index from a file. If the file does not exist or
+     * can not be read, an empty index will be returned.
+     * @param file The index file
+     * (usually {@link Common#DUMP_PATTERN_INDEX_FILE}).
+     * @return The index.
+     */
+    public static DumpPatternIndex load(File file) {
+        DumpPatternIndex index = new DumpPatternIndex(file);
+        if (file == null || !file.exists()) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.d(LOG_TAG, "Unknown dump pattern index format.");
+                return index;
+            }
+            int blockCount = in.readInt();
+            index.ensureBlockCapacity(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                in.readFully(index.mBlockData, i * BLOCK_SIZE, BLOCK_SIZE);
+                index.mBlockMasks[i] = in.readShort();
+                index.mBlockCount++;
+                index.insert(i);
+            }
+            int dumpCount = in.readInt();
+            for (int i = 0; i < dumpCount; i++) {
+                String name = in.readUTF();
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                int[] blocks = new int[in.readInt()];
+                for (int j = 0; j < blocks.length; j++) {
+                    blocks[j] = in.readInt();
+                    if (blocks[j] < -1 || blocks[j] >= blockCount) {
+                        throw new IOException("Invalid block reference.");
+                    }
+                }
+                index.mDumps.put(name,
+                        new Dump(name, length, lastModified, blocks));
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error while reading dump pattern index.", e);
+            index.clear();
+        }
+        index.mIsModified = false;
+        return index;
+    }
+
+    /**
+     * Save the index (if it was modified since loading). Unique blocks
+     * that are no longer used by any dump are dropped before saving.
+     * @return True if the index is saved. False on error.
+     */
+    public synchronized boolean save() {
+        if (!mIsModified || mFile == null) {
+            return true;
+        }
+        compact();
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            return false;
+        }
+        File tmp = new File(mFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mBlockCount);
+            for (int i = 0; i < mBlockCount; i++) {
+                out.write(mBlockData, i * BLOCK_SIZE, BLOCK_SIZE);
+                out.writeShort(mBlockMasks[i]);
+            }
+            out.writeInt(mDumps.size());
+            for (Dump dump : mDumps.values()) {
+                out.writeUTF(dump.mName);
+                out.writeLong(dump.mLength);
+                out.writeLong(dump.mLastModified);
+                out.writeInt(dump.mBlocks.length);
+                for (int block : dump.mBlocks) {
+                    out.writeInt(block);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error while saving dump pattern index.", e);
+            return false;
+        }
+        if (!tmp.renameTo(mFile)) {
+            return false;
+        }
+        mIsModified = false;
+        return true;
+    }
+
+    /**
+     * Check if a dump file is indexed in its current version.
+     * @param fileName The name of the file.
+     * @param length The length of the file.
+     * @param lastModified The last modification of the file.
+     * @return True if the index is up to date for this file.
+     */
+    public synchronized boolean isUpToDate(String fileName, long length,
+            long lastModified) {
+        Dump dump = mDumps.get(fileName);
+        return dump != null && dump.mLength == length
+                && dump.mLastModified == lastModified;
+    }
+
+    /**
+     * Get the names of all indexed files.
+     * @return The file names.
+     */
+    public synchronized Set<String> getFileNames() {
+        return new HashSet<>(mDumps.keySet());
+    }
+
+    /**
+     * Add or replace the blocks of a dump file.
+     * @param fileName The name of the file.
+     * @param length The length of the file.
+     * @param lastModified The last modification of the file.
+     * @param image The content of the file or null if the file is not a
+     * valid dump (it will be recorded without blocks).
+     */
+    public synchronized void put(String fileName, long length,
+            long lastModified, TagImage image) {
+        int[] blocks = new int[0];
+        if (image != null) {
+            blocks = new int[TagImage.sectorToBlock(image.getSectorCount())];
+            byte[] data = image.getData();
+            byte[] block = new byte[BLOCK_SIZE];
+            int i = 0;
+            for (int sector = 0; sector < image.getSectorCount(); sector++) {
+                int blockCount = TagImage.getBlockCountInSector(sector);
+                for (int b = 0; b < blockCount; b++, i++) {
+                    int mask = getMask(image, sector, b);
+                    if (mask == 0) {
+                        blocks[i] = -1;
+                        continue;
+                    }
+                    System.arraycopy(data, image.getOffset(sector, b),
+                            block, 0, BLOCK_SIZE);
+                    blocks[i] = intern(block, (short) mask);
+                }
+            }
+        }
+        mDumps.put(fileName, new Dump(fileName, length, lastModified, blocks));
+        mIsModified = true;
+    }
+
+    /**
+     * Remove a dump file from the index.
+     * @param fileName The name of the file.
+     */
+    public synchronized void remove(String fileName) {
+        if (mDumps.remove(fileName) != null) {
+            mIsModified = true;
+        }
+    }
+
+    /**
+     * Get the number of indexed files.
+     * @return Number of files.
+     */
+    public synchronized int size() {
+        return mDumps.size();
+    }
+
+    /**
+     * Get the number of unique blocks of all dumps.
+     * @return Number of unique blocks.
+     */
+    public synchronized int getBlockCount() {
+        return mBlockCount;
+    }
+
+    /**
+     * Delete the whole index.
+     */
+    public synchronized void clear() {
+        mDumps.clear();
+        mBlockCount = 0;
+        Arrays.fill(mTable, 0);
+        mGramKeys = null;
+        mIndexedBlocks = 0;
+        mIsModified = true;
+    }
+
+    /**
+     * Find all dumps that match a pattern at least once.
+     * @param pattern The pattern (see {@link Pattern#parse(String)}).
+     * @return The names of the dump files (sorted).
+     */
+    public synchronized List<String> searchFiles(Pattern pattern) {
+        ArrayList<String> ret = new ArrayList<>();
+        int[] offsets = findBlocks(pattern);
+        if (offsets == null) {
+            return ret;
+        }
+        for (Dump dump : mDumps.values()) {
+            int last = getLastBlock(pattern, dump.mBlocks.length);
+            for (int i = getFirstBlock(pattern); i < last; i++) {
+                if (dump.mBlocks[i] != -1 && offsets[dump.mBlocks[i]] != 0) {
+                    ret.add(dump.mName);
+                    break;
+                }
+            }
+        }
+        Collections.sort(ret);
+        return ret;
+    }
+
+    /**
+     * Get the first block (absolute) a pattern is limited to.
+     * @param pattern The pattern.
+     * @return The first block.
+     */
+    private static int getFirstBlock(Pattern pattern) {
+        if (pattern.mSector == -1) {
+            return 0;
+        }
+        return TagImage.sectorToBlock(pattern.mSector)
+                + Math.max(pattern.mBlock, 0);
+    }
+
+    /**
+     * Get the end of the blocks (absolute, exclusive) a pattern
+     * is limited to.
+     * @param pattern The pattern.
+     * @param blockCount The number of blocks of the dump.
+     * @return The end of the blocks.
+     */
+    private static int getLastBlock(Pattern pattern, int blockCount) {
+        if (pattern.mSector == -1) {
+            return blockCount;
+        }
+        int last = (pattern.mBlock != -1) ? getFirstBlock(pattern) + 1
+                : TagImage.sectorToBlock(pattern.mSector)
+                        + TagImage.getBlockCountInSector(pattern.mSector);
+        return Math.min(last, blockCount);
+    }
+
+    /**
+     * Compare the pattern with all candidate blocks.
+     * @param pattern The pattern.
+     * @return For each unique block a bitset of the offsets where the
+     * pattern matches or null if no block matches.
+     */
+    private int[] findBlocks(Pattern pattern) {
+        if (mBlockCount - mIndexedBlocks > MAX_UNINDEXED_BLOCKS
+                || (mGramKeys == null && mBlockCount > 0)) {
+            buildGramIndex();
+        }
+        int[] candidates = null;
+        byte[] value = pattern.mValue;
+        byte[] mask = pattern.mMask;
+        for (int i = 0; i + 2 < value.length; i++) {
+            if (mask[i] != (byte) 0xFF || mask[i + 1] != (byte) 0xFF
+                    || mask[i + 2] != (byte) 0xFF) {
+                continue;
+            }
+            int gram = ((value[i] & 0xFF) << 16)
+                    | ((value[i + 1] & 0xFF) << 8) | (value[i + 2] & 0xFF);
+            int[] postings = getPostings(gram);
+            candidates = (candidates == null) ? postings
+                    : intersect(candidates, postings);
+            if (candidates.length == 0) {
+                break;
+            }
+        }
+        int[] offsets = new int[mBlockCount];
+        boolean found = false;
+        if (candidates != null) {
+            for (int block : candidates) {
+                found |= match(block, value, mask, offsets);
+            }
+        } else {
+            for (int block = 0; block < mIndexedBlocks; block++) {
+                found |= match(block, value, mask, offsets);
+            }
+        }
+        // Blocks added after the trigram index was built.
+        for (int block = mIndexedBlocks; block < mBlockCount; block++) {
+            found |= match(block, value, mask, offsets);
+        }
+        return found ? offsets : null;
+    }
+
+    /**
+     * Compare a pattern with a unique block at all offsets.
+     * @param block The unique block.
+     * @param value The pattern bytes.
+     * @param mask The mask of the pattern bytes (bits that must match).
+     * @param offsets Bitsets of matching offsets (one per unique block).
+     * @return True if the pattern matches at least once.
+     */
+    private boolean match(int block, byte[] value, byte[] mask,
+            int[] offsets) {
+        int base = block * BLOCK_SIZE;
+        int known = mBlockMasks[block] & 0xFFFF;
+        int bits = 0;
+        for (int offset = 0; offset + value.length <= BLOCK_SIZE; offset++) {
+            int i = 0;
+            for (; i < value.length; i++) {
+                if (mask[i] != 0 && ((known & (1 << (offset + i))) == 0
+                        || (mBlockData[base + offset + i] & mask[i])
+                                != value[i])) {
+                    break;
+                }
+            }
+            if (i == value.length) {
+                bits |= 1 << offset;
+            }
+        }
+        offsets[block] = bits;
+        return bits != 0;
+    }
+
+    /**
+     * Get the mask of the known bytes of a block.
+     * @param image The image.
+     * @param sector The sector.
+     * @param block The block.
+     * @return Mask with one bit per byte (bit 0 = byte 0).
+     */
+    private static int getMask(TagImage image, int sector, int block) {
+        if (!image.hasSector(sector)) {
+            return 0;
+        }
+        boolean valid = image.isBlockValid(sector, block);
+        if (!TagImage.isTrailer(sector, block)) {
+            return valid ? 0xFFFF : 0;
+        }
+        return (image.isKeyKnown(sector, false) ? 0x003F : 0)
+                | (valid ? 0x03C0 : 0)
+                | (image.isKeyKnown(sector, true) ? 0xFC00 : 0);
+    }
+
+    /**
+     * Get the unique block for some block data (and add it, if
+     * it is new).
+     * @param block The block data. Unknown bytes will be set to 0.
+     * @param mask The mask of the known bytes.
+     * @return The unique block.
+     */
+    private int intern(byte[] block, short mask) {
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            if ((mask & (1 << i)) == 0) {
+                block[i] = 0;
+            }
+        }
+        int slot = hash(block, 0, mask) & (mTable.length - 1);
+        while (mTable[slot] != 0) {
+            int id = mTable[slot] - 1;
+            if (mBlockMasks[id] == mask && equals(id, block)) {
+                return id;
+            }
+            slot = (slot + 1) & (mTable.length - 1);
+        }
+        ensureBlockCapacity(mBlockCount + 1);
+        int id = mBlockCount++;
+        System.arraycopy(block, 0, mBlockData, id * BLOCK_SIZE, BLOCK_SIZE);
+        mBlockMasks[id] = mask;
+        insert(id);
+        return id;
+    }
+
+    /**
+     * Add a unique block (already stored) to the hash table.
+     * @param id The unique block.
+     */
+    private void insert(int id) {
+        if (mBlockCount * 2 > mTable.length) {
+            mTable = new int[mTable.length * 2];
+            for (int i = 0; i < mBlockCount; i++) {
+                if (i != id) {
+                    insertSlot(i);
+                }
+            }
+        }
+        insertSlot(id);
+    }
+
+    private void insertSlot(int id) {
+        int slot = hash(mBlockData, id * BLOCK_SIZE, mBlockMasks[id])
+                & (mTable.length - 1);
+        while (mTable[slot] != 0) {
+            slot = (slot + 1) & (mTable.length - 1);
+        }
+        mTable[slot] = id + 1;
+    }
+
+    private boolean equals(int id, byte[] block) {
+        int base = id * BLOCK_SIZE;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            if (mBlockData[base + i] != block[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] data, int offset, short mask) {
+        int hash = mask;
+        for (int i = offset; i < offset + BLOCK_SIZE; i++) {
+            hash = hash * 31 + data[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private void ensureBlockCapacity(int count) {
+        if (count > mBlockMasks.length) {
+            int capacity = Math.max(count, mBlockMasks.length * 2);
+            mBlockData = Arrays.copyOf(mBlockData, capacity * BLOCK_SIZE);
+            mBlockMasks = Arrays.copyOf(mBlockMasks, capacity);
+        }
+    }
+
+    /**
+     * Build the trigram index of all unique blocks. For each trigram
+     * (of fully known bytes) there is a sorted list of the unique blocks
+     * that contain it.
+     */
+    private void buildGramIndex() {
+        long[] pairs = new long[mBlockCount * (BLOCK_SIZE - 2)];
+        int n = 0;
+        for (int id = 0; id < mBlockCount; id++) {
+            int base = id * BLOCK_SIZE;
+            int known = mBlockMasks[id] & 0xFFFF;
+            for (int i = 0; i + 2 < BLOCK_SIZE; i++) {
+                if (((known >>> i) & 0x07) != 0x07) {
+                    continue;
+                }
+                int gram = ((mBlockData[base + i] & 0xFF) << 16)
+                        | ((mBlockData[base + i + 1] & 0xFF) << 8)
+                        | (mBlockData[base + i + 2] & 0xFF);
+                pairs[n++] = ((long) gram << 32) | id;
+            }
+        }
+        Arrays.sort(pairs, 0, n);
+        int[] keys = new int[n];
+        int[] starts = new int[n + 1];
+        int[] blocks = new int[n];
+        int keyCount = 0;
+        int blockCount = 0;
+        long last = -1;
+        for (int i = 0; i < n; i++) {
+            if (pairs[i] == last) {
+                // Same trigram twice in one block.
+                continue;
+            }
+            int gram = (int) (pairs[i] >>> 32);
+            if (keyCount == 0 || keys[keyCount - 1] != gram) {
+                keys[keyCount] = gram;
+                starts[keyCount] = blockCount;
+                keyCount++;
+            }
+            blocks[blockCount++] = (int) pairs[i];
+            last = pairs[i];
+        }
+        starts[keyCount] = blockCount;
+        mGramKeys = Arrays.copyOf(keys, keyCount);
+        mGramStarts = Arrays.copyOf(starts, keyCount + 1);
+        mGramBlocks = Arrays.copyOf(blocks, blockCount);
+        mIndexedBlocks = mBlockCount;
+    }
+
+    private int[] getPostings(int gram) {
+        if (mGramKeys == null) {
+            return new int[0];
+        }
+        int i = Arrays.binarySearch(mGramKeys, gram);
+        if (i < 0) {
+            return new int[0];
+        }
+        return Arrays.copyOfRange(mGramBlocks, mGramStarts[i],
+                mGramStarts[i + 1]);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] ret = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                ret[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(ret, n);
+    }
+
+    /**
+     * Drop the unique blocks that are no longer used by any dump, if
+     * they are more than a quarter of all unique blocks.
+     */
+    private void compact() {
+        int[] map = new int[mBlockCount];
+        Arrays.fill(map, -1);
+        int used = 0;
+        for (Dump dump : mDumps.values()) {
+            for (int block : dump.mBlocks) {
+                if (block != -1 && map[block] == -1) {
+                    map[block] = 0;
+                    used++;
+                }
+            }
+        }
+        if (used * 4 >= mBlockCount * 3) {
+            return;
+        }
+        int next = 0;
+        for (int id = 0; id < mBlockCount; id++) {
+            if (map[id] == -1) {
+                continue;
+            }
+            map[id] = next;
+            if (id != next) {
+                System.arraycopy(mBlockData, id * BLOCK_SIZE, mBlockData,
+                        next * BLOCK_SIZE, BLOCK_SIZE);
+                mBlockMasks[next] = mBlockMasks[id];
+            }
+            next++;
+        }
+        for (Dump dump : mDumps.values()) {
+            for (int i = 0; i < dump.mBlocks.length; i++) {
+                if (dump.mBlocks[i] != -1) {
+                    dump.mBlocks[i] = map[dump.mBlocks[i]];
+                }
+            }
+        }
+        mBlockCount = next;
+        Arrays.fill(mTable, 0);
+        for (int id = 0; id < mBlockCount; id++) {
+            insertSlot(id);
+        }
+        mGramKeys = null;
+        mIndexedBlocks = 0;
+    }
+}
@@ -0,0 +1,895 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import android.nfc.tech.MifareClassic;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A persistent index of the dump files in {@link Common#DUMPS_DIR}.
+ * For each dump the UID (from block 0), the sector count, the sectors
+ * in the dump, the timestamp (last modification of the file), a hash of
+ * the content (see {@link TagImage#getContentHash()}) and free-form tags
+ * are stored. Lookups by file name, UID and hash are hash map lookups,
+ * so searching does not require to read the dump files.<br />
+ * The index is updated incrementally: {@link #sync()} only compares the
+ * size and modification time of the files with the index and parses the
+ * new or changed files. Files saved or deleted by the app are updated
+ * directly (see {@link #update(File)}). Files that are not valid dumps
+ * are indexed too (without UID, etc.), so they are not parsed on every
+ * sync.<br />
+ * Parsing dump files can take a while. Therefore, loading the index,
+ * {@link #sync()}, {@link #update(File)} and
+ * {@link #getPatternIndex(File)} should not be called on the UI thread.
+ * The files are parsed without holding the lock of the index, so lookups
+ * from other threads are not blocked by them.<br />
+ * The block data of the dumps can be searched for hex patterns with the
+ * {@link DumpPatternIndex} (see {@link #getPatternIndex(File)}). Once
+ * loaded, it is updated together with this index.<br /><br />
+ * File format (big endian): magic "MCDI", version (int), entry count (int)
+ * and per entry: file name (UTF), file length (long), last modified
+ * (long, millis), sector count (byte, 0 = no valid dump), sectors (long,
+ * one bit per sector), UID length (byte), UID, content hash (long),
+ * tag count (byte) and the tags (UTF each).
+ * @author agent
+ */
+public class DumpRepository {
+
+    private static final String LOG_TAG =
+            DumpRepository.class.getSimpleName();
+    private static final int MAGIC = 0x4D434449; // "MCDI"
+    private static final int VERSION = 1;
+    /**
+     * Maximum number of tags per dump.
+     */
+    public static final int MAX_TAGS = 255;
+
+    private final File mFile;
+    private final File mDir;
+    private final HashMap<String, Entry> mEntries = new HashMap<>();
+    private final HashMap<String, ArrayList<Entry>> mByUid = new HashMap<>();
+    private final HashMap<Long, ArrayList<Entry>> mByHash = new HashMap<>();
+    private DumpPatternIndex mPatternIndex = null;
+    private boolean mIsModified = false;
+
+    /**
+     * The indexed information about a dump file.
+     */
+    public static class Entry {
+        private final String mFileName;
+        private final long mLength;
+        private final long mLastModified;
+        private final int mSectorCount;
+        private final long mSectors;
+        private final byte[] mUid;
+        private final long mHash;
+        private String[] mTags;
+
+        private Entry(String fileName, long length, long lastModified,
+                int sectorCount, long sectors, byte[] uid, long hash,
+                String[] tags) {
+            mFileName = fileName;
+            mLength = length;
+            mLastModified = lastModified;
+            mSectorCount = sectorCount;
+            mSectors = sectors;
+            mUid = uid;
+            mHash = hash;
+            mTags = tags;
+        }
+
+        public String getFileName() {
+            return mFileName;
+        }
+
+        /**
+         * Get the length of the dump file.
+         * @return The length in bytes.
+         */
+        public long getLength() {
+            return mLength;
+        }
+
+        /**
+         * Get the time of the last modification of the dump file.
+         * @return The timestamp in milliseconds.
+         */
+        public long getTimestamp() {
+            return mLastModified;
+        }
+
+        /**
+         * Check if the file is a valid dump (see
+         * {@link Common#isValidDump(String[], boolean)}).
+         * @return True if the file is a valid dump.
+         */
+        public boolean isValidDump() {
+            return mSectorCount > 0;
+        }
+
+        /**
+         * Get the sector count of the dump (highest sector plus one).
+         * @return The sector count or 0 if the file is not a valid dump.
+         */
+        public int getSectorCount() {
+            return mSectorCount;
+        }
+
+        /**
+         * Get the size of the tag the dump is from (the smallest MIFARE
+         * Classic tag that has all sectors of the dump).
+         * @return {@link MifareClassic#SIZE_MINI},
+         * {@link MifareClassic#SIZE_1K}, {@link MifareClassic#SIZE_2K},
+         * {@link MifareClassic#SIZE_4K} or 0 if the file is not a
+         * valid dump.
+         */
+        public int getSize() {
+            if (mSectorCount == 0) {
+                return 0;
+            } else if (mSectorCount <= 5) {
+                return MifareClassic.SIZE_MINI;
+            } else if (mSectorCount <= 16) {
+                return MifareClassic.SIZE_1K;
+            } else if (mSectorCount <= 32) {
+                return MifareClassic.SIZE_2K;
+            }
+            return MifareClassic.SIZE_4K;
+        }
+
+        /**
+         * Get the sectors of the dump.
+         * @return Bitset with one bit per sector (bit 0 = sector 0).
+         * @see TagImage#getSectors()
+         */
+        public long getSectors() {
+            return mSectors;
+        }
+
+        public boolean hasSector(int sector) {
+            return sector >= 0 && sector < TagImage.MAX_SECTOR_COUNT
+                    && (mSectors & (1L << sector)) != 0;
+        }
+
+        /**
+         * Get the UID of the tag (4 bytes if the BCC in block 0 matches,
+         * 7 bytes otherwise).
+         * @return The UID as hex string or null if block 0 is not
+         * part of the dump.
+         */
+        public String getUid() {
+            return (mUid == null) ? null : Common.bytes2Hex(mUid);
+        }
+
+        /**
+         * Get the hash of the content.
+         * @return The hash.
+         * @see TagImage#getContentHash()
+         */
+        public long getHash() {
+            return mHash;
+        }
+
+        /**
+         * Get the tags of the dump.
+         * @return A copy of the tags.
+         */
+        public synchronized String[] getTags() {
+            return mTags.clone();
+        }
+
+        /**
+         * Check if the dump has a tag (case insensitive).
+         * @param tag The tag.
+         * @return True if the dump has the tag.
+         */
+        public synchronized boolean hasTag(String tag) {
+            for (String t : mTags) {
+                if (t.equalsIgnoreCase(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Create an empty index that will be saved to the given file.
+     * Use {@link #load(File, File)} to read an existing index.
+     * @param file The file for {@link #save()}.
+     * @param dir The directory of the dump files.
+     */
+    public DumpRepository(File file, File dir) {
+        mFile = file;
+        mDir = dir;
+    }
+
+    /**
+     * Load the index from a file. If the file does not exist or
+     * can not be read, an empty index will be returned. Use
+     * {@link #sync()} to bring it up to date.
+     * @param file The index file
+     * (usually {@link Common#DUMP_INDEX_FILE}).
+     * @param dir The directory of the dump files
+     * (usually {@link Common#DUMPS_DIR}).
+     * @return The index.
+     */
+    public static DumpRepository load(File file, File dir) {
+        DumpRepository repo = new DumpRepository(file, dir);
+        if (file == null || !file.exists()) {
+            return repo;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.d(LOG_TAG, "Unknown dump index format.");
+                return repo;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String fileName = in.readUTF();
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                int sectorCount = in.readUnsignedByte();
+                long sectors = in.readLong();
+                byte[] uid = null;
+                int uidLength = in.readUnsignedByte();
+                if (uidLength > 0) {
+                    uid = new byte[uidLength];
+                    in.readFully(uid);
+                }
+                long hash = in.readLong();
+                String[] tags = new String[in.readUnsignedByte()];
+                for (int j = 0; j < tags.length; j++) {
+                    tags[j] = in.readUTF();
+                }
+                repo.add(new Entry(fileName, length, lastModified,
+                        sectorCount, sectors, uid, hash, tags));
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error while reading dump index.", e);
+            repo.clear();
+        }
+        repo.mIsModified = false;
+        return repo;
+    }
+
+    /**
+     * Save the index (if it was modified since loading) and the pattern
+     * index (if it is loaded).
+     * @return True if the index is saved. False on error.
+     */
+    public synchronized boolean save() {
+        if (mPatternIndex != null && !mPatternIndex.save()) {
+            return false;
+        }
+        if (!mIsModified || mFile == null) {
+            return true;
+        }
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            return false;
+        }
+        File tmp = new File(mFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mEntries.size());
+            for (Entry e : mEntries.values()) {
+                out.writeUTF(e.mFileName);
+                out.writeLong(e.mLength);
+                out.writeLong(e.mLastModified);
+                out.writeByte(e.mSectorCount);
+                out.writeLong(e.mSectors);
+                if (e.mUid == null) {
+                    out.writeByte(0);
+                } else {
+                    out.writeByte(e.mUid.length);
+                    out.write(e.mUid);
+                }
+                out.writeLong(e.mHash);
+                String[] tags = e.getTags();
+                out.writeByte(tags.length);
+                for (String tag : tags) {
+                    out.writeUTF(tag);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error while saving dump index.", e);
+            return false;
+        }
+        if (!tmp.renameTo(mFile)) {
+            return false;
+        }
+        mIsModified = false;
+        return true;
+    }
+
+    /**
+     * Bring the index up to date with the dump directory (see
+     * {@link #sync(File[])}).
+     * @return The number of added, changed or removed entries.
+     */
+    public int sync() {
+        File[] files = (mDir != null) ? mDir.listFiles() : null;
+        return sync((files != null) ? files : new File[0]);
+    }
+
+    /**
+     * Bring the index up to date with a listing of the dump directory.
+     * Only files whose size or modification time differs from the index
+     * are parsed. Entries of files that are not in the listing
+     * are removed.
+     * @param files All files of the dump directory (e.g. from a
+     * directory listing the caller already has).
+     * @return The number of added, changed or removed entries.
+     */
+    public int sync(File[] files) {
+        int changes = 0;
+        ArrayList<File> changed = new ArrayList<>();
+        // Get the file information without holding the lock.
+        ArrayList<File> dumps = new ArrayList<>(files.length);
+        long[] lengths = new long[files.length];
+        long[] lastModified = new long[files.length];
+        for (File file : files) {
+            if (file.isFile()) {
+                lengths[dumps.size()] = file.length();
+                lastModified[dumps.size()] = file.lastModified();
+                dumps.add(file);
+            }
+        }
+        synchronized (this) {
+            HashSet<String> seen = new HashSet<>(dumps.size() * 2);
+            for (int i = 0; i < dumps.size(); i++) {
+                File file = dumps.get(i);
+                String name = file.getName();
+                seen.add(name);
+                Entry e = mEntries.get(name);
+                if (e == null || e.mLength != lengths[i]
+                        || e.mLastModified != lastModified[i]) {
+                    changed.add(file);
+                }
+            }
+            Iterator<Entry> it = mEntries.values().iterator();
+            while (it.hasNext()) {
+                Entry e = it.next();
+                if (!seen.contains(e.mFileName)) {
+                    it.remove();
+                    unlink(e);
+                    if (mPatternIndex != null) {
+                        mPatternIndex.remove(e.mFileName);
+                    }
+                    changes++;
+                }
+            }
+            if (changes > 0) {
+                mIsModified = true;
+            }
+        }
+        // Parse the new and changed files without holding the lock.
+        for (File file : changed) {
+            put(parse(file));
+        }
+        return changes + changed.size();
+    }
+
+    /**
+     * Update the entry of a single file (after it was saved, changed or
+     * deleted). Files outside the dump directory are ignored.
+     * @param file The dump file.
+     * @return The entry of the file or null if the file does not exist
+     * (anymore) or is not in the dump directory.
+     */
+    public Entry update(File file) {
+        if (file == null || mDir == null
+                || !mDir.equals(file.getParentFile())) {
+            return null;
+        }
+        if (!file.isFile()) {
+            synchronized (this) {
+                Entry old = mEntries.get(file.getName());
+                if (old != null) {
+                    remove(old);
+                }
+            }
+            return null;
+        }
+        return put(parse(file));
+    }
+
+    /**
+     * Get the pattern index of the dump files. On first use, it will be
+     * loaded from the given file and brought up to date with this index
+     * (dumps that are new or changed since the pattern index was saved
+     * will be parsed). Afterwards, it is updated together with this index.
+     * Call {@link #sync()} before to include changes of the dump directory.
+     * @param file The pattern index file
+     * (usually {@link Common#DUMP_PATTERN_INDEX_FILE}).
+     * @return The pattern index.
+     */
+    public DumpPatternIndex getPatternIndex(File file) {
+        synchronized (this) {
+            if (mPatternIndex != null) {
+                return mPatternIndex;
+            }
+        }
+        DumpPatternIndex patterns = DumpPatternIndex.load(file);
+        while (true) {
+            ArrayList<Entry> outdated = new ArrayList<>();
+            synchronized (this) {
+                if (mPatternIndex != null) {
+                    // Loaded by another thread in the meantime.
+                    return mPatternIndex;
+                }
+                for (String name : patterns.getFileNames()) {
+                    if (!mEntries.containsKey(name)) {
+                        patterns.remove(name);
+                    }
+                }
+                for (Entry e : mEntries.values()) {
+                    if (!patterns.isUpToDate(e.mFileName, e.mLength,
+                            e.mLastModified)) {
+                        outdated.add(e);
+                    }
+                }
+                if (outdated.isEmpty()) {
+                    // From now on, it is updated together with this index.
+                    mPatternIndex = patterns;
+                    return patterns;
+                }
+            }
+            // Parse the outdated dumps without holding the lock. Entries
+            // that change in the meantime will be found by the next check.
+            for (Entry e : outdated) {
+                TagImage image = null;
+                if (e.isValidDump()) {
+                    DumpParser parser = new DumpParser(true);
+                    if (parser.parse(new File(mDir, e.mFileName))) {
+                        image = parser.getImage();
+                    }
+                }
+                patterns.put(e.mFileName, e.mLength, e.mLastModified, image);
+            }
+        }
+    }
+
+    /**
+     * Get the entry of a dump file.
+     * @param fileName The name of the file (without directory).
+     * @return The entry or null if the file is not indexed.
+     */
+    public synchronized Entry get(String fileName) {
+        return mEntries.get(fileName);
+    }
+
+    /**
+     * Get all dumps of a tag.
+     * @param uid The UID as hex string.
+     * @return The dumps of the tag (oldest first).
+     */
+    public synchronized List<Entry> findByUid(String uid) {
+        return copy(mByUid.get(uid.toUpperCase(Locale.ROOT)));
+    }
+
+    /**
+     * Get all dumps with a given content (e.g. to find duplicates).
+     * @param hash The content hash (see {@link Entry#getHash()}).
+     * @return The dumps with this content (oldest first).
+     */
+    public synchronized List<Entry> findByHash(long hash) {
+        return copy(mByHash.get(hash));
+    }
+
+    /**
+     * Get all dumps with a tag.
+     * @param tag The tag (case insensitive).
+     * @return The dumps with this tag (oldest first).
+     */
+    public synchronized List<Entry> findByTag(String tag) {
+        ArrayList<Entry> ret = new ArrayList<>();
+        for (Entry e : mEntries.values()) {
+            if (e.hasTag(tag)) {
+                ret.add(e);
+            }
+        }
+        return sort(ret);
+    }
+
+    /**
+     * Get all valid dumps of a tag size within a time range
+     * (e.g. "all 4K dumps from last week").
+     * @param size The tag size (see {@link Entry#getSize()}) or -1
+     * for all sizes.
+     * @param from Start of the time range (millis, inclusive).
+     * @param to End of the time range (millis, exclusive).
+     * @return The matching dumps (oldest first).
+     */
+    public synchronized List<Entry> find(int size, long from, long to) {
+        ArrayList<Entry> ret = new ArrayList<>();
+        for (Entry e : mEntries.values()) {
+            if (e.isValidDump() && (size == -1 || e.getSize() == size)
+                    && e.mLastModified >= from && e.mLastModified < to) {
+                ret.add(e);
+            }
+        }
+        return sort(ret);
+    }
+
+    /**
+     * Search the index. The query consists of terms separated by commas.
+     * A dump must match all terms. Terms are:
+     * <ul>
+     * <li>"mini", "1k", "2k" or "4k" - The tag size
+     * (see {@link Entry#getSize()}).</li>
+     * <li>A number of days followed by "d" (e.g. "7d") - The dump was
+     * modified within this number of days.</li>
+     * <li>Everything else - A UID, content hash (16 hex chars) or tag
+     * (see {@link #findByUid(String)}, {@link #findByHash(long)} and
+     * {@link #findByTag(String)}).</li>
+     * </ul>
+     * For example, "4k, 7d" lists all 4K dumps from the last week.
+     * @param query The query.
+     * @return All dumps matching the query (oldest first).
+     */
+    public List<Entry> search(String query) {
+        return search(query, System.currentTimeMillis());
+    }
+
+    /**
+     * Search the index (see {@link #search(String)}).
+     * @param query The query.
+     * @param now The current time (millis) for terms with days.
+     * @return All dumps matching the query (oldest first).
+     */
+    public synchronized List<Entry> search(String query, long now) {
+        int size = -1;
+        long from = Long.MIN_VALUE;
+        HashSet<Entry> ret = null;
+        for (String term : query.split(",")) {
+            term = term.trim();
+            if (term.isEmpty()) {
+                continue;
+            }
+            int termSize = parseSize(term);
+            if (termSize != -1) {
+                size = termSize;
+                continue;
+            }
+            long days = parseDays(term);
+            if (days != -1) {
+                from = Math.max(from, now - days * 24 * 60 * 60 * 1000L);
+                continue;
+            }
+            HashSet<Entry> matches = new HashSet<>(findByTag(term));
+            if (HexCodec.isHex(term)) {
+                String hex = term.toUpperCase(Locale.ROOT);
+                matches.addAll(findByUid(hex));
+                if (hex.length() == 16) {
+                    long hash = 0;
+                    for (byte b : Common.hex2Bytes(hex)) {
+                        hash = (hash << 8) | (b & 0xFF);
+                    }
+                    matches.addAll(findByHash(hash));
+                }
+            }
+            if (ret == null) {
+                ret = matches;
+            } else {
+                ret.retainAll(matches);
+            }
+        }
+        if (size == -1 && from == Long.MIN_VALUE) {
+            return (ret == null) ? new ArrayList<>()
+                    : sort(new ArrayList<>(ret));
+        }
+        List<Entry> filtered = find(size, from, Long.MAX_VALUE);
+        if (ret != null) {
+            filtered.retainAll(ret);
+        }
+        return filtered;
+    }
+
+    /**
+     * Set the tags of a dump file. If the file is not indexed yet,
+     * it will be indexed first.
+     * @param file The dump file.
+     * @param tags The tags. Empty tags are dropped, the others
+     * are trimmed.
+     * @return True if the tags were set. False if the file does not
+     * exist or is not in the dump directory.
+     */
+    public boolean setTags(File file, Collection<String> tags) {
+        if (get(file.getName()) == null && update(file) == null) {
+            return false;
+        }
+        ArrayList<String> cleaned = new ArrayList<>();
+        for (String tag : tags) {
+            tag = tag.trim();
+            if (!tag.isEmpty() && !cleaned.contains(tag)
+                    && cleaned.size() < MAX_TAGS) {
+                cleaned.add(tag);
+            }
+        }
+        synchronized (this) {
+            // The entry might have been replaced while it was indexed.
+            Entry e = mEntries.get(file.getName());
+            if (e == null) {
+                return false;
+            }
+            synchronized (e) {
+                e.mTags = cleaned.toArray(new String[0]);
+            }
+            mIsModified = true;
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of indexed files.
+     * @return Number of files.
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Delete the whole index.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+        mByUid.clear();
+        mByHash.clear();
+        if (mPatternIndex != null) {
+            mPatternIndex.clear();
+        }
+        mIsModified = true;
+    }
+
+    /**
+     * The result of parsing a dump file: its entry (without tags)
+     * and its data.
+     */
+    private static class ParsedFile {
+        private final File mFile;
+        private final Entry mEntry;
+        private final TagImage mImage;
+
+        private ParsedFile(File file, Entry entry, TagImage image) {
+            mFile = file;
+            mEntry = entry;
+            mImage = image;
+        }
+    }
+
+    /**
+     * Parse a file (without modifying the index).
+     * @param file The file.
+     * @return The entry of the file (without tags) and the data
+     * of the dump (null if it is not a valid dump).
+     */
+    private static ParsedFile parse(File file) {
+        // Get the file information before parsing, so a change
+        // while parsing will be detected by the next sync.
+        long length = file.length();
+        long lastModified = file.lastModified();
+        DumpParser parser = new DumpParser(true);
+        int sectorCount = 0;
+        long sectors = 0;
+        byte[] uid = null;
+        long hash = 0;
+        if (parser.parse(file)) {
+            TagImage image = parser.getImage();
+            sectorCount = image.getSectorCount();
+            sectors = image.getSectors();
+            hash = image.getContentHash();
+            uid = getUid(image);
+        }
+        Entry e = new Entry(file.getName(), length, lastModified,
+                sectorCount, sectors, uid, hash, new String[0]);
+        return new ParsedFile(file, e, parser.getImage());
+    }
+
+    /**
+     * Replace the entry of a parsed file. The tags of the old entry
+     * are kept. Files can be parsed by multiple threads at once
+     * (e.g. {@link #sync()} and {@link #update(File)}), so an entry
+     * that matches the current file (length and modification time) is
+     * never replaced by one of an older file version. Comparing the
+     * modification times of the entries instead would keep an outdated
+     * entry forever if a file is replaced by an older one (e.g. restored
+     * from a backup). If neither entry matches, the file has changed
+     * again and the next sync parses it again.
+     * @param parsed The parsed file (see {@link #parse(File)}).
+     * @return The new entry or the old one if it matches the current
+     * file and the new one does not.
+     */
+    private Entry put(ParsedFile parsed) {
+        // Get the current file information without holding the lock.
+        long length = parsed.mFile.length();
+        long lastModified = parsed.mFile.lastModified();
+        synchronized (this) {
+            Entry e = parsed.mEntry;
+            Entry old = mEntries.get(e.mFileName);
+            if (old != null && old.mLength == length
+                    && old.mLastModified == lastModified
+                    && (e.mLength != length
+                    || e.mLastModified != lastModified)) {
+                return old;
+            }
+            if (old != null) {
+                e.mTags = old.getTags();
+                remove(old);
+            }
+            add(e);
+            if (mPatternIndex != null) {
+                mPatternIndex.put(e.mFileName, e.mLength, e.mLastModified,
+                        parsed.mImage);
+            }
+            mIsModified = true;
+            return e;
+        }
+    }
+
+    /**
+     * Parse a tag size term of a search query (see {@link #search(String)}).
+     * @param term The term.
+     * @return The tag size (see {@link Entry#getSize()}) or -1 if the
+     * term is not a tag size.
+     */
+    private static int parseSize(String term) {
+        switch (term.toLowerCase(Locale.ROOT)) {
+            case "mini":
+                return MifareClassic.SIZE_MINI;
+            case "1k":
+                return MifareClassic.SIZE_1K;
+            case "2k":
+                return MifareClassic.SIZE_2K;
+            case "4k":
+                return MifareClassic.SIZE_4K;
+        }
+        return -1;
+    }
+
+    /**
+     * Parse a days term of a search query (e.g. "7d",
+     * see {@link #search(String)}).
+     * @param term The term.
+     * @return The number of days or -1 if the term is not a days term.
+     */
+    private static long parseDays(String term) {
+        int length = term.length();
+        if (length < 2 || length > 6
+                || Character.toLowerCase(term.charAt(length - 1)) != 'd') {
+            return -1;
+        }
+        long days = 0;
+        for (int i = 0; i < length - 1; i++) {
+            char c = term.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            days = days * 10 + (c - '0');
+        }
+        return days;
+    }
+
+    /**
+     * Get the UID from the manufacturer block of an image.
+     * @param image The image.
+     * @return The UID (4 bytes if the BCC matches, 7 bytes otherwise)
+     * or null if block 0 is unknown.
+     */
+    private static byte[] getUid(TagImage image) {
+        if (!image.hasSector(0) || !image.isBlockValid(0, 0)) {
+            return null;
+        }
+        byte[] block0 = image.getBlock(0, 0);
+        byte[] uid = Arrays.copyOf(block0, 4);
+        if (Common.isValidBcc(uid, block0[4])) {
+            return uid;
+        }
+        return Arrays.copyOf(block0, 7);
+    }
+
+    private void add(Entry e) {
+        mEntries.put(e.mFileName, e);
+        if (!e.isValidDump()) {
+            return;
+        }
+        if (e.mUid != null) {
+            addTo(mByUid, Common.bytes2Hex(e.mUid), e);
+        }
+        addTo(mByHash, e.mHash, e);
+    }
+
+    private void remove(Entry e) {
+        mEntries.remove(e.mFileName);
+        unlink(e);
+        if (mPatternIndex != null) {
+            mPatternIndex.remove(e.mFileName);
+        }
+        mIsModified = true;
+    }
+
+    /**
+     * Remove an entry from the UID and hash maps.
+     * @param e The entry.
+     */
+    private void unlink(Entry e) {
+        if (!e.isValidDump()) {
+            return;
+        }
+        if (e.mUid != null) {
+            removeFrom(mByUid, Common.bytes2Hex(e.mUid), e);
+        }
+        removeFrom(mByHash, e.mHash, e);
+    }
+
+    private static <K> void addTo(Map<K, ArrayList<Entry>> map, K key,
+            Entry e) {
+        ArrayList<Entry> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            map.put(key, list);
+        }
+        list.add(e);
+    }
+
+    private static <K> void removeFrom(Map<K, ArrayList<Entry>> map, K key,
+            Entry e) {
+        ArrayList<Entry> list = map.get(key);
+        if (list != null && list.remove(e) && list.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    private static List<Entry> copy(List<Entry> list) {
+        if (list == null) {
+            return new ArrayList<>();
+        }
+        return sort(new ArrayList<>(list));
+    }
+
+    private static List<Entry> sort(List<Entry> list) {
+        Collections.sort(list, (a, b) -> {
+            int ret = Long.compare(a.mLastModified, b.mLastModified);
+            return (ret != 0) ? ret : a.mFileName.compareTo(b.mFileName);
+        });
+        return list;
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+/**
+ * Conversion between bytes and hex strings with lookup tables.
+ * The validation does not use regular expressions and the conversion
+ * does not box bytes or use {@link String#format(String, Object...)}.
+ * For hot paths there are variants that decode into a byte array and
+ * encode into a char array or a {@link StringBuilder} given by the
+ * caller, so no intermediate objects are created.
+ * Hex strings are always encoded in upper case. Decoding accepts
+ * upper and lower case.
+ * @author agent
+ */
+public final class HexCodec {
+
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+    /**
+     * Value of each ASCII char as hex digit (-1 for non hex chars).
+     */
+    private static final byte[] VALUES = new byte[128];
+    /**
+     * The two hex digits of each byte (upper nibble at index 2*b,
+     * lower nibble at index 2*b+1).
+     */
+    private static final char[] BYTE_DIGITS = new char[512];
+    private static final String[] BIN_DIGITS = {
+            "0000", "0001", "0010", "0011", "0100", "0101", "0110", "0111",
+            "1000", "1001", "1010", "1011", "1100", "1101", "1110", "1111" };
+
+    static {
+        for (int i = 0; i < VALUES.length; i++) {
+            VALUES[i] = -1;
+        }
+        for (int i = 0; i < 16; i++) {
+            VALUES[DIGITS[i]] = (byte) i;
+            VALUES[Character.toLowerCase(DIGITS[i])] = (byte) i;
+        }
+        for (int i = 0; i < 256; i++) {
+            BYTE_DIGITS[2 * i] = DIGITS[i >>> 4];
+            BYTE_DIGITS[2 * i + 1] = DIGITS[i & 0x0F];
+        }
+    }
+
+    private HexCodec() {
+    }
+
+    /**
+     * Get the value of a hex digit.
+     * @param c The char (0-9, A-F, a-f).
+     * @return The value (0-15) or -1 if the char is not a hex digit.
+     */
+    public static int digit(char c) {
+        return (c < 128) ? VALUES[c] : -1;
+    }
+
+    /**
+     * Check if a string is a hex string (only 0-9, A-F, a-f, not empty
+     * and an even number of chars, so it can be decoded to bytes).
+     * @param hex The string to check.
+     * @return True if the string is a hex string. False otherwise.
+     */
+    public static boolean isHex(CharSequence hex) {
+        return hex != null && hex.length() % 2 == 0 && isHexDigits(hex);
+    }
+
+    /**
+     * Check if a string only contains hex digits (0-9, A-F, a-f) and
+     * is not empty. Unlike {@link #isHex(CharSequence)} the number
+     * of chars can be odd.
+     * @param hex The string to check.
+     * @return True if the string only contains hex digits.
+     * False otherwise.
+     */
+    public static boolean isHexDigits(CharSequence hex) {
+        return hex != null && hex.length() > 0
+                && isHexDigits(hex, 0, hex.length(), false);
+    }
+
+    /**
+     * Check if a string only contains hex digits (0-9, A-F, a-f) or "-"
+     * (unknown data, see {@link MCReader#NO_DATA}) and is not empty.
+     * @param hex The string to check.
+     * @return True if the string only contains hex digits or "-".
+     * False otherwise.
+     */
+    public static boolean isHexOrUnknown(CharSequence hex) {
+        return hex != null && hex.length() > 0
+                && isHexDigits(hex, 0, hex.length(), true);
+    }
+
+    /**
+     * Check if a part of a string only contains hex digits.
+     * @param hex The string to check.
+     * @param start The index of the first char to check.
+     * @param end The index after the last char to check.
+     * @param allowUnknown True if "-" (unknown data) is allowed too.
+     * @return True if all chars in the range are hex digits (or "-").
+     * False otherwise.
+     */
+    public static boolean isHexDigits(CharSequence hex, int start, int end,
+            boolean allowUnknown) {
+        for (int i = start; i < end; i++) {
+            char c = hex.charAt(i);
+            if (digit(c) == -1 && !(allowUnknown && c == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode a hex string into a new byte array.
+     * @param hex The hex string (see {@link #isHex(CharSequence)}).
+     * @return The bytes or null if the string is not a hex string.
+     */
+    public static byte[] decode(CharSequence hex) {
+        if (!isHex(hex)) {
+            return null;
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        decode(hex, 0, hex.length(), bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * Decode a part of a hex string into a byte array given by the caller.
+     * @param hex The string containing the hex data.
+     * @param start The index of the first char to decode.
+     * @param end The index after the last char to decode. The range must
+     * have an even number of chars.
+     * @param out The array to write the bytes to. It must have room for
+     * (end - start) / 2 bytes after outOffset.
+     * @param outOffset The index of the first byte in out.
+     * @return The number of decoded bytes or -1 if the range has an odd
+     * number of chars or contains non hex chars. In this case out may
+     * have been partially overwritten.
+     */
+    public static int decode(CharSequence hex, int start, int end,
+            byte[] out, int outOffset) {
+        if ((end - start) % 2 != 0) {
+            return -1;
+        }
+        int o = outOffset;
+        for (int i = start; i < end; i += 2) {
+            int hi = digit(hex.charAt(i));
+            int lo = digit(hex.charAt(i + 1));
+            if ((hi | lo) < 0) {
+                return -1;
+            }
+            out[o++] = (byte) ((hi << 4) | lo);
+        }
+        return o - outOffset;
+    }
+
+    /**
+     * Decode a part of a char array into a byte array given by the caller
+     * (see {@link #decode(CharSequence, int, int, byte[], int)}).
+     * @param hex The chars containing the hex data.
+     * @param start The index of the first char to decode.
+     * @param end The index after the last char to decode.
+     * @param out The array to write the bytes to.
+     * @param outOffset The index of the first byte in out.
+     * @return The number of decoded bytes or -1 if the range is not
+     * a hex string.
+     */
+    public static int decode(char[] hex, int start, int end,
+            byte[] out, int outOffset) {
+        if ((end - start) % 2 != 0) {
+            return -1;
+        }
+        int o = outOffset;
+        for (int i = start; i < end; i += 2) {
+            int hi = digit(hex[i]);
+            int lo = digit(hex[i + 1]);
+            if ((hi | lo) < 0) {
+                return -1;
+            }
+            out[o++] = (byte) ((hi << 4) | lo);
+        }
+        return o - outOffset;
+    }
+
+    /**
+     * Encode bytes as hex string.
+     * @param bytes The bytes to encode.
+     * @return The hex string (upper case). An empty string
+     * if bytes is null.
+     */
+    public static String encode(byte[] bytes) {
+        if (bytes == null) {
+            return "";
+        }
+        return encode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Encode a part of a byte array as hex string.
+     * @param bytes The bytes to encode.
+     * @param offset The index of the first byte.
+     * @param length The number of bytes.
+     * @return The hex string (upper case).
+     */
+    public static String encode(byte[] bytes, int offset, int length) {
+        char[] chars = new char[length * 2];
+        encode(bytes, offset, length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Encode a part of a byte array as hex into a char array given by
+     * the caller.
+     * @param bytes The bytes to encode.
+     * @param offset The index of the first byte.
+     * @param length The number of bytes.
+     * @param out The array to write the hex digits to. It must have room
+     * for length * 2 chars after outOffset.
+     * @param outOffset The index of the first char in out.
+     */
+    public static void encode(byte[] bytes, int offset, int length,
+            char[] out, int outOffset) {
+        int o = outOffset;
+        for (int i = offset; i < offset + length; i++) {
+            int b = (bytes[i] & 0xFF) << 1;
+            out[o++] = BYTE_DIGITS[b];
+            out[o++] = BYTE_DIGITS[b + 1];
+        }
+    }
+
+    /**
+     * Append a part of a byte array as hex to a {@link StringBuilder}.
+     * @param sb The StringBuilder to append to.
+     * @param bytes The bytes to encode.
+     * @param offset The index of the first byte.
+     * @param length The number of bytes.
+     * @return sb.
+     */
+    public static StringBuilder append(StringBuilder sb, byte[] bytes,
+            int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            append(sb, bytes[i]);
+        }
+        return sb;
+    }
+
+    /**
+     * Append one byte as two hex digits to a {@link StringBuilder}.
+     * @param sb The StringBuilder to append to.
+     * @param b The byte (only the lower 8 bits are used).
+     * @return sb.
+     */
+    public static StringBuilder append(StringBuilder sb, int b) {
+        int i = (b & 0xFF) << 1;
+        return sb.append(BYTE_DIGITS[i]).append(BYTE_DIGITS[i + 1]);
+    }
+
+    /**
+     * Decode a hex string to ASCII. Non printable chars (0x00-0x1F and
+     * 0x7F-0xFF) are replaced with ".".
+     * @param hex The hex string to convert.
+     * @return The ASCII string or null if hex is not a hex string.
+     */
+    public static String toAscii(CharSequence hex) {
+        if (!isHex(hex)) {
+            return null;
+        }
+        char[] chars = new char[hex.length() / 2];
+        for (int i = 0; i < chars.length; i++) {
+            int b = (digit(hex.charAt(2 * i)) << 4)
+                    | digit(hex.charAt(2 * i + 1));
+            chars[i] = (b < 0x20 || b >= 0x7F) ? '.' : (char) b;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Convert a hex string to a binary string (4 bits per hex digit,
+     * with leading zeros).
+     * @param hex The hex string to convert.
+     * @return The binary string or null if hex is not a hex string.
+     */
+    public static String toBinary(CharSequence hex) {
+        if (!isHex(hex)) {
+            return null;
+        }
+        StringBuilder bin = new StringBuilder(hex.length() * 4);
+        for (int i = 0; i < hex.length(); i++) {
+            bin.append(BIN_DIGITS[digit(hex.charAt(i))]);
+        }
+        return bin.toString();
+    }
+
+    /**
+     * Convert a binary string (0/1, a multiple of 8 chars) to a hex
+     * string (2 hex digits per 8 bits, leading zeros are kept).
+     * @param bin The binary string to convert.
+     * @return The hex string or null if bin is not a binary string.
+     */
+    public static String fromBinary(CharSequence bin) {
+        if (bin == null || bin.length() == 0 || bin.length() % 8 != 0) {
+            return null;
+        }
+        char[] hex = new char[bin.length() / 4];
+        for (int i = 0; i < hex.length; i++) {
+            int value = 0;
+            for (int j = 4 * i; j < 4 * i + 4; j++) {
+                char c = bin.charAt(j);
+                if (c != '0' && c != '1') {
+                    return null;
+                }
+                value = (value << 1) | (c - '0');
+            }
+            hex[i] = DIGITS[value];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Convert a hex string (unsigned, big endian) to a decimal string.
+     * Values of up to 7 bytes are converted with a long, longer values
+     * with a division by 10^9 per 9 decimal digits.
+     * @param hex The hex string to convert.
+     * @return The decimal string or null if hex is not a hex string.
+     */
+    public static String toDecimal(CharSequence hex) {
+        if (!isHex(hex)) {
+            return null;
+        }
+        if (hex.length() <= 14) {
+            long value = 0;
+            for (int i = 0; i < hex.length(); i++) {
+                value = (value << 4) | digit(hex.charAt(i));
+            }
+            return Long.toString(value);
+        }
+        int[] bytes = new int[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (digit(hex.charAt(2 * i)) << 4)
+                    | digit(hex.charAt(2 * i + 1));
+        }
+        // Divide by 10^9 until the value is 0. The remainders are the
+        // decimal digits (9 per remainder, least significant first).
+        StringBuilder dec = new StringBuilder(bytes.length * 3);
+        int start = 0;
+        while (start < bytes.length) {
+            long rem = 0;
+            for (int i = start; i < bytes.length; i++) {
+                long cur = (rem << 8) | bytes[i];
+                bytes[i] = (int) (cur / 1000000000L);
+                rem = cur % 1000000000L;
+            }
+            while (start < bytes.length && bytes[start] == 0) {
+                start++;
+            }
+            String digits = Long.toString(rem);
+            dec.insert(0, digits);
+            if (start < bytes.length) {
+                for (int i = digits.length(); i < 9; i++) {
+                    dec.insert(0, '0');
+                }
+            }
+        }
+        return dec.toString();
+    }
+}
@@ -0,0 +1,460 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import java.util.Arrays;
+
+/**
+ * The ordered list of candidate keys for the key mapping
+ * (see {@link MCReader#buildNextKeyMapPart()}). Keys are 48 bit values
+ * (the first key byte is the most significant byte). They are either
+ * stored in a primitive array ({@link #add(long)}) or read directly from
+ * a memory-mapped {@link KeyDictionary}, so even huge dictionaries are
+ * not copied to the heap. To find the node of a key
+ * ({@link #find(long)}), a hash table of the nodes is used in both
+ * cases (4 to 8 bytes per key).<br /><br />
+ * The nodes of the keys are their indices (0 to {@link #size()} - 1)
+ * and stay valid until the list is discarded, no matter how the keys are
+ * reordered. Only the keys that were moved
+ * ({@link #moveToFront(int)}, {@link #moveToSecond(int)}) are kept in a
+ * (small) doubly linked list. All other keys follow them in the order
+ * of their nodes.<br /><br />
+ * Iterate the keys like this:
+ * <pre>
+ * for (int node = list.first(); node != -1; node = list.next(node)) {
+ *     list.getKey(node, buffer);
+ * }
+ * </pre>
+ * @author agent
+ */
+public class KeyCandidateList {
+
+    private static final int EMPTY = -1;
+
+    // The keys if they are not read from a dictionary.
+    private long[] mKeys;
+    // Open addressing hash table (node of the key or EMPTY). The table of
+    // a dictionary is never changed and shared by all copies.
+    private int[] mTable;
+    private final KeyDictionary mDict;
+    private int mSize;
+
+    // The moved keys as doubly linked list over slots.
+    private int[] mSlotNode;
+    private int[] mSlotNext;
+    private int[] mSlotPrev;
+    private int mSlots = 0;
+    private int mHead = EMPTY;
+    // Open addressing hash table (slot of the node or EMPTY).
+    private int[] mSlotTable;
+
+    /**
+     * Create an empty list. Add keys with {@link #add(long)}.
+     * @param capacity Expected number of keys.
+     */
+    public KeyCandidateList(int capacity) {
+        capacity = Math.max(capacity, 16);
+        mDict = null;
+        mSize = 0;
+        mKeys = new long[capacity];
+        mTable = newTable(tableSize(capacity));
+        initSlots();
+    }
+
+    /**
+     * Create a list of all keys of a (compiled) key dictionary.
+     * The keys are not copied, they are read from the dictionary.
+     * Only the hash table for {@link #find(long)} is built.
+     * @param dict The key dictionary.
+     */
+    public KeyCandidateList(KeyDictionary dict) {
+        mDict = dict;
+        mSize = dict.size();
+        mTable = newTable(tableSize(mSize));
+        int mask = mTable.length - 1;
+        for (int node = 0; node < mSize; node++) {
+            // The keys of a dictionary are unique.
+            int slot = hash(dict.getKey(node)) & mask;
+            while (mTable[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            mTable[slot] = node;
+        }
+        initSlots();
+    }
+
+    private KeyCandidateList(KeyCandidateList other) {
+        mDict = other.mDict;
+        mSize = other.mSize;
+        if (other.mKeys != null) {
+            mKeys = other.mKeys.clone();
+            mTable = other.mTable.clone();
+        } else {
+            mTable = other.mTable;
+        }
+        mSlotNode = other.mSlotNode.clone();
+        mSlotNext = other.mSlotNext.clone();
+        mSlotPrev = other.mSlotPrev.clone();
+        mSlotTable = other.mSlotTable.clone();
+        mSlots = other.mSlots;
+        mHead = other.mHead;
+    }
+
+    /**
+     * Convert a 6 byte key to a 48 bit value.
+     * @param key The key (6 bytes).
+     * @return The key as 48 bit value.
+     */
+    public static long toLong(byte[] key) {
+        long ret = 0;
+        for (int i = 0; i < 6; i++) {
+            ret = (ret << 8) | (key[i] & 0xFF);
+        }
+        return ret;
+    }
+
+    /**
+     * Convert a key (12 hex chars) to a 48 bit value.
+     * @param key The key (12 hex chars).
+     * @return The key as 48 bit value.
+     * @throws NumberFormatException If the key is not a hex string.
+     */
+    public static long toLong(String key) {
+        return Long.parseLong(key, 16);
+    }
+
+    /**
+     * Append a key (if it is not already in the list).
+     * @param key The key as 48 bit value.
+     * @return True if the key was added. False if it was already in the list.
+     * @throws UnsupportedOperationException If the keys are read from
+     * a dictionary.
+     */
+    public boolean add(long key) {
+        if (mDict != null) {
+            throw new UnsupportedOperationException(
+                    "The keys of a dictionary can not be changed.");
+        }
+        int mask = mTable.length - 1;
+        int slot = hash(key) & mask;
+        while (mTable[slot] != EMPTY) {
+            if (mKeys[mTable[slot]] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (mSize == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, mSize * 2);
+        }
+        int node = mSize++;
+        mKeys[node] = key;
+        mTable[slot] = node;
+        if (tableSize(mSize) > mTable.length) {
+            mTable = rehash(mTable, mKeys, mSize);
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of keys.
+     * @return Number of keys.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Get the node of the first key.
+     * @return The first node or -1 if the list is empty.
+     */
+    public int first() {
+        if (mHead != EMPTY) {
+            return mSlotNode[mHead];
+        }
+        return nextNotMoved(0);
+    }
+
+    /**
+     * Get the node of the next key.
+     * @param node The current node.
+     * @return The next node or -1 if node was the last one.
+     */
+    public int next(int node) {
+        int slot = findSlot(node);
+        if (slot == EMPTY) {
+            return nextNotMoved(node + 1);
+        }
+        int next = mSlotNext[slot];
+        return (next != EMPTY) ? mSlotNode[next] : nextNotMoved(0);
+    }
+
+    /**
+     * Get the key of a node.
+     * @param node The node.
+     * @return The key as 48 bit value.
+     */
+    public long getKey(int node) {
+        return (mDict != null) ? mDict.getKey(node) : mKeys[node];
+    }
+
+    /**
+     * Copy the key of a node into a byte array (no allocation).
+     * @param node The node.
+     * @param dest Destination (at least 6 bytes).
+     */
+    public void getKey(int node, byte[] dest) {
+        if (mDict != null) {
+            mDict.getKey(node, dest);
+            return;
+        }
+        long key = mKeys[node];
+        for (int i = 5; i >= 0; i--) {
+            dest[i] = (byte) key;
+            key >>>= 8;
+        }
+    }
+
+    /**
+     * Get the key of a node as hex string.
+     * @param node The node.
+     * @return The key (12 hex chars).
+     */
+    public String getKeyHex(int node) {
+        byte[] key = new byte[6];
+        getKey(node, key);
+        return Common.bytes2Hex(key);
+    }
+
+    /**
+     * Find the node of a key (hash table lookup).
+     * @param key The key as 48 bit value.
+     * @return The node or -1 if the key is not in the list.
+     */
+    public int find(long key) {
+        int mask = mTable.length - 1;
+        int slot = hash(key) & mask;
+        while (mTable[slot] != EMPTY) {
+            if (getKey(mTable[slot]) == key) {
+                return mTable[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Move a key to the front of the list.
+     * @param node The node of the key.
+     */
+    public void moveToFront(int node) {
+        if (node == first()) {
+            return;
+        }
+        linkAfter(EMPTY, takeSlot(node));
+    }
+
+    /**
+     * Move a key to the second position of the list (behind the first key).
+     * @param node The node of the key.
+     */
+    public void moveToSecond(int node) {
+        int head = first();
+        if (node == head) {
+            return;
+        }
+        if (mHead == EMPTY) {
+            // The first key has not been moved yet.
+            linkAfter(EMPTY, takeSlot(head));
+        }
+        linkAfter(mHead, takeSlot(node));
+    }
+
+    /**
+     * Check if another list contains the same keys (the order
+     * does not matter). Two lists of dictionaries only have the same keys
+     * if the dictionaries contain the same keys in the same order.
+     * @param other The other list.
+     * @return True if both lists contain the same keys.
+     */
+    public boolean hasSameKeys(KeyCandidateList other) {
+        if (other == null || other.mSize != mSize) {
+            return false;
+        }
+        if (mDict != null && other.mDict != null) {
+            return mDict.hasSameKeys(other.mDict);
+        }
+        // Look up the keys in the list with the hash table.
+        KeyCandidateList table = (other.mDict == null) ? other : this;
+        KeyCandidateList keys = (table == other) ? this : other;
+        for (int node = 0; node < mSize; node++) {
+            if (table.find(keys.getKey(node)) == EMPTY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Create a copy of this list. The nodes of the copy are the same
+     * as the ones of this list. A dictionary is shared, not copied.
+     * @return The copy.
+     */
+    public KeyCandidateList copy() {
+        return new KeyCandidateList(this);
+    }
+
+    private void initSlots() {
+        mSlotNode = new int[16];
+        mSlotNext = new int[16];
+        mSlotPrev = new int[16];
+        mSlotTable = newTable(tableSize(16));
+    }
+
+    /**
+     * Get the first node (starting at the given one) that was not moved.
+     * @param node The node to start with.
+     * @return The node or -1 if there is none.
+     */
+    private int nextNotMoved(int node) {
+        while (node < mSize && findSlot(node) != EMPTY) {
+            node++;
+        }
+        return (node < mSize) ? node : EMPTY;
+    }
+
+    private int findSlot(int node) {
+        if (mSlots == 0) {
+            return EMPTY;
+        }
+        int mask = mSlotTable.length - 1;
+        int i = hash(node) & mask;
+        while (mSlotTable[i] != EMPTY) {
+            if (mSlotNode[mSlotTable[i]] == node) {
+                return mSlotTable[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Get the slot of a node and remove it from the list of moved keys.
+     * If the node has never been moved, a new slot will be created.
+     * @param node The node.
+     * @return The (unlinked) slot.
+     */
+    private int takeSlot(int node) {
+        int slot = findSlot(node);
+        if (slot != EMPTY) {
+            int prev = mSlotPrev[slot];
+            int next = mSlotNext[slot];
+            if (prev != EMPTY) {
+                mSlotNext[prev] = next;
+            } else {
+                mHead = next;
+            }
+            if (next != EMPTY) {
+                mSlotPrev[next] = prev;
+            }
+            return slot;
+        }
+        if (mSlots == mSlotNode.length) {
+            int capacity = mSlots * 2;
+            mSlotNode = Arrays.copyOf(mSlotNode, capacity);
+            mSlotNext = Arrays.copyOf(mSlotNext, capacity);
+            mSlotPrev = Arrays.copyOf(mSlotPrev, capacity);
+        }
+        slot = mSlots++;
+        mSlotNode[slot] = node;
+        int mask = mSlotTable.length - 1;
+        int i = hash(node) & mask;
+        while (mSlotTable[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        mSlotTable[i] = slot;
+        if (tableSize(mSlots) > mSlotTable.length) {
+            long[] nodes = new long[mSlots];
+            for (int s = 0; s < mSlots; s++) {
+                nodes[s] = mSlotNode[s];
+            }
+            mSlotTable = rehash(mSlotTable, nodes, mSlots);
+        }
+        return slot;
+    }
+
+    /**
+     * Insert a slot into the list of moved keys.
+     * @param prev The slot to insert after or -1 to insert at the front.
+     * @param slot The (unlinked) slot to insert.
+     */
+    private void linkAfter(int prev, int slot) {
+        int next = (prev == EMPTY) ? mHead : mSlotNext[prev];
+        mSlotPrev[slot] = prev;
+        mSlotNext[slot] = next;
+        if (prev != EMPTY) {
+            mSlotNext[prev] = slot;
+        } else {
+            mHead = slot;
+        }
+        if (next != EMPTY) {
+            mSlotPrev[next] = slot;
+        }
+    }
+
+    /**
+     * Create a bigger hash table.
+     * @param table The current table.
+     * @param values The values of the entries (the entries are indices
+     * of this array).
+     * @param count Number of entries.
+     * @return The new table.
+     */
+    private static int[] rehash(int[] table, long[] values, int count) {
+        int[] ret = newTable(table.length * 2);
+        int mask = ret.length - 1;
+        for (int i = 0; i < count; i++) {
+            int slot = hash(values[i]) & mask;
+            while (ret[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            ret[slot] = i;
+        }
+        return ret;
+    }
+
+    /**
+     * Get the hash table size for a number of keys (load factor <= 0.5).
+     * @param keys Number of keys.
+     * @return The table size (power of two).
+     */
+    private static int tableSize(int keys) {
+        return Integer.highestOneBit(Math.max(keys, 8) * 2 - 1) * 2;
+    }
+
+    private static int[] newTable(int size) {
+        int[] table = new int[size];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A compiled (binary) key dictionary. It contains the deduplicated keys
+ * of one or more key files (*.keys) as packed 6 byte records in the order
+ * of their first appearance. Compiled dictionaries are memory-mapped,
+ * so loading them does not require parsing or much heap. They are
+ * recompiled automatically if the size or the modification time of a
+ * source key file changes (see {@link #get(File[], File)}).<br /><br />
+ * File format (big endian): magic "MCKD", version (int),
+ * source file count (int) and per source file: absolute path
+ * (UTF-8 length (int) and bytes), size (long) and modification time
+ * (long). Then the key count (int) followed by the keys (6 bytes each).
+ * @author agent
+ */
+public class KeyDictionary {
+
+    private static final String LOG_TAG = KeyDictionary.class.getSimpleName();
+    private static final int MAGIC = 0x4D434B44; // "MCKD"
+    private static final int VERSION = 2;
+    /**
+     * Maximum number of compiled dictionaries (key file selections)
+     * that are kept. Older ones will be deleted.
+     */
+    private static final int MAX_COMPILED_FILES = 16;
+    /**
+     * File extension of compiled dictionaries.
+     */
+    public static final String FILE_EXTENSION = ".mckd";
+
+    private final ByteBuffer mKeys;
+    private final int mSize;
+
+    private KeyDictionary(ByteBuffer keys, int size) {
+        mKeys = keys;
+        mSize = size;
+    }
+
+    /**
+     * Get the compiled dictionary for the given key files. If there is
+     * a compiled dictionary for these files in the given directory and
+     * the key files did not change (same size and modification time),
+     * it will be used. Otherwise the key files will be (re)compiled.
+     * @param keyFiles The key files (the order matters).
+     * @param compiledDir The directory of the compiled dictionaries
+     * (usually {@link Common#KEY_DICTS_DIR}).
+     * @return The dictionary.
+     * @throws IOException If the key files could not be read or the
+     * dictionary could not be written.
+     */
+    public static KeyDictionary get(File[] keyFiles, File compiledDir)
+            throws IOException {
+        File compiled = new File(compiledDir,
+                getCompiledFileName(keyFiles));
+        if (compiled.exists()) {
+            KeyDictionary dict = load(compiled, keyFiles);
+            if (dict != null) {
+                // Mark as recently used.
+                compiled.setLastModified(System.currentTimeMillis());
+                return dict;
+            }
+        }
+        if (!compiledDir.exists() && !compiledDir.mkdirs()) {
+            throw new IOException("Could not create " + compiledDir);
+        }
+        compile(keyFiles, compiled);
+        deleteOldCompiledFiles(compiledDir);
+        KeyDictionary dict = load(compiled, null);
+        if (dict == null) {
+            throw new IOException("Could not load " + compiled);
+        }
+        return dict;
+    }
+
+    /**
+     * Load (memory-map) a compiled dictionary.
+     * @param compiled The compiled dictionary.
+     * @param expectedSources If not null, the key files the dictionary
+     * must have been compiled from (with their current size and
+     * modification time).
+     * @return The dictionary or null if the file is not a valid
+     * dictionary or if the key files do not match.
+     */
+    public static KeyDictionary load(File compiled, File[] expectedSources) {
+        try (RandomAccessFile raf = new RandomAccessFile(compiled, "r");
+                FileChannel channel = raf.getChannel()) {
+            long length = channel.size();
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, length);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            int sources = buffer.getInt();
+            if (expectedSources != null
+                    && sources != expectedSources.length) {
+                return null;
+            }
+            for (int i = 0; i < sources; i++) {
+                byte[] path = new byte[buffer.getInt()];
+                buffer.get(path);
+                long size = buffer.getLong();
+                long lastModified = buffer.getLong();
+                if (expectedSources != null) {
+                    File source = expectedSources[i];
+                    if (!Arrays.equals(path, getPath(source))
+                            || size != source.length()
+                            || lastModified != source.lastModified()) {
+                        return null;
+                    }
+                }
+            }
+            int size = buffer.getInt();
+            if (size < 0 || buffer.position() + (long) size * 6 != length) {
+                return null;
+            }
+            // The mapping stays valid after the channel is closed.
+            return new KeyDictionary(buffer.slice(), size);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            // Truncated or corrupted header.
+            return null;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error while loading compiled key dictionary.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Compile key files into a dictionary. Lines that are not a key
+     * (12 hex chars, comments and whitespaces are ignored, see
+     * {@link KeyFileParser}) are skipped.
+     * Duplicate keys are removed.
+     * @param keyFiles The key files.
+     * @param compiled The destination file.
+     * @return The number of keys.
+     * @throws IOException If a key file could not be read or
+     * the destination could not be written.
+     */
+    public static int compile(File[] keyFiles, File compiled)
+            throws IOException {
+        // Get the size and the modification time before reading, so a
+        // change while compiling will trigger a recompilation next time.
+        long[] sizes = new long[keyFiles.length];
+        long[] lastModified = new long[keyFiles.length];
+        for (int i = 0; i < keyFiles.length; i++) {
+            sizes[i] = keyFiles[i].length();
+            lastModified[i] = keyFiles[i].lastModified();
+        }
+        KeyFileParser parser = new KeyFileParser(true);
+        byte[] buffer = new byte[64 * 1024];
+        for (File keyFile : keyFiles) {
+            try (InputStream in = new FileInputStream(keyFile)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    parser.parse(buffer, 0, read);
+                }
+            }
+            parser.endOfFile();
+        }
+
+        // Write the keys directly from the parser (no copy of the
+        // whole dictionary on the heap).
+        File tmp = new File(compiled.getPath() + ".tmp");
+        int size = parser.size();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(keyFiles.length);
+            for (int i = 0; i < keyFiles.length; i++) {
+                byte[] path = getPath(keyFiles[i]);
+                out.writeInt(path.length);
+                out.write(path);
+                out.writeLong(sizes[i]);
+                out.writeLong(lastModified[i]);
+            }
+            out.writeInt(size);
+            byte[] key = new byte[6];
+            for (int i = 0; i < size; i++) {
+                parser.getKey(i, key, 0);
+                out.write(key);
+            }
+        }
+        if (!tmp.renameTo(compiled)) {
+            throw new IOException("Could not rename " + tmp);
+        }
+        return size;
+    }
+
+    /**
+     * Get the number of keys.
+     * @return Number of keys.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Get a key as 48 bit value (the first key byte is the most
+     * significant byte).
+     * @param index Index of the key.
+     * @return The key.
+     */
+    public long getKey(int index) {
+        int pos = index * 6;
+        long key = 0;
+        for (int i = 0; i < 6; i++) {
+            key = (key << 8) | (mKeys.get(pos + i) & 0xFF);
+        }
+        return key;
+    }
+
+    /**
+     * Copy a key into a byte array.
+     * @param index Index of the key.
+     * @param dest Destination (at least 6 bytes).
+     */
+    public void getKey(int index, byte[] dest) {
+        int pos = index * 6;
+        for (int i = 0; i < 6; i++) {
+            dest[i] = mKeys.get(pos + i);
+        }
+    }
+
+    /**
+     * Get a key as hex string.
+     * @param index Index of the key.
+     * @return The key (12 hex chars).
+     */
+    public String getKeyHex(int index) {
+        byte[] key = new byte[6];
+        getKey(index, key);
+        return Common.bytes2Hex(key);
+    }
+
+    /**
+     * Check if another dictionary contains the same keys in the same order.
+     * @param other The other dictionary.
+     * @return True if both dictionaries contain the same keys.
+     */
+    public boolean hasSameKeys(KeyDictionary other) {
+        return other != null && other.mSize == mSize
+                && other.mKeys.equals(mKeys);
+    }
+
+    /**
+     * Get the name of the compiled dictionary for a selection of key files.
+     * It is derived from the (absolute) paths of the key files.
+     * @param keyFiles The key files.
+     * @return File name of the compiled dictionary.
+     */
+    private static String getCompiledFileName(File[] keyFiles) {
+        MessageDigest digest = createDigest();
+        for (File keyFile : keyFiles) {
+            digest.update(getPath(keyFile));
+            digest.update((byte) 0);
+        }
+        return Common.bytes2Hex(Arrays.copyOf(digest.digest(), 8))
+                + FILE_EXTENSION;
+    }
+
+    private static byte[] getPath(File file) {
+        return file.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is always available on Android.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Keep only the {@link #MAX_COMPILED_FILES} most recently used
+     * compiled dictionaries.
+     * @param compiledDir The directory of the compiled dictionaries.
+     */
+    private static void deleteOldCompiledFiles(File compiledDir) {
+        File[] files = compiledDir.listFiles(
+                (dir, name) -> name.endsWith(FILE_EXTENSION));
+        if (files == null || files.length <= MAX_COMPILED_FILES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(
+                b.lastModified(), a.lastModified()));
+        for (int i = MAX_COMPILED_FILES; i < files.length; i++) {
+            if (!files[i].delete()) {
+                Log.d(LOG_TAG, "Could not delete " + files[i]);
+            }
+        }
+    }
+}
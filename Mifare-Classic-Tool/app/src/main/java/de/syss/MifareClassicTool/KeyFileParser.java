@@ -0,0 +1,308 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A streaming parser for key files (*.keys). The input is processed in
+ * chunks (raw bytes or chars) without creating strings or using regular
+ * expressions. Keys are stored as 48 bit values (the first key byte is
+ * the most significant byte) in a primitive array, duplicates can be
+ * removed on the fly with an open addressing hash set.<br /><br />
+ * A line is a key if it contains exactly 12 hex chars (leading/tailing
+ * whitespaces and comments starting with "#" are ignored, like in
+ * {@link Common#isValidKeyFile(String[])}). Invalid lines are skipped,
+ * but the first one is reported (see {@link #getError()} and
+ * {@link #getErrorLine()}).<br /><br />
+ * To process files that do not fit into memory, the keys can be
+ * consumed after each chunk and dropped with {@link #clearKeys()}.
+ * The hash set for removing duplicates stays intact.
+ * @author agent
+ */
+public class KeyFileParser {
+
+    private static final long EMPTY = -1;
+
+    private final boolean mRemoveDuplicates;
+    private long[] mKeys = new long[1024];
+    private int mSize = 0;
+    private int mKeyCount = 0;
+    // Open addressing hash set of the keys (EMPTY = empty slot).
+    private long[] mTable;
+    private int mTableSize = 0;
+
+    private long mKey = 0;
+    private int mDigits = 0;
+    private boolean mInvalidChars = false;
+    private boolean mInComment = false;
+    private boolean mKeyDone = false;
+    private boolean mLastWasCR = false;
+    private int mLine = 1;
+    private int mError = 0;
+    private int mErrorLine = 0;
+
+    /**
+     * Create a new parser.
+     * @param removeDuplicates If true, keys that were already parsed
+     * (even if they have been dropped with {@link #clearKeys()})
+     * will be skipped.
+     */
+    public KeyFileParser(boolean removeDuplicates) {
+        mRemoveDuplicates = removeDuplicates;
+        mTable = removeDuplicates ? newTable(2048) : null;
+    }
+
+    /**
+     * Parse a chunk of a key file (ASCII/UTF-8).
+     * @param buffer The buffer containing the chunk.
+     * @param offset The index of the first byte.
+     * @param length The number of bytes.
+     */
+    public void parse(byte[] buffer, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            nextChar((char) (buffer[i] & 0xFF));
+        }
+    }
+
+    /**
+     * Parse a chunk of a key file (e.g. the text of an editor).
+     * @param text The chunk.
+     */
+    public void parse(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            nextChar(text.charAt(i));
+        }
+    }
+
+    /**
+     * Parse one line of a key file (without line break).
+     * @param line The line.
+     */
+    public void parseLine(CharSequence line) {
+        parse(line);
+        endOfLine();
+    }
+
+    /**
+     * Parse a whole key file from a stream (including
+     * {@link #endOfFile()}). The stream will not be closed.
+     * @param in The stream.
+     * @throws IOException If reading failed.
+     */
+    public void parse(InputStream in) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            parse(buffer, 0, read);
+        }
+        endOfFile();
+    }
+
+    /**
+     * Finish the current file (the last line might not end with
+     * a line break). The next chunk will be treated as start of a new
+     * line (e.g. of another key file).
+     */
+    public void endOfFile() {
+        endOfLine();
+        mLastWasCR = false;
+    }
+
+    /**
+     * Get the first error.
+     * Return values are compliant to
+     * {@link Common#isValidKeyFileErrorToast(int, android.content.Context)}.
+     * @return <ul>
+     * <li>0 - All O.K.</li>
+     * <li>1 - There is no key.</li>
+     * <li>2 - At least one key has invalid characters (not hex).</li>
+     * <li>3 - At least one key has not 6 byte (12 chars).</li>
+     * </ul>
+     */
+    public int getError() {
+        if (mError == 0 && mKeyCount == 0) {
+            return 1;
+        }
+        return mError;
+    }
+
+    /**
+     * Get the line of the first error (see {@link #getError()}).
+     * @return The line number (starting with 1) or 0 if there was
+     * no invalid line.
+     */
+    public int getErrorLine() {
+        return mErrorLine;
+    }
+
+    /**
+     * Get the number of all valid key lines (including duplicates
+     * and keys dropped with {@link #clearKeys()}).
+     * @return Number of key lines.
+     */
+    public int getKeyCount() {
+        return mKeyCount;
+    }
+
+    /**
+     * Get the number of stored keys.
+     * @return Number of keys.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Get a stored key as 48 bit value.
+     * @param index Index of the key.
+     * @return The key.
+     */
+    public long getKey(int index) {
+        return mKeys[index];
+    }
+
+    /**
+     * Copy a stored key into a byte array.
+     * @param index Index of the key.
+     * @param dest Destination.
+     * @param destOffset Index of the first key byte in dest.
+     */
+    public void getKey(int index, byte[] dest, int destOffset) {
+        long key = mKeys[index];
+        for (int i = destOffset + 5; i >= destOffset; i--) {
+            dest[i] = (byte) key;
+            key >>>= 8;
+        }
+    }
+
+    /**
+     * Drop all stored keys (after they were consumed). Duplicates of
+     * dropped keys will still be removed.
+     */
+    public void clearKeys() {
+        mSize = 0;
+    }
+
+    private void nextChar(char c) {
+        if (c == '\n' && mLastWasCR) {
+            // Second part of "\r\n".
+            mLastWasCR = false;
+            return;
+        }
+        mLastWasCR = c == '\r';
+        if (c == '\n' || c == '\r') {
+            endOfLine();
+            return;
+        }
+        if (mInComment) {
+            return;
+        }
+        if (c == '#') {
+            mInComment = true;
+            return;
+        }
+        if (c <= ' ') {
+            // Whitespaces are only allowed around the key.
+            mKeyDone = mDigits > 0 || mInvalidChars;
+            return;
+        }
+        int digit = HexCodec.digit(c);
+        if (digit == -1 || mKeyDone) {
+            mInvalidChars = true;
+            return;
+        }
+        mKey = (mKey << 4) | digit;
+        mDigits++;
+    }
+
+    private void endOfLine() {
+        if (mInvalidChars || (mDigits > 0 && mDigits != 12)) {
+            if (mError == 0) {
+                mError = mInvalidChars ? 2 : 3;
+                mErrorLine = mLine;
+            }
+        } else if (mDigits == 12) {
+            mKeyCount++;
+            if (!mRemoveDuplicates || addToTable(mKey)) {
+                if (mSize == mKeys.length) {
+                    mKeys = Arrays.copyOf(mKeys, mSize * 2);
+                }
+                mKeys[mSize++] = mKey;
+            }
+        }
+        mLine++;
+        mKey = 0;
+        mDigits = 0;
+        mInvalidChars = false;
+        mInComment = false;
+        mKeyDone = false;
+    }
+
+    /**
+     * Add a key to the hash set.
+     * @param key The key.
+     * @return True if the key was added. False if it was already there.
+     */
+    private boolean addToTable(long key) {
+        int mask = mTable.length - 1;
+        int slot = hash(key) & mask;
+        while (mTable[slot] != EMPTY) {
+            if (mTable[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        mTable[slot] = key;
+        mTableSize++;
+        if (mTableSize * 2 > mTable.length) {
+            rehash();
+        }
+        return true;
+    }
+
+    private void rehash() {
+        long[] old = mTable;
+        mTable = newTable(old.length * 2);
+        int mask = mTable.length - 1;
+        for (long key : old) {
+            if (key == EMPTY) {
+                continue;
+            }
+            int slot = hash(key) & mask;
+            while (mTable[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            mTable[slot] = key;
+        }
+    }
+
+    private static long[] newTable(int size) {
+        long[] table = new long[size];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+}
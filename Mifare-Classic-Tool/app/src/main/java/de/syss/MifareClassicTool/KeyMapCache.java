@@ -0,0 +1,288 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A persistent cache of key maps (see {@link MCReader#getKeyMap()}),
+ * indexed by the UID of the tag. Together with the keys, the mapping
+ * range and the size of the tag is stored. Sectors inside the mapping
+ * range without an entry in the key map are sectors for which no key
+ * was found.
+ * The cache holds at most {@link #MAX_ENTRIES} tags. If there are more,
+ * the least recently used tag gets dropped.<br /><br />
+ * File format (big endian): magic "MCKC", version (int), entry count (int)
+ * and per entry (least recently used first): UID length (byte), UID,
+ * tag size (int), first sector (byte), last sector (byte), sector count
+ * (byte) and per sector: sector (byte), key flags (byte, bit 0 = key A,
+ * bit 1 = key B) followed by the keys (6 bytes each).
+ * @author agent
+ */
+public class KeyMapCache {
+
+    private static final String LOG_TAG = KeyMapCache.class.getSimpleName();
+    private static final int MAGIC = 0x4D434B43; // "MCKC"
+    private static final int VERSION = 1;
+    /**
+     * Maximum number of tags in the cache.
+     */
+    public static final int MAX_ENTRIES = 256;
+
+    private final File mFile;
+    private final LinkedHashMap<String, Entry> mEntries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+    private boolean mIsModified = false;
+
+    /**
+     * The cached key map of a tag.
+     */
+    public static class Entry {
+        private final int mSize;
+        private final int mFirstSector;
+        private final int mLastSector;
+        private final SparseArray<byte[][]> mKeyMap;
+
+        private Entry(int size, int firstSector, int lastSector,
+                SparseArray<byte[][]> keyMap) {
+            mSize = size;
+            mFirstSector = firstSector;
+            mLastSector = lastSector;
+            mKeyMap = keyMap;
+        }
+
+        /**
+         * Get the size of the tag (see {@link MCReader#getSize()}).
+         * @return The size of the tag.
+         */
+        public int getSize() {
+            return mSize;
+        }
+
+        public int getFirstSector() {
+            return mFirstSector;
+        }
+
+        public int getLastSector() {
+            return mLastSector;
+        }
+
+        /**
+         * Get the key map.
+         * @return A copy of the key map.
+         */
+        public SparseArray<byte[][]> getKeyMap() {
+            return mKeyMap.clone();
+        }
+    }
+
+    /**
+     * Create an empty cache that will be saved to the given file.
+     * Use {@link #load(File)} to read an existing cache.
+     * @param file The file for {@link #save()}.
+     */
+    public KeyMapCache(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Load the cache from a file. If the file does not exist or
+     * can not be read, an empty cache will be returned.
+     * @param file The cache file
+     * (usually {@link Common#KEY_MAP_CACHE_FILE}).
+     * @return The cache.
+     */
+    public static KeyMapCache load(File file) {
+        KeyMapCache cache = new KeyMapCache(file);
+        if (file == null || !file.exists()) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.d(LOG_TAG, "Unknown key map cache format.");
+                return cache;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] uid = new byte[in.readUnsignedByte()];
+                in.readFully(uid);
+                int size = in.readInt();
+                int firstSector = in.readUnsignedByte();
+                int lastSector = in.readUnsignedByte();
+                int sectorCount = in.readUnsignedByte();
+                SparseArray<byte[][]> keyMap = new SparseArray<>(sectorCount);
+                for (int j = 0; j < sectorCount; j++) {
+                    int sector = in.readUnsignedByte();
+                    int flags = in.readUnsignedByte();
+                    byte[][] keys = new byte[2][];
+                    for (int k = 0; k < 2; k++) {
+                        if ((flags & (1 << k)) != 0) {
+                            keys[k] = new byte[6];
+                            in.readFully(keys[k]);
+                        }
+                    }
+                    keyMap.put(sector, keys);
+                }
+                cache.mEntries.put(Common.bytes2Hex(uid),
+                        new Entry(size, firstSector, lastSector, keyMap));
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error while reading key map cache.", e);
+            cache.mEntries.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Save the cache (if it was modified since loading).
+     * @return True if the cache is saved. False on error.
+     */
+    public synchronized boolean save() {
+        if (!mIsModified || mFile == null) {
+            return true;
+        }
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            return false;
+        }
+        File tmp = new File(mFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mEntries.size());
+            // Iteration order of the map is the LRU order.
+            for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+                byte[] uid = Common.hex2Bytes(entry.getKey());
+                Entry e = entry.getValue();
+                out.writeByte(uid.length);
+                out.write(uid);
+                out.writeInt(e.mSize);
+                out.writeByte(e.mFirstSector);
+                out.writeByte(e.mLastSector);
+                out.writeByte(e.mKeyMap.size());
+                for (int i = 0; i < e.mKeyMap.size(); i++) {
+                    byte[][] keys = e.mKeyMap.valueAt(i);
+                    int flags = ((keys[0] != null) ? 1 : 0)
+                            | ((keys[1] != null) ? 2 : 0);
+                    out.writeByte(e.mKeyMap.keyAt(i));
+                    out.writeByte(flags);
+                    for (byte[] key : keys) {
+                        if (key != null) {
+                            out.write(key);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error while saving key map cache.", e);
+            return false;
+        }
+        if (!tmp.renameTo(mFile)) {
+            return false;
+        }
+        mIsModified = false;
+        return true;
+    }
+
+    /**
+     * Get the cached key map of a tag. This marks the tag as recently
+     * used.
+     * @param uid The UID of the tag (hex string).
+     * @param size The size of the tag (see {@link MCReader#getSize()}).
+     * @return The cached key map or null if there is none for this tag
+     * (or if the size does not match).
+     */
+    public synchronized Entry get(String uid, int size) {
+        if (uid == null) {
+            return null;
+        }
+        Entry e = mEntries.get(uid);
+        if (e == null || e.mSize != size) {
+            return null;
+        }
+        // The LRU order has changed.
+        mIsModified = true;
+        return e;
+    }
+
+    /**
+     * Add (or replace) the key map of a tag.
+     * @param uid The UID of the tag (hex string).
+     * @param size The size of the tag (see {@link MCReader#getSize()}).
+     * @param firstSector The first sector of the mapping range.
+     * @param lastSector The last sector of the mapping range.
+     * @param keyMap The key map (see {@link MCReader#getKeyMap()}).
+     */
+    public synchronized void put(String uid, int size, int firstSector,
+            int lastSector, SparseArray<byte[][]> keyMap) {
+        if (uid == null || keyMap == null) {
+            return;
+        }
+        mEntries.remove(uid);
+        mEntries.put(uid, new Entry(size, firstSector, lastSector,
+                keyMap.clone()));
+        mIsModified = true;
+    }
+
+    /**
+     * Remove the key map of a tag.
+     * @param uid The UID of the tag (hex string).
+     */
+    public synchronized void remove(String uid) {
+        if (mEntries.remove(uid) != null) {
+            mIsModified = true;
+        }
+    }
+
+    /**
+     * Get the number of cached tags.
+     * @return Number of cached tags.
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Remove all cached key maps.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+        mIsModified = true;
+    }
+}
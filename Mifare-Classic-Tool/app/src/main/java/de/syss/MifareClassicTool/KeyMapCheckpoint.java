@@ -0,0 +1,202 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import android.util.SparseArray;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The progress of an interrupted key mapping
+ * ({@link MCReader#buildNextKeyMapPart()}), e.g. because the tag was
+ * removed. It contains the sectors already mapped (key map), the keys
+ * already found for the current sector and the positions in the key lists
+ * (key A and key B order) up to which the keys have been tested for the
+ * current sector.
+ * Checkpoints are kept in memory, indexed by the UID of the tag, so the
+ * key mapping can be resumed by {@link MCReader#resumeFrom(KeyMapCheckpoint)}
+ * once the same tag is presented again.<br />
+ * Checkpoints are not persisted. A key mapping can only be resumed within
+ * the same app process. If the process is killed, the key mapping starts
+ * from the beginning. The key statistics are saved when a key mapping
+ * stops, so the keys found so far will be tried first.
+ * @author agent
+ */
+public class KeyMapCheckpoint {
+
+    /**
+     * Maximum number of checkpoints (tags) to keep. If there are more,
+     * the oldest one gets dropped.
+     */
+    private static final int MAX_CHECKPOINTS = 8;
+    private static final LinkedHashMap<String, KeyMapCheckpoint> mCheckpoints =
+            new LinkedHashMap<String, KeyMapCheckpoint>(
+                    MAX_CHECKPOINTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, KeyMapCheckpoint> eldest) {
+                    return size() > MAX_CHECKPOINTS;
+                }
+            };
+
+    private final String mUid;
+    private final int mFirstSector;
+    private final int mLastSector;
+    private final int mSector;
+    private final int[] mKeyNodes;
+    private final String[] mSectorKeys;
+    private final SparseArray<byte[][]> mKeyMap;
+    private final KeyCandidateList mKeysA;
+    private final KeyCandidateList mKeysB;
+
+    /**
+     * Create a checkpoint. All data gets copied.
+     * @param uid The UID of the tag (hex string).
+     * @param firstSector The first sector of the mapping range.
+     * @param lastSector The last sector of the mapping range.
+     * @param sector The sector that was mapped when the mapping stopped.
+     * @param keyNodes The nodes (see {@link KeyCandidateList}) of the
+     * first key A (index 0) and key B (index 1) candidates that were not
+     * tested for the sector.
+     * @param sectorKeys Key A and key B already found for the sector
+     * (null if not found yet).
+     * @param keyMap The key map of the sectors already mapped.
+     * @param keysA The key list in the order used for key A.
+     * @param keysB The key list in the order used for key B.
+     */
+    KeyMapCheckpoint(String uid, int firstSector, int lastSector,
+            int sector, int[] keyNodes, String[] sectorKeys,
+            SparseArray<byte[][]> keyMap, KeyCandidateList keysA,
+            KeyCandidateList keysB) {
+        mUid = uid;
+        mFirstSector = firstSector;
+        mLastSector = lastSector;
+        mSector = sector;
+        mKeyNodes = keyNodes.clone();
+        mSectorKeys = (sectorKeys != null)
+                ? sectorKeys.clone() : new String[2];
+        mKeyMap = keyMap.clone();
+        mKeysA = keysA.copy();
+        mKeysB = keysB.copy();
+    }
+
+    /**
+     * Store a checkpoint (replaces an existing checkpoint of the same tag).
+     * @param checkpoint The checkpoint.
+     */
+    public static synchronized void put(KeyMapCheckpoint checkpoint) {
+        if (checkpoint != null) {
+            mCheckpoints.put(checkpoint.getUid(), checkpoint);
+        }
+    }
+
+    /**
+     * Get the checkpoint of a tag.
+     * @param uid The UID of the tag (hex string).
+     * @return The checkpoint or null if there is none.
+     */
+    public static synchronized KeyMapCheckpoint get(String uid) {
+        if (uid == null) {
+            return null;
+        }
+        return mCheckpoints.get(uid);
+    }
+
+    /**
+     * Remove the checkpoint of a tag (e.g. because the key mapping
+     * finished).
+     * @param uid The UID of the tag (hex string).
+     */
+    public static synchronized void remove(String uid) {
+        if (uid != null) {
+            mCheckpoints.remove(uid);
+        }
+    }
+
+    /**
+     * Check if this checkpoint belongs to a key mapping with the same
+     * range and the same keys (the order does not matter).
+     * @param firstSector The first sector of the mapping range.
+     * @param lastSector The last sector of the mapping range.
+     * @param keys The keys of the mapping.
+     * @return True if the checkpoint matches.
+     */
+    public boolean matches(int firstSector, int lastSector,
+            KeyCandidateList keys) {
+        return mFirstSector == firstSector && mLastSector == lastSector
+                && mKeysA.hasSameKeys(keys);
+    }
+
+    public String getUid() {
+        return mUid;
+    }
+
+    public int getFirstSector() {
+        return mFirstSector;
+    }
+
+    public int getLastSector() {
+        return mLastSector;
+    }
+
+    /**
+     * Get the sector to resume the key mapping with.
+     * @return The sector.
+     */
+    public int getSector() {
+        return mSector;
+    }
+
+    /**
+     * Get the nodes (in {@link #getKeys(boolean)}) of the first keys that
+     * still have to be tested for {@link #getSector()}.
+     * @return A copy of the node for key A (index 0) and key B (index 1).
+     * A node is -1 if all keys have been tested.
+     */
+    public int[] getKeyNodes() {
+        return mKeyNodes.clone();
+    }
+
+    /**
+     * Get the keys already found for {@link #getSector()}.
+     * @return A copy of key A (index 0) and key B (index 1). A key is
+     * null if it was not found yet.
+     */
+    public String[] getSectorKeys() {
+        return mSectorKeys.clone();
+    }
+
+    /**
+     * Get the key map of the already mapped sectors.
+     * @return A copy of the key map.
+     */
+    public SparseArray<byte[][]> getKeyMap() {
+        return mKeyMap.clone();
+    }
+
+    /**
+     * Get the keys in the order they were used for the key mapping.
+     * @param isKeyB True for the order of key B, false for key A.
+     * @return A copy of the keys.
+     */
+    public KeyCandidateList getKeys(boolean isKeyB) {
+        return isKeyB ? mKeysB.copy() : mKeysA.copy();
+    }
+}
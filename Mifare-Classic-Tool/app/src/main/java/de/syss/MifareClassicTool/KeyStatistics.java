@@ -0,0 +1,275 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistent statistics about which keys were found during key mapping.
+ * For each key there is a score for key A and a score for key B. Every
+ * hit adds 1 to the score, and the scores decay over time (half-life of
+ * {@link #HALF_LIFE}), so keys of cards that are used today rank above
+ * keys that were common a year ago.
+ * {@link MCReader#setKeys(java.util.Collection)} uses the scores to sort
+ * the keys before a key mapping run (separately for key A and key B).<br /><br />
+ * File format (big endian): magic "MCKS", version (int), entry count (int)
+ * and per entry: key (6 bytes), score A (float), score B (float),
+ * last update (long, millis).
+ * @author agent
+ */
+public class KeyStatistics {
+
+    private static final String LOG_TAG =
+            KeyStatistics.class.getSimpleName();
+    private static final int MAGIC = 0x4D434B53; // "MCKS"
+    private static final int VERSION = 1;
+    /**
+     * Half-life of the scores in milliseconds (30 days).
+     */
+    public static final long HALF_LIFE = 30L * 24 * 60 * 60 * 1000;
+    /**
+     * Maximum number of keys to keep. If there are more, the ones with
+     * the lowest score are dropped when saving.
+     */
+    public static final int MAX_ENTRIES = 10000;
+
+    private final File mFile;
+    private final HashMap<String, Entry> mEntries = new HashMap<>();
+    private boolean mIsModified = false;
+
+    /**
+     * Score of a single key.
+     */
+    private static class Entry {
+        float mScoreA;
+        float mScoreB;
+        long mLastUpdate;
+    }
+
+    /**
+     * Create empty statistics that will be saved to the given file.
+     * Use {@link #load(File)} to read existing statistics.
+     * @param file The file for {@link #save()}.
+     */
+    public KeyStatistics(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Load the statistics from a file. If the file does not exist or
+     * can not be read, empty statistics will be returned.
+     * @param file The statistics file
+     * (usually {@link Common#KEY_STATS_FILE}).
+     * @return The statistics.
+     */
+    public static KeyStatistics load(File file) {
+        KeyStatistics stats = new KeyStatistics(file);
+        if (file == null || !file.exists()) {
+            return stats;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.d(LOG_TAG, "Unknown key statistics format.");
+                return stats;
+            }
+            int count = in.readInt();
+            byte[] key = new byte[6];
+            for (int i = 0; i < count; i++) {
+                in.readFully(key);
+                Entry e = new Entry();
+                e.mScoreA = in.readFloat();
+                e.mScoreB = in.readFloat();
+                e.mLastUpdate = in.readLong();
+                stats.mEntries.put(Common.bytes2Hex(key), e);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error while reading key statistics.", e);
+            stats.mEntries.clear();
+        }
+        return stats;
+    }
+
+    /**
+     * Save the statistics (if they were modified since loading).
+     * @return True if the statistics are saved. False on error.
+     */
+    public synchronized boolean save() {
+        if (!mIsModified || mFile == null) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        // Drop the keys with the lowest (key A + key B) scores if there
+        // are too many.
+        if (mEntries.size() > MAX_ENTRIES) {
+            ArrayList<Map.Entry<String, Entry>> sorted =
+                    new ArrayList<>(mEntries.entrySet());
+            Collections.sort(sorted, (a, b) -> Double.compare(
+                    getTotalScore(b.getValue(), now),
+                    getTotalScore(a.getValue(), now)));
+            for (int i = MAX_ENTRIES; i < sorted.size(); i++) {
+                mEntries.remove(sorted.get(i).getKey());
+            }
+        }
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            return false;
+        }
+        File tmp = new File(mFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mEntries.size());
+            for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+                Entry e = entry.getValue();
+                out.write(Common.hex2Bytes(entry.getKey()));
+                out.writeFloat(e.mScoreA);
+                out.writeFloat(e.mScoreB);
+                out.writeLong(e.mLastUpdate);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error while saving key statistics.", e);
+            return false;
+        }
+        if (!tmp.renameTo(mFile)) {
+            return false;
+        }
+        mIsModified = false;
+        return true;
+    }
+
+    /**
+     * Record that a key was found for a sector.
+     * @param key The key (12 hex chars).
+     * @param isKeyB True if it was found as key B, false for key A.
+     */
+    public synchronized void recordHit(String key, boolean isKeyB) {
+        recordHit(key, isKeyB, System.currentTimeMillis());
+    }
+
+    /**
+     * Record that a key was found for a sector.
+     * @param key The key (12 hex chars).
+     * @param isKeyB True if it was found as key B, false for key A.
+     * @param now The current time in milliseconds.
+     */
+    public synchronized void recordHit(String key, boolean isKeyB,
+            long now) {
+        key = key.toUpperCase();
+        Entry e = mEntries.get(key);
+        if (e == null) {
+            e = new Entry();
+            e.mLastUpdate = now;
+            mEntries.put(key, e);
+        }
+        // Decay the old scores to "now" before adding the hit.
+        float decay = (float) getDecay(e.mLastUpdate, now);
+        e.mScoreA *= decay;
+        e.mScoreB *= decay;
+        if (isKeyB) {
+            e.mScoreB += 1;
+        } else {
+            e.mScoreA += 1;
+        }
+        e.mLastUpdate = now;
+        mIsModified = true;
+    }
+
+    /**
+     * Sort the keys by their key A or key B score, highest
+     * first. Keys without a score keep their order. Only the keys with
+     * statistics are looked up ({@link KeyCandidateList#find(long)})
+     * and moved, so this is cheap even for huge lists.
+     * @param keys The keys to sort.
+     * @param isKeyB True to sort by the key B score, false to sort by
+     * the key A score.
+     */
+    public synchronized void sort(KeyCandidateList keys, boolean isKeyB) {
+        if (mEntries.size() == 0) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        ArrayList<Integer> nodes = new ArrayList<>();
+        final HashMap<Integer, Double> scores = new HashMap<>();
+        for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+            double score = getScore(entry.getValue(), isKeyB, now);
+            if (score <= 0) {
+                continue;
+            }
+            int node;
+            try {
+                node = keys.find(KeyCandidateList.toLong(entry.getKey()));
+            } catch (NumberFormatException e) {
+                // Skip invalid keys.
+                continue;
+            }
+            if (node != -1) {
+                nodes.add(node);
+                scores.put(node, score);
+            }
+        }
+        // Lowest score first (ties: later nodes first), because each
+        // key is moved to the front.
+        Collections.sort(nodes, (a, b) -> {
+            int ret = Double.compare(scores.get(a), scores.get(b));
+            return (ret != 0) ? ret : Integer.compare(b, a);
+        });
+        for (int node : nodes) {
+            keys.moveToFront(node);
+        }
+    }
+
+    /**
+     * Get the number of keys with statistics.
+     * @return Number of keys.
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    private static double getTotalScore(Entry e, long now) {
+        return (e.mScoreA + e.mScoreB) * getDecay(e.mLastUpdate, now);
+    }
+
+    private static double getScore(Entry e, boolean isKeyB, long now) {
+        double score = isKeyB ? e.mScoreB : e.mScoreA;
+        return score * getDecay(e.mLastUpdate, now);
+    }
+
+    private static double getDecay(long lastUpdate, long now) {
+        if (now <= lastUpdate) {
+            return 1;
+        }
+        return Math.pow(0.5, (double) (now - lastUpdate) / HALF_LIFE);
+    }
+}
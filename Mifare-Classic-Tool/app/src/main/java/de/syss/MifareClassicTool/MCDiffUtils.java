@@ -93,4 +93,54 @@ public class MCDiffUtils {
         return ret;
     }
 
+    /**
+     * Compare two dumps and get a list of all indices where
+     * they differ from each other. The blocks are compared byte by byte
+     * (without converting them to hex strings).
+     * @param dump1 The first dump.
+     * @param dump2 The second dump.
+     * @return Indices where the two dumps differ
+     * (see {@link #diffIndices(SparseArray, SparseArray)}). The indices
+     * refer to the hex representation of the blocks
+     * (see {@link TagImage#getBlockHex(int, int)}).
+     */
+    public static SparseArray<Integer[][]> diffIndices(
+            TagImage dump1, TagImage dump2) {
+        SparseArray<Integer[][]> ret = new SparseArray<>();
+        int sectorCount = Math.max(dump1.getSectorCount(),
+                dump2.getSectorCount());
+        for (int sector = 0; sector < sectorCount; sector++) {
+            boolean inDump1 = dump1.hasSector(sector);
+            boolean inDump2 = dump2.hasSector(sector);
+            if (!inDump1 && !inDump2) {
+                continue;
+            }
+            if (!inDump2) {
+                // Sector only exists in dump1.
+                ret.put(sector, new Integer[0][0]);
+                continue;
+            }
+            if (!inDump1) {
+                // Sector only exists in dump2.
+                ret.put(sector, new Integer[1][0]);
+                continue;
+            }
+
+            // Check the blocks.
+            Integer[][] diffSector = new Integer[
+                    TagImage.getBlockCountInSector(sector)][];
+            for (int block = 0; block < diffSector.length; block++) {
+                // Bit i is set if the symbol at index i is different.
+                long diff = dump1.getBlockDiff(dump2, sector, block);
+                Integer[] diffIndices = new Integer[Long.bitCount(diff)];
+                for (int k = 0; diff != 0; diff &= diff - 1) {
+                    diffIndices[k++] = Long.numberOfTrailingZeros(diff);
+                }
+                diffSector[block] = diffIndices;
+            }
+            ret.put(sector, diffSector);
+        }
+        return ret;
+    }
+
 }
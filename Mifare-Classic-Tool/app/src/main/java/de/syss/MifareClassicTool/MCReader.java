@@ -34,8 +34,8 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import de.syss.MifareClassicTool.Activities.Preferences.Preference;
@@ -61,16 +61,40 @@ public class MCReader {
      */
     public static final String DEFAULT_KEY = "FFFFFFFFFFFF";
 
-    private final MifareClassic mMFC;
+    private final MCTransport mTransport;
     private SparseArray<byte[][]> mKeyMap = new SparseArray<>();
-    private int mKeyMapStatus = 0;
+    private volatile int mKeyMapStatus = 0;
     private int mLastSector = -1;
     private int mFirstSector = 0;
-    private ArrayList<String> mKeysWithOrder;
+    // The candidate keys in the order they are tried as key A and key B.
+    private KeyCandidateList mKeys;
+    private KeyCandidateList mKeysB;
+    private final byte[] mKeyBuffer = new byte[6];
+    private final byte[] mKeyBufferB = new byte[6];
     private boolean mHasAllZeroKey = false;
+    private boolean mAutoReconnect = false;
+    private boolean mRetryAuth = false;
+    private int mRetryAuthCount = 1;
+    private int mCustomSectorCount = -1;
+    private KeyStatistics mKeyStats;
+    private KeyMapCheckpoint mCheckpoint;
+    private String[] mResumeSectorKeys;
+    private int[] mResumeKeyNodes;
+    private KeyMapCache.Entry mCachedKeyMap;
+    private boolean mReadWhileMapping = false;
+    private volatile boolean mIsKeyMappingCanceled = false;
+    private volatile int mKeysTestedInSector = 0;
+    private volatile long mKeysTested = 0;
+    private volatile long mAuthAttempts = 0;
+    private TagImage mMappedDump;
+    private TagImage mPartialImage;
+    private int mReadCursor = -1;
+    private SparseArray<byte[][]> mReadKeyMap;
 
     /**
      * Initialize a MIFARE Classic reader for the given tag.
+     * The reader settings (auto reconnect, retry authentication,
+     * custom sector count) are taken from the preferences.
      * @param tag The tag to operate on.
      */
     private MCReader(Tag tag) {
@@ -82,7 +106,37 @@ public class MCReader {
                     + "provided tag (even after patching it).");
             throw e;
         }
-        mMFC = tmpMFC;
+        mTransport = (tmpMFC != null) ? new MCAndroidTransport(tmpMFC) : null;
+
+        // Get auto reconnect setting.
+        mAutoReconnect = Common.getPreferences().getBoolean(
+                Preference.AutoReconnect.toString(), false);
+        // Fetch the retry authentication option. Some tags and
+        // devices have strange issues and need a retry in order to work...
+        // Info: https://github.com/ikarus23/MifareClassicTool/issues/134
+        // and https://github.com/ikarus23/MifareClassicTool/issues/106
+        mRetryAuth = Common.getPreferences().getBoolean(
+                Preference.UseRetryAuthentication.toString(), false);
+        mRetryAuthCount = Common.getPreferences().getInt(
+                Preference.RetryAuthenticationCount.toString(), 1);
+        boolean useCustomSectorCount = Common.getPreferences().getBoolean(
+                Preference.UseCustomSectorCount.toString(), false);
+        if (useCustomSectorCount) {
+            mCustomSectorCount = Common.getPreferences().getInt(
+                    Preference.CustomSectorCount.toString(), 16);
+        }
+    }
+
+    /**
+     * Initialize a MIFARE Classic reader for the given transport.
+     * The preferences are not used. Auto reconnect, retry authentication
+     * and custom sector count are disabled unless they are set
+     * explicitly.
+     * @param transport The transport to the tag (e.g. a
+     * {@link MCSimulatedCard}).
+     */
+    private MCReader(MCTransport transport) {
+        mTransport = transport;
     }
 
     /**
@@ -225,6 +279,20 @@ public class MCReader {
         return mcr;
     }
 
+    /**
+     * Get new instance of {@link MCReader} that operates on the given
+     * transport instead of an Android tag.
+     * @param transport The transport to operate on.
+     * @return {@link MCReader} object or "null" if transport is "null".
+     * @see MCSimulatedCard
+     */
+    public static MCReader get(MCTransport transport) {
+        if (transport == null) {
+            return null;
+        }
+        return new MCReader(transport);
+    }
+
     /**
      * Read as much as possible from the tag with the given key information.
      * @param keyMap Keys (A and B) mapped to a sector.
@@ -239,38 +307,131 @@ public class MCReader {
      * (and therefore no sector is read), an empty set (SparseArray.size() == 0)
      * will be returned.
      * @see #buildNextKeyMapPart()
+     * @see #readTagImage(SparseArray)
      */
     public SparseArray<String[]> readAsMuchAsPossible(
             SparseArray<byte[][]> keyMap) {
-        SparseArray<String[]> resultSparseArray;
-        if (keyMap != null && keyMap.size() > 0) {
-            resultSparseArray = new SparseArray<>(keyMap.size());
-            // For all entries in map do:
-            for (int i = 0; i < keyMap.size(); i++) {
-                String[][] results = new String[2][];
-                try {
-                    if (keyMap.valueAt(i)[0] != null) {
-                        // Read with key A.
-                        results[0] = readSector(
-                                keyMap.keyAt(i), keyMap.valueAt(i)[0], false);
-                    }
-                    if (keyMap.valueAt(i)[1] != null) {
-                        // Read with key B.
-                        results[1] = readSector(
-                                keyMap.keyAt(i), keyMap.valueAt(i)[1], true);
+        TagImage image = readTagImage(keyMap);
+        return (image != null) ? image.toSparseArray() : null;
+    }
+
+    /**
+     * Read as much as possible from the tag with the given key information.
+     * @param keyMap Keys (A and B) mapped to a sector.
+     * See {@link #buildNextKeyMapPart()}.
+     * @return The tag data. Sectors where none of the keys could be used for
+     * reading are not part of the image. On Error, "null" will be
+     * returned (tag was removed during reading or keyMap is null).
+     * If the tag was removed, the sectors read so far can be obtained with
+     * {@link #createReadCheckpoint(int, int)}.
+     * @see #buildNextKeyMapPart()
+     */
+    public TagImage readTagImage(SparseArray<byte[][]> keyMap) {
+        return readTagImage(keyMap, null);
+    }
+
+    /**
+     * Read as much as possible from the tag with the given key information,
+     * but only the sectors that are not already part of a partial image
+     * (e.g. from {@link #getMappedDump()}).
+     * @param keyMap Keys (A and B) mapped to a sector.
+     * @param partialImage The sectors already read (may be null).
+     * The image will not be modified.
+     * @return The tag data (see {@link #readTagImage(SparseArray)}).
+     * On error (tag removed), null will be returned.
+     */
+    public TagImage readTagImage(SparseArray<byte[][]> keyMap,
+            TagImage partialImage) {
+        return readTagImage(keyMap, partialImage, 0);
+    }
+
+    /**
+     * Resume an interrupted read (see {@link #createReadCheckpoint(int, int)}).
+     * The reading continues with the sector where it stopped. The result
+     * contains the sectors of the checkpoint too.
+     * @param checkpoint The checkpoint.
+     * @return The tag data (see {@link #readTagImage(SparseArray)}).
+     * On error (tag removed again or the checkpoint does not belong to
+     * this tag), null will be returned.
+     */
+    public TagImage resumeRead(ReadCheckpoint checkpoint) {
+        if (checkpoint == null || !checkpoint.getUid().equals(getUidHex())) {
+            return null;
+        }
+        return readTagImage(checkpoint.getKeyMap(), checkpoint.getImage(),
+                checkpoint.getSector());
+    }
+
+    /**
+     * Get the progress of the last read that failed because the tag was
+     * removed. The checkpoint contains the sectors read so far and the
+     * sector where the reading stopped.
+     * @param firstSector The first sector of the dump (to create a dump
+     * from the result once the reading is finished).
+     * @param lastSector The last sector of the dump.
+     * @return The checkpoint or null if the last read did not fail.
+     * @see #resumeRead(ReadCheckpoint)
+     * @see ReadCheckpoint#put(ReadCheckpoint)
+     */
+    public ReadCheckpoint createReadCheckpoint(int firstSector,
+            int lastSector) {
+        if (mPartialImage == null) {
+            return null;
+        }
+        return new ReadCheckpoint(getUidHex(), firstSector, lastSector,
+                mReadCursor, mPartialImage, mReadKeyMap);
+    }
+
+    /**
+     * Read as much as possible from the tag with the given key information
+     * (see {@link #readTagImage(SparseArray, TagImage)}), starting with a
+     * given sector. If the tag gets removed, the sectors read so far
+     * are kept for {@link #createReadCheckpoint(int, int)}.
+     * @param keyMap Keys (A and B) mapped to a sector.
+     * @param partialImage The sectors already read (may be null).
+     * @param firstSector Sectors of the key map before this one are skipped.
+     * @return The tag data or null on error.
+     */
+    private TagImage readTagImage(SparseArray<byte[][]> keyMap,
+            TagImage partialImage, int firstSector) {
+        mPartialImage = null;
+        mReadCursor = -1;
+        mReadKeyMap = null;
+        if (keyMap == null || keyMap.size() == 0) {
+            return null;
+        }
+        TagImage image = new TagImage(getSectorCount());
+        if (partialImage != null) {
+            image.addMissingSectors(partialImage);
+        }
+        // For all entries in map do:
+        for (int i = 0; i < keyMap.size(); i++) {
+            int sector = keyMap.keyAt(i);
+            byte[][] keys = keyMap.valueAt(i);
+            if (sector < firstSector || image.hasSector(sector)
+                    || keys == null) {
+                continue;
+            }
+            try {
+                // Read with key A and key B. The results are merged.
+                for (int k = 0; k < 2; k++) {
+                    if (keys[k] != null
+                            && authenticate(sector, keys[k], k == 1)) {
+                        readAuthenticatedSector(image, sector, keys[k],
+                                k == 1);
                     }
-                } catch (TagLostException e) {
-                    return null;
-                }
-                // Merge results.
-                if (results[0] != null || results[1] != null) {
-                    resultSparseArray.put(keyMap.keyAt(i), mergeSectorData(
-                            results[0], results[1]));
                 }
+            } catch (TagLostException e) {
+                // Keep the sectors read so far. The interrupted sector
+                // has to be read again (with both keys).
+                image.removeSector(sector);
+                mPartialImage = image;
+                mReadCursor = sector;
+                mReadKeyMap = keyMap;
+                return null;
             }
-            return resultSparseArray;
         }
-        return null;
+        return image;
     }
 
     /**
@@ -316,90 +477,91 @@ public class MCReader {
      */
     public String[] readSector(int sectorIndex, byte[] key,
             boolean useAsKeyB) throws TagLostException {
-        boolean auth = authenticate(sectorIndex, key, useAsKeyB);
-        String[] ret = null;
-        // Read sector.
-        if (auth) {
-            // Read all blocks.
-            ArrayList<String> blocks = new ArrayList<>();
-            int firstBlock = mMFC.sectorToBlock(sectorIndex);
-            int lastBlock = firstBlock + 4;
-            if (mMFC.getSize() == MifareClassic.SIZE_4K
-                    && sectorIndex > 31) {
-                lastBlock = firstBlock + 16;
-            }
-            for (int i = firstBlock; i < lastBlock; i++) {
-                try {
-                    byte[] blockBytes = mMFC.readBlock(i);
-                    // mMFC.readBlock(i) must return 16 bytes or throw an error.
-                    // At least this is what the documentation says.
-                    // On Samsung's Galaxy S5 and Sony's Xperia Z2 however, it
-                    // sometimes returns < 16 bytes for unknown reasons.
-                    // Update: Aaand sometimes it returns more than 16 bytes...
-                    // The appended byte(s) are 0x00.
-                    if (blockBytes.length < 16) {
-                        throw new IOException();
-                    }
-                    if (blockBytes.length > 16) {
-                        blockBytes = Arrays.copyOf(blockBytes,16);
-                    }
+        if (!authenticate(sectorIndex, key, useAsKeyB)) {
+            return null;
+        }
+        TagImage image = new TagImage(getSectorCount());
+        if (!readAuthenticatedSector(image, sectorIndex, key, useAsKeyB)) {
+            return null;
+        }
+        return image.getSectorHex(sectorIndex);
+    }
 
-                    blocks.add(Common.bytes2Hex(blockBytes));
-                } catch (TagLostException e) {
-                    throw e;
-                } catch (IOException e) {
-                    // Could not read block.
-                    // (Maybe due to key/authentication method.)
-                    Log.d(LOG_TAG, "(Recoverable) Error while reading block "
-                            + i + " from tag.");
-                    blocks.add(NO_DATA);
-                    if (!mMFC.isConnected()) {
-                        throw new TagLostException(
-                                "Tag removed during readSector(...)");
-                    }
-                    // After an error, a re-authentication is needed.
-                    authenticate(sectorIndex, key, useAsKeyB);
-                }
-            }
-            ret = blocks.toArray(new String[0]);
-            int last = ret.length -1;
-
-            // Validate if it was possible to read any data.
-            boolean noData = true;
-            for (String s : ret) {
-                if (!s.equals(NO_DATA)) {
-                    noData = false;
-                    break;
+    /**
+     * Read as much as possible from a sector that has just been
+     * authenticated with the given key (no new authentication, unless a
+     * block could not be read) and merge the data into an image
+     * (see {@link TagImage#mergeSector(int, byte[], int, byte[], boolean,
+     * boolean)}).
+     * @param image The image to merge the data into.
+     * @param sectorIndex Index of the authenticated sector.
+     * @param key Key used for the authentication.
+     * @param useAsKeyB True if the key was used as key B.
+     * @return True if any data could be read. False otherwise (the image
+     * stays unchanged).
+     * @throws TagLostException When connection with/to tag is lost.
+     * @see #readSector(int, byte[], boolean)
+     */
+    private boolean readAuthenticatedSector(TagImage image, int sectorIndex,
+            byte[] key, boolean useAsKeyB) throws TagLostException {
+        // Read all blocks.
+        int firstBlock = mTransport.sectorToBlock(sectorIndex);
+        int blockCount = TagImage.getBlockCountInSector(sectorIndex);
+        byte[] data = new byte[blockCount * TagImage.BLOCK_SIZE];
+        int validBlocks = 0;
+        for (int i = 0; i < blockCount; i++) {
+            try {
+                byte[] blockBytes = mTransport.readBlock(firstBlock + i);
+                // mTransport.readBlock(i) must return 16 bytes or throw an error.
+                // At least this is what the documentation says.
+                // On Samsung's Galaxy S5 and Sony's Xperia Z2 however, it
+                // sometimes returns < 16 bytes for unknown reasons.
+                // Update: Aaand sometimes it returns more than 16 bytes...
+                // The appended byte(s) are 0x00 (and are ignored).
+                if (blockBytes.length < 16) {
+                    throw new IOException();
                 }
-            }
-            if (noData) {
-                // Was is possible to read any data (especially with key B)?
-                // If Key B may be read in the corresponding Sector Trailer,
-                // it cannot serve for authentication (according to NXP).
-                // What they mean is that you can authenticate successfully,
-                // but can not read data. In this case the
-                // readBlock() result is 0 for each block.
-                // Also, a tag might be bricked in a way that the authentication
-                // works, but reading data does not.
-                ret = null;
-            } else {
-                // Merge key in last block (sector trailer).
-                if (!useAsKeyB) {
-                    if (isKeyBReadable(Common.hex2Bytes(
-                            ret[last].substring(12, 20)))) {
-                        ret[last] = Common.bytes2Hex(key)
-                                + ret[last].substring(12, 32);
-                    } else {
-                        ret[last] = Common.bytes2Hex(key)
-                                + ret[last].substring(12, 20) + NO_KEY;
-                    }
-                } else {
-                    ret[last] = NO_KEY + ret[last].substring(12, 20)
-                            + Common.bytes2Hex(key);
+                System.arraycopy(blockBytes, 0, data,
+                        i * TagImage.BLOCK_SIZE, TagImage.BLOCK_SIZE);
+                validBlocks |= 1 << i;
+            } catch (TagLostException e) {
+                throw e;
+            } catch (IOException e) {
+                // Could not read block.
+                // (Maybe due to key/authentication method.)
+                Log.d(LOG_TAG, "(Recoverable) Error while reading block "
+                        + (firstBlock + i) + " from tag.");
+                if (!mTransport.isConnected()) {
+                    throw new TagLostException(
+                            "Tag removed during readSector(...)");
                 }
+                // After an error, a re-authentication is needed.
+                authenticate(sectorIndex, key, useAsKeyB);
             }
         }
-        return ret;
+
+        // Validate if it was possible to read any data.
+        if (validBlocks == 0) {
+            // Was is possible to read any data (especially with key B)?
+            // If Key B may be read in the corresponding Sector Trailer,
+            // it cannot serve for authentication (according to NXP).
+            // What they mean is that you can authenticate successfully,
+            // but can not read data. In this case the
+            // readBlock() result is 0 for each block.
+            // Also, a tag might be bricked in a way that the authentication
+            // works, but reading data does not.
+            return false;
+        }
+        // Merge key(s) in last block (sector trailer).
+        boolean keyBReadable = false;
+        int trailer = (blockCount - 1) * TagImage.BLOCK_SIZE;
+        if (!useAsKeyB && (validBlocks & (1 << (blockCount - 1))) != 0) {
+            keyBReadable = AccessConditions.isKeyBReadable(
+                    AccessConditions.getIndex(data, trailer + 6));
+        }
+        image.mergeSector(sectorIndex, data, validBlocks, key, useAsKeyB,
+                keyBReadable);
+        return true;
     }
 
     /**
@@ -426,7 +588,7 @@ public class MCReader {
         if (getSectorCount()-1 < sectorIndex) {
             return 1;
         }
-        if (mMFC.getBlockCountInSector(sectorIndex)-1 < blockIndex) {
+        if (mTransport.getBlockCountInSector(sectorIndex)-1 < blockIndex) {
             return 2;
         }
         if (data.length != 16) {
@@ -436,7 +598,7 @@ public class MCReader {
             return 4;
         }
         // Write block.
-        int block = mMFC.sectorToBlock(sectorIndex) + blockIndex;
+        int block = mTransport.sectorToBlock(sectorIndex) + blockIndex;
         // NOTE: See warning on writeBlock0Gen3().
 //        if (block == 0) {
 //            // Try first to write block 0 using the gen3 approach. This must be done
@@ -450,7 +612,7 @@ public class MCReader {
 //        }
         try {
             // Normal write (also feasible for block 0 of gen2 cards).
-            mMFC.writeBlock(block, data);
+            mTransport.writeBlock(block, data);
         } catch (IOException e) {
 //            if (block == 0) {
 //                // Writing to block 0 failed. Maybe it is a gen3 card. Try it.
@@ -462,6 +624,206 @@ public class MCReader {
         return 0;
     }
 
+    /**
+     * Write multiple blocks of a sector with only one authentication.
+     * The blocks are written in the given order, so the sector trailer
+     * should be the last one (see {@link WritePlan}).
+     * @param sectorIndex The sector to where the data should be written
+     * @param blockIndices The blocks (within the sector) to where the
+     * data should be written.
+     * @param data 16 byte of data per block (same order as blockIndices).
+     * @param key The MIFARE Classic key for the given sector.
+     * @param useAsKeyB If true, key will be treated as key B
+     * for authentication.
+     * @return The return codes are the same as of
+     * {@link #writeBlock(int, int, byte[], byte[], boolean)}. Blocks before
+     * the one with the error have been written.
+     * @see WritePlan
+     * @see #writeBlocks(int, int[], byte[][], byte[], boolean, boolean,
+     * boolean, int[])
+     */
+    public int writeBlocks(int sectorIndex, int[] blockIndices,
+            byte[][] data, byte[] key, boolean useAsKeyB) {
+        return writeBlocks(sectorIndex, blockIndices, data, key, useAsKeyB,
+                false, false, null);
+    }
+
+    /**
+     * Write multiple blocks of a sector with only one authentication.
+     * In differential mode, each block is read first (within the same
+     * authentication) and only written if it differs from the new data.
+     * Sector trailers are only skipped if all their parts are known to be
+     * equal (authenticated with key A and key B is readable).
+     * With verification, each written block is read back directly after
+     * writing (within the same authentication) and compared to the data.
+     * Key A of a sector trailer can not be read and is therefore not
+     * verified (key B only if it is readable).
+     * @param sectorIndex The sector to where the data should be written
+     * @param blockIndices The blocks (within the sector) to where the
+     * data should be written.
+     * @param data 16 byte of data per block (same order as blockIndices).
+     * @param key The MIFARE Classic key for the given sector.
+     * @param useAsKeyB If true, key will be treated as key B
+     * for authentication.
+     * @param differential If true, only blocks that differ will be written.
+     * @param verify If true, written blocks will be read back and checked.
+     * @param blockResults Optional (may be null). Will be filled with
+     * the result of each block (same order as blockIndices):
+     * <ul>
+     * <li>0 - Block was written (and verified if verify is true).</li>
+     * <li>1 - Block was skipped (data was already on the tag).</li>
+     * <li>2 - Block was written, but the data read back differ.</li>
+     * <li>3 - Block was written, but could not be read back.</li>
+     * </ul>
+     * @return The return codes are the same as of
+     * {@link #writeBlock(int, int, byte[], byte[], boolean)}. Blocks before
+     * the one with the error have been written.
+     * @see WritePlan
+     */
+    public int writeBlocks(int sectorIndex, int[] blockIndices,
+            byte[][] data, byte[] key, boolean useAsKeyB,
+            boolean differential, boolean verify, int[] blockResults) {
+        if (getSectorCount()-1 < sectorIndex) {
+            return 1;
+        }
+        int blockCount = mTransport.getBlockCountInSector(sectorIndex);
+        for (int i = 0; i < blockIndices.length; i++) {
+            if (blockCount-1 < blockIndices[i]) {
+                return 2;
+            }
+            if (data[i] == null || data[i].length != 16) {
+                return 3;
+            }
+        }
+        if (!authenticate(sectorIndex, key, useAsKeyB)) {
+            return 4;
+        }
+        int firstBlock = mTransport.sectorToBlock(sectorIndex);
+        for (int i = 0; i < blockIndices.length; i++) {
+            int block = firstBlock + blockIndices[i];
+            boolean isTrailer = blockIndices[i] == blockCount - 1;
+            if (differential) {
+                byte[] current = null;
+                try {
+                    current = mTransport.readBlock(block);
+                } catch (IOException e) {
+                    // Block not readable. A failed operation requires
+                    // a re-authentication. Then write the block.
+                    if (!authenticate(sectorIndex, key, useAsKeyB)) {
+                        return 4;
+                    }
+                }
+                boolean isSame;
+                if (isTrailer) {
+                    isSame = isSameSectorTrailer(
+                            current, data[i], key, useAsKeyB);
+                } else {
+                    isSame = Arrays.equals(current, data[i]);
+                }
+                if (isSame) {
+                    if (blockResults != null) {
+                        blockResults[i] = 1;
+                    }
+                    continue;
+                }
+            }
+            try {
+                mTransport.writeBlock(block, data[i]);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error while writing block to tag.", e);
+                return -1;
+            }
+            int result = 0;
+            if (verify) {
+                // Read back within the same authentication.
+                byte[] written = null;
+                try {
+                    written = mTransport.readBlock(block);
+                } catch (IOException e) {
+                    // Block not readable. Re-authenticate for the
+                    // remaining blocks.
+                    if (!authenticate(sectorIndex, key, useAsKeyB)) {
+                        return 4;
+                    }
+                }
+                if (written == null) {
+                    result = 3;
+                } else if (isTrailer) {
+                    result = isWrittenSectorTrailer(written, data[i]) ? 0 : 2;
+                } else {
+                    result = Arrays.equals(written, data[i]) ? 0 : 2;
+                }
+            }
+            if (blockResults != null) {
+                blockResults[i] = result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Check if a sector trailer read back after writing matches the
+     * written data. Key A is never readable and therefore not checked.
+     * Key B is only checked if it is readable (according to the new
+     * Access Conditions).
+     * @param written The sector trailer as read from the tag.
+     * @param data The written sector trailer.
+     * @return True if the readable parts are equal.
+     */
+    private static boolean isWrittenSectorTrailer(byte[] written,
+            byte[] data) {
+        // Access Conditions (including the general purpose byte).
+        for (int i = 6; i < 10; i++) {
+            if (written[i] != data[i]) {
+                return false;
+            }
+        }
+        if (AccessConditions.isKeyBReadable(
+                AccessConditions.getIndex(data, 6))) {
+            for (int i = 10; i < 16; i++) {
+                if (written[i] != data[i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the sector trailer read from the tag is the same as the new
+     * one. Key A is never readable, so it is only known if the sector was
+     * authenticated with key A. Key B is only known if it is readable.
+     * @param current The sector trailer as read from the tag (or null).
+     * @param data The new sector trailer.
+     * @param key The key used for the authentication.
+     * @param useAsKeyB True if the key was used as key B.
+     * @return True if all parts of the sector trailer are known and equal.
+     */
+    private static boolean isSameSectorTrailer(byte[] current, byte[] data,
+            byte[] key, boolean useAsKeyB) {
+        if (current == null || useAsKeyB) {
+            // Key A unknown.
+            return false;
+        }
+        // Access Conditions (including the general purpose byte).
+        for (int i = 6; i < 10; i++) {
+            if (current[i] != data[i]) {
+                return false;
+            }
+        }
+        if (!AccessConditions.isKeyBReadable(
+                AccessConditions.getIndex(current, 6))) {
+            // Key B unknown.
+            return false;
+        }
+        for (int i = 0; i < 6; i++) {
+            if (key[i] != data[i] || current[10 + i] != data[10 + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     // WARNING: This function is based on the description from here:
     // https://github.com/RfidResearchGroup/proxmark3/blob/master/doc/magic_cards_notes.md#mifare-classic-apdu-aka-gen3
     // When tested, it did work, however, sectors 0-31 bricked on the 4k tag that was used.
@@ -486,17 +848,30 @@ public class MCReader {
         byte[] fullCommand = new byte[writeCommand.length + data.length];
         System.arraycopy(writeCommand, 0, fullCommand, 0, writeCommand.length);
         System.arraycopy(data, 0, fullCommand, writeCommand.length, data.length);
+        if (!(mTransport instanceof MCAndroidTransport)) {
+            // Raw commands are only possible with a real tag.
+            return -1;
+        }
         try {
-            NfcA gen3Tag = NfcA.get(mMFC.getTag());
+            NfcA gen3Tag = NfcA.get(
+                    ((MCAndroidTransport) mTransport).getTag());
             if (gen3Tag == null) {
                 throw new IOException("Tag is not IsoDep compatible.");
             }
-            mMFC.close();
+            mTransport.close();
             gen3Tag.connect();
             byte[] response = gen3Tag.transceive(fullCommand);
-            // TODO: check response for success.
             gen3Tag.close();
-            mMFC.connect();
+            mTransport.connect();
+            // Check the status word of the response (0x9000 = success).
+            if (response == null || response.length < 2
+                    || response[response.length - 2] != (byte) 0x90
+                    || response[response.length - 1] != (byte) 0x00) {
+                Log.e(LOG_TAG, "Error while writing block 0 (gen3): "
+                        + ((response == null) ? "no response"
+                        : HexCodec.encode(response)));
+                return -1;
+            }
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error while writing block to tag.", e);
             return -1;
@@ -529,21 +904,21 @@ public class MCReader {
         if (getSectorCount()-1 < sectorIndex) {
             return 1;
         }
-        if (mMFC.getBlockCountInSector(sectorIndex)-1 < blockIndex) {
+        if (mTransport.getBlockCountInSector(sectorIndex)-1 < blockIndex) {
             return 2;
         }
         if (!authenticate(sectorIndex, key, useAsKeyB)) {
             return 3;
         }
         // Write Value Block.
-        int block = mMFC.sectorToBlock(sectorIndex) + blockIndex;
+        int block = mTransport.sectorToBlock(sectorIndex) + blockIndex;
         try {
             if (increment) {
-                mMFC.increment(block, value);
+                mTransport.increment(block, value);
             } else {
-                mMFC.decrement(block, value);
+                mTransport.decrement(block, value);
             }
-            mMFC.transfer(block);
+            mTransport.transfer(block);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error while writing Value Block to tag.", e);
             return -1;
@@ -569,7 +944,9 @@ public class MCReader {
      * this method once more after a full key map was created, it resets the
      * key map and starts all over.
      * @return The sector that was just checked. On an error condition,
-     * it returns "-1" and resets the key map to "null".
+     * it returns "-1" and resets the key map to "null". If the error was
+     * a connection issue, the progress can be obtained with
+     * {@link #createCheckpoint()}.
      * @see #getKeyMap()
      * @see #setKeyFile(File[], Context)
      * @see #setMappingRange(int, int)
@@ -578,53 +955,139 @@ public class MCReader {
     public int buildNextKeyMapPart() {
         // Clear status and key map before new walk through sectors.
         boolean error = false;
-        if (mKeysWithOrder != null && mLastSector != -1) {
+        if (mKeys != null && mLastSector != -1) {
             if (mKeyMapStatus == mLastSector+1) {
                 mKeyMapStatus = mFirstSector;
                 mKeyMap = new SparseArray<>();
+                mMappedDump = mReadWhileMapping
+                        ? new TagImage(getSectorCount()) : null;
+                mCheckpoint = null;
             }
 
-            // Get auto reconnect setting.
-            boolean autoReconnect = Common.getPreferences().getBoolean(
-                    Preference.AutoReconnect.toString(), false);
-            // Get retry authentication option.
-            boolean retryAuth = Common.getPreferences().getBoolean(
-                    Preference.UseRetryAuthentication.toString(), false);
-            int retryAuthCount = Common.getPreferences().getInt(
-                    Preference.RetryAuthenticationCount.toString(), 1);
-
             String[] keys = new String[2];
             boolean[] foundKeys = new boolean[] {false, false};
+            // Nodes of the keys found by the dictionary attack (so they do
+            // not have to be searched in the list afterwards).
+            int[] foundNodes = new int[] {-1, -1};
             boolean auth;
+            int nodeA = mKeys.first();
+            int nodeB = mKeysB.first();
+            if (mResumeSectorKeys != null) {
+                // Resume the sector where a previous key mapping stopped.
+                keys = mResumeSectorKeys;
+                foundKeys[0] = keys[0] != null;
+                foundKeys[1] = keys[1] != null;
+                nodeA = mResumeKeyNodes[0];
+                nodeB = mResumeKeyNodes[1];
+                mResumeSectorKeys = null;
+                mResumeKeyNodes = null;
+            } else if (mCachedKeyMap != null
+                    && mKeyMapStatus >= mCachedKeyMap.getFirstSector()
+                    && mKeyMapStatus <= mCachedKeyMap.getLastSector()) {
+                // Verify the cached keys of this sector (one authentication
+                // per key). If they all work, the dictionary is not needed.
+                byte[][] cachedKeys = mCachedKeyMap.getKeyMap().get(
+                        mKeyMapStatus);
+                if (cachedKeys != null) {
+                    boolean allValid = true;
+                    for (int k = 0; k < 2; k++) {
+                        if (cachedKeys[k] == null) {
+                            continue;
+                        }
+                        if (authenticate(mKeyMapStatus, cachedKeys[k],
+                                k == 1)) {
+                            keys[k] = HexCodec.encode(cachedKeys[k]);
+                            foundKeys[k] = true;
+                            try {
+                                readWhileMapping(cachedKeys[k], k == 1);
+                            } catch (TagLostException e) {
+                                // The dictionary attack will handle this.
+                                // The sector must be read again later.
+                                discardMappedSector();
+                                allValid = false;
+                            }
+                        } else {
+                            allValid = false;
+                        }
+                    }
+                    if (allValid) {
+                        // Skip the dictionary attack.
+                        nodeA = -1;
+                        nodeB = -1;
+                    }
+                }
+            }
 
             // Check next sector against all keys (lines) with
-            // authentication method A and B.
+            // authentication method A and B. Key A candidates are tried
+            // in the order of mKeys and key B candidates in the order of
+            // mKeysB (each ranked by the statistics of its key type).
+            // The keys are decoded into buffers, so there is no
+            // allocation per attempt.
+            mKeysTestedInSector = 0;
             keysloop:
-            for (int i = 0; i < mKeysWithOrder.size(); i++) {
-                String key = mKeysWithOrder.get(i);
-                byte[] bytesKey = Common.hex2Bytes(key);
-                for (int j = 0; j < retryAuthCount+1;) {
+            while ((!foundKeys[0] && nodeA != -1)
+                    || (!foundKeys[1] && nodeB != -1)) {
+                if (mIsKeyMappingCanceled) {
+                    // Canceled. Remember the progress (like on errors).
+                    mCheckpoint = new KeyMapCheckpoint(getUidHex(),
+                            mFirstSector, mLastSector, mKeyMapStatus,
+                            new int[] {nodeA, nodeB}, keys, mKeyMap,
+                            mKeys, mKeysB);
+                    error = true;
+                    break;
+                }
+                byte[] bytesKeyA = mKeyBuffer;
+                byte[] bytesKeyB = mKeyBufferB;
+                if (nodeA != -1) {
+                    mKeys.getKey(nodeA, bytesKeyA);
+                }
+                if (nodeB != -1) {
+                    mKeysB.getKey(nodeB, bytesKeyB);
+                }
+                for (int j = 0; j < mRetryAuthCount+1;) {
                     try {
-                        if (!foundKeys[0]) {
-                            auth = mMFC.authenticateSectorWithKeyA(
-                                    mKeyMapStatus, bytesKey);
+                        if (!foundKeys[0] && nodeA != -1) {
+                            mAuthAttempts++;
+                            auth = mTransport.authenticateSectorWithKeyA(
+                                    mKeyMapStatus, bytesKeyA);
                             if (auth) {
-                                keys[0] = key;
+                                keys[0] = mKeys.getKeyHex(nodeA);
                                 foundKeys[0] = true;
+                                foundNodes[0] = nodeA;
+                                readWhileMapping(bytesKeyA, false);
+                                if (!foundKeys[1]) {
+                                    // Maybe key B can be read from the
+                                    // sector trailer.
+                                    keys[1] = readKeyB(mKeyMapStatus);
+                                    foundKeys[1] = keys[1] != null;
+                                    if (foundKeys[1]) {
+                                        readWhileMapping(
+                                                HexCodec.decode(keys[1]),
+                                                true);
+                                    }
+                                }
                             }
                         }
-                        if (!foundKeys[1]) {
-                            auth = mMFC.authenticateSectorWithKeyB(
-                                    mKeyMapStatus, bytesKey);
+                        if (!foundKeys[1] && nodeB != -1) {
+                            mAuthAttempts++;
+                            auth = mTransport.authenticateSectorWithKeyB(
+                                    mKeyMapStatus, bytesKeyB);
                             if (auth) {
-                                keys[1] = key;
+                                keys[1] = mKeysB.getKeyHex(nodeB);
                                 foundKeys[1] = true;
+                                foundNodes[1] = nodeB;
+                                readWhileMapping(bytesKeyB, true);
                             }
                         }
                     } catch (Exception e) {
                         Log.d(LOG_TAG,
                                 "Error while building next key map part");
-                        if (autoReconnect) {
+                        // The sector might have been read only with one of
+                        // the found keys. Remove it from the mapped dump,
+                        // so it will be read again (with all found keys).
+                        discardMappedSector();
+                        if (mAutoReconnect) {
                             // Is the tag still in range?
                             if (isConnectedButTagLost()) {
                                 close();
@@ -646,50 +1109,79 @@ public class MCReader {
                             // Repeat last loop (do not incr. j).
                             continue;
                         } else {
+                            // Remember the progress, so the key mapping
+                            // can be resumed with the current key.
+                            mCheckpoint = new KeyMapCheckpoint(getUidHex(),
+                                    mFirstSector, mLastSector, mKeyMapStatus,
+                                    new int[] {nodeA, nodeB}, keys, mKeyMap,
+                                    mKeys, mKeysB);
                             error = true;
                             break keysloop;
                         }
                     }
                     // Retry?
-                    if((foundKeys[0] && foundKeys[1]) || !retryAuth) {
+                    if((foundKeys[0] && foundKeys[1]) || !mRetryAuth) {
                         // Both keys found or no retry wanted. Stop retrying.
                         break;
                     }
                     j++;
                 }
+                mKeysTestedInSector++;
+                mKeysTested++;
                 // Next key?
                 if ((foundKeys[0] && foundKeys[1])) {
                     // Both keys found. Stop searching for keys.
                     break;
                 }
+                if (nodeA != -1) {
+                    nodeA = mKeys.next(nodeA);
+                }
+                if (nodeB != -1) {
+                    nodeB = mKeysB.next(nodeB);
+                }
             }
             if (!error && (foundKeys[0] || foundKeys[1])) {
                 // At least one key found. Add key(s).
                 byte[][] bytesKeys = new byte[2][];
-                bytesKeys[0] = Common.hex2Bytes(keys[0]);
-                bytesKeys[1] = Common.hex2Bytes(keys[1]);
+                bytesKeys[0] = HexCodec.decode(keys[0]);
+                bytesKeys[1] = HexCodec.decode(keys[1]);
                 mKeyMap.put(mKeyMapStatus, bytesKeys);
+                if (mKeyStats != null) {
+                    if (foundKeys[0]) {
+                        mKeyStats.recordHit(keys[0], false);
+                    }
+                    if (foundKeys[1]) {
+                        mKeyStats.recordHit(keys[1], true);
+                    }
+                }
                 // Key reuse is very likely, so try the found keys first or,
                 // if a all all-0 key is present, second.
                 // The all-F key has to be tested always first if there
                 // is a all-0 key in the key file, because of a bug in
                 // some tags and/or devices.
                 // https://github.com/ikarus23/MifareClassicTool/issues/66
-                if (mKeysWithOrder.size() > 2) {
-                    if (foundKeys[0]) {
-                        mKeysWithOrder.remove(keys[0]);
-                        if (mHasAllZeroKey && !keys[0].equals(DEFAULT_KEY)) {
-                            mKeysWithOrder.add(1, keys[0]);
-                        } else {
-                            mKeysWithOrder.add(0, keys[0]);
+                if (mKeys.size() > 2) {
+                    for (int k = 0; k < 2; k++) {
+                        if (!foundKeys[k]) {
+                            continue;
                         }
-                    }
-                    if (foundKeys[1]) {
-                        mKeysWithOrder.remove(keys[1]);
-                        if (mHasAllZeroKey && !keys[1].equals(DEFAULT_KEY)) {
-                            mKeysWithOrder.add(1, keys[1]);
+                        KeyCandidateList list = (k == 0) ? mKeys : mKeysB;
+                        int keyNode = foundNodes[k];
+                        if (keyNode == -1) {
+                            // The key was not found by trying the list
+                            // (it was read from the sector trailer or
+                            // taken from the cache). Look it up with the
+                            // hash table of the list (no linear search).
+                            keyNode = list.find(
+                                    KeyCandidateList.toLong(keys[k]));
+                        }
+                        if (keyNode == -1) {
+                            continue;
+                        }
+                        if (mHasAllZeroKey && !keys[k].equals(DEFAULT_KEY)) {
+                            list.moveToSecond(keyNode);
                         } else {
-                            mKeysWithOrder.add(0, keys[1]);
+                            list.moveToFront(keyNode);
                         }
                     }
                 }
@@ -777,8 +1269,8 @@ public class MCReader {
      * This method checks if the present tag is writable with the provided keys
      * at the given positions (sectors, blocks). This is done by authenticating
      * with one of the keys followed by reading and interpreting
-     * ({@link Common#getOperationRequirements(byte, byte, byte,
-     * Common.Operation, boolean, boolean)}) of the
+     * ({@link AccessConditions#getOperationRequirements(int, int,
+     * Common.Operation)}) of the
      * Access Conditions.
      * @param pos A map of positions (key = sector, value = Array of blocks).
      * For each of these positions you will get the write information
@@ -828,15 +1320,15 @@ public class MCReader {
                     return null;
                 }
                 // Read MIFARE Access Conditions.
-                int acBlock = mMFC.sectorToBlock(sector)
-                        + mMFC.getBlockCountInSector(sector) -1;
+                int acBlock = mTransport.sectorToBlock(sector)
+                        + mTransport.getBlockCountInSector(sector) -1;
                 try {
-                    ac = mMFC.readBlock(acBlock);
+                    ac = mTransport.readBlock(acBlock);
                 } catch (Exception e) {
                     ret.put(sector, null);
                     continue;
                 }
-                // mMFC.readBlock(i) must return 16 bytes or throw an error.
+                // mTransport.readBlock(i) must return 16 bytes or throw an error.
                 // At least this is what the documentation says.
                 // On Samsung's Galaxy S5 and Sony's Xperia Z2 however, it
                 // sometimes returns < 16 bytes for unknown reasons.
@@ -847,14 +1339,11 @@ public class MCReader {
                     continue;
                 }
 
-                ac = Arrays.copyOfRange(ac, 6, 9);
-                byte[][] acMatrix = Common.acBytesToACMatrix(ac);
-                if (acMatrix == null) {
+                int acIndex = AccessConditions.getIndex(ac, 6);
+                if (acIndex == -1) {
                     ret.put(sector, null);
                     continue;
                 }
-                boolean isKeyBReadable = Common.isKeyBReadable(
-                        acMatrix[0][3], acMatrix[1][3], acMatrix[2][3]);
 
                 // Check all Blocks with data (!= null).
                 HashMap<Integer, Integer> blockWithWriteInfo =
@@ -864,20 +1353,16 @@ public class MCReader {
                             || (block == 15 && sector >= 32)) {
                         // Sector Trailer.
                         // Are the Access Bits writable?
-                        int acValue = Common.getOperationRequirements(
-                                acMatrix[0][3],
-                                acMatrix[1][3],
-                                acMatrix[2][3],
-                                Operation.WriteAC,
-                                true, isKeyBReadable);
+                        int acValue = AccessConditions
+                                .getOperationRequirements(acIndex,
+                                AccessConditions.SECTOR_TRAILER,
+                                Operation.WriteAC);
                         // Is key A writable? (If so, key B will be writable
                         // with the same key.)
-                        int keyABValue = Common.getOperationRequirements(
-                                acMatrix[0][3],
-                                acMatrix[1][3],
-                                acMatrix[2][3],
-                                Operation.WriteKeyA,
-                                true, isKeyBReadable);
+                        int keyABValue = AccessConditions
+                                .getOperationRequirements(acIndex,
+                                AccessConditions.SECTOR_TRAILER,
+                                Operation.WriteKeyA);
 
                         int result = keyABValue;
                         if (acValue == 0 && keyABValue != 0) {
@@ -902,13 +1387,9 @@ public class MCReader {
                                 acBitsForBlock = 2;
                             }
                         }
-                        blockWithWriteInfo.put(
-                                block, Common.getOperationRequirements(
-                                        acMatrix[0][acBitsForBlock],
-                                        acMatrix[1][acBitsForBlock],
-                                        acMatrix[2][acBitsForBlock],
-                                        Operation.Write,
-                                        false, isKeyBReadable));
+                        blockWithWriteInfo.put(block, AccessConditions
+                                .getOperationRequirements(acIndex,
+                                acBitsForBlock, Operation.Write));
                     }
 
                 }
@@ -926,8 +1407,10 @@ public class MCReader {
      * @param keyFiles One or more key files.
      * These files are simple text files with one key
      * per line. Empty lines and lines STARTING with "#"
-     * will not be interpreted.
-     * @param context The context in which the possible "Out of memory"-Toast
+     * will not be interpreted. They are compiled into a
+     * {@link KeyDictionary} which is reused as long as the files
+     * do not change.
+     * @param context The context in which the possible error Toasts
      * will be shown.
      * @return Number of keys loaded. -1 on error.
      */
@@ -935,39 +1418,330 @@ public class MCReader {
         if (keyFiles == null || keyFiles.length == 0 || context == null) {
             return -1;
         }
-        HashSet<String> keys = new HashSet<>();
-        for (File file : keyFiles) {
-            String[] lines = Common.readFileLineByLine(file, false, context);
-            if (lines != null) {
-                for (String line : lines) {
-                    if (!line.equals("") && line.length() == 12
-                            && line.matches("[0-9A-Fa-f]+")) {
-                        try {
-                            keys.add(line);
-                        } catch (OutOfMemoryError e) {
-                            // Error. Too many keys (out of memory).
-                            Toast.makeText(context, R.string.info_to_many_keys,
-                                    Toast.LENGTH_LONG).show();
-                            return -1;
-                        }
-                    }
-                }
+        // Use the compiled (binary) dictionary of the key files. It will
+        // only be (re)compiled if the content of a key file has changed.
+        KeyDictionary dict;
+        try {
+            dict = KeyDictionary.get(keyFiles,
+                    Common.getFile(Common.KEY_DICTS_DIR));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error while compiling key files.", e);
+            Toast.makeText(context, R.string.info_key_dict_error,
+                    Toast.LENGTH_LONG).show();
+            return -1;
+        }
+        try {
+            return setKeys(dict);
+        } catch (OutOfMemoryError e) {
+            // Error. Too many keys (out of memory).
+            Toast.makeText(context, R.string.info_to_many_keys,
+                    Toast.LENGTH_LONG).show();
+            return -1;
+        }
+    }
+
+    /**
+     * Set the keys for {@link #buildNextKeyMapPart()} from a compiled
+     * key dictionary.
+     * @param dict The key dictionary.
+     * @return Number of keys set.
+     * @see #setKeys(Collection)
+     */
+    public int setKeys(KeyDictionary dict) {
+        if (dict == null || dict.size() == 0) {
+            return 0;
+        }
+        // The keys are read from the (memory-mapped) dictionary directly.
+        return setKeys(new KeyCandidateList(dict));
+    }
+
+    /**
+     * Set the keys for {@link #buildNextKeyMapPart()} directly
+     * (without reading key files).
+     * Key duplicates will be removed. If key statistics are set
+     * ({@link #setKeyStatistics(KeyStatistics)}), the keys will be sorted
+     * by their score.
+     * @param keys The keys (12 hex chars each). Invalid keys are not
+     * filtered, so they must be checked beforehand.
+     * @return Number of keys set.
+     * @see #setKeyFile(File[], Context)
+     */
+    public int setKeys(Collection<String> keys) {
+        if (keys == null || keys.size() == 0) {
+            return 0;
+        }
+        KeyCandidateList list = new KeyCandidateList(keys.size());
+        for (String key : keys) {
+            list.add(KeyCandidateList.toLong(key));
+        }
+        return setKeys(list);
+    }
+
+    /**
+     * Set the candidate keys for {@link #buildNextKeyMapPart()}.
+     * There is one order for key A and one for key B (both lists
+     * will be reordered during the key mapping).
+     * @param keys The candidate keys.
+     * @return Number of keys set.
+     */
+    private int setKeys(KeyCandidateList keys) {
+        mKeys = keys;
+        mKeysB = keys.copy();
+        mHasAllZeroKey = keys.find(0) != -1;
+        sortKeys();
+        return mKeys.size();
+    }
+
+    /**
+     * Sort the candidate keys by the key statistics (if set) and
+     * move the all-F key to the front if there is a all-0 key.
+     */
+    private void sortKeys() {
+        if (mKeyStats != null) {
+            // Try the keys that were found most often (recently) as
+            // key A or key B first.
+            mKeyStats.sort(mKeys, false);
+            mKeyStats.sort(mKeysB, true);
+        }
+        if (mHasAllZeroKey) {
+            // NOTE: The all-F key has to be tested always first if there
+            // is a all-0 key in the key file, because of a bug in
+            // some tags and/or devices.
+            // https://github.com/ikarus23/MifareClassicTool/issues/66
+            int node = mKeys.find(KeyCandidateList.toLong(DEFAULT_KEY));
+            if (node != -1) {
+                mKeys.moveToFront(node);
+                mKeysB.moveToFront(node);
             }
         }
-        if (keys.size() > 0) {
-            mHasAllZeroKey = keys.contains("000000000000");
-            mKeysWithOrder = new ArrayList<>(keys);
-            if (mHasAllZeroKey) {
-                // NOTE: The all-F key has to be tested always first if there
-                // is a all-0 key in the key file, because of a bug in
-                // some tags and/or devices.
-                // https://github.com/ikarus23/MifareClassicTool/issues/66
-                mKeysWithOrder.remove(DEFAULT_KEY);
-                mKeysWithOrder.add(0, DEFAULT_KEY);
+    }
+
+    /**
+     * Set the key statistics. They are used to sort the keys
+     * ({@link #setKeys(Collection)}) and they are updated with each key
+     * found by {@link #buildNextKeyMapPart()}. If the keys are already
+     * set, they will be sorted now. Therefore, the statistics must be set
+     * before the key mapping is started or resumed
+     * (see {@link #resumeFrom(KeyMapCheckpoint)}).
+     * @param keyStats The key statistics or null to not use statistics.
+     */
+    public void setKeyStatistics(KeyStatistics keyStats) {
+        mKeyStats = keyStats;
+        if (mKeys != null && keyStats != null) {
+            sortKeys();
+        }
+    }
+
+    /**
+     * Get the progress of the current (or the last failed) key mapping
+     * as checkpoint. If the key mapping failed because of a connection
+     * issue, the checkpoint contains the exact key position within the
+     * sector. Otherwise it points to the start of the next sector.
+     * @return The checkpoint or null if there is no key mapping in progress
+     * (e.g. the key mapping is finished or was never started).
+     * @see #resumeFrom(KeyMapCheckpoint)
+     * @see KeyMapCheckpoint#put(KeyMapCheckpoint)
+     */
+    public KeyMapCheckpoint createCheckpoint() {
+        if (mCheckpoint != null) {
+            return mCheckpoint;
+        }
+        if (mKeys == null || mKeyMap == null || mLastSector == -1
+                || mKeyMapStatus < mFirstSector
+                || mKeyMapStatus > mLastSector) {
+            return null;
+        }
+        return new KeyMapCheckpoint(getUidHex(), mFirstSector, mLastSector,
+                mKeyMapStatus, new int[] {mKeys.first(), mKeysB.first()},
+                null, mKeyMap, mKeys, mKeysB);
+    }
+
+    /**
+     * Resume a key mapping from a checkpoint. The keys and the mapping
+     * range must be set before (see {@link #setKeyFile(File[], Context)}
+     * and {@link #setMappingRange(int, int)}) and they must be the same
+     * as the ones of the checkpoint. The next call of
+     * {@link #buildNextKeyMapPart()} will continue exactly where the
+     * checkpoint was created (keys already tested will not be tested again).
+     * @param checkpoint The checkpoint.
+     * @return True if the checkpoint is valid for this tag, keys and range
+     * and the key mapping will be resumed. False otherwise.
+     */
+    public boolean resumeFrom(KeyMapCheckpoint checkpoint) {
+        if (checkpoint == null || mKeys == null
+                || !checkpoint.getUid().equals(getUidHex())
+                || !checkpoint.matches(mFirstSector, mLastSector, mKeys)) {
+            return false;
+        }
+        mKeys = checkpoint.getKeys(false);
+        mKeysB = checkpoint.getKeys(true);
+        mKeyMap = checkpoint.getKeyMap();
+        // The sectors mapped before the checkpoint have not been read.
+        mMappedDump = mReadWhileMapping
+                ? new TagImage(getSectorCount()) : null;
+        mKeyMapStatus = checkpoint.getSector();
+        mIsKeyMappingCanceled = false;
+        mResumeSectorKeys = checkpoint.getSectorKeys();
+        mResumeKeyNodes = checkpoint.getKeyNodes();
+        mCheckpoint = null;
+        return true;
+    }
+
+    /**
+     * Set a cached key map (e.g. from {@link KeyMapCache}) for
+     * {@link #buildNextKeyMapPart()}. For sectors within the range of
+     * the cached key map, the cached keys will be verified first (one
+     * authentication per key). Only if a cached key does not work (or if
+     * there is no cached key for the sector) the keys of the key file
+     * will be tried.
+     * @param cachedKeyMap The cached key map of this tag or null to disable
+     * the usage of cached keys.
+     */
+    public void setCachedKeyMap(KeyMapCache.Entry cachedKeyMap) {
+        mCachedKeyMap = cachedKeyMap;
+    }
+
+    /**
+     * Cancel the key mapping. This can be called from any thread.
+     * The running (and every further) {@link #buildNextKeyMapPart()} call
+     * stops before testing the next key and returns -1. The progress can be
+     * obtained with {@link #createCheckpoint()}. A new key mapping
+     * (see {@link #setMappingRange(int, int)}) or resuming a key mapping
+     * (see {@link #resumeFrom(KeyMapCheckpoint)}) resets the cancellation.
+     */
+    public void cancelKeyMapping() {
+        mIsKeyMappingCanceled = true;
+    }
+
+    /**
+     * Get the number of keys (see {@link #setKeyFile(File[], Context)}).
+     * @return Number of keys or 0 if no keys are set.
+     */
+    public int getKeyCount() {
+        return (mKeys != null) ? mKeys.size() : 0;
+    }
+
+    /**
+     * Get the sector that is currently mapped by
+     * {@link #buildNextKeyMapPart()}. This can be called from any thread.
+     * @return The sector.
+     */
+    public int getKeyMapStatus() {
+        return mKeyMapStatus;
+    }
+
+    /**
+     * Get the number of keys tested so far for the sector that is currently
+     * mapped. This can be called from any thread to show the progress.
+     * @return Number of keys tested for the current sector.
+     * @see #getKeyMapStatus()
+     */
+    public int getKeysTestedInSector() {
+        return mKeysTestedInSector;
+    }
+
+    /**
+     * Get the number of keys tested by {@link #buildNextKeyMapPart()}
+     * (all sectors, since this reader was created). This can be called
+     * from any thread to calculate the throughput.
+     * @return Number of keys tested.
+     */
+    public long getKeysTested() {
+        return mKeysTested;
+    }
+
+    /**
+     * Get the number of authentication attempts of
+     * {@link #buildNextKeyMapPart()} (since this reader was created).
+     * This can be called from any thread to calculate the throughput.
+     * @return Number of authentication attempts.
+     */
+    public long getAuthAttempts() {
+        return mAuthAttempts;
+    }
+
+    /**
+     * Enable or disable reading while mapping. If enabled,
+     * {@link #buildNextKeyMapPart()} reads the blocks of a sector directly
+     * after each successful authentication (without a new authentication).
+     * Once the key map is created, the tag is read too
+     * (see {@link #getMappedDump()}). This saves a second pass with
+     * {@link #readAsMuchAsPossible(SparseArray)}.
+     * @param readWhileMapping True to read while mapping.
+     */
+    public void setReadWhileMapping(boolean readWhileMapping) {
+        mReadWhileMapping = readWhileMapping;
+    }
+
+    /**
+     * Get the data read by {@link #buildNextKeyMapPart()} if reading while
+     * mapping is enabled (see {@link #setReadWhileMapping(boolean)}).
+     * @return The tag data like {@link #readTagImage(SparseArray)}
+     * returns it or null if reading while mapping is disabled. Sectors of a
+     * resumed key mapping might be missing
+     * (see {@link #readTagImage(SparseArray, TagImage)}).
+     */
+    public TagImage getMappedDump() {
+        return mMappedDump;
+    }
+
+    /**
+     * Read the data of a sector right after a successful
+     * authentication during the key mapping (if reading while mapping is
+     * enabled).
+     * @param key The key used for the authentication.
+     * @param useAsKeyB True if the key was used as key B.
+     * @throws TagLostException When connection with/to tag is lost.
+     */
+    private void readWhileMapping(byte[] key, boolean useAsKeyB)
+            throws TagLostException {
+        if (mMappedDump != null) {
+            readAuthenticatedSector(mMappedDump, mKeyMapStatus, key,
+                    useAsKeyB);
+        }
+    }
+
+    /**
+     * Remove the current sector of the key mapping from the dump read while
+     * mapping (see {@link #setReadWhileMapping(boolean)}). This is done if
+     * the sector could not be read completely. Sectors that are not part of
+     * the mapped dump will be read after the mapping.
+     */
+    private void discardMappedSector() {
+        if (mMappedDump != null) {
+            mMappedDump.removeSector(mKeyMapStatus);
+        }
+    }
+
+    /**
+     * Check if all keys of a key map are still valid for this tag
+     * (one authentication per key). This is much faster than creating a new
+     * key map and can be used to check if a cached key map
+     * (see {@link KeyMapCache}) can be used to read the tag.
+     * @param keyMap The key map to check (see {@link #getKeyMap()}).
+     * @return True if the key map is not empty and all keys are valid.
+     * False otherwise (or if the tag was lost).
+     */
+    public boolean isKeyMapValid(SparseArray<byte[][]> keyMap) {
+        if (keyMap == null || keyMap.size() == 0) {
+            return false;
+        }
+        for (int i = 0; i < keyMap.size(); i++) {
+            int sector = keyMap.keyAt(i);
+            byte[][] keys = keyMap.valueAt(i);
+            if (sector >= getSectorCount() || keys == null) {
+                return false;
+            }
+            if (keys[0] == null && keys[1] == null) {
+                return false;
+            }
+            for (int k = 0; k < 2; k++) {
+                if (keys[k] != null && !authenticate(sector, keys[k], k == 1)) {
+                    return false;
+                }
             }
-            return keys.size();
         }
-        return 0;
+        return true;
     }
 
     /**
@@ -983,6 +1757,10 @@ public class MCReader {
             mLastSector = lastSector;
             // Init. status of buildNextKeyMapPart to create a new key map.
             mKeyMapStatus = lastSector+1;
+            mIsKeyMappingCanceled = false;
+            mCheckpoint = null;
+            mResumeSectorKeys = null;
+            mResumeKeyNodes = null;
             return true;
         }
         return false;
@@ -1003,33 +1781,25 @@ public class MCReader {
      */
     private boolean authenticate(int sectorIndex, byte[] key,
             boolean useAsKeyB) {
-        // Fetch the retry authentication option. Some tags and
-        // devices have strange issues and need a retry in order to work...
-        // Info: https://github.com/ikarus23/MifareClassicTool/issues/134
-        // and https://github.com/ikarus23/MifareClassicTool/issues/106
-        boolean retryAuth = Common.getPreferences().getBoolean(
-                Preference.UseRetryAuthentication.toString(), false);
-        int retryCount = Common.getPreferences().getInt(
-                Preference.RetryAuthenticationCount.toString(), 1);
         if (key == null) {
             return false;
         }
         boolean ret = false;
-        for (int i = 0; i < retryCount+1; i++) {
+        for (int i = 0; i < mRetryAuthCount+1; i++) {
             try {
                 if (!useAsKeyB) {
                     // Key A.
-                    ret = mMFC.authenticateSectorWithKeyA(sectorIndex, key);
+                    ret = mTransport.authenticateSectorWithKeyA(sectorIndex, key);
                 } else {
                     // Key B.
-                    ret = mMFC.authenticateSectorWithKeyB(sectorIndex, key);
+                    ret = mTransport.authenticateSectorWithKeyB(sectorIndex, key);
                 }
             } catch (IOException | ArrayIndexOutOfBoundsException e) {
                 Log.d(LOG_TAG, "Error authenticating with tag.");
                 return false;
             }
             // Retry?
-            if (ret || !retryAuth) {
+            if (ret || !mRetryAuth) {
                 break;
             }
         }
@@ -1037,27 +1807,52 @@ public class MCReader {
     }
 
     /**
-     * Check if key B is readable.
-     * Key B is readable for the following configurations:
-     * <ul>
-     * <li>C1 = 0, C2 = 0, C3 = 0</li>
-     * <li>C1 = 0, C2 = 0, C3 = 1</li>
-     * <li>C1 = 0, C2 = 1, C3 = 0</li>
-     * </ul>
-     * @param ac The access conditions (4 bytes).
-     * @return True if key B is readable. False otherwise.
+     * Read key B from the sector trailer. This must be called directly
+     * after a successful authentication with key A. If the access
+     * conditions allow reading key B, it will be verified with one
+     * authentication (some tags allow the authentication with a readable
+     * key B, others do not). If the sector was just read while mapping
+     * (see {@link #setReadWhileMapping(boolean)}), the sector trailer is
+     * taken from the mapped dump instead of being read again.
+     * @param sectorIndex The sector (authenticated with key A).
+     * @return Key B (12 hex chars) if it was readable and the authentication
+     * with it was successful. Null otherwise.
      */
-    private boolean isKeyBReadable(byte[] ac) {
-        if (ac == null) {
-            return false;
+    private String readKeyB(int sectorIndex) {
+        byte[] keyB;
+        int last = TagImage.getBlockCountInSector(sectorIndex) - 1;
+        if (mMappedDump != null && mMappedDump.isBlockValid(sectorIndex, last)) {
+            // The sector trailer was already read with key A while mapping
+            // (see readWhileMapping()). If the Access Conditions allow
+            // reading key B, it was taken from the trailer.
+            if (!mMappedDump.isKeyKnown(sectorIndex, true)) {
+                return null;
+            }
+            keyB = Arrays.copyOfRange(mMappedDump.getBlock(sectorIndex, last),
+                    10, 16);
+        } else {
+            byte[] trailer;
+            try {
+                trailer = mTransport.readBlock(mTransport.sectorToBlock(
+                        sectorIndex) + mTransport.getBlockCountInSector(
+                        sectorIndex) - 1);
+            } catch (IOException e) {
+                // Sector trailer not readable. Search key B the normal way.
+                return null;
+            }
+            if (trailer == null || trailer.length < 16) {
+                return null;
+            }
+            if (!AccessConditions.isKeyBReadable(
+                    AccessConditions.getIndex(trailer, 6))) {
+                return null;
+            }
+            keyB = Arrays.copyOfRange(trailer, 10, 16);
         }
-        byte c1 = (byte) ((ac[1] & 0x80) >>> 7);
-        byte c2 = (byte) ((ac[2] & 0x08) >>> 3);
-        byte c3 = (byte) ((ac[2] & 0x80) >>> 7);
-        return c1 == 0
-                && (c2 == 0 && c3 == 0)
-                || (c2 == 1 && c3 == 0)
-                || (c2 == 0 && c3 == 1);
+        if (!authenticate(sectorIndex, keyB, true)) {
+            return null;
+        }
+        return HexCodec.encode(keyB);
     }
 
     /**
@@ -1079,8 +1874,46 @@ public class MCReader {
         return mKeyMap;
     }
 
+    /**
+     * Get the UID of the tag.
+     * @return The UID as hex string.
+     */
+    public String getUidHex() {
+        return HexCodec.encode(mTransport.getUid());
+    }
+
     public boolean isMifareClassic() {
-        return mMFC != null;
+        return mTransport != null;
+    }
+
+    /**
+     * Enable or disable the automatic reconnect during the key mapping
+     * (see {@link #buildNextKeyMapPart()}).
+     * @param autoReconnect True to enable auto reconnect.
+     */
+    public void setAutoReconnect(boolean autoReconnect) {
+        mAutoReconnect = autoReconnect;
+    }
+
+    /**
+     * Set the retry authentication option. Some tags and devices
+     * need a retry in order to work.
+     * @param retryAuth True to enable retrying failed authentications.
+     * @param retryAuthCount How many times a failed authentication
+     * should be retried.
+     */
+    public void setRetryAuthentication(boolean retryAuth, int retryAuthCount) {
+        mRetryAuth = retryAuth;
+        mRetryAuthCount = retryAuthCount;
+    }
+
+    /**
+     * Use a custom sector count instead of the one reported by the tag.
+     * @param sectorCount The sector count. Values <= 0 disable the
+     * custom sector count.
+     */
+    public void setCustomSectorCount(int sectorCount) {
+        mCustomSectorCount = sectorCount;
     }
 
     /**
@@ -1089,7 +1922,7 @@ public class MCReader {
      * @return The size of the current tag.
      */
     public int getSize() {
-        return mMFC.getSize();
+        return mTransport.getSize();
     }
 
     /**
@@ -1097,14 +1930,10 @@ public class MCReader {
      * @return The sector count of the current tag.
      */
     public int getSectorCount() {
-        boolean useCustomSectorCount = Common.getPreferences().getBoolean(
-                Preference.UseCustomSectorCount.toString(), false);
-        if (useCustomSectorCount) {
-            return Common.getPreferences().getInt(
-                    Preference.CustomSectorCount.toString(), 16);
-
+        if (mCustomSectorCount > 0) {
+            return mCustomSectorCount;
         }
-        return mMFC.getSectorCount();
+        return mTransport.getSectorCount();
     }
 
     /**
@@ -1112,7 +1941,7 @@ public class MCReader {
      * @return The block count of the current tag.
      */
     public int getBlockCount() {
-        return mMFC.getBlockCount();
+        return mTransport.getBlockCount();
     }
 
     /**
@@ -1121,7 +1950,7 @@ public class MCReader {
      * @return Block count in given sector.
      */
     public int getBlockCountInSector(int sectorIndex) {
-        return mMFC.getBlockCountInSector(sectorIndex);
+        return mTransport.getBlockCountInSector(sectorIndex);
     }
 
     /**
@@ -1148,7 +1977,7 @@ public class MCReader {
      * @return True if the reader is connected. False otherwise.
      */
     public boolean isConnected() {
-        return mMFC.isConnected();
+        return mTransport.isConnected();
     }
 
     /**
@@ -1159,7 +1988,7 @@ public class MCReader {
     public boolean isConnectedButTagLost() {
         if (isConnected()) {
             try {
-                mMFC.readBlock(0);
+                mTransport.readBlock(0);
             } catch (IOException e) {
                 return true;
             }
@@ -1184,7 +2013,7 @@ public class MCReader {
         // Connect in a worker thread. (connect() might be blocking).
         Thread t = new Thread(() -> {
             try {
-                mMFC.connect();
+                mTransport.connect();
             } catch (IOException | IllegalStateException ex) {
                 error.set(true);
             }
@@ -1210,7 +2039,7 @@ public class MCReader {
      */
     public void close() {
         try {
-            mMFC.close();
+            mTransport.close();
         }
         catch (IOException e) {
             Log.d(LOG_TAG, "Error on closing tag.");
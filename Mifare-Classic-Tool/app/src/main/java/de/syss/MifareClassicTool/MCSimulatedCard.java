@@ -0,0 +1,563 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import android.nfc.TagLostException;
+import android.nfc.tech.MifareClassic;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import de.syss.MifareClassicTool.Common.Operation;
+
+/**
+ * An in-memory MIFARE Classic tag (Mini, 1K, 2K or 4K) that does not need
+ * any Android device or NFC hardware. It evaluates the Access Conditions
+ * of its sector trailers like a real tag (using
+ * {@link AccessConditions#getOperationRequirements(int, int, Operation)}),
+ * hides key A (and key B if not readable) when reading sector trailers
+ * and can simulate per-operation latency and tag loss.
+ * Together with {@link MCReader#get(MCTransport)} it allows to measure
+ * and test the reading, key mapping and writing code on a plain JVM.
+ * A new card is factory formatted (all keys FFFFFFFFFFFF, Access Conditions
+ * FF0780, all data blocks 0x00).
+ * @author agent
+ */
+public class MCSimulatedCard implements MCTransport {
+
+    private static final byte[] FACTORY_AC = {
+            (byte)0xFF, (byte)0x07, (byte)0x80, (byte)0x69 };
+
+    private final int mSize;
+    private final int mSectorCount;
+    private final int mBlockCount;
+    private final byte[] mUid;
+    private final byte[] mMemory;
+
+    private boolean mIsConnected = false;
+    private boolean mIsInRange = true;
+    private boolean mIsBlock0Writable = false;
+    private int mAuthSector = -1;
+    private boolean mAuthWithKeyB = false;
+    private int mTransferValue = 0;
+    private byte mTransferAddr = 0;
+    private boolean mHasTransferValue = false;
+    private long mAuthLatency = 0;
+    private long mReadLatency = 0;
+    private long mWriteLatency = 0;
+    private long mAuthCount = 0;
+
+    /**
+     * Create a factory formatted card with a 4 byte UID of 01020304.
+     * @param size The size of the card. One of
+     * {@link MifareClassic#SIZE_MINI}, {@link MifareClassic#SIZE_1K},
+     * {@link MifareClassic#SIZE_2K} or {@link MifareClassic#SIZE_4K}.
+     */
+    public MCSimulatedCard(int size) {
+        this(size, new byte[] {0x01, 0x02, 0x03, 0x04});
+    }
+
+    /**
+     * Create a factory formatted card.
+     * @param size The size of the card. One of
+     * {@link MifareClassic#SIZE_MINI}, {@link MifareClassic#SIZE_1K},
+     * {@link MifareClassic#SIZE_2K} or {@link MifareClassic#SIZE_4K}.
+     * @param uid The UID of the card (4 or 7 bytes).
+     */
+    public MCSimulatedCard(int size, byte[] uid) {
+        switch (size) {
+            case MifareClassic.SIZE_MINI:
+                mSectorCount = 5;
+                break;
+            case MifareClassic.SIZE_1K:
+                mSectorCount = 16;
+                break;
+            case MifareClassic.SIZE_2K:
+                mSectorCount = 32;
+                break;
+            case MifareClassic.SIZE_4K:
+                mSectorCount = 40;
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown MIFARE Classic size: " + size);
+        }
+        if (uid == null || (uid.length != 4 && uid.length != 7)) {
+            throw new IllegalArgumentException("UID must be 4 or 7 bytes.");
+        }
+        mSize = size;
+        mUid = uid.clone();
+        mBlockCount = (mSectorCount <= 32) ? mSectorCount * 4
+                : 32 * 4 + (mSectorCount - 32) * 16;
+        mMemory = new byte[mBlockCount * 16];
+        formatFactoryDefault();
+    }
+
+    /**
+     * Reset the whole memory to the factory default (keys FFFFFFFFFFFF,
+     * Access Conditions FF0780, data 0x00) and rebuild the manufacturer
+     * block from the UID.
+     */
+    public void formatFactoryDefault() {
+        Arrays.fill(mMemory, (byte) 0x00);
+        byte[] key = Common.hex2Bytes(MCReader.DEFAULT_KEY);
+        for (int i = 0; i < mSectorCount; i++) {
+            int trailer = getTrailerOffset(i);
+            System.arraycopy(key, 0, mMemory, trailer, 6);
+            System.arraycopy(FACTORY_AC, 0, mMemory, trailer + 6, 4);
+            System.arraycopy(key, 0, mMemory, trailer + 10, 6);
+        }
+        System.arraycopy(mUid, 0, mMemory, 0, mUid.length);
+        if (mUid.length == 4) {
+            mMemory[4] = Common.calcBcc(mUid);
+            mMemory[5] = 0x08; // SAK
+            mMemory[6] = 0x04; // ATQA
+            mMemory[7] = 0x00;
+        } else {
+            mMemory[7] = 0x08; // SAK
+            mMemory[8] = 0x44; // ATQA
+            mMemory[9] = 0x00;
+        }
+    }
+
+    /**
+     * Set the keys of a sector (the Access Conditions stay untouched).
+     * @param sectorIndex The sector.
+     * @param keyA Key A (6 bytes).
+     * @param keyB Key B (6 bytes).
+     */
+    public void setSectorKeys(int sectorIndex, byte[] keyA, byte[] keyB) {
+        checkSector(sectorIndex);
+        int trailer = getTrailerOffset(sectorIndex);
+        System.arraycopy(keyA, 0, mMemory, trailer, 6);
+        System.arraycopy(keyB, 0, mMemory, trailer + 10, 6);
+    }
+
+    /**
+     * Set the Access Conditions of a sector.
+     * @param sectorIndex The sector.
+     * @param ac The Access Conditions (3 or 4 bytes, byte 6-9
+     * of the sector trailer). They are NOT checked for validity.
+     * Invalid Access Conditions will make the sector unusable, just
+     * like on a real tag.
+     */
+    public void setAccessConditions(int sectorIndex, byte[] ac) {
+        checkSector(sectorIndex);
+        System.arraycopy(ac, 0, mMemory, getTrailerOffset(sectorIndex) + 6,
+                Math.min(ac.length, 4));
+    }
+
+    /**
+     * Set the content of a block without any authentication or Access
+     * Condition checks (e.g. to prepare a card from a dump).
+     * @param blockIndex The block.
+     * @param data The 16 bytes of data.
+     */
+    public void setBlock(int blockIndex, byte[] data) {
+        checkBlock(blockIndex);
+        if (data == null || data.length != 16) {
+            throw new IllegalArgumentException("Data must be 16 bytes.");
+        }
+        System.arraycopy(data, 0, mMemory, blockIndex * 16, 16);
+    }
+
+    /**
+     * Get the raw content of a block without any authentication or
+     * Access Condition checks (incl. key A and key B).
+     * @param blockIndex The block.
+     * @return A copy of the 16 bytes of the block.
+     */
+    public byte[] getBlock(int blockIndex) {
+        checkBlock(blockIndex);
+        return Arrays.copyOfRange(mMemory, blockIndex * 16,
+                blockIndex * 16 + 16);
+    }
+
+    /**
+     * Set the latency of the operations. The time is consumed on each
+     * call, successful or not.
+     * @param authNanos Latency of an authentication in nanoseconds.
+     * @param readNanos Latency of a block read in nanoseconds.
+     * @param writeNanos Latency of a block write or value block operation
+     * in nanoseconds.
+     */
+    public void setLatency(long authNanos, long readNanos, long writeNanos) {
+        mAuthLatency = authNanos;
+        mReadLatency = readNanos;
+        mWriteLatency = writeNanos;
+    }
+
+    /**
+     * Simulate removing the card from (or putting it back to) the reader.
+     * While out of range, all operations will throw a
+     * {@link TagLostException}.
+     * @param inRange False to remove the card, true to put it back.
+     */
+    public void setInRange(boolean inRange) {
+        mIsInRange = inRange;
+        if (!inRange) {
+            mAuthSector = -1;
+        }
+    }
+
+    /**
+     * Make block 0 writable like on a gen2 (CUID) magic tag.
+     * @param writable True if block 0 should be writable.
+     */
+    public void setBlock0Writable(boolean writable) {
+        mIsBlock0Writable = writable;
+    }
+
+    /**
+     * Get the number of authentications (successful or not) since
+     * the creation of the card.
+     * @return The number of authentications.
+     */
+    public long getAuthCount() {
+        return mAuthCount;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        if (!mIsInRange) {
+            throw new TagLostException("Tag is out of range.");
+        }
+        mIsConnected = true;
+        mAuthSector = -1;
+    }
+
+    @Override
+    public void close() {
+        mIsConnected = false;
+        mAuthSector = -1;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mIsConnected;
+    }
+
+    @Override
+    public byte[] getUid() {
+        return mUid.clone();
+    }
+
+    @Override
+    public boolean authenticateSectorWithKeyA(int sectorIndex, byte[] key)
+            throws IOException {
+        return authenticate(sectorIndex, key, false);
+    }
+
+    @Override
+    public boolean authenticateSectorWithKeyB(int sectorIndex, byte[] key)
+            throws IOException {
+        return authenticate(sectorIndex, key, true);
+    }
+
+    @Override
+    public byte[] readBlock(int blockIndex) throws IOException {
+        checkBlock(blockIndex);
+        consume(mReadLatency);
+        int sector = checkAuthenticated(blockIndex);
+        int acs = getACs(sector);
+        int offset = blockIndex * 16;
+        byte[] ret = Arrays.copyOfRange(mMemory, offset, offset + 16);
+        if (isTrailer(blockIndex)) {
+            // Key A is never readable.
+            Arrays.fill(ret, 0, 6, (byte) 0x00);
+            if (!isAllowed(acs, 3, Operation.ReadAC)) {
+                Arrays.fill(ret, 6, 10, (byte) 0x00);
+            }
+            if (!isAllowed(acs, 3, Operation.ReadKeyB)) {
+                Arrays.fill(ret, 10, 16, (byte) 0x00);
+            }
+        } else if (!isAllowed(acs, getACIndex(sector, blockIndex),
+                Operation.Read)) {
+            throw denied();
+        }
+        return ret;
+    }
+
+    @Override
+    public void writeBlock(int blockIndex, byte[] data) throws IOException {
+        checkBlock(blockIndex);
+        if (data == null || data.length != 16) {
+            throw new IllegalArgumentException("Data must be 16 bytes.");
+        }
+        consume(mWriteLatency);
+        int sector = checkAuthenticated(blockIndex);
+        int acs = getACs(sector);
+        int offset = blockIndex * 16;
+        if (isTrailer(blockIndex)) {
+            boolean keyA = isAllowed(acs, 3, Operation.WriteKeyA);
+            boolean ac = isAllowed(acs, 3, Operation.WriteAC);
+            boolean keyB = isAllowed(acs, 3, Operation.WriteKeyB);
+            if (!keyA && !ac && !keyB) {
+                throw denied();
+            }
+            // Only the parts with write permission are changed.
+            if (keyA) {
+                System.arraycopy(data, 0, mMemory, offset, 6);
+            }
+            if (ac) {
+                System.arraycopy(data, 6, mMemory, offset + 6, 4);
+            }
+            if (keyB) {
+                System.arraycopy(data, 10, mMemory, offset + 10, 6);
+            }
+            return;
+        }
+        if (blockIndex == 0 && !mIsBlock0Writable) {
+            throw denied();
+        }
+        if (!isAllowed(acs, getACIndex(sector, blockIndex),
+                Operation.Write)) {
+            throw denied();
+        }
+        System.arraycopy(data, 0, mMemory, offset, 16);
+    }
+
+    @Override
+    public void increment(int blockIndex, int value) throws IOException {
+        loadValue(blockIndex, value, Operation.Increment);
+    }
+
+    @Override
+    public void decrement(int blockIndex, int value) throws IOException {
+        loadValue(blockIndex, -value, Operation.DecTransRest);
+    }
+
+    @Override
+    public void transfer(int blockIndex) throws IOException {
+        checkBlock(blockIndex);
+        consume(mWriteLatency);
+        int sector = checkAuthenticated(blockIndex);
+        if (!mHasTransferValue || isTrailer(blockIndex)
+                || !isAllowed(getACs(sector),
+                getACIndex(sector, blockIndex),
+                Operation.DecTransRest)) {
+            throw denied();
+        }
+        int offset = blockIndex * 16;
+        for (int i = 0; i < 4; i++) {
+            byte b = (byte) (mTransferValue >>> (8 * i));
+            mMemory[offset + i] = b;
+            mMemory[offset + 4 + i] = (byte) (b ^ 0xFF);
+            mMemory[offset + 8 + i] = b;
+        }
+        mMemory[offset + 12] = mTransferAddr;
+        mMemory[offset + 13] = (byte) (mTransferAddr ^ 0xFF);
+        mMemory[offset + 14] = mTransferAddr;
+        mMemory[offset + 15] = (byte) (mTransferAddr ^ 0xFF);
+        mHasTransferValue = false;
+    }
+
+    @Override
+    public int getSize() {
+        return mSize;
+    }
+
+    @Override
+    public int getSectorCount() {
+        return mSectorCount;
+    }
+
+    @Override
+    public int getBlockCount() {
+        return mBlockCount;
+    }
+
+    @Override
+    public int getBlockCountInSector(int sectorIndex) {
+        checkSector(sectorIndex);
+        return (sectorIndex < 32) ? 4 : 16;
+    }
+
+    @Override
+    public int sectorToBlock(int sectorIndex) {
+        checkSector(sectorIndex);
+        if (sectorIndex < 32) {
+            return sectorIndex * 4;
+        }
+        return 32 * 4 + (sectorIndex - 32) * 16;
+    }
+
+    /**
+     * Authenticate a sector. A failed authentication resets the
+     * authentication state, just like a real tag that goes to halt.
+     * @param sectorIndex The sector.
+     * @param key The key.
+     * @param useAsKeyB True for key B, false for key A.
+     * @return True if the key matched.
+     * @throws IOException If the card is not connected or out of range.
+     */
+    private boolean authenticate(int sectorIndex, byte[] key,
+            boolean useAsKeyB) throws IOException {
+        checkSector(sectorIndex);
+        checkPresent();
+        mAuthCount++;
+        consume(mAuthLatency);
+        mAuthSector = -1;
+        mHasTransferValue = false;
+        if (key == null || key.length != 6) {
+            return false;
+        }
+        int offset = getTrailerOffset(sectorIndex) + (useAsKeyB ? 10 : 0);
+        for (int i = 0; i < 6; i++) {
+            if (mMemory[offset + i] != key[i]) {
+                return false;
+            }
+        }
+        mAuthSector = sectorIndex;
+        mAuthWithKeyB = useAsKeyB;
+        return true;
+    }
+
+    /**
+     * Read a Value Block, apply the value and store the result in the
+     * transfer buffer.
+     * @param blockIndex The Value Block.
+     * @param value The value to add (may be negative).
+     * @param op The operation needed ({@link Operation#Increment} or
+     * {@link Operation#DecTransRest}).
+     * @throws IOException If the operation is not allowed or the block is
+     * not a Value Block.
+     */
+    private void loadValue(int blockIndex, int value, Operation op)
+            throws IOException {
+        checkBlock(blockIndex);
+        consume(mWriteLatency);
+        int sector = checkAuthenticated(blockIndex);
+        if (isTrailer(blockIndex) || !isAllowed(getACs(sector),
+                getACIndex(sector, blockIndex), op)) {
+            throw denied();
+        }
+        int offset = blockIndex * 16;
+        int current = 0;
+        for (int i = 0; i < 4; i++) {
+            byte b = mMemory[offset + i];
+            if (b != mMemory[offset + 8 + i]
+                    || (byte) (b ^ 0xFF) != mMemory[offset + 4 + i]) {
+                throw new IOException("Block " + blockIndex
+                        + " is not a Value Block.");
+            }
+            current |= (b & 0xFF) << (8 * i);
+        }
+        mTransferValue = current + value;
+        mTransferAddr = mMemory[offset + 12];
+        mHasTransferValue = true;
+    }
+
+    /**
+     * Check if an operation is allowed with the key used for the
+     * current authentication.
+     * @param acs The index of the Access Conditions of the sector
+     * (see {@link AccessConditions#getIndex(byte[], int)}, -1 if the
+     * Access Conditions are invalid).
+     * @param acIndex The index of the Access Condition bits (0-3).
+     * @param op The operation.
+     * @return True if the operation is allowed.
+     */
+    private boolean isAllowed(int acs, int acIndex, Operation op) {
+        if (acs == -1) {
+            return false;
+        }
+        if (mAuthWithKeyB && AccessConditions.isKeyBReadable(acs)) {
+            // If key B is readable, it can not be used for authentication
+            // (it authenticates, but all operations fail).
+            return false;
+        }
+        int req = AccessConditions.getOperationRequirements(acs, acIndex, op);
+        return req == 3 || (req == 1 && !mAuthWithKeyB)
+                || (req == 2 && mAuthWithKeyB);
+    }
+
+    private int getACs(int sectorIndex) {
+        return AccessConditions.getIndex(mMemory,
+                getTrailerOffset(sectorIndex) + 6);
+    }
+
+    private int getACIndex(int sectorIndex, int blockIndex) {
+        int blockInSector = blockIndex - sectorToBlock(sectorIndex);
+        if (sectorIndex >= 32) {
+            // 16 block sectors have one set of AC bits for 5 blocks.
+            return (blockInSector == 15) ? 3 : blockInSector / 5;
+        }
+        return blockInSector;
+    }
+
+    private int getTrailerOffset(int sectorIndex) {
+        return (sectorToBlock(sectorIndex)
+                + getBlockCountInSector(sectorIndex) - 1) * 16;
+    }
+
+    private boolean isTrailer(int blockIndex) {
+        if (blockIndex < 32 * 4) {
+            return blockIndex % 4 == 3;
+        }
+        return (blockIndex - 32 * 4) % 16 == 15;
+    }
+
+    private int checkAuthenticated(int blockIndex) throws IOException {
+        checkPresent();
+        int sector = MCReader.blockToSector(blockIndex);
+        if (mAuthSector != sector) {
+            throw denied();
+        }
+        return sector;
+    }
+
+    private void checkPresent() throws IOException {
+        if (!mIsInRange) {
+            mIsConnected = false;
+            throw new TagLostException("Tag is out of range.");
+        }
+        if (!mIsConnected) {
+            throw new IOException("Not connected.");
+        }
+    }
+
+    private IOException denied() {
+        // Like a real tag, a failed operation requires a
+        // re-authentication.
+        mAuthSector = -1;
+        return new IOException("Transceive failed");
+    }
+
+    private void checkSector(int sectorIndex) {
+        if (sectorIndex < 0 || sectorIndex >= mSectorCount) {
+            throw new IndexOutOfBoundsException(
+                    "Sector out of bounds: " + sectorIndex);
+        }
+    }
+
+    private void checkBlock(int blockIndex) {
+        if (blockIndex < 0 || blockIndex >= mBlockCount) {
+            throw new IndexOutOfBoundsException(
+                    "Block out of bounds: " + blockIndex);
+        }
+    }
+
+    private static void consume(long nanos) {
+        if (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+}
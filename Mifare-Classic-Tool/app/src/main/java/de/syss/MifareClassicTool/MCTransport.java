@@ -0,0 +1,152 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import java.io.IOException;
+
+/**
+ * The low level operations {@link MCReader} needs to talk to a MIFARE Classic
+ * tag. The semantics (return values, exceptions, geometry) are the ones of
+ * Android's {@link android.nfc.tech.MifareClassic}, so that the reader
+ * behaves the same no matter if it talks to a real tag
+ * ({@link MCAndroidTransport}) or to a simulated one ({@link MCSimulatedCard}).
+ * @author agent
+ * @see MCReader#get(MCTransport)
+ */
+public interface MCTransport {
+
+    /**
+     * Connect to the tag.
+     * @throws IOException If the connection could not be established.
+     */
+    void connect() throws IOException;
+
+    /**
+     * Close the connection to the tag.
+     * @throws IOException If closing failed.
+     */
+    void close() throws IOException;
+
+    /**
+     * Check if the transport is connected. This is NOT an indicator
+     * that the tag is still in range.
+     * @return True if connected. False otherwise.
+     */
+    boolean isConnected();
+
+    /**
+     * Get the UID of the tag.
+     * @return The UID of the tag.
+     */
+    byte[] getUid();
+
+    /**
+     * Authenticate a sector with key A.
+     * @param sectorIndex The sector to authenticate.
+     * @param key The 6 byte key.
+     * @return True if the authentication was successful. False otherwise.
+     * @throws IOException On connection issues (e.g. tag lost).
+     */
+    boolean authenticateSectorWithKeyA(int sectorIndex, byte[] key)
+            throws IOException;
+
+    /**
+     * Authenticate a sector with key B.
+     * @param sectorIndex The sector to authenticate.
+     * @param key The 6 byte key.
+     * @return True if the authentication was successful. False otherwise.
+     * @throws IOException On connection issues (e.g. tag lost).
+     */
+    boolean authenticateSectorWithKeyB(int sectorIndex, byte[] key)
+            throws IOException;
+
+    /**
+     * Read a block (16 byte) of an authenticated sector.
+     * @param blockIndex The block to read.
+     * @return The block data.
+     * @throws IOException If the block could not be read.
+     */
+    byte[] readBlock(int blockIndex) throws IOException;
+
+    /**
+     * Write a block (16 byte) of an authenticated sector.
+     * @param blockIndex The block to write.
+     * @param data The 16 bytes of data.
+     * @throws IOException If the block could not be written.
+     */
+    void writeBlock(int blockIndex, byte[] data) throws IOException;
+
+    /**
+     * Increment a Value Block and store the result in the internal
+     * transfer buffer.
+     * @param blockIndex The Value Block.
+     * @param value The (non negative) value to add.
+     * @throws IOException If the operation failed.
+     */
+    void increment(int blockIndex, int value) throws IOException;
+
+    /**
+     * Decrement a Value Block and store the result in the internal
+     * transfer buffer.
+     * @param blockIndex The Value Block.
+     * @param value The (non negative) value to subtract.
+     * @throws IOException If the operation failed.
+     */
+    void decrement(int blockIndex, int value) throws IOException;
+
+    /**
+     * Copy the internal transfer buffer to a Value Block.
+     * @param blockIndex The Value Block.
+     * @throws IOException If the operation failed.
+     */
+    void transfer(int blockIndex) throws IOException;
+
+    /**
+     * Get the size of the tag in bytes
+     * (see {@link android.nfc.tech.MifareClassic#getSize()}).
+     * @return The size of the tag.
+     */
+    int getSize();
+
+    /**
+     * Get the number of sectors of the tag.
+     * @return The sector count.
+     */
+    int getSectorCount();
+
+    /**
+     * Get the number of blocks of the tag.
+     * @return The block count.
+     */
+    int getBlockCount();
+
+    /**
+     * Get the number of blocks in a sector.
+     * @param sectorIndex The sector.
+     * @return The block count of the sector (4 or 16).
+     */
+    int getBlockCountInSector(int sectorIndex);
+
+    /**
+     * Get the first block of a sector.
+     * @param sectorIndex The sector.
+     * @return The index of the first block of the sector.
+     */
+    int sectorToBlock(int sectorIndex);
+}
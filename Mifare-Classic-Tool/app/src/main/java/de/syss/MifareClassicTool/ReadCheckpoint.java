@@ -0,0 +1,156 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import android.util.SparseArray;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The progress of an interrupted read
+ * ({@link MCReader#readTagImage(SparseArray, TagImage)}), e.g. because the
+ * tag was removed. It contains the sectors already read and the sector
+ * where the reading stopped (resume cursor). Like {@link KeyMapCheckpoint}s,
+ * read checkpoints are kept in memory, indexed by the UID of the tag, so
+ * the reading can be resumed by {@link MCReader#resumeRead(ReadCheckpoint)}
+ * once the same tag is presented again.<br />
+ * They are not persisted either, so reading can only be resumed within
+ * the same app process.
+ * @author agent
+ */
+public class ReadCheckpoint {
+
+    /**
+     * Maximum number of checkpoints (tags) to keep. If there are more,
+     * the oldest one gets dropped.
+     */
+    private static final int MAX_CHECKPOINTS = 8;
+    private static final LinkedHashMap<String, ReadCheckpoint> mCheckpoints =
+            new LinkedHashMap<String, ReadCheckpoint>(
+                    MAX_CHECKPOINTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, ReadCheckpoint> eldest) {
+                    return size() > MAX_CHECKPOINTS;
+                }
+            };
+
+    private final String mUid;
+    private final int mFirstSector;
+    private final int mLastSector;
+    private final int mSector;
+    private final TagImage mImage;
+    private final SparseArray<byte[][]> mKeyMap;
+
+    /**
+     * Create a checkpoint. All data gets copied.
+     * @param uid The UID of the tag (hex string).
+     * @param firstSector The first sector of the dump.
+     * @param lastSector The last sector of the dump.
+     * @param sector The sector that was read when the reading stopped.
+     * @param image The sectors already read.
+     * @param keyMap The key map used for reading.
+     */
+    ReadCheckpoint(String uid, int firstSector, int lastSector, int sector,
+            TagImage image, SparseArray<byte[][]> keyMap) {
+        mUid = uid;
+        mFirstSector = firstSector;
+        mLastSector = lastSector;
+        mSector = sector;
+        mImage = image.copy();
+        mKeyMap = keyMap.clone();
+    }
+
+    /**
+     * Store a checkpoint (replaces an existing checkpoint of the same tag).
+     * @param checkpoint The checkpoint.
+     */
+    public static synchronized void put(ReadCheckpoint checkpoint) {
+        if (checkpoint != null) {
+            mCheckpoints.put(checkpoint.getUid(), checkpoint);
+        }
+    }
+
+    /**
+     * Get the checkpoint of a tag.
+     * @param uid The UID of the tag (hex string).
+     * @return The checkpoint or null if there is none.
+     */
+    public static synchronized ReadCheckpoint get(String uid) {
+        if (uid == null) {
+            return null;
+        }
+        return mCheckpoints.get(uid);
+    }
+
+    /**
+     * Remove the checkpoint of a tag (e.g. because the reading finished).
+     * @param uid The UID of the tag (hex string).
+     */
+    public static synchronized void remove(String uid) {
+        if (uid != null) {
+            mCheckpoints.remove(uid);
+        }
+    }
+
+    public String getUid() {
+        return mUid;
+    }
+
+    public int getFirstSector() {
+        return mFirstSector;
+    }
+
+    public int getLastSector() {
+        return mLastSector;
+    }
+
+    /**
+     * Get the sector to resume the reading with.
+     * @return The sector.
+     */
+    public int getSector() {
+        return mSector;
+    }
+
+    /**
+     * Get the sectors already read.
+     * @return A copy of the partial image.
+     */
+    public TagImage getImage() {
+        return mImage.copy();
+    }
+
+    /**
+     * Get the number of sectors already read.
+     * @return Number of sectors.
+     */
+    public int getSectorsRead() {
+        return mImage.getSectorsInImage();
+    }
+
+    /**
+     * Get the key map used for reading.
+     * @return A copy of the key map.
+     */
+    public SparseArray<byte[][]> getKeyMap() {
+        return mKeyMap.clone();
+    }
+}
@@ -0,0 +1,757 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The data of a MIFARE Classic tag (or a part of it) as one contiguous
+ * byte array. Which blocks are known is stored in bitsets: one bit per
+ * block for the data (for sector trailers: the Access Conditions) and
+ * one bit per sector for each of the two keys. A sector is part of the
+ * image if at least one of its blocks (or keys) was set.<br /><br />
+ * Block numbers are always relative to the sector (0-3 or 0-15), like
+ * in dumps. For consumers of hex dumps, there are views that
+ * represent unknown data with {@link MCReader#NO_DATA} and unknown keys
+ * with {@link MCReader#NO_KEY} (see {@link #getBlockHex(int, int)},
+ * {@link #toSparseArray()} and {@link #toDump(int, int)}).
+ * @author agent
+ */
+public class TagImage {
+
+    /**
+     * Size of a block in bytes.
+     */
+    public static final int BLOCK_SIZE = 16;
+    /**
+     * Sector count of the biggest MIFARE Classic tag (4K).
+     */
+    public static final int MAX_SECTOR_COUNT = 40;
+    private static final String NO_AC = "--------";
+
+    private final int mSectorCount;
+    private final byte[] mData;
+    private final long[] mValidBlocks;
+    private long mSectors;
+    private long mKeyAKnown;
+    private long mKeyBKnown;
+
+    /**
+     * Create an empty image.
+     * @param sectorCount The number of sectors of the tag (1-40).
+     */
+    public TagImage(int sectorCount) {
+        if (sectorCount < 1 || sectorCount > MAX_SECTOR_COUNT) {
+            throw new IllegalArgumentException(
+                    "Invalid sector count: " + sectorCount);
+        }
+        mSectorCount = sectorCount;
+        int blockCount = sectorToBlock(sectorCount);
+        mData = new byte[blockCount * BLOCK_SIZE];
+        mValidBlocks = new long[(blockCount + 63) / 64];
+    }
+
+    /**
+     * Create an image from a dump (in the format of a dump file, without
+     * comments and validated by {@link Common#isValidDump(String[], boolean)}).
+     * Sectors marked with "*" (no keys found) are not part of the image.
+     * Data blocks containing unknown data ("-") are treated as unknown.
+     * @param dump The dump.
+     * @return The image. The sector count is the highest sector of the dump
+     * plus one.
+     */
+    public static TagImage fromDump(String[] dump) {
+        int maxSector = 0;
+        for (String line : dump) {
+            if (line.startsWith("+")) {
+                maxSector = Math.max(maxSector, parseSectorHeader(line));
+            }
+        }
+        TagImage image = new TagImage(maxSector + 1);
+        int sector = -1;
+        int block = 0;
+        for (String line : dump) {
+            if (line.startsWith("+")) {
+                sector = parseSectorHeader(line);
+                block = 0;
+            } else if (sector != -1 && !line.startsWith("*")
+                    && block < getBlockCountInSector(sector)) {
+                image.setBlockHex(sector, block++, line);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Create an image from a dump in the key value format (see
+     * {@link MCReader#readAsMuchAsPossible(SparseArray)}).
+     * @param dump The dump. Sector numbers are keys, the blocks (hex) values.
+     * @param sectorCount The number of sectors of the tag.
+     * @return The image.
+     */
+    public static TagImage fromSparseArray(SparseArray<String[]> dump,
+            int sectorCount) {
+        TagImage image = new TagImage(sectorCount);
+        for (int i = 0; i < dump.size(); i++) {
+            int sector = dump.keyAt(i);
+            String[] blocks = dump.valueAt(i);
+            if (sector >= sectorCount || blocks == null) {
+                continue;
+            }
+            int count = Math.min(blocks.length,
+                    getBlockCountInSector(sector));
+            for (int block = 0; block < count; block++) {
+                image.setBlockHex(sector, block, blocks[block]);
+            }
+            image.mSectors |= 1L << sector;
+        }
+        return image;
+    }
+
+    /**
+     * Create a copy of this image.
+     * @return The copy.
+     */
+    public TagImage copy() {
+        TagImage ret = new TagImage(mSectorCount);
+        System.arraycopy(mData, 0, ret.mData, 0, mData.length);
+        System.arraycopy(mValidBlocks, 0, ret.mValidBlocks, 0,
+                mValidBlocks.length);
+        ret.mSectors = mSectors;
+        ret.mKeyAKnown = mKeyAKnown;
+        ret.mKeyBKnown = mKeyBKnown;
+        return ret;
+    }
+
+    /**
+     * Get the number of blocks of a sector.
+     * @param sector The sector.
+     * @return 4 for sectors 0-31 and 16 for sectors 32-39.
+     */
+    public static int getBlockCountInSector(int sector) {
+        return (sector < 32) ? 4 : 16;
+    }
+
+    /**
+     * Get the first block (absolute) of a sector.
+     * @param sector The sector.
+     * @return The absolute block index.
+     */
+    public static int sectorToBlock(int sector) {
+        return (sector < 32) ? sector * 4 : 32 * 4 + (sector - 32) * 16;
+    }
+
+    public int getSectorCount() {
+        return mSectorCount;
+    }
+
+    /**
+     * Get the backing array of the image. Changes are visible in
+     * the image, but the validity information is not updated.
+     * @return The data of all blocks.
+     * @see #getOffset(int, int)
+     */
+    public byte[] getData() {
+        return mData;
+    }
+
+    /**
+     * Get the offset of a block in {@link #getData()}.
+     * @param sector The sector.
+     * @param block The block (relative to the sector).
+     * @return The offset.
+     */
+    public int getOffset(int sector, int block) {
+        return (sectorToBlock(sector) + block) * BLOCK_SIZE;
+    }
+
+    /**
+     * Check if a sector is part of the image.
+     * @param sector The sector.
+     * @return True if at least one block or key of the sector is known.
+     */
+    public boolean hasSector(int sector) {
+        return sector >= 0 && sector < mSectorCount
+                && (mSectors & (1L << sector)) != 0;
+    }
+
+    /**
+     * Get the number of sectors that are part of the image.
+     * @return Number of sectors.
+     */
+    public int getSectorsInImage() {
+        return Long.bitCount(mSectors);
+    }
+
+    /**
+     * Get the sectors that are part of the image.
+     * @return Bitset with one bit per sector (bit 0 = sector 0).
+     */
+    public long getSectors() {
+        return mSectors;
+    }
+
+    /**
+     * Get a 64 bit hash (FNV-1a) of the known content of the image. Only
+     * known blocks and keys are part of the hash, so two images with the
+     * same content have the same hash, no matter how the dump files
+     * were formatted.
+     * @return The hash of the content.
+     */
+    public long getContentHash() {
+        long hash = 0xCBF29CE484222325L;
+        for (int sector = 0; sector < mSectorCount; sector++) {
+            if (!hasSector(sector)) {
+                continue;
+            }
+            hash = fnv(hash, sector);
+            int blockCount = getBlockCountInSector(sector);
+            for (int block = 0; block < blockCount; block++) {
+                int offset = getOffset(sector, block);
+                boolean valid = isBlockValid(sector, block);
+                if (block != blockCount - 1) {
+                    hash = fnv(hash, valid ? block : 0xFF);
+                    if (valid) {
+                        hash = fnv(hash, offset, BLOCK_SIZE);
+                    }
+                    continue;
+                }
+                // Sector trailer: key A, Access Conditions, key B.
+                hash = fnv(hash, isKeyKnown(sector, false) ? 1 : 0);
+                if (isKeyKnown(sector, false)) {
+                    hash = fnv(hash, offset, 6);
+                }
+                hash = fnv(hash, valid ? 1 : 0);
+                if (valid) {
+                    hash = fnv(hash, offset + 6, 4);
+                }
+                hash = fnv(hash, isKeyKnown(sector, true) ? 1 : 0);
+                if (isKeyKnown(sector, true)) {
+                    hash = fnv(hash, offset + 10, 6);
+                }
+            }
+        }
+        return hash;
+    }
+
+    private long fnv(long hash, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            hash = fnv(hash, mData[i] & 0xFF);
+        }
+        return hash;
+    }
+
+    private static long fnv(long hash, int b) {
+        return (hash ^ b) * 0x100000001B3L;
+    }
+
+    /**
+     * Remove a sector (all its data and keys) from the image.
+     * @param sector The sector.
+     */
+    public void removeSector(int sector) {
+        long mask = ~(1L << sector);
+        mSectors &= mask;
+        mKeyAKnown &= mask;
+        mKeyBKnown &= mask;
+        int first = sectorToBlock(sector);
+        for (int i = 0; i < getBlockCountInSector(sector); i++) {
+            clearValid(first + i);
+        }
+        Arrays.fill(mData, first * BLOCK_SIZE,
+                (first + getBlockCountInSector(sector)) * BLOCK_SIZE,
+                (byte) 0);
+    }
+
+    /**
+     * Check if a block is known. For sector trailers this means the Access
+     * Conditions (bytes 6-9) are known (see {@link #isKeyKnown(int, boolean)}
+     * for the keys).
+     * @param sector The sector.
+     * @param block The block (relative to the sector).
+     * @return True if the block is known.
+     */
+    public boolean isBlockValid(int sector, int block) {
+        int index = sectorToBlock(sector) + block;
+        return (mValidBlocks[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Check if a block is completely known (for sector trailers
+     * this includes both keys).
+     * @param sector The sector.
+     * @param block The block (relative to the sector).
+     * @return True if all bytes of the block are known.
+     */
+    public boolean isBlockComplete(int sector, int block) {
+        if (!isBlockValid(sector, block)) {
+            return false;
+        }
+        return !isTrailer(sector, block) || (isKeyKnown(sector, false)
+                && isKeyKnown(sector, true));
+    }
+
+    /**
+     * Check if a key of a sector is known.
+     * @param sector The sector.
+     * @param keyB True for key B, false for key A.
+     * @return True if the key is known.
+     */
+    public boolean isKeyKnown(int sector, boolean keyB) {
+        return ((keyB ? mKeyBKnown : mKeyAKnown) & (1L << sector)) != 0;
+    }
+
+    /**
+     * Check if a block is the sector trailer.
+     * @param sector The sector.
+     * @param block The block (relative to the sector).
+     * @return True if the block is the sector trailer.
+     */
+    public static boolean isTrailer(int sector, int block) {
+        return block == getBlockCountInSector(sector) - 1;
+    }
+
+    /**
+     * Set a block. For sector trailers, the keys will not be marked as known
+     * (see {@link #setKey(int, boolean, byte[], int)}).
+     * @param sector The sector.
+     * @param block The block (relative to the sector).
+     * @param src The source array.
+     * @param srcOffset The offset of the block data in the source array.
+     */
+    public void setBlock(int sector, int block, byte[] src, int srcOffset) {
+        System.arraycopy(src, srcOffset, mData, getOffset(sector, block),
+                BLOCK_SIZE);
+        setValid(sectorToBlock(sector) + block);
+        mSectors |= 1L << sector;
+    }
+
+    /**
+     * Set a key of a sector (in the sector trailer).
+     * @param sector The sector.
+     * @param keyB True for key B, false for key A.
+     * @param src The source array.
+     * @param srcOffset The offset of the key (6 bytes) in the source array.
+     */
+    public void setKey(int sector, boolean keyB, byte[] src, int srcOffset) {
+        int offset = getOffset(sector, getBlockCountInSector(sector) - 1)
+                + (keyB ? 10 : 0);
+        System.arraycopy(src, srcOffset, mData, offset, 6);
+        if (keyB) {
+            mKeyBKnown |= 1L << sector;
+        } else {
+            mKeyAKnown |= 1L << sector;
+        }
+        mSectors |= 1L << sector;
+    }
+
+    /**
+     * Mark a key of a sector as unknown.
+     * @param sector The sector.
+     * @param keyB True for key B, false for key A.
+     */
+    public void clearKey(int sector, boolean keyB) {
+        if (keyB) {
+            mKeyBKnown &= ~(1L << sector);
+        } else {
+            mKeyAKnown &= ~(1L << sector);
+        }
+    }
+
+    /**
+     * Copy a block.
+     * @param sector The sector.
+     * @param block The block (relative to the sector).
+     * @param dest The destination (at least 16 bytes).
+     */
+    public void getBlock(int sector, int block, byte[] dest) {
+        System.arraycopy(mData, getOffset(sector, block), dest, 0,
+                BLOCK_SIZE);
+    }
+
+    /**
+     * Get a copy of a block.
+     * @param sector The sector.
+     * @param block The block (relative to the sector).
+     * @return The block data (16 bytes) or null if the block is not valid.
+     */
+    public byte[] getBlock(int sector, int block) {
+        if (!isBlockValid(sector, block)) {
+            return null;
+        }
+        byte[] ret = new byte[BLOCK_SIZE];
+        getBlock(sector, block, ret);
+        return ret;
+    }
+
+    /**
+     * Check if a block (including its validity and the validity of the keys
+     * for sector trailers) is equal in both images.
+     * @param other The other image.
+     * @param sector The sector.
+     * @param block The block (relative to the sector).
+     * @return True if the block is equal.
+     */
+    public boolean blockEquals(TagImage other, int sector, int block) {
+        return getBlockDiff(other, sector, block) == 0;
+    }
+
+    /**
+     * Compare a block with the same block of another image.
+     * Unknown data (or keys) is only equal to unknown data.
+     * @param other The other image.
+     * @param sector The sector.
+     * @param block The block (relative to the sector).
+     * @return A bitmask where bit i is set if the hex char i (0-31) of the
+     * block is different (most significant nibble of a byte first).
+     */
+    public long getBlockDiff(TagImage other, int sector, int block) {
+        boolean valid1 = isBlockValid(sector, block);
+        boolean valid2 = other.isBlockValid(sector, block);
+        long ret = 0;
+        int off1 = getOffset(sector, block);
+        int off2 = other.getOffset(sector, block);
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            boolean known1 = valid1;
+            boolean known2 = valid2;
+            if (isTrailer(sector, block) && (i < 6 || i >= 10)) {
+                known1 = isKeyKnown(sector, i >= 10);
+                known2 = other.isKeyKnown(sector, i >= 10);
+            }
+            if (known1 != known2) {
+                ret |= 3L << (i * 2);
+            } else if (known1) {
+                int diff = (mData[off1 + i] ^ other.mData[off2 + i]) & 0xFF;
+                if ((diff & 0xF0) != 0) {
+                    ret |= 1L << (i * 2);
+                }
+                if ((diff & 0x0F) != 0) {
+                    ret |= 1L << (i * 2 + 1);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Merge the data of a sector read with one key into this image.
+     * Data read with key A takes precedence: It overwrites data blocks
+     * and the Access Conditions. Data read with key B only fills blocks
+     * that are still unknown and sets key B. This gives the same result as
+     * {@link MCReader#mergeSectorData(String[], String[])} (key A result
+     * first), no matter in which order the results are merged.
+     * @param sector The sector.
+     * @param src The sector data (all blocks of the sector).
+     * @param validBlocks Bitmask of the blocks in src that were read.
+     * @param key The key used for reading (will be set in the trailer).
+     * @param isKeyB True if the data was read with key B.
+     * @param isKeyBReadable True if key B was readable with key A.
+     * In this case key B will be taken from the trailer in src.
+     */
+    public void mergeSector(int sector, byte[] src, int validBlocks,
+            byte[] key, boolean isKeyB, boolean isKeyBReadable) {
+        int last = getBlockCountInSector(sector) - 1;
+        boolean trailerWasValid = isBlockValid(sector, last);
+        boolean trailerRead = (validBlocks & (1 << last)) != 0;
+        int trailer = last * BLOCK_SIZE;
+        for (int block = 0; block < last; block++) {
+            if ((validBlocks & (1 << block)) != 0
+                    && (!isKeyB || !isBlockValid(sector, block))) {
+                setBlock(sector, block, src, block * BLOCK_SIZE);
+            }
+        }
+        if (!isKeyB) {
+            if (trailerRead) {
+                setAccessConditions(sector, src, trailer + 6);
+                if (isKeyBReadable && !isKeyKnown(sector, true)) {
+                    setKey(sector, true, src, trailer + 10);
+                }
+            }
+            setKey(sector, false, key, 0);
+        } else {
+            if (trailerRead && !trailerWasValid) {
+                setAccessConditions(sector, src, trailer + 6);
+            }
+            setKey(sector, true, key, 0);
+        }
+    }
+
+    /**
+     * Copy the sectors of another image into this one (if this image has
+     * no data for them).
+     * @param other The other image.
+     */
+    public void addMissingSectors(TagImage other) {
+        int count = Math.min(mSectorCount, other.mSectorCount);
+        for (int sector = 0; sector < count; sector++) {
+            if (!hasSector(sector) && other.hasSector(sector)) {
+                copySector(other, sector);
+            }
+        }
+    }
+
+    /**
+     * Copy a sector (data, validity and keys) from another image.
+     * @param other The other image.
+     * @param sector The sector.
+     */
+    public void copySector(TagImage other, int sector) {
+        int first = sectorToBlock(sector);
+        int count = getBlockCountInSector(sector);
+        System.arraycopy(other.mData, first * BLOCK_SIZE, mData,
+                first * BLOCK_SIZE, count * BLOCK_SIZE);
+        for (int i = 0; i < count; i++) {
+            int index = first + i;
+            if ((other.mValidBlocks[index >>> 6] & (1L << index)) != 0) {
+                setValid(index);
+            } else {
+                clearValid(index);
+            }
+        }
+        long bit = 1L << sector;
+        mSectors = (mSectors & ~bit) | (other.mSectors & bit);
+        mKeyAKnown = (mKeyAKnown & ~bit) | (other.mKeyAKnown & bit);
+        mKeyBKnown = (mKeyBKnown & ~bit) | (other.mKeyBKnown & bit);
+    }
+
+    /**
+     * Get a block as hex string (hex view).
+     * @param sector The sector.
+     * @param block The block (relative to the sector).
+     * @return The block as 32 hex chars. Unknown data is
+     * {@link MCReader#NO_DATA}. In sector trailers unknown keys are
+     * {@link MCReader#NO_KEY}.
+     */
+    public String getBlockHex(int sector, int block) {
+        boolean valid = isBlockValid(sector, block);
+        int offset = getOffset(sector, block);
+        if (!isTrailer(sector, block)) {
+            return valid ? HexCodec.encode(mData, offset, BLOCK_SIZE)
+                    : MCReader.NO_DATA;
+        }
+        boolean keyA = isKeyKnown(sector, false);
+        boolean keyB = isKeyKnown(sector, true);
+        if (!valid && !keyA && !keyB) {
+            return MCReader.NO_DATA;
+        }
+        StringBuilder hex = new StringBuilder(BLOCK_SIZE * 2);
+        if (keyA) {
+            HexCodec.append(hex, mData, offset, 6);
+        } else {
+            hex.append(MCReader.NO_KEY);
+        }
+        if (valid) {
+            HexCodec.append(hex, mData, offset + 6, 4);
+        } else {
+            hex.append(NO_AC);
+        }
+        if (keyB) {
+            HexCodec.append(hex, mData, offset + 10, 6);
+        } else {
+            hex.append(MCReader.NO_KEY);
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Get all blocks of a sector as hex strings (hex view).
+     * @param sector The sector.
+     * @return The blocks (see {@link #getBlockHex(int, int)}) or null
+     * if the sector is not part of the image.
+     */
+    public String[] getSectorHex(int sector) {
+        if (!hasSector(sector)) {
+            return null;
+        }
+        String[] ret = new String[getBlockCountInSector(sector)];
+        for (int block = 0; block < ret.length; block++) {
+            ret[block] = getBlockHex(sector, block);
+        }
+        return ret;
+    }
+
+    /**
+     * Get the image in the key value format (hex view, see
+     * {@link MCReader#readAsMuchAsPossible(SparseArray)}).
+     * @return Sector numbers as keys, the blocks (hex) as values.
+     */
+    public SparseArray<String[]> toSparseArray() {
+        SparseArray<String[]> ret = new SparseArray<>(getSectorsInImage());
+        for (int sector = 0; sector < mSectorCount; sector++) {
+            if (hasSector(sector)) {
+                ret.put(sector, getSectorHex(sector));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Get the image in the format of a dump file (hex view). Sectors
+     * that are not part of the image are marked with "*".
+     * @param firstSector The first sector of the dump.
+     * @param lastSector The last sector of the dump.
+     * @return The dump (headers are marked with "+").
+     */
+    public String[] toDump(int firstSector, int lastSector) {
+        ArrayList<String> dump = new ArrayList<>();
+        for (int sector = firstSector; sector <= lastSector; sector++) {
+            // Mark headers (sectors) with "+".
+            dump.add("+Sector: " + sector);
+            if (hasSector(sector)) {
+                for (int block = 0; block < getBlockCountInSector(sector);
+                        block++) {
+                    dump.add(getBlockHex(sector, block));
+                }
+            } else {
+                // Mark sector as not readable ("*").
+                dump.add("*No keys found or dead sector");
+            }
+        }
+        return dump.toArray(new String[0]);
+    }
+
+    /**
+     * Replace a sector with the given blocks (hex view). Unknown parts
+     * ({@link MCReader#NO_DATA}, {@link MCReader#NO_KEY}) stay unknown.
+     * The sector is part of the image afterwards.
+     * @param sector The sector.
+     * @param blocks The blocks (32 hex chars each, "-" for unknown data).
+     * Blocks beyond the block count of the sector are ignored.
+     */
+    public void setSectorHex(int sector, String[] blocks) {
+        removeSector(sector);
+        mSectors |= 1L << sector;
+        int count = Math.min(blocks.length, getBlockCountInSector(sector));
+        for (int block = 0; block < count; block++) {
+            setBlockHex(sector, block, blocks[block]);
+        }
+    }
+
+    /**
+     * Set a block from its hex representation. Unknown parts
+     * ({@link MCReader#NO_DATA}, {@link MCReader#NO_KEY}) stay unknown.
+     * @param sector The sector.
+     * @param block The block (relative to the sector).
+     * @param hex The block (32 hex chars, "-" for unknown data).
+     */
+    private void setBlockHex(int sector, int block, String hex) {
+        if (hex == null || hex.length() != 32) {
+            mSectors |= 1L << sector;
+            return;
+        }
+        setBlockHex(sector, block, hex.toCharArray(), 0);
+    }
+
+    /**
+     * Set a block from its hex representation in a char array (used by
+     * the {@link DumpParser}). The hex data is decoded directly into the
+     * image. Unknown parts ({@link MCReader#NO_DATA},
+     * {@link MCReader#NO_KEY}) stay unknown.
+     * @param sector The sector.
+     * @param block The block (relative to the sector).
+     * @param hex The chars containing the block (32 hex chars,
+     * "-" for unknown data).
+     * @param start The index of the first char of the block in hex.
+     */
+    void setBlockHex(int sector, int block, char[] hex, int start) {
+        mSectors |= 1L << sector;
+        int offset = getOffset(sector, block);
+        int index = sectorToBlock(sector) + block;
+        if (!isTrailer(sector, block)) {
+            if (isKnown(hex, start, start + 32)
+                    && HexCodec.decode(hex, start, start + 32,
+                    mData, offset) != -1) {
+                setValid(index);
+            }
+            return;
+        }
+        if (isKnown(hex, start, start + 12)
+                && HexCodec.decode(hex, start, start + 12,
+                mData, offset) != -1) {
+            mKeyAKnown |= 1L << sector;
+        }
+        if (isKnown(hex, start + 12, start + 20)
+                && HexCodec.decode(hex, start + 12, start + 20,
+                mData, offset + 6) != -1) {
+            setValid(index);
+        }
+        if (isKnown(hex, start + 20, start + 32)
+                && HexCodec.decode(hex, start + 20, start + 32,
+                mData, offset + 10) != -1) {
+            mKeyBKnown |= 1L << sector;
+        }
+    }
+
+    /**
+     * Create a copy of this image with another sector count. Sectors
+     * that do not fit into the new image are dropped.
+     * @param sectorCount The sector count of the copy (1-40).
+     * @return The copy.
+     */
+    TagImage copy(int sectorCount) {
+        TagImage ret = new TagImage(sectorCount);
+        int blockCount = Math.min(sectorToBlock(sectorCount),
+                sectorToBlock(mSectorCount));
+        System.arraycopy(mData, 0, ret.mData, 0, blockCount * BLOCK_SIZE);
+        for (int i = 0; i < blockCount; i++) {
+            if ((mValidBlocks[i >>> 6] & (1L << i)) != 0) {
+                ret.setValid(i);
+            }
+        }
+        long mask = (1L << sectorCount) - 1;
+        ret.mSectors = mSectors & mask;
+        ret.mKeyAKnown = mKeyAKnown & mask;
+        ret.mKeyBKnown = mKeyBKnown & mask;
+        return ret;
+    }
+
+    private static boolean isKnown(char[] hex, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (hex[i] == '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setAccessConditions(int sector, byte[] src,
+            int srcOffset) {
+        int block = getBlockCountInSector(sector) - 1;
+        System.arraycopy(src, srcOffset, mData,
+                getOffset(sector, block) + 6, 4);
+        setValid(sectorToBlock(sector) + block);
+        mSectors |= 1L << sector;
+    }
+
+    private static int parseSectorHeader(String line) {
+        String[] tmp = line.split(": ");
+        return Integer.parseInt(tmp[tmp.length - 1]);
+    }
+
+    private void setValid(int index) {
+        mValidBlocks[index >>> 6] |= 1L << index;
+    }
+
+    private void clearValid(int index) {
+        mValidBlocks[index >>> 6] &= ~(1L << index);
+    }
+}
@@ -0,0 +1,798 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The log of the UIDs of all detected tags (see
+ * {@link Common#logUid(String)}). New entries are collected in a ring
+ * buffer and written in batches by a background thread, so logging a
+ * UID does not touch the file system on the calling thread.<br />
+ * The log is stored as text segments (one entry per line, in the format
+ * "yyyy-MM-dd_HH-mm-ss: UID", like the old {@link Common#UID_LOG_FILE}).
+ * If a segment reaches {@link #SEGMENT_SIZE}, a new one is started. Only
+ * the newest {@link #MAX_SEGMENTS} segments are kept, so the log holds
+ * the last 16 MiB (about 500,000 entries). Older entries are deleted
+ * when a new segment is started. A small index holds
+ * the entry count, the time range and a bloom filter of the UIDs of each
+ * segment, so paging ({@link #getEntries(int, int)}) and queries by UID
+ * and time range ({@link #query(String, long, long, int)}) only read the
+ * segments they need. The index is only saved when a new segment is
+ * started (not on every write). The newest segment is scanned again
+ * when the log is opened, because its length does not match the
+ * index anymore.<br />
+ * The log is opened (index loaded, old log file migrated) by the
+ * background thread, so creating it and logging UIDs can be done
+ * on the UI thread. All other functions read or write files and
+ * should not be called on the UI thread.<br /><br />
+ * Index file format (big endian): magic "MCUL", version (int), segment
+ * count (int) and per segment (oldest first): segment number (int), file
+ * length (long), entry count (int), oldest entry (long, millis), newest
+ * entry (long, millis) and the bloom filter of the UIDs (256 longs).
+ * @author agent
+ */
+public class UidLog {
+
+    private static final String LOG_TAG = UidLog.class.getSimpleName();
+    private static final int MAGIC = 0x4D43554C; // "MCUL"
+    private static final int VERSION = 1;
+    private static final String INDEX_FILE = "uid-log-index.bin";
+    private static final String SEGMENT_PREFIX = "uid-log-";
+    private static final String SEGMENT_SUFFIX = ".txt";
+    /**
+     * Maximum size of a segment in bytes.
+     */
+    public static final int SEGMENT_SIZE = 64 * 1024;
+    /**
+     * Maximum number of segments (together with {@link #SEGMENT_SIZE}
+     * this limits the log to 16 MiB). If there are more, the oldest
+     * segment gets deleted (and its entries are lost).
+     */
+    public static final int MAX_SEGMENTS = 256;
+    /**
+     * Number of entries the ring buffer can hold. If it is full, the
+     * entries are written by the background thread right away. New
+     * entries that do not fit into the buffer in the meantime are
+     * dropped (see {@link #getDroppedCount()}).
+     */
+    public static final int BUFFER_SIZE = 256;
+    /**
+     * Time in milliseconds after the first new entry before the buffered
+     * entries get written.
+     */
+    public static final long FLUSH_DELAY = 1000;
+    /**
+     * Size of the bloom filter of each segment (2 KiB, enough for a
+     * segment full of different UIDs).
+     */
+    private static final int BLOOM_BITS = 16384;
+    private static final int BLOOM_HASHES = 3;
+
+    private final File mDir;
+    private final File mLegacyFile;
+    private boolean mIsOpen = false;
+    private final ArrayList<Segment> mSegments = new ArrayList<>();
+    private final long[] mBufferTimes = new long[BUFFER_SIZE];
+    private final String[] mBufferUids = new String[BUFFER_SIZE];
+    private int mBufferStart = 0;
+    private int mBufferCount = 0;
+    private boolean mIsFlushScheduled = false;
+    private long mDroppedCount = 0;
+    private final ScheduledExecutorService mWriter =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "UidLogWriter");
+                t.setDaemon(true);
+                return t;
+            });
+    /**
+     * Lock for all file operations (and {@link #mSegments}).
+     */
+    private final Object mFileLock = new Object();
+    private final GregorianCalendar mCalendar = new GregorianCalendar();
+    /**
+     * The last hour (yyyyMMddHH) parsed by
+     * {@link #parse(byte[], int, int)} and its start in milliseconds.
+     */
+    private long mParsedHour = -1;
+    private long mParsedHourStart;
+
+    /**
+     * An entry of the log.
+     */
+    public static class Entry {
+        private final long mTime;
+        private final String mUid;
+
+        private Entry(long time, String uid) {
+            mTime = time;
+            mUid = uid;
+        }
+
+        /**
+         * Get the time the tag was detected.
+         * @return The time in milliseconds (with a resolution
+         * of one second).
+         */
+        public long getTime() {
+            return mTime;
+        }
+
+        public String getUid() {
+            return mUid;
+        }
+    }
+
+    /**
+     * The index entry of a segment.
+     */
+    private static class Segment {
+        private int mNumber;
+        private long mLength = 0;
+        private int mCount = 0;
+        private long mFirst = Long.MAX_VALUE;
+        private long mLast = Long.MIN_VALUE;
+        private final long[] mBloom = new long[BLOOM_BITS / 64];
+
+        private Segment(int number) {
+            mNumber = number;
+        }
+
+        private void add(long time, String uid) {
+            mCount++;
+            mFirst = Math.min(mFirst, time);
+            mLast = Math.max(mLast, time);
+            int hash = uid.hashCode();
+            int step = getBloomStep(hash);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (hash + i * step) & (BLOOM_BITS - 1);
+                mBloom[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        private boolean mightContain(String uid) {
+            int hash = uid.hashCode();
+            int step = getBloomStep(hash);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (hash + i * step) & (BLOOM_BITS - 1);
+                if ((mBloom[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int getBloomStep(int hash) {
+            return Integer.rotateLeft(hash * 0x9E3779B9, 16) | 1;
+        }
+    }
+
+    /**
+     * Open the UID log in a directory. The files are not touched by the
+     * calling thread: The log is opened by the background thread (see
+     * {@link #open()}).
+     * @param dir The directory of the log
+     * (usually {@link Common#UID_LOG_DIR}).
+     * @param legacyFile The old UID log file (might be null).
+     */
+    public UidLog(File dir, File legacyFile) {
+        mDir = dir;
+        mLegacyFile = legacyFile;
+        mWriter.execute(() -> {
+            synchronized (mFileLock) {
+                open();
+            }
+        });
+    }
+
+    /**
+     * Open the log (if this was not done yet). The index will be rebuilt
+     * if it does not match the segments. An old UID log file
+     * ({@link Common#UID_LOG_FILE}) will be moved into the directory
+     * as first segment. Must be called while holding {@link #mFileLock}.
+     */
+    private void open() {
+        if (mIsOpen) {
+            return;
+        }
+        mIsOpen = true;
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            Log.e(LOG_TAG, "Could not create UID log directory.");
+        }
+        loadIndex();
+        if (mLegacyFile != null && mLegacyFile.exists()) {
+            migrate(mLegacyFile);
+        }
+    }
+
+    /**
+     * Log a UID. The entry is written in the background
+     * (see {@link #FLUSH_DELAY}).
+     * @param uid The UID (hex string).
+     */
+    public void log(String uid) {
+        log(uid, System.currentTimeMillis());
+    }
+
+    /**
+     * Log a UID. The entry is written in the background
+     * (see {@link #FLUSH_DELAY}).
+     * @param uid The UID (hex string).
+     * @param time The time the tag was detected (millis).
+     */
+    public synchronized void log(String uid, long time) {
+        if (mBufferCount == BUFFER_SIZE) {
+            // The background thread has not written the full buffer yet.
+            // Never block the caller, drop the entry instead.
+            if (mDroppedCount++ == 0) {
+                Log.w(LOG_TAG, "UID log buffer is full. Dropping entries.");
+            }
+            return;
+        }
+        int i = (mBufferStart + mBufferCount) % BUFFER_SIZE;
+        mBufferTimes[i] = time;
+        mBufferUids[i] = uid;
+        mBufferCount++;
+        if (mBufferCount == BUFFER_SIZE) {
+            // Write the full buffer right away.
+            mWriter.execute(this::flush);
+        } else if (!mIsFlushScheduled) {
+            mIsFlushScheduled = true;
+            mWriter.schedule(this::flush, FLUSH_DELAY,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Get the number of entries that were dropped because the buffer
+     * was full (see {@link #BUFFER_SIZE}).
+     * @return Number of dropped entries.
+     */
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * Write all buffered entries (on the calling thread).
+     */
+    public void flush() {
+        synchronized (mFileLock) {
+            open();
+            long[] times;
+            String[] uids;
+            synchronized (this) {
+                mIsFlushScheduled = false;
+                if (mBufferCount == 0) {
+                    return;
+                }
+                times = new long[mBufferCount];
+                uids = new String[mBufferCount];
+                for (int i = 0; i < mBufferCount; i++) {
+                    int j = (mBufferStart + i) % BUFFER_SIZE;
+                    times[i] = mBufferTimes[j];
+                    uids[i] = mBufferUids[j];
+                    mBufferUids[j] = null;
+                }
+                mBufferStart = (mBufferStart + mBufferCount) % BUFFER_SIZE;
+                mBufferCount = 0;
+            }
+            write(times, uids);
+        }
+    }
+
+    /**
+     * Get the number of entries (including the buffered ones).
+     * @return Number of entries.
+     */
+    public int size() {
+        flush();
+        synchronized (mFileLock) {
+            int count = 0;
+            for (Segment s : mSegments) {
+                count += s.mCount;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Get a page of entries, newest first.
+     * @param offset Number of (newest) entries to skip.
+     * @param count Maximum number of entries.
+     * @return The entries (newest first).
+     */
+    public List<Entry> getEntries(int offset, int count) {
+        flush();
+        ArrayList<Entry> ret = new ArrayList<>(Math.max(count, 0));
+        synchronized (mFileLock) {
+            for (int i = mSegments.size() - 1; i >= 0 && ret.size() < count;
+                    i--) {
+                Segment s = mSegments.get(i);
+                if (offset >= s.mCount) {
+                    offset -= s.mCount;
+                    continue;
+                }
+                List<Entry> entries = readSegment(s);
+                for (int j = entries.size() - 1 - offset;
+                        j >= 0 && ret.size() < count; j--) {
+                    ret.add(entries.get(j));
+                }
+                offset = 0;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Get the entries of a UID and/or a time range, newest first.
+     * Only segments that might contain matching entries are read.
+     * @param uid The UID (hex string, case insensitive) or null
+     * for all UIDs.
+     * @param from Start of the time range (millis, inclusive).
+     * @param to End of the time range (millis, exclusive).
+     * @param limit Maximum number of entries.
+     * @return The matching entries (newest first).
+     */
+    public List<Entry> query(String uid, long from, long to, int limit) {
+        flush();
+        if (uid != null) {
+            uid = uid.toUpperCase(Locale.ROOT);
+        }
+        ArrayList<Entry> ret = new ArrayList<>();
+        synchronized (mFileLock) {
+            for (int i = mSegments.size() - 1; i >= 0 && ret.size() < limit;
+                    i--) {
+                Segment s = mSegments.get(i);
+                if (s.mCount == 0 || s.mLast < from || s.mFirst >= to
+                        || (uid != null && !s.mightContain(uid))) {
+                    continue;
+                }
+                List<Entry> entries = readSegment(s);
+                for (int j = entries.size() - 1;
+                        j >= 0 && ret.size() < limit; j--) {
+                    Entry e = entries.get(j);
+                    if (e.mTime >= from && e.mTime < to
+                            && (uid == null || uid.equalsIgnoreCase(e.mUid))) {
+                        ret.add(e);
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Write the whole log (oldest entry first) to a text file
+     * (e.g. for sharing).
+     * @param dest The destination file.
+     * @return True if the file was written. False otherwise.
+     */
+    public boolean export(File dest) {
+        flush();
+        synchronized (mFileLock) {
+            byte[] buffer = new byte[8 * 1024];
+            try (OutputStream out = new BufferedOutputStream(
+                    new FileOutputStream(dest))) {
+                for (Segment s : mSegments) {
+                    try (InputStream in = new FileInputStream(
+                            getSegmentFile(s.mNumber))) {
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, read);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error while exporting UID log.", e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Delete all entries (including the buffered ones).
+     */
+    public void clear() {
+        synchronized (mFileLock) {
+            open();
+            synchronized (this) {
+                for (int i = 0; i < BUFFER_SIZE; i++) {
+                    mBufferUids[i] = null;
+                }
+                mBufferCount = 0;
+            }
+            for (Segment s : mSegments) {
+                deleteFile(getSegmentFile(s.mNumber));
+            }
+            mSegments.clear();
+            saveIndex();
+        }
+    }
+
+    /**
+     * Format an entry as line of the log.
+     * @param time The time.
+     * @param uid The UID.
+     * @return The line (e.g. "2023-01-31_13-37-00: 04A1B2C3").
+     */
+    public String format(long time, String uid) {
+        synchronized (mCalendar) {
+            mCalendar.setTimeInMillis(time);
+            StringBuilder sb = new StringBuilder(21 + uid.length());
+            appendNumber(sb, mCalendar.get(Calendar.YEAR), 4);
+            sb.append('-');
+            appendNumber(sb, mCalendar.get(Calendar.MONTH) + 1, 2);
+            sb.append('-');
+            appendNumber(sb, mCalendar.get(Calendar.DAY_OF_MONTH), 2);
+            sb.append('_');
+            appendNumber(sb, mCalendar.get(Calendar.HOUR_OF_DAY), 2);
+            sb.append('-');
+            appendNumber(sb, mCalendar.get(Calendar.MINUTE), 2);
+            sb.append('-');
+            appendNumber(sb, mCalendar.get(Calendar.SECOND), 2);
+            sb.append(": ").append(uid);
+            return sb.toString();
+        }
+    }
+
+    private static void appendNumber(StringBuilder sb, int value, int digits) {
+        String s = Integer.toString(value);
+        for (int i = s.length(); i < digits; i++) {
+            sb.append('0');
+        }
+        sb.append(s);
+    }
+
+    /**
+     * Parse a line of the log.
+     * @param line The line (see {@link #format(long, String)}).
+     * @param start Start of the line.
+     * @param end End of the line (exclusive).
+     * @return The entry or null if the line is not valid.
+     */
+    private Entry parse(byte[] line, int start, int end) {
+        // "yyyy-MM-dd_HH-mm-ss: " has 21 chars.
+        if (end - start <= 21 || line[start + 19] != ':') {
+            return null;
+        }
+        int year = parseNumber(line, start, 4);
+        int month = parseNumber(line, start + 5, 2);
+        int day = parseNumber(line, start + 8, 2);
+        int hour = parseNumber(line, start + 11, 2);
+        int minute = parseNumber(line, start + 14, 2);
+        int second = parseNumber(line, start + 17, 2);
+        if (year < 0 || month < 1 || day < 1 || hour < 0 || minute < 0
+                || second < 0) {
+            return null;
+        }
+        int uidStart = start + 20;
+        while (uidStart < end && line[uidStart] == ' ') {
+            uidStart++;
+        }
+        int uidEnd = end;
+        while (uidEnd > uidStart && line[uidEnd - 1] <= ' ') {
+            uidEnd--;
+        }
+        String uid = new String(line, uidStart, uidEnd - uidStart,
+                StandardCharsets.US_ASCII);
+        long time;
+        synchronized (mCalendar) {
+            // Most entries are close to each other, so the calendar is
+            // only needed for a new hour.
+            long key = ((year * 100L + month) * 100 + day) * 100 + hour;
+            if (key != mParsedHour) {
+                mCalendar.clear();
+                mCalendar.set(year, month - 1, day, hour, 0, 0);
+                mParsedHourStart = mCalendar.getTimeInMillis();
+                mParsedHour = key;
+            }
+            time = mParsedHourStart + minute * 60000L + second * 1000L;
+        }
+        return new Entry(time, uid);
+    }
+
+    private static int parseNumber(byte[] data, int offset, int digits) {
+        int value = 0;
+        for (int i = offset; i < offset + digits; i++) {
+            int d = data[i] - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    /**
+     * Append entries to the newest segment (start a new one if it
+     * is full). The index is only saved if a new segment was started.
+     * @param times The times of the entries.
+     * @param uids The UIDs of the entries.
+     */
+    private void write(long[] times, String[] uids) {
+        boolean isNewSegment = false;
+        int i = 0;
+        while (i < times.length) {
+            Segment s = mSegments.isEmpty() ? null
+                    : mSegments.get(mSegments.size() - 1);
+            if (s == null || s.mLength >= SEGMENT_SIZE) {
+                isNewSegment = true;
+                s = new Segment((s == null) ? 0 : s.mNumber + 1);
+                mSegments.add(s);
+                while (mSegments.size() > MAX_SEGMENTS) {
+                    // The log is full. Drop the oldest entries.
+                    Segment oldest = mSegments.remove(0);
+                    Log.i(LOG_TAG, "UID log is full. Deleting "
+                            + oldest.mCount + " old entries.");
+                    deleteFile(getSegmentFile(oldest.mNumber));
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            int first = i;
+            long length = s.mLength;
+            while (i < times.length && length < SEGMENT_SIZE) {
+                String line = format(times[i], uids[i]) + "\n";
+                sb.append(line);
+                length += line.length();
+                i++;
+            }
+            byte[] data = sb.toString().getBytes(StandardCharsets.US_ASCII);
+            try (OutputStream out = new FileOutputStream(
+                    getSegmentFile(s.mNumber), true)) {
+                out.write(data);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error while writing UID log.", e);
+                break;
+            }
+            s.mLength += data.length;
+            for (int j = first; j < i; j++) {
+                s.add(times[j], uids[j].toUpperCase(Locale.ROOT));
+            }
+        }
+        // The index of the newest segment is rebuilt when the log is
+        // opened (its length changed), so there is no need to rewrite
+        // the whole index on every write.
+        if (isNewSegment) {
+            saveIndex();
+        }
+    }
+
+    /**
+     * Read all entries of a segment.
+     * @param s The segment.
+     * @return The entries (oldest first).
+     */
+    private List<Entry> readSegment(Segment s) {
+        ArrayList<Entry> ret = new ArrayList<>(s.mCount);
+        File file = getSegmentFile(s.mNumber);
+        byte[] data = new byte[(int) Math.min(file.length(), Integer.MAX_VALUE)];
+        try (DataInputStream in = new DataInputStream(
+                new FileInputStream(file))) {
+            in.readFully(data);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error while reading UID log.", e);
+            return ret;
+        }
+        int start = 0;
+        for (int i = 0; i <= data.length; i++) {
+            if (i == data.length || data[i] == '\n') {
+                Entry e = parse(data, start, i);
+                if (e != null) {
+                    ret.add(e);
+                }
+                start = i + 1;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Move an old UID log file into the log as oldest segment.
+     * @param legacyFile The old UID log file.
+     */
+    private void migrate(File legacyFile) {
+        int number = mSegments.isEmpty() ? 0 : mSegments.get(0).mNumber - 1;
+        if (number < 0) {
+            // There is no number left before the first segment.
+            if (!shiftSegments()) {
+                return;
+            }
+            number = 0;
+        }
+        File dest = getSegmentFile(number);
+        if (!legacyFile.renameTo(dest)) {
+            Log.e(LOG_TAG, "Could not move old UID log file.");
+            return;
+        }
+        // The old file does not end with a new line.
+        long length = dest.length();
+        if (length > 0) {
+            try (OutputStream out = new FileOutputStream(dest, true)) {
+                out.write('\n');
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error while writing UID log.", e);
+            }
+        }
+        mSegments.add(0, scanSegment(number));
+        saveIndex();
+    }
+
+    /**
+     * Increment the numbers of all segments by one (newest first), to make
+     * room for a segment before the first one. If renaming a segment file
+     * fails, the index is rebuilt from the segment files.
+     * @return True if all segments were renamed. False otherwise.
+     */
+    private boolean shiftSegments() {
+        for (int i = mSegments.size() - 1; i >= 0; i--) {
+            Segment s = mSegments.get(i);
+            if (!getSegmentFile(s.mNumber).renameTo(
+                    getSegmentFile(s.mNumber + 1))) {
+                Log.e(LOG_TAG, "Could not rename UID log segment.");
+                loadIndex();
+                return false;
+            }
+            s.mNumber++;
+        }
+        saveIndex();
+        return true;
+    }
+
+    /**
+     * Create the index entry of a segment by reading it.
+     * @param number The number of the segment.
+     * @return The index entry.
+     */
+    private Segment scanSegment(int number) {
+        Segment s = new Segment(number);
+        s.mLength = getSegmentFile(number).length();
+        for (Entry e : readSegment(s)) {
+            s.add(e.mTime, e.mUid.toUpperCase(Locale.ROOT));
+        }
+        return s;
+    }
+
+    /**
+     * Load the index. Segments with a different file length than
+     * in the index (or without index) will be scanned.
+     */
+    private void loadIndex() {
+        mSegments.clear();
+        ArrayList<Segment> indexed = new ArrayList<>();
+        File file = new File(mDir, INDEX_FILE);
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        Segment s = new Segment(in.readInt());
+                        s.mLength = in.readLong();
+                        s.mCount = in.readInt();
+                        s.mFirst = in.readLong();
+                        s.mLast = in.readLong();
+                        for (int j = 0; j < s.mBloom.length; j++) {
+                            s.mBloom[j] = in.readLong();
+                        }
+                        indexed.add(s);
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error while reading UID log index.", e);
+                indexed.clear();
+            }
+        }
+        // Compare the index with the segment files.
+        ArrayList<Integer> numbers = new ArrayList<>();
+        String[] names = mDir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(SEGMENT_PREFIX)
+                        && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        numbers.add(Integer.parseInt(name.substring(
+                                SEGMENT_PREFIX.length(),
+                                name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // Not a segment.
+                    }
+                }
+            }
+        }
+        Collections.sort(numbers);
+        boolean changed = numbers.size() != indexed.size();
+        for (int number : numbers) {
+            Segment s = null;
+            for (Segment i : indexed) {
+                if (i.mNumber == number) {
+                    s = i;
+                    break;
+                }
+            }
+            if (s == null || s.mLength != getSegmentFile(number).length()) {
+                s = scanSegment(number);
+                changed = true;
+            }
+            mSegments.add(s);
+        }
+        if (changed) {
+            saveIndex();
+        }
+    }
+
+    private void saveIndex() {
+        File file = new File(mDir, INDEX_FILE);
+        File tmp = new File(mDir, INDEX_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mSegments.size());
+            for (Segment s : mSegments) {
+                out.writeInt(s.mNumber);
+                out.writeLong(s.mLength);
+                out.writeInt(s.mCount);
+                out.writeLong(s.mFirst);
+                out.writeLong(s.mLast);
+                for (long bits : s.mBloom) {
+                    out.writeLong(bits);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error while saving UID log index.", e);
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.e(LOG_TAG, "Could not save UID log index.");
+        }
+    }
+
+    private File getSegmentFile(int number) {
+        return new File(mDir, String.format(Locale.ROOT, "%s%06d%s",
+                SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.d(LOG_TAG, "Could not delete " + file);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A plan for writing data to a tag with as few authentications as possible.
+ * The blocks are grouped by sector and by the key (A or B) needed for
+ * writing them. Each group is written with one authentication
+ * ({@link MCReader#writeBlocks(int, int[], byte[][], byte[], boolean)})
+ * instead of one authentication per block. Within a sector, the group with
+ * the sector trailer is written last and the sector trailer is the last
+ * block of its group. This way, changed keys or Access Conditions can not
+ * lock out the remaining blocks of the sector.<br />
+ * The plan can be inspected ({@link #getGroups()}, {@link #toString()})
+ * before it is executed ({@link #execute(MCReader)}). A differential
+ * execution only writes the blocks that differ from the data on the tag
+ * and a verifying execution reads back every written block
+ * ({@link #execute(MCReader, boolean, boolean)}).
+ * @author agent
+ */
+public class WritePlan {
+
+    private final ArrayList<Group> mGroups = new ArrayList<>();
+    private int mBlockCount = 0;
+    private int mWrittenCount = 0;
+    private int mSkippedCount = 0;
+    private final ArrayList<int[]> mVerifyErrors = new ArrayList<>();
+    private final ArrayList<int[]> mUnverified = new ArrayList<>();
+
+    /**
+     * All blocks of one sector that are written with the same key
+     * (one authentication).
+     */
+    public static class Group {
+        private final int mSector;
+        private final byte[] mKey;
+        private final boolean mUseAsKeyB;
+        private final int[] mBlocks;
+        private final byte[][] mData;
+
+        private Group(int sector, byte[] key, boolean useAsKeyB,
+                int[] blocks, byte[][] data) {
+            mSector = sector;
+            mKey = key;
+            mUseAsKeyB = useAsKeyB;
+            mBlocks = blocks;
+            mData = data;
+        }
+
+        /**
+         * Get the sector of this group.
+         * @return The sector.
+         */
+        public int getSector() {
+            return mSector;
+        }
+
+        /**
+         * Get the key used for the authentication.
+         * @return The key (6 bytes).
+         */
+        public byte[] getKey() {
+            return mKey;
+        }
+
+        /**
+         * Check whether the key is used as key B.
+         * @return True for key B, false for key A.
+         */
+        public boolean isKeyB() {
+            return mUseAsKeyB;
+        }
+
+        /**
+         * Get the blocks (indices within the sector) in the order
+         * they will be written.
+         * @return The blocks.
+         */
+        public int[] getBlocks() {
+            return mBlocks;
+        }
+
+        /**
+         * Get the data of the blocks (same order as {@link #getBlocks()}).
+         * @return The data (16 bytes per block).
+         */
+        public byte[][] getData() {
+            return mData;
+        }
+    }
+
+    /**
+     * Create a write plan.
+     * @param dataWithPos The data to write. The key of the outer map is
+     * the sector, the key of the inner map is the block within the sector
+     * and the value is the data (16 bytes) of the block.
+     * @param writeOnPos The (filtered) write information for the
+     * blocks to write (return values of
+     * {@link MCReader#isWritableOnPositions(HashMap, SparseArray)},
+     * with 1 or 4 meaning key A and 2, 5 or 6 meaning key B). Only blocks
+     * in this map will be written.
+     * @param keyMap The key map with the keys of the sectors.
+     * @return The write plan or null if some keys or data are missing.
+     */
+    public static WritePlan create(
+            HashMap<Integer, HashMap<Integer, byte[]>> dataWithPos,
+            HashMap<Integer, HashMap<Integer, Integer>> writeOnPos,
+            SparseArray<byte[][]> keyMap) {
+        WritePlan plan = new WritePlan();
+        ArrayList<Integer> sectors = new ArrayList<>(writeOnPos.keySet());
+        Collections.sort(sectors);
+        for (int sector : sectors) {
+            byte[][] keys = keyMap.get(sector);
+            HashMap<Integer, byte[]> data = dataWithPos.get(sector);
+            if (keys == null || data == null) {
+                return null;
+            }
+            int trailer = TagImage.getBlockCountInSector(sector) - 1;
+            // Blocks per key (0 = key A, 1 = key B).
+            ArrayList<ArrayList<Integer>> blocks = new ArrayList<>(2);
+            blocks.add(new ArrayList<>());
+            blocks.add(new ArrayList<>());
+            int trailerKey = -1;
+            for (HashMap.Entry<Integer, Integer> entry
+                    : writeOnPos.get(sector).entrySet()) {
+                int block = entry.getKey();
+                int wi = entry.getValue();
+                int k;
+                if (wi == 1 || wi == 4) {
+                    k = 0;
+                } else if (wi == 2 || wi == 5 || wi == 6) {
+                    k = 1;
+                } else {
+                    // Unfiltered write information.
+                    return null;
+                }
+                if (keys[k] == null || data.get(block) == null) {
+                    return null;
+                }
+                blocks.get(k).add(block);
+                if (block == trailer) {
+                    trailerKey = k;
+                }
+            }
+            // The group with the sector trailer is written last.
+            int first = (trailerKey == 0) ? 1 : 0;
+            plan.addGroup(sector, keys[first], first == 1,
+                    blocks.get(first), data);
+            plan.addGroup(sector, keys[1 - first], first == 0,
+                    blocks.get(1 - first), data);
+        }
+        return plan;
+    }
+
+    private void addGroup(int sector, byte[] key, boolean useAsKeyB,
+            List<Integer> blocks, HashMap<Integer, byte[]> data) {
+        if (blocks.size() == 0) {
+            return;
+        }
+        // Ascending, so the sector trailer (last block) is written last.
+        int[] blockArray = new int[blocks.size()];
+        for (int i = 0; i < blockArray.length; i++) {
+            blockArray[i] = blocks.get(i);
+        }
+        Arrays.sort(blockArray);
+        byte[][] blockData = new byte[blockArray.length][];
+        for (int i = 0; i < blockArray.length; i++) {
+            blockData[i] = data.get(blockArray[i]);
+        }
+        mGroups.add(new Group(sector, key, useAsKeyB, blockArray, blockData));
+        mBlockCount += blockArray.length;
+    }
+
+    /**
+     * Get the groups in the order they will be written.
+     * @return The groups (one authentication each).
+     */
+    public List<Group> getGroups() {
+        return Collections.unmodifiableList(mGroups);
+    }
+
+    /**
+     * Get the number of authentications needed to execute this plan.
+     * @return Number of authentications (one per group).
+     */
+    public int getAuthenticationCount() {
+        return mGroups.size();
+    }
+
+    /**
+     * Get the number of blocks that will be written.
+     * @return Number of blocks.
+     */
+    public int getBlockCount() {
+        return mBlockCount;
+    }
+
+    /**
+     * Get the number of blocks written by the last execution.
+     * @return Number of blocks written.
+     */
+    public int getWrittenCount() {
+        return mWrittenCount;
+    }
+
+    /**
+     * Get the number of blocks skipped by the last (differential)
+     * execution, because the tag already contained the data.
+     * @return Number of blocks skipped.
+     */
+    public int getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    /**
+     * Get the blocks that were written by the last (verifying) execution,
+     * but contained different data when they were read back.
+     * @return The blocks as {sector, block} pairs.
+     */
+    public List<int[]> getVerifyErrors() {
+        return Collections.unmodifiableList(mVerifyErrors);
+    }
+
+    /**
+     * Get the blocks that were written by the last (verifying) execution,
+     * but could not be read back (e.g. because of the Access Conditions).
+     * @return The blocks as {sector, block} pairs.
+     */
+    public List<int[]> getUnverified() {
+        return Collections.unmodifiableList(mUnverified);
+    }
+
+    /**
+     * Write all groups to the tag (one authentication per group).
+     * @param reader A connected {@link MCReader}.
+     * @return The first return code of
+     * {@link MCReader#writeBlocks(int, int[], byte[][], byte[], boolean)}
+     * that is not 0 or 0 if all blocks were written.
+     * @see #execute(MCReader, boolean, boolean)
+     */
+    public int execute(MCReader reader) {
+        return execute(reader, false, false);
+    }
+
+    /**
+     * Write all groups to the tag (one authentication per group).
+     * The number of written and skipped blocks can be retrieved afterwards
+     * ({@link #getWrittenCount()}, {@link #getSkippedCount()}), as well as
+     * the results of the verification ({@link #getVerifyErrors()},
+     * {@link #getUnverified()}).
+     * @param reader A connected {@link MCReader}.
+     * @param differential If true, each sector is read within the same
+     * authentication and only the blocks that differ are written.
+     * @param verify If true, each written block is read back within the
+     * same authentication and compared to the data.
+     * @return The first return code of
+     * {@link MCReader#writeBlocks(int, int[], byte[][], byte[], boolean,
+     * boolean, boolean, int[])} that is not 0 or 0 if all blocks were
+     * written.
+     */
+    public int execute(MCReader reader, boolean differential,
+            boolean verify) {
+        mWrittenCount = 0;
+        mSkippedCount = 0;
+        mVerifyErrors.clear();
+        mUnverified.clear();
+        for (Group group : mGroups) {
+            int[] blockResults = new int[group.mBlocks.length];
+            Arrays.fill(blockResults, -1);
+            int result = reader.writeBlocks(group.mSector, group.mBlocks,
+                    group.mData, group.mKey, group.mUseAsKeyB,
+                    differential, verify, blockResults);
+            for (int i = 0; i < blockResults.length; i++) {
+                switch (blockResults[i]) {
+                    case 0:
+                        mWrittenCount++;
+                        break;
+                    case 1:
+                        mSkippedCount++;
+                        break;
+                    case 2:
+                        mWrittenCount++;
+                        mVerifyErrors.add(new int[] {
+                                group.mSector, group.mBlocks[i] });
+                        break;
+                    case 3:
+                        mWrittenCount++;
+                        mUnverified.add(new int[] {
+                                group.mSector, group.mBlocks[i] });
+                        break;
+                }
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Describe the plan, one line per group
+     * (e.g. "Sector 1, key B: blocks 0, 1, 2, 3").
+     * @return The plan as text.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Group group : mGroups) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append("Sector ").append(group.mSector).append(", key ")
+                    .append(group.mUseAsKeyB ? 'B' : 'A').append(": blocks ");
+            for (int i = 0; i < group.mBlocks.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(group.mBlocks[i]);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.syss.MifareClassicTool.Common.Operation;
+
+/**
+ * Unit tests for {@link AccessConditions}. Wrong results can lead to
+ * writing a sector trailer with the wrong key (or writing it at all),
+ * so the whole table is checked against
+ * {@link Common#getOperationRequirements(byte, byte, byte, Operation,
+ * boolean, boolean)} and against the Access Condition tables of the
+ * MIFARE Classic datasheet.
+ * @author agent
+ */
+public class AccessConditionsTest {
+
+    private static final int NEVER = 0;
+    private static final int KEY_A = 1;
+    private static final int KEY_B = 2;
+    private static final int KEY_AB = 3;
+
+    private static final Operation[] DATA_OPS = {
+            Operation.Read, Operation.Write,
+            Operation.Increment, Operation.DecTransRest };
+    private static final Operation[] TRAILER_OPS = {
+            Operation.ReadKeyA, Operation.WriteKeyA,
+            Operation.ReadAC, Operation.WriteAC,
+            Operation.ReadKeyB, Operation.WriteKeyB };
+
+    @Test
+    public void tableMatchesCommon() {
+        for (int index = 0; index < AccessConditions.COUNT; index++) {
+            int trailerBits = AccessConditions.getACBits(
+                    index, AccessConditions.SECTOR_TRAILER);
+            boolean keyBReadable = Common.isKeyBReadable(
+                    c(trailerBits, 1), c(trailerBits, 2), c(trailerBits, 3));
+            assertEquals(keyBReadable,
+                    AccessConditions.isKeyBReadable(index));
+            for (int block = 0; block < 4; block++) {
+                int bits = AccessConditions.getACBits(index, block);
+                boolean isTrailer = block == AccessConditions.SECTOR_TRAILER;
+                for (Operation op : Operation.values()) {
+                    int expected = Common.getOperationRequirements(
+                            c(bits, 1), c(bits, 2), c(bits, 3), op,
+                            isTrailer, keyBReadable);
+                    assertEquals("index " + index + ", block " + block
+                            + ", " + op, expected,
+                            AccessConditions.getOperationRequirements(
+                                    index, block, op));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sectorTrailerTable() {
+        // Datasheet order: read key A, write key A, read AC, write AC,
+        // read key B, write key B.
+        assertTrailer(0b000, NEVER, KEY_A, KEY_A, NEVER, KEY_A, KEY_A);
+        assertTrailer(0b010, NEVER, NEVER, KEY_A, NEVER, KEY_A, NEVER);
+        assertTrailer(0b100, NEVER, KEY_B, KEY_AB, NEVER, NEVER, KEY_B);
+        assertTrailer(0b110, NEVER, NEVER, KEY_AB, NEVER, NEVER, NEVER);
+        assertTrailer(0b001, NEVER, KEY_A, KEY_A, KEY_A, KEY_A, KEY_A);
+        assertTrailer(0b011, NEVER, KEY_B, KEY_AB, KEY_B, NEVER, KEY_B);
+        assertTrailer(0b101, NEVER, NEVER, KEY_AB, KEY_B, NEVER, NEVER);
+        assertTrailer(0b111, NEVER, NEVER, KEY_AB, NEVER, NEVER, NEVER);
+    }
+
+    @Test
+    public void dataBlockTable() {
+        // Trailer 011: Key B is not readable.
+        // Datasheet order: read, write, increment, decrement/transfer/restore.
+        assertDataBlock(0b000, 0b011, KEY_AB, KEY_AB, KEY_AB, KEY_AB);
+        assertDataBlock(0b010, 0b011, KEY_AB, NEVER, NEVER, NEVER);
+        assertDataBlock(0b100, 0b011, KEY_AB, KEY_B, NEVER, NEVER);
+        assertDataBlock(0b110, 0b011, KEY_AB, KEY_B, KEY_B, KEY_AB);
+        assertDataBlock(0b001, 0b011, KEY_AB, NEVER, NEVER, KEY_AB);
+        assertDataBlock(0b011, 0b011, KEY_B, KEY_B, NEVER, NEVER);
+        assertDataBlock(0b101, 0b011, KEY_B, NEVER, NEVER, NEVER);
+        assertDataBlock(0b111, 0b011, NEVER, NEVER, NEVER, NEVER);
+    }
+
+    @Test
+    public void dataBlockTableKeyBReadable() {
+        // Trailer 001: Key B is readable and can not be used for
+        // authentication, so "key A or B" becomes "key A".
+        assertDataBlock(0b000, 0b001, KEY_A, KEY_A, KEY_A, KEY_A);
+        assertDataBlock(0b100, 0b001, KEY_A, KEY_B, NEVER, NEVER);
+        assertDataBlock(0b011, 0b001, KEY_B, KEY_B, NEVER, NEVER);
+        // Trailer 000 and 010: Key B is readable too.
+        assertTrue(AccessConditions.isKeyBReadable(index(0, 0, 0, 0b000)));
+        assertTrue(AccessConditions.isKeyBReadable(index(0, 0, 0, 0b010)));
+        assertTrue(AccessConditions.isKeyBReadable(index(0, 0, 0, 0b001)));
+        assertFalse(AccessConditions.isKeyBReadable(index(0, 0, 0, 0b011)));
+        assertFalse(AccessConditions.isKeyBReadable(-1));
+    }
+
+    @Test
+    public void wrongBlockForOperation() {
+        int index = index(0, 0, 0, 0b001);
+        assertEquals(4, AccessConditions.getOperationRequirements(
+                index, AccessConditions.SECTOR_TRAILER, Operation.Write));
+        assertEquals(-1, AccessConditions.getOperationRequirements(
+                index, 0, Operation.WriteKeyA));
+        assertEquals(-1, AccessConditions.getOperationRequirements(
+                -1, AccessConditions.SECTOR_TRAILER, Operation.WriteKeyA));
+        assertEquals(-1, AccessConditions.getOperationRequirements(
+                AccessConditions.COUNT, 0, Operation.Read));
+        assertEquals(-1, AccessConditions.getOperationRequirements(
+                index, 4, Operation.Read));
+    }
+
+    @Test
+    public void factoryDefault() {
+        byte[] trailer = Common.hex2Bytes("FFFFFFFFFFFFFF078069FFFFFFFFFFFF");
+        int index = AccessConditions.getIndex(trailer, 6);
+        assertEquals(AccessConditions.getIndex(Common.hex2Bytes("FF0780")),
+                index);
+        assertEquals(0b001, AccessConditions.getACBits(
+                index, AccessConditions.SECTOR_TRAILER));
+        for (int block = 0; block < 3; block++) {
+            assertEquals(0b000, AccessConditions.getACBits(index, block));
+        }
+        assertTrue(AccessConditions.isKeyBReadable(index));
+        assertEquals(KEY_A, AccessConditions.getOperationRequirements(
+                index, AccessConditions.SECTOR_TRAILER, Operation.WriteKeyA));
+    }
+
+    @Test
+    public void transportConfiguration() {
+        int index = AccessConditions.getIndex(Common.hex2Bytes("7F0788"));
+        assertEquals(0b011, AccessConditions.getACBits(
+                index, AccessConditions.SECTOR_TRAILER));
+        assertFalse(AccessConditions.isKeyBReadable(index));
+        assertEquals(KEY_AB, AccessConditions.getOperationRequirements(
+                index, AccessConditions.SECTOR_TRAILER, Operation.ReadAC));
+        assertEquals(KEY_B, AccessConditions.getOperationRequirements(
+                index, AccessConditions.SECTOR_TRAILER, Operation.WriteAC));
+        assertEquals(KEY_AB, AccessConditions.getOperationRequirements(
+                index, 0, Operation.Write));
+    }
+
+    @Test
+    public void invalidAccessConditions() {
+        assertEquals(-1, AccessConditions.getIndex(
+                Common.hex2Bytes("FF0781")));
+        assertEquals(-1, AccessConditions.getIndex(
+                Common.hex2Bytes("000000")));
+        assertEquals(-1, AccessConditions.getIndex(
+                Common.hex2Bytes("FF07")));
+        assertEquals(-1, AccessConditions.getIndex(null));
+        assertFalse(AccessConditions.isValid(
+                Common.hex2Bytes("FFFFFFFFFFFFFF078169FFFFFFFFFFFF"), 6));
+        assertTrue(AccessConditions.isValid(
+                Common.hex2Bytes("FFFFFFFFFFFFFF078069FFFFFFFFFFFF"), 6));
+    }
+
+    @Test
+    public void allIndicesRoundTrip() {
+        for (int index = 0; index < AccessConditions.COUNT; index++) {
+            byte[] acBytes = AccessConditions.toACBytes(index);
+            assertEquals(index, AccessConditions.getIndex(acBytes));
+            // Any single flipped bit makes the Access Conditions invalid.
+            for (int bit = 0; bit < 24; bit++) {
+                byte[] flipped = acBytes.clone();
+                flipped[bit / 8] ^= (byte) (1 << (bit % 8));
+                assertEquals(-1, AccessConditions.getIndex(flipped));
+            }
+        }
+        assertArrayEquals(Common.hex2Bytes("FF0780"),
+                AccessConditions.toACBytes(
+                        AccessConditions.getIndex(Common.hex2Bytes("FF0780"))));
+    }
+
+    @Test
+    public void acBitsMatchACMatrix() {
+        for (int index = 0; index < AccessConditions.COUNT; index++) {
+            byte[] acBytes = AccessConditions.toACBytes(index);
+            byte[][] acMatrix = Common.acBytesToACMatrix(acBytes);
+            for (int block = 0; block < 4; block++) {
+                int bits = AccessConditions.getACBits(index, block);
+                assertEquals(acMatrix[0][block], c(bits, 1));
+                assertEquals(acMatrix[1][block], c(bits, 2));
+                assertEquals(acMatrix[2][block], c(bits, 3));
+            }
+        }
+    }
+
+    private static void assertTrailer(int bits, int... expected) {
+        int index = index(0, 0, 0, bits);
+        for (int i = 0; i < TRAILER_OPS.length; i++) {
+            assertEquals("trailer " + Integer.toBinaryString(bits)
+                    + ", " + TRAILER_OPS[i], expected[i],
+                    AccessConditions.getOperationRequirements(index,
+                            AccessConditions.SECTOR_TRAILER, TRAILER_OPS[i]));
+        }
+    }
+
+    private static void assertDataBlock(int bits, int trailerBits,
+            int... expected) {
+        for (int block = 0; block < 3; block++) {
+            int[] blockBits = {0b111, 0b111, 0b111};
+            blockBits[block] = bits;
+            int index = index(blockBits[0], blockBits[1], blockBits[2],
+                    trailerBits);
+            for (int i = 0; i < DATA_OPS.length; i++) {
+                assertEquals("block " + block + " "
+                        + Integer.toBinaryString(bits) + ", " + DATA_OPS[i],
+                        expected[i], AccessConditions.getOperationRequirements(
+                                index, block, DATA_OPS[i]));
+            }
+        }
+    }
+
+    /**
+     * Build the index of Access Conditions.
+     * @param bits The C1, C2 and C3 bits (bit 2, 1 and 0) of block 0-2
+     * and the sector trailer.
+     * @return The index.
+     */
+    private static int index(int... bits) {
+        int index = 0;
+        for (int block = 0; block < 4; block++) {
+            index |= ((bits[block] >>> 2) & 1) << block;
+            index |= ((bits[block] >>> 1) & 1) << (4 + block);
+            index |= (bits[block] & 1) << (8 + block);
+        }
+        return index;
+    }
+
+    /**
+     * Get one Access Condition bit.
+     * @param bits The C1, C2 and C3 bits (bit 2, 1 and 0).
+     * @param c The bit to get (1 for C1, 2 for C2, 3 for C3).
+     * @return The bit.
+     */
+    private static byte c(int bits, int c) {
+        return (byte) ((bits >>> (3 - c)) & 1);
+    }
+}
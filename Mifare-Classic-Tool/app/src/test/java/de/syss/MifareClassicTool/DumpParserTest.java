@@ -0,0 +1,185 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unit tests for {@link DumpParser}.
+ * @author agent
+ */
+public class DumpParserTest {
+
+    private static final String BLOCK_0 = "01020304040804000000000000000000";
+    private static final String DATA = "00112233445566778899AABBCCDDEEFF";
+    private static final String TRAILER = "FFFFFFFFFFFFFF078069FFFFFFFFFFFF";
+
+    @Test
+    public void parseLines() {
+        String[] dump = {
+                "+Sector: 0", BLOCK_0, DATA, MCReader.NO_DATA, TRAILER,
+                "+Sector: 2", DATA, DATA, DATA,
+                "------------FF078069------------" };
+        DumpParser parser = new DumpParser(false);
+        assertTrue(parser.parse(dump));
+        assertEquals(0, parser.getError());
+        assertEquals(0, parser.getErrorLine());
+        assertArrayEquals(new int[] {0, 2}, parser.getSectorOrder());
+        TagImage image = parser.getImage();
+        assertNotNull(image);
+        assertEquals(3, image.getSectorCount());
+        assertTrue(image.hasSector(0));
+        assertFalse(image.hasSector(1));
+        assertTrue(image.hasSector(2));
+        assertEquals(DATA, image.getBlockHex(0, 1));
+        assertFalse(image.isBlockValid(0, 2));
+        assertEquals(MCReader.NO_DATA, image.getBlockHex(0, 2));
+        assertTrue(image.isKeyKnown(0, false));
+        assertFalse(image.isKeyKnown(2, false));
+        assertFalse(image.isKeyKnown(2, true));
+        assertEquals("------------FF078069------------",
+                image.getBlockHex(2, 3));
+        assertArrayEquals(new String[] {
+                "+Sector: 0", BLOCK_0, DATA, MCReader.NO_DATA, TRAILER,
+                "+Sector: 1", "*No keys found or dead sector",
+                "+Sector: 2", DATA, DATA, DATA,
+                "------------FF078069------------" }, image.toDump(0, 2));
+    }
+
+    @Test
+    public void parseFileContent() throws IOException {
+        // Comments, empty lines, whitespaces and "\r\n" are ignored.
+        String dump = "# Dump\r\n"
+                + "+Sector: 1\r\n"
+                + "  " + DATA + "  # Block 0\r\n"
+                + "\r\n"
+                + DATA + "\r\n" + DATA + "\r\n" + TRAILER;
+        DumpParser parser = new DumpParser(false);
+        assertTrue(parser.parse(new StringReader(dump)));
+        assertArrayEquals(new String[] {DATA, DATA, DATA, TRAILER},
+                parser.getImage().getSectorHex(1));
+
+        byte[] bytes = ("xx" + dump).getBytes(StandardCharsets.US_ASCII);
+        assertTrue(parser.parse(bytes, 2, bytes.length - 2));
+        assertArrayEquals(new String[] {DATA, DATA, DATA, TRAILER},
+                parser.getImage().getSectorHex(1));
+        assertEquals(2, parser.getImage().getSectorCount());
+    }
+
+    @Test
+    public void parse4kSector() {
+        String[] dump = new String[17];
+        dump[0] = "+Sector: 39";
+        for (int i = 1; i < 16; i++) {
+            dump[i] = DATA;
+        }
+        dump[16] = TRAILER;
+        DumpParser parser = new DumpParser(false);
+        assertTrue(parser.parse(dump));
+        assertEquals(40, parser.getImage().getSectorCount());
+        assertEquals(TRAILER, parser.getImage().getBlockHex(39, 15));
+    }
+
+    @Test
+    public void ignoreAsterisk() {
+        String[] dump = {
+                "+Sector: 0", "*No keys found or dead sector",
+                "+Sector: 1", DATA, DATA, DATA, TRAILER };
+        DumpParser parser = new DumpParser(true);
+        assertTrue(parser.parse(dump));
+        assertArrayEquals(new int[] {0, 1}, parser.getSectorOrder());
+        assertFalse(parser.getImage().hasSector(0));
+        assertTrue(parser.getImage().hasSector(1));
+
+        parser = new DumpParser(false);
+        assertFalse(parser.parse(dump));
+        assertEquals(2, parser.getError());
+        assertEquals(2, parser.getErrorLine());
+        assertNull(parser.getImage());
+    }
+
+    @Test
+    public void notFourOrSixteenBlocks() {
+        assertError(1, 6, "+Sector: 0", DATA, DATA, DATA, TRAILER, DATA);
+        assertError(1, 1, "Sector: 0", DATA, DATA, DATA, TRAILER);
+        assertError(1, 1, "+Sector: 100", DATA, DATA, DATA, TRAILER);
+    }
+
+    @Test
+    public void invalidChars() {
+        assertError(2, 3, "+Sector: 0", DATA,
+                "0011223344556677889XAABBCCDDEEFF", DATA, TRAILER);
+        assertError(2, 2, "+Sector: 0", "", DATA, DATA, TRAILER);
+    }
+
+    @Test
+    public void not32Chars() {
+        assertError(3, 5, "+Sector: 0", DATA, DATA, DATA,
+                TRAILER + "00");
+        assertError(3, 2, "+Sector: 0", "0011", DATA, DATA, TRAILER);
+    }
+
+    @Test
+    public void sectorOutOfRange() {
+        assertError(4, 1, "+Sector: 40", DATA, DATA, DATA, TRAILER);
+    }
+
+    @Test
+    public void duplicateSector() {
+        assertError(5, 6, "+Sector: 0", DATA, DATA, DATA, TRAILER,
+                "+Sector: 0", DATA, DATA, DATA, TRAILER);
+    }
+
+    @Test
+    public void noLines() {
+        assertError(6, 0);
+        DumpParser parser = new DumpParser(false);
+        assertFalse(parser.parse((String[]) null));
+        assertEquals(6, parser.getError());
+        assertFalse(parser.parse(new byte[0], 0, 0));
+        assertEquals(6, parser.getError());
+    }
+
+    @Test
+    public void matchesValidDump() {
+        assertEquals(0, Common.isValidDump(new String[] {
+                "+Sector: 0", DATA, DATA, DATA, TRAILER}, false));
+        assertEquals(3, Common.isValidDump(new String[] {
+                "+Sector: 0", DATA, "00", DATA, TRAILER}, false));
+    }
+
+    private static void assertError(int error, int line, String... dump) {
+        DumpParser parser = new DumpParser(false);
+        assertFalse(parser.parse(dump));
+        assertEquals(error, parser.getError());
+        assertEquals(line, parser.getErrorLine());
+        assertNull(parser.getImage());
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Unit tests for {@link DumpPatternIndex}.
+ * @author agent
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DumpPatternIndexTest {
+
+    private static final long MTIME = 1672531200000L;
+
+    private static final String BLOCK_0 = "01020304040804000000000000000000";
+    private static final String DATA = "00112233445566778899AABBCCDDEEFF";
+    private static final String SEQUENCE = "000102030405060708090A0B0C0D0E0F";
+    private static final String ZEROS = "00000000000000000000000000000000";
+    private static final String TRAILER = "A0A1A2A3A4A5FF078069B0B1B2B3B4B5";
+    private static final String TRAILER_NO_KEY_A =
+            "------------FF078069B0B1B2B3B4B5";
+
+    // 4 unique blocks.
+    private static final String[] DUMP_A = {
+            "+Sector: 0", BLOCK_0, DATA, SEQUENCE, TRAILER };
+    // 6 unique blocks together with DUMP_A.
+    private static final String[] DUMP_B = {
+            "+Sector: 0", BLOCK_0, MCReader.NO_DATA, MCReader.NO_DATA, TRAILER,
+            "+Sector: 1", ZEROS, DATA, ZEROS, TRAILER_NO_KEY_A };
+
+    @Rule
+    public TemporaryFolder mTmp = new TemporaryFolder();
+
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mFile = new File(mTmp.getRoot(), "index/dump-pattern-index.bin");
+    }
+
+    @Test
+    public void parsePattern() {
+        assertNotNull(DumpPatternIndex.Pattern.parse("A0"));
+        assertNotNull(DumpPatternIndex.Pattern.parse("a0 A1 ?2 ??"));
+        assertNotNull(DumpPatternIndex.Pattern.parse(DATA));
+        DumpPatternIndex.Pattern pattern =
+                DumpPatternIndex.Pattern.parse("A0A1");
+        assertEquals(-1, pattern.getSector());
+        assertEquals(-1, pattern.getBlock());
+        pattern = DumpPatternIndex.Pattern.parse("A0A1@39");
+        assertEquals(39, pattern.getSector());
+        assertEquals(-1, pattern.getBlock());
+        pattern = DumpPatternIndex.Pattern.parse("A0A1 @ 32 : 15");
+        assertEquals(32, pattern.getSector());
+        assertEquals(15, pattern.getBlock());
+
+        // Empty, odd length, too long or no hex.
+        assertNull(DumpPatternIndex.Pattern.parse(""));
+        assertNull(DumpPatternIndex.Pattern.parse("@1"));
+        assertNull(DumpPatternIndex.Pattern.parse("A0A"));
+        assertNull(DumpPatternIndex.Pattern.parse(DATA + "00"));
+        assertNull(DumpPatternIndex.Pattern.parse("G0"));
+        // Invalid position.
+        assertNull(DumpPatternIndex.Pattern.parse("A0@40"));
+        assertNull(DumpPatternIndex.Pattern.parse("A0@-1"));
+        assertNull(DumpPatternIndex.Pattern.parse("A0@0:4"));
+        assertNull(DumpPatternIndex.Pattern.parse("A0@1:-1"));
+        assertNull(DumpPatternIndex.Pattern.parse("A0@x"));
+        assertNull(DumpPatternIndex.Pattern.parse("A0@1:"));
+    }
+
+    @Test
+    public void searchWithTrigrams() {
+        DumpPatternIndex index = createIndex();
+        assertSearch(index, "AABBCC", "a.mct", "b.mct");
+        assertSearch(index, "aa bb cc dd", "a.mct", "b.mct");
+        assertSearch(index, "0001020304", "a.mct");
+        // Block 0 of both dumps.
+        assertSearch(index, "0102030404", "a.mct", "b.mct");
+        // Partially wildcards.
+        assertSearch(index, "AABBCC?D", "a.mct", "b.mct");
+        assertSearch(index, "0?0102030405", "a.mct");
+        assertSearch(index, ZEROS, "b.mct");
+        assertSearch(index, "DEADBEEF");
+        // Patterns do not span blocks.
+        assertSearch(index, "EEFF0001");
+    }
+
+    @Test
+    public void searchWithWildcards() {
+        DumpPatternIndex index = createIndex();
+        // No three known bytes in a row (no trigram).
+        assertSearch(index, "A?BB", "a.mct", "b.mct");
+        assertSearch(index, "AA?BCC", "a.mct", "b.mct");
+        assertSearch(index, "0E0F", "a.mct");
+        assertSearch(index, "??0F", "a.mct");
+        assertSearch(index, "0E", "a.mct");
+        assertSearch(index, "??", "a.mct", "b.mct");
+        assertSearch(index, "DE?D");
+    }
+
+    @Test
+    public void searchWithPosition() {
+        DumpPatternIndex index = createIndex();
+        assertSearch(index, "AABBCC@0", "a.mct");
+        assertSearch(index, "AABBCC@1", "b.mct");
+        assertSearch(index, "AABBCC@0:1", "a.mct");
+        assertSearch(index, "AABBCC@1:1", "b.mct");
+        assertSearch(index, "AABBCC@1:2");
+        assertSearch(index, "A?BB@0:2");
+        assertSearch(index, "A?BB@1:1", "b.mct");
+        assertSearch(index, "0102030404@1");
+        // Sectors beyond the dumps.
+        assertSearch(index, "AABBCC@2");
+        assertSearch(index, "AABBCC@39:15");
+        // Trailers.
+        assertSearch(index, "FF078069@0:3", "a.mct", "b.mct");
+        assertSearch(index, "FF078069@1:3", "b.mct");
+    }
+
+    @Test
+    public void unknownBytesNeverMatch() {
+        DumpPatternIndex index = createIndex();
+        // Key A of sector 1 is unknown (stored as zeros).
+        assertSearch(index, "000000000000@1:3");
+        assertSearch(index, "00000000@1:3");
+        assertSearch(index, "B0B1B2B3B4B5@1:3", "b.mct");
+        // Unknown data blocks of b.mct (stored as nothing at all).
+        assertSearch(index, "0011@0:1", "a.mct");
+        assertSearch(index, "??@0:2", "a.mct");
+        assertSearch(index, "A5FF078069@1:3");
+        assertSearch(index, "?5FF078069@1:3");
+        // Full wildcards match any byte.
+        assertSearch(index, "????FF078069@1:3", "b.mct");
+    }
+
+    @Test
+    public void blocksAreDeduplicated() {
+        DumpPatternIndex index = new DumpPatternIndex(mFile);
+        index.put("a.mct", 1, MTIME, TagImage.fromDump(DUMP_A));
+        assertEquals(4, index.getBlockCount());
+        index.put("b.mct", 2, MTIME, TagImage.fromDump(DUMP_B));
+        assertEquals(6, index.getBlockCount());
+        index.put("c.mct", 1, MTIME, TagImage.fromDump(DUMP_A));
+        assertEquals(6, index.getBlockCount());
+        assertEquals(3, index.size());
+        assertSearch(index, "0001020304", "a.mct", "c.mct");
+    }
+
+    @Test
+    public void putAndRemove() {
+        DumpPatternIndex index = createIndex();
+        // Replace a dump.
+        index.put("a.mct", 3, MTIME + 1000, TagImage.fromDump(DUMP_B));
+        assertSearch(index, "0001020304");
+        assertSearch(index, "AABBCC@1", "a.mct", "b.mct");
+        assertTrue(index.isUpToDate("a.mct", 3, MTIME + 1000));
+        assertFalse(index.isUpToDate("a.mct", 1, MTIME));
+
+        index.remove("b.mct");
+        assertSearch(index, "AABBCC", "a.mct");
+        assertFalse(index.isUpToDate("b.mct", 2, MTIME));
+        assertEquals(1, index.size());
+
+        // Files that are no dumps.
+        index.put("notes.txt", 10, MTIME, null);
+        assertEquals(new HashSet<>(Arrays.asList("a.mct", "notes.txt")),
+                index.getFileNames());
+        assertTrue(index.isUpToDate("notes.txt", 10, MTIME));
+        assertSearch(index, "??", "a.mct");
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(0, index.getBlockCount());
+        assertSearch(index, "??");
+    }
+
+    @Test
+    public void searchAfterAddingBlocks() {
+        DumpPatternIndex index = createIndex();
+        // Build the trigram index.
+        assertSearch(index, "AABBCC", "a.mct", "b.mct");
+        // Blocks that are not in the trigram index yet.
+        index.put("c.mct", 1, MTIME, createImage(0, 1));
+        assertSearch(index, "AABBCC", "a.mct", "b.mct", "c.mct");
+        assertSearch(index, toBlock(0, 0, 2), "c.mct");
+        // So many new blocks that the trigram index gets rebuilt.
+        for (int i = 1; i <= 20; i++) {
+            index.put("big-" + i + ".mct", 1, MTIME, createImage(i, 40));
+        }
+        // Each of them has 215 new blocks (DATA and TRAILER are known).
+        assertEquals(8 + 20 * 215, index.getBlockCount());
+        assertSearch(index, toBlock(0, 0, 2), "c.mct");
+        assertSearch(index, toBlock(17, 39, 14), "big-17.mct");
+        assertSearch(index, toBlock(17, 39, 14) + "@39:14", "big-17.mct");
+        assertSearch(index, toBlock(17, 39, 14) + "@39:13");
+        assertSearch(index, "000502??", "big-5.mct");
+        assertSearch(index, "0005????@2", "big-5.mct");
+        // Block 1 of sector 0 is unknown in b.mct.
+        assertSearch(index, "AABBCC@0:1", "a.mct", "c.mct",
+                "big-1.mct", "big-2.mct", "big-3.mct", "big-4.mct",
+                "big-5.mct", "big-6.mct", "big-7.mct", "big-8.mct",
+                "big-9.mct", "big-10.mct", "big-11.mct", "big-12.mct",
+                "big-13.mct", "big-14.mct", "big-15.mct", "big-16.mct",
+                "big-17.mct", "big-18.mct", "big-19.mct", "big-20.mct");
+    }
+
+    @Test
+    public void saveAndLoad() {
+        DumpPatternIndex index = createIndex();
+        index.put("notes.txt", 10, MTIME, null);
+        assertTrue(index.save());
+        assertTrue(mFile.exists());
+
+        DumpPatternIndex loaded = DumpPatternIndex.load(mFile);
+        assertEquals(3, loaded.size());
+        assertEquals(6, loaded.getBlockCount());
+        assertTrue(loaded.isUpToDate("a.mct", 1, MTIME));
+        assertTrue(loaded.isUpToDate("notes.txt", 10, MTIME));
+        assertSearch(loaded, "AABBCC@1", "b.mct");
+        assertSearch(loaded, "000000000000@1:3");
+        assertSearch(loaded, "0001020304", "a.mct");
+    }
+
+    @Test
+    public void unusedBlocksAreDroppedOnSave() {
+        DumpPatternIndex index = createIndex();
+        index.remove("b.mct");
+        assertEquals(6, index.getBlockCount());
+        assertTrue(index.save());
+        assertEquals(4, index.getBlockCount());
+        assertSearch(index, "FF078069@0:3", "a.mct");
+        assertSearch(index, "0001020304@0:2", "a.mct");
+        assertSearch(index, ZEROS);
+
+        DumpPatternIndex loaded = DumpPatternIndex.load(mFile);
+        assertEquals(4, loaded.getBlockCount());
+        assertSearch(loaded, "0001020304@0:2", "a.mct");
+        // The blocks are still deduplicated.
+        loaded.put("b.mct", 2, MTIME, TagImage.fromDump(DUMP_B));
+        assertEquals(6, loaded.getBlockCount());
+    }
+
+    @Test
+    public void loadMissingOrInvalidFile() throws IOException {
+        assertEquals(0, DumpPatternIndex.load(mFile).size());
+        File invalid = mTmp.newFile("invalid.bin");
+        try (OutputStream out = new FileOutputStream(invalid)) {
+            out.write(new byte[] {'M', 'C', 'P', 'I', 0, 0, 0, 1, 0});
+        }
+        DumpPatternIndex index = DumpPatternIndex.load(invalid);
+        assertEquals(0, index.size());
+        assertEquals(0, index.getBlockCount());
+    }
+
+    private DumpPatternIndex createIndex() {
+        DumpPatternIndex index = new DumpPatternIndex(mFile);
+        index.put("a.mct", 1, MTIME, TagImage.fromDump(DUMP_A));
+        index.put("b.mct", 2, MTIME, TagImage.fromDump(DUMP_B));
+        return index;
+    }
+
+    /**
+     * Create an image with unique data blocks (see
+     * {@link #toBlock(int, int, int)}) and the same trailer in all
+     * sectors. Block 1 of sector 0 is {@link #DATA}.
+     */
+    private static TagImage createImage(int dump, int sectorCount) {
+        List<String> lines = new ArrayList<>();
+        for (int sector = 0; sector < sectorCount; sector++) {
+            lines.add("+Sector: " + sector);
+            int blocks = TagImage.getBlockCountInSector(sector);
+            for (int block = 0; block < blocks - 1; block++) {
+                lines.add((sector == 0 && block == 1) ? DATA
+                        : toBlock(dump, sector, block));
+            }
+            lines.add(TRAILER);
+        }
+        return TagImage.fromDump(lines.toArray(new String[0]));
+    }
+
+    private static String toBlock(int dump, int sector, int block) {
+        int id = (dump << 16) | (sector << 8) | block;
+        return String.format(Locale.ROOT, "%08X%08X%08X%08X",
+                id, ~id, id, ~id);
+    }
+
+    private static void assertSearch(DumpPatternIndex index, String pattern,
+            String... fileNames) {
+        DumpPatternIndex.Pattern p = DumpPatternIndex.Pattern.parse(pattern);
+        assertNotNull(pattern, p);
+        List<String> expected = new ArrayList<>(Arrays.asList(fileNames));
+        Collections.sort(expected);
+        assertEquals(pattern, expected, index.searchFiles(p));
+    }
+}
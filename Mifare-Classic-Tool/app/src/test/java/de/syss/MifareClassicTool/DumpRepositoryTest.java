@@ -0,0 +1,326 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.nfc.tech.MifareClassic;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Unit tests for {@link DumpRepository}.
+ * @author agent
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DumpRepositoryTest {
+
+    // Some time in the past (full seconds, like most file systems).
+    private static final long MTIME = 1672531200000L;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private static final String DATA = "00112233445566778899AABBCCDDEEFF";
+    private static final String TRAILER = "A0A1A2A3A4A5FF078069B0B1B2B3B4B5";
+    // Block 0 of a tag with a 4 byte UID (valid BCC).
+    private static final String BLOCK_0 = "01020304040804000000000000000000";
+    // Block 0 of a tag with a 7 byte UID.
+    private static final String BLOCK_0_7 = "04112233445566000000000000000000";
+
+    @Rule
+    public TemporaryFolder mTmp = new TemporaryFolder();
+
+    private File mDir;
+    private File mIndexFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = mTmp.newFolder("dumps");
+        mIndexFile = new File(mTmp.getRoot(), "index/dump-index.bin");
+    }
+
+    @Test
+    public void syncNewFiles() throws IOException {
+        createDump("a.mct", MTIME, BLOCK_0, 0, 1);
+        createDump("b.mct", MTIME + 1000, BLOCK_0_7, 0, 1, 2, 3, 4, 5);
+        createFile("notes.txt", MTIME, "Not a dump.");
+        DumpRepository repo = new DumpRepository(mIndexFile, mDir);
+        assertEquals(3, repo.sync());
+        assertEquals(3, repo.size());
+
+        DumpRepository.Entry a = repo.get("a.mct");
+        assertNotNull(a);
+        assertTrue(a.isValidDump());
+        assertEquals(MTIME, a.getTimestamp());
+        assertEquals(new File(mDir, "a.mct").length(), a.getLength());
+        assertEquals(2, a.getSectorCount());
+        assertEquals(0x3, a.getSectors());
+        assertTrue(a.hasSector(1));
+        assertFalse(a.hasSector(2));
+        assertEquals(MifareClassic.SIZE_MINI, a.getSize());
+        assertEquals("01020304", a.getUid());
+
+        DumpRepository.Entry b = repo.get("b.mct");
+        assertEquals("04112233445566", b.getUid());
+        assertEquals(MifareClassic.SIZE_1K, b.getSize());
+
+        // Files that are not dumps are indexed, too.
+        DumpRepository.Entry notes = repo.get("notes.txt");
+        assertNotNull(notes);
+        assertFalse(notes.isValidDump());
+        assertEquals(0, notes.getSize());
+        assertNull(notes.getUid());
+
+        // Nothing changed.
+        assertEquals(0, repo.sync());
+    }
+
+    @Test
+    public void syncChangedFile() throws IOException {
+        File file = createDump("a.mct", MTIME, BLOCK_0, 0, 1);
+        createDump("b.mct", MTIME, BLOCK_0, 0);
+        DumpRepository repo = new DumpRepository(mIndexFile, mDir);
+        assertEquals(2, repo.sync());
+        DumpRepository.Entry old = repo.get("a.mct");
+
+        // Different size (same modification time).
+        createDump("a.mct", MTIME, BLOCK_0_7, 0, 1, 2);
+        assertEquals(1, repo.sync());
+        DumpRepository.Entry e = repo.get("a.mct");
+        assertEquals("04112233445566", e.getUid());
+        assertEquals(3, e.getSectorCount());
+        assertTrue(repo.findByUid("01020304").contains(repo.get("b.mct")));
+        assertFalse(repo.findByUid("01020304").contains(old));
+        assertEquals(1, repo.findByUid("04112233445566").size());
+
+        // Different modification time (same size).
+        createDump("a.mct", MTIME + 2000, BLOCK_0, 0, 1, 2);
+        assertEquals(file.length(), e.getLength());
+        assertEquals(1, repo.sync());
+        assertEquals("01020304", repo.get("a.mct").getUid());
+        assertTrue(repo.findByUid("04112233445566").isEmpty());
+        assertEquals(2, repo.findByUid("01020304").size());
+        assertEquals(0, repo.sync());
+    }
+
+    @Test
+    public void syncFileReplacedByOlderVersion() throws IOException {
+        createDump("a.mct", MTIME + 2000, BLOCK_0, 0, 1);
+        DumpRepository repo = new DumpRepository(mIndexFile, mDir);
+        assertEquals(1, repo.sync());
+        // E.g. restored from a backup.
+        createDump("a.mct", MTIME, BLOCK_0_7, 0, 1);
+        assertEquals(1, repo.sync());
+        assertEquals("04112233445566", repo.get("a.mct").getUid());
+        assertEquals(MTIME, repo.get("a.mct").getTimestamp());
+        assertEquals(0, repo.sync());
+    }
+
+    @Test
+    public void syncDeletedFile() throws IOException {
+        File file = createDump("a.mct", MTIME, BLOCK_0, 0, 1);
+        createDump("b.mct", MTIME, BLOCK_0_7, 0, 1);
+        DumpRepository repo = new DumpRepository(mIndexFile, mDir);
+        assertEquals(2, repo.sync());
+        long hash = repo.get("a.mct").getHash();
+        assertTrue(file.delete());
+        assertEquals(1, repo.sync());
+        assertEquals(1, repo.size());
+        assertNull(repo.get("a.mct"));
+        assertTrue(repo.findByUid("01020304").isEmpty());
+        assertTrue(repo.findByHash(hash).isEmpty());
+        assertNotNull(repo.get("b.mct"));
+
+        // The files of a listing.
+        assertEquals(1, repo.sync(new File[0]));
+        assertEquals(0, repo.size());
+    }
+
+    @Test
+    public void update() throws IOException {
+        DumpRepository repo = new DumpRepository(mIndexFile, mDir);
+        File file = createDump("a.mct", MTIME, BLOCK_0, 0, 1);
+        DumpRepository.Entry e = repo.update(file);
+        assertNotNull(e);
+        assertEquals("01020304", e.getUid());
+        assertEquals(e, repo.get("a.mct"));
+
+        // Saved again.
+        createDump("a.mct", MTIME + 2000, BLOCK_0_7, 0, 1);
+        assertEquals("04112233445566", repo.update(file).getUid());
+        assertEquals(1, repo.size());
+        assertEquals(0, repo.sync());
+
+        // Deleted.
+        assertTrue(file.delete());
+        assertNull(repo.update(file));
+        assertEquals(0, repo.size());
+
+        // Files outside the dump directory are ignored.
+        File outside = mTmp.newFile("outside.mct");
+        assertNull(repo.update(outside));
+        assertNull(repo.update(null));
+        assertEquals(0, repo.size());
+    }
+
+    @Test
+    public void findByHash() throws IOException {
+        // Same content, different files.
+        createDump("a.mct", MTIME, BLOCK_0, 0, 1);
+        createDump("b.mct", MTIME + 1000, BLOCK_0, 0, 1);
+        createDump("c.mct", MTIME, BLOCK_0, 0, 1, 2);
+        DumpRepository repo = new DumpRepository(mIndexFile, mDir);
+        repo.sync();
+        long hash = repo.get("a.mct").getHash();
+        assertEquals(hash, repo.get("b.mct").getHash());
+        List<DumpRepository.Entry> found = repo.findByHash(hash);
+        assertEquals(Arrays.asList("a.mct", "b.mct"), toFileNames(found));
+        assertEquals(1, repo.findByHash(repo.get("c.mct").getHash()).size());
+    }
+
+    @Test
+    public void tagsAndSearch() throws IOException {
+        long now = MTIME + 10 * DAY;
+        createDump("old.mct", MTIME, BLOCK_0, 0, 1);
+        createDump("new.mct", now - DAY, BLOCK_0, 0, 1, 2, 3, 4, 5);
+        File big = createDump("big.mct", now - DAY, BLOCK_0_7, 0, 32);
+        DumpRepository repo = new DumpRepository(mIndexFile, mDir);
+        repo.sync();
+        assertEquals(MifareClassic.SIZE_4K, repo.get("big.mct").getSize());
+
+        assertTrue(repo.setTags(big, Arrays.asList(" Office ", "", "Door")));
+        assertArrayEquals(new String[] {"Office", "Door"},
+                repo.get("big.mct").getTags());
+        assertTrue(repo.get("big.mct").hasTag("door"));
+        assertEquals(1, repo.findByTag("OFFICE").size());
+        assertFalse(repo.setTags(new File(mDir, "missing.mct"),
+                Collections.singletonList("Tag")));
+
+        assertEquals(Arrays.asList("old.mct", "new.mct"),
+                toFileNames(repo.search("01020304", now)));
+        assertEquals(Collections.singletonList("new.mct"),
+                toFileNames(repo.search("01020304, 7d", now)));
+        assertEquals(Collections.singletonList("new.mct"),
+                toFileNames(repo.search("1k", now)));
+        assertEquals(Collections.singletonList("big.mct"),
+                toFileNames(repo.search("door, 4k", now)));
+        assertTrue(repo.search("door, 1k", now).isEmpty());
+        String hash = String.format(Locale.ROOT, "%016x",
+                repo.get("old.mct").getHash());
+        assertEquals(Collections.singletonList("old.mct"),
+                toFileNames(repo.search(hash, now)));
+        assertTrue(repo.search("CAFEBABE", now).isEmpty());
+
+        // Tags are kept if the file changes.
+        createDump("big.mct", now, BLOCK_0_7, 0, 33);
+        assertEquals(1, repo.sync());
+        assertTrue(repo.get("big.mct").hasTag("Office"));
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        createDump("a.mct", MTIME, BLOCK_0, 0, 1);
+        File b = createDump("b.mct", MTIME, BLOCK_0_7, 0, 1, 2);
+        createFile("notes.txt", MTIME, "Not a dump.");
+        DumpRepository repo = new DumpRepository(mIndexFile, mDir);
+        repo.sync();
+        repo.setTags(b, Collections.singletonList("Tag"));
+        assertTrue(repo.save());
+        assertTrue(mIndexFile.exists());
+
+        DumpRepository loaded = DumpRepository.load(mIndexFile, mDir);
+        assertEquals(3, loaded.size());
+        // Nothing has to be parsed again.
+        assertEquals(0, loaded.sync());
+        DumpRepository.Entry e = loaded.get("b.mct");
+        assertEquals("04112233445566", e.getUid());
+        assertEquals(repo.get("b.mct").getHash(), e.getHash());
+        assertEquals(0x7, e.getSectors());
+        assertArrayEquals(new String[] {"Tag"}, e.getTags());
+        assertFalse(loaded.get("notes.txt").isValidDump());
+        assertEquals(1, loaded.findByUid("01020304").size());
+    }
+
+    @Test
+    public void loadMissingOrInvalidFile() throws IOException {
+        assertEquals(0, DumpRepository.load(mIndexFile, mDir).size());
+        File invalid = mTmp.newFile("invalid.bin");
+        try (OutputStream out = new FileOutputStream(invalid)) {
+            out.write(new byte[] {1, 2, 3, 4, 5});
+        }
+        assertEquals(0, DumpRepository.load(invalid, mDir).size());
+    }
+
+    /**
+     * Create a dump file with the given sectors. Sector 0 starts with
+     * block0, all other blocks are data blocks or trailers.
+     */
+    private File createDump(String name, long lastModified, String block0,
+            int... sectors) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int sector : sectors) {
+            lines.add("+Sector: " + sector);
+            int blocks = TagImage.getBlockCountInSector(sector);
+            for (int i = 0; i < blocks - 1; i++) {
+                lines.add((sector == 0 && i == 0) ? block0 : DATA);
+            }
+            lines.add(TRAILER);
+        }
+        return createFile(name, lastModified, String.join("\n", lines));
+    }
+
+    private File createFile(String name, long lastModified, String content)
+            throws IOException {
+        File file = new File(mDir, name);
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.US_ASCII));
+        }
+        assertTrue(file.setLastModified(lastModified));
+        return file;
+    }
+
+    private static List<String> toFileNames(
+            List<DumpRepository.Entry> entries) {
+        List<String> names = new ArrayList<>();
+        for (DumpRepository.Entry e : entries) {
+            names.add(e.getFileName());
+        }
+        return names;
+    }
+}
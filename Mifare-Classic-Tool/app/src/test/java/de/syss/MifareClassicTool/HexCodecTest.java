@@ -0,0 +1,137 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link HexCodec}.
+ * @author agent
+ */
+public class HexCodecTest {
+
+    @Test
+    public void encodeAndDecodeAllBytes() {
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        String hex = HexCodec.encode(bytes);
+        assertEquals(512, hex.length());
+        assertEquals("00010203", hex.substring(0, 8));
+        assertEquals("FCFDFEFF", hex.substring(504));
+        assertArrayEquals(bytes, HexCodec.decode(hex));
+    }
+
+    @Test
+    public void decodeLowerCase() {
+        assertArrayEquals(new byte[] {(byte) 0xAB, (byte) 0xCD, 0x0F},
+                HexCodec.decode("abCd0f"));
+    }
+
+    @Test
+    public void decodeInvalid() {
+        assertNull(HexCodec.decode(null));
+        assertNull(HexCodec.decode(""));
+        assertNull(HexCodec.decode("ABC"));
+        assertNull(HexCodec.decode("ABCG"));
+        assertNull(HexCodec.decode("AB C"));
+        assertNull(HexCodec.decode("--"));
+    }
+
+    @Test
+    public void isHex() {
+        assertTrue(HexCodec.isHex("00FFaa"));
+        assertFalse(HexCodec.isHex("0FF"));
+        assertTrue(HexCodec.isHexDigits("0FF"));
+        assertFalse(HexCodec.isHexDigits(""));
+        assertFalse(HexCodec.isHex(MCReader.NO_DATA));
+        assertTrue(HexCodec.isHexOrUnknown(MCReader.NO_DATA));
+        assertTrue(HexCodec.isHexOrUnknown("00--FF"));
+        assertFalse(HexCodec.isHexOrUnknown("00--FX"));
+        assertEquals(-1, HexCodec.digit('\u00C4'));
+        assertEquals(10, HexCodec.digit('a'));
+        assertEquals(15, HexCodec.digit('F'));
+    }
+
+    @Test
+    public void encodePart() {
+        byte[] bytes = {0x01, 0x02, 0x03, 0x04};
+        assertEquals("0203", HexCodec.encode(bytes, 1, 2));
+        StringBuilder sb = new StringBuilder("X");
+        HexCodec.append(sb, bytes, 2, 2);
+        HexCodec.append(sb, 0xA5);
+        assertEquals("X0304A5", sb.toString());
+    }
+
+    @Test
+    public void toAscii() {
+        assertEquals("MCT.~..", HexCodec.toAscii("4D43541F7E7F80"));
+        assertNull(HexCodec.toAscii("4D4"));
+    }
+
+    @Test
+    public void toAndFromBinary() {
+        assertEquals("000000011111111010100101",
+                HexCodec.toBinary("01FEa5"));
+        // Leading zero bytes are kept.
+        assertEquals("0001FEA5", HexCodec.fromBinary(
+                "00000000000000011111111010100101"));
+        assertNull(HexCodec.toBinary("XY"));
+        assertNull(HexCodec.fromBinary("0101"));
+        assertNull(HexCodec.fromBinary("0101010A"));
+        assertNull(HexCodec.fromBinary(""));
+    }
+
+    @Test
+    public void toDecimal() {
+        assertEquals("0", HexCodec.toDecimal("00"));
+        assertEquals("255", HexCodec.toDecimal("FF"));
+        assertEquals("72057594037927935",
+                HexCodec.toDecimal("00FFFFFFFFFFFFFF"));
+        assertEquals("340282366920938463463374607431768211455",
+                HexCodec.toDecimal("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF"));
+        assertEquals("1000000000", HexCodec.toDecimal("00000000003B9ACA00"));
+        assertNull(HexCodec.toDecimal("F"));
+    }
+
+    @Test
+    public void toDecimalMatchesBigInteger() {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            byte[] bytes = new byte[1 + random.nextInt(32)];
+            random.nextBytes(bytes);
+            if (random.nextBoolean()) {
+                bytes[0] = 0;
+            }
+            String hex = HexCodec.encode(bytes);
+            assertEquals(hex, new BigInteger(1, bytes).toString(),
+                    HexCodec.toDecimal(hex));
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link KeyCandidateList}.
+ * @author agent
+ */
+public class KeyCandidateListTest {
+
+    @Rule
+    public TemporaryFolder mTmp = new TemporaryFolder();
+
+    private int mKeyFiles = 0;
+
+    @Test
+    public void toLong() {
+        assertEquals(0xA0A1A2A3A4A5L, KeyCandidateList.toLong("A0A1A2A3A4A5"));
+        assertEquals(0xFFFFFFFFFFFFL, KeyCandidateList.toLong(
+                Common.hex2Bytes(MCReader.DEFAULT_KEY)));
+    }
+
+    @Test
+    public void addAndFind() {
+        KeyCandidateList list = new KeyCandidateList(2);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(list.add(i * 0x010101L));
+        }
+        // Duplicates are not added.
+        assertFalse(list.add(0x010101L));
+        assertEquals(100, list.size());
+        assertEquals(42, list.find(42 * 0x010101L));
+        assertEquals(-1, list.find(0x123456L));
+        byte[] key = new byte[6];
+        list.getKey(1, key);
+        assertArrayEquals(Common.hex2Bytes("000000010101"), key);
+    }
+
+    @Test
+    public void moveToFront() {
+        KeyCandidateList list = createList(5);
+        assertOrder(list, 0, 1, 2, 3, 4);
+        list.moveToFront(3);
+        assertOrder(list, 3, 0, 1, 2, 4);
+        list.moveToFront(4);
+        assertOrder(list, 4, 3, 0, 1, 2);
+        // Move a key that was moved before.
+        list.moveToFront(3);
+        assertOrder(list, 3, 4, 0, 1, 2);
+        // The first key stays where it is.
+        list.moveToFront(3);
+        assertOrder(list, 3, 4, 0, 1, 2);
+        assertEquals(3, list.find(3));
+    }
+
+    @Test
+    public void moveToSecond() {
+        KeyCandidateList list = createList(5);
+        list.moveToSecond(2);
+        assertOrder(list, 0, 2, 1, 3, 4);
+        list.moveToSecond(4);
+        assertOrder(list, 0, 4, 2, 1, 3);
+        list.moveToSecond(0);
+        assertOrder(list, 0, 4, 2, 1, 3);
+        list.moveToFront(1);
+        list.moveToSecond(3);
+        assertOrder(list, 1, 3, 0, 4, 2);
+    }
+
+    @Test
+    public void moveManyKeys() {
+        // More moved keys than the initial slot capacity.
+        KeyCandidateList list = createList(100);
+        for (int node = 0; node < 100; node += 2) {
+            list.moveToFront(node);
+        }
+        int[] expected = new int[100];
+        for (int i = 0; i < 50; i++) {
+            expected[i] = 98 - 2 * i;
+            expected[50 + i] = 2 * i + 1;
+        }
+        assertOrder(list, expected);
+    }
+
+    @Test
+    public void copy() {
+        KeyCandidateList list = createList(4);
+        list.moveToFront(2);
+        KeyCandidateList copy = list.copy();
+        copy.moveToFront(3);
+        assertOrder(list, 2, 0, 1, 3);
+        assertOrder(copy, 3, 2, 0, 1);
+        assertTrue(copy.hasSameKeys(list));
+        copy.add(0x123456L);
+        assertOrder(list, 2, 0, 1, 3);
+        assertFalse(copy.hasSameKeys(list));
+    }
+
+    @Test
+    public void dictionary() throws IOException {
+        KeyDictionary dict = createDictionary("A0A1A2A3A4A5",
+                "FFFFFFFFFFFF", "B0B1B2B3B4B5", "a0a1a2a3a4a5", "000000000000");
+        KeyCandidateList list = new KeyCandidateList(dict);
+        assertEquals(4, list.size());
+        assertEquals(0, list.find(0xA0A1A2A3A4A5L));
+        assertEquals(3, list.find(0));
+        assertEquals(-1, list.find(0x123456L));
+        assertEquals(0xB0B1B2B3B4B5L, list.getKey(2));
+
+        list.moveToFront(2);
+        list.moveToSecond(3);
+        assertOrder(list, 2, 3, 0, 1);
+        // The nodes do not change when the keys are reordered.
+        assertEquals(2, list.find(0xB0B1B2B3B4B5L));
+
+        // Copies share the dictionary (and its hash table).
+        KeyCandidateList copy = list.copy();
+        copy.moveToFront(1);
+        assertOrder(list, 2, 3, 0, 1);
+        assertOrder(copy, 1, 2, 3, 0);
+        assertEquals(1, copy.find(0xFFFFFFFFFFFFL));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void dictionaryIsReadOnly() throws IOException {
+        new KeyCandidateList(createDictionary("A0A1A2A3A4A5")).add(1);
+    }
+
+    @Test
+    public void hasSameKeys() throws IOException {
+        KeyDictionary dict = createDictionary("A0A1A2A3A4A5",
+                "B0B1B2B3B4B5");
+        KeyCandidateList fromDict = new KeyCandidateList(dict);
+        KeyCandidateList list = new KeyCandidateList(2);
+        list.add(0xB0B1B2B3B4B5L);
+        list.add(0xA0A1A2A3A4A5L);
+        // The order does not matter.
+        assertTrue(list.hasSameKeys(fromDict));
+        assertTrue(fromDict.hasSameKeys(list));
+        assertTrue(fromDict.hasSameKeys(new KeyCandidateList(dict)));
+        list.add(0xC0C1C2C3C4C5L);
+        assertFalse(fromDict.hasSameKeys(list));
+    }
+
+    /**
+     * Create a list with the keys 0 to count - 1 (key = node).
+     */
+    private static KeyCandidateList createList(int count) {
+        KeyCandidateList list = new KeyCandidateList(count);
+        for (int i = 0; i < count; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    private KeyDictionary createDictionary(String... keys)
+            throws IOException {
+        File keyFile = mTmp.newFile("keys-" + mKeyFiles++ + ".keys");
+        try (OutputStream out = new FileOutputStream(keyFile)) {
+            out.write(String.join("\n", keys).getBytes(
+                    StandardCharsets.US_ASCII));
+        }
+        return KeyDictionary.get(new File[] {keyFile},
+                new File(mTmp.getRoot(), "dicts"));
+    }
+
+    private static void assertOrder(KeyCandidateList list, int... nodes) {
+        List<Integer> order = new ArrayList<>();
+        for (int node = list.first(); node != -1; node = list.next(node)) {
+            order.add(node);
+        }
+        int[] actual = new int[order.size()];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = order.get(i);
+        }
+        assertArrayEquals(nodes, actual);
+    }
+}
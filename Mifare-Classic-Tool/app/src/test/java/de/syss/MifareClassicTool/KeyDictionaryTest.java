@@ -0,0 +1,177 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unit tests for {@link KeyDictionary}.
+ * @author agent
+ */
+public class KeyDictionaryTest {
+
+    // Some time in the past (full seconds, like most file systems).
+    private static final long MTIME = 1672531200000L;
+
+    @Rule
+    public TemporaryFolder mTmp = new TemporaryFolder();
+
+    private File mDictDir;
+
+    @Before
+    public void setUp() {
+        mDictDir = new File(mTmp.getRoot(), "dicts");
+    }
+
+    @Test
+    public void compileAndLoad() throws IOException {
+        File keys1 = createKeyFile("keys1.keys",
+                "# Comment\nA0A1A2A3A4A5\n\nffffffffffff # Default\nB0B1");
+        File keys2 = createKeyFile("keys2.keys",
+                "FFFFFFFFFFFF\n000000000000\na0a1a2a3a4a5");
+        KeyDictionary dict = KeyDictionary.get(new File[] {keys1, keys2},
+                mDictDir);
+        // Duplicates and invalid lines are removed (first appearance).
+        assertEquals(3, dict.size());
+        assertEquals(0xA0A1A2A3A4A5L, dict.getKey(0));
+        assertEquals("FFFFFFFFFFFF", dict.getKeyHex(1));
+        byte[] key = new byte[6];
+        dict.getKey(2, key);
+        assertArrayEquals(new byte[6], key);
+        assertEquals(1, listCompiled().length);
+    }
+
+    @Test
+    public void reuseCompiled() throws IOException {
+        File keys = createKeyFile("keys.keys", "A0A1A2A3A4A5");
+        File[] sources = {keys};
+        KeyDictionary dict = KeyDictionary.get(sources, mDictDir);
+        File compiled = listCompiled()[0];
+        long compiledLength = compiled.length();
+        assertNotNull(KeyDictionary.load(compiled, sources));
+        assertTrue(dict.hasSameKeys(KeyDictionary.get(sources, mDictDir)));
+        assertEquals(compiledLength, listCompiled()[0].length());
+        // Other key files (or another order) get their own dictionary.
+        File other = createKeyFile("other.keys", "B0B1B2B3B4B5");
+        KeyDictionary otherDict = KeyDictionary.get(
+                new File[] {other, keys}, mDictDir);
+        assertEquals(2, otherDict.size());
+        assertFalse(dict.hasSameKeys(otherDict));
+        assertEquals(2, listCompiled().length);
+        assertNull(KeyDictionary.load(compiled, new File[] {keys, other}));
+    }
+
+    @Test
+    public void invalidateOnSizeChange() throws IOException {
+        File keys = createKeyFile("keys.keys", "A0A1A2A3A4A5");
+        File[] sources = {keys};
+        KeyDictionary.get(sources, mDictDir);
+        File compiled = listCompiled()[0];
+
+        // Same modification time, different size.
+        writeFile(keys, "A0A1A2A3A4A5\nB0B1B2B3B4B5");
+        assertTrue(keys.setLastModified(MTIME));
+        assertNull(KeyDictionary.load(compiled, sources));
+        KeyDictionary dict = KeyDictionary.get(sources, mDictDir);
+        assertEquals(2, dict.size());
+        assertNotNull(KeyDictionary.load(compiled, sources));
+    }
+
+    @Test
+    public void invalidateOnModificationTimeChange() throws IOException {
+        File keys = createKeyFile("keys.keys", "A0A1A2A3A4A5");
+        File[] sources = {keys};
+        KeyDictionary.get(sources, mDictDir);
+        File compiled = listCompiled()[0];
+
+        // Same size, different modification time.
+        writeFile(keys, "B0B1B2B3B4B5");
+        assertTrue(keys.setLastModified(MTIME + 2000));
+        assertNull(KeyDictionary.load(compiled, sources));
+        KeyDictionary dict = KeyDictionary.get(sources, mDictDir);
+        assertEquals(1, dict.size());
+        assertEquals(0xB0B1B2B3B4B5L, dict.getKey(0));
+    }
+
+    @Test
+    public void loadInvalidFile() throws IOException {
+        File keys = createKeyFile("keys.keys", "A0A1A2A3A4A5\nB0B1B2B3B4B5");
+        KeyDictionary.get(new File[] {keys}, mDictDir);
+        File compiled = listCompiled()[0];
+        assertNotNull(KeyDictionary.load(compiled, null));
+
+        // Truncated key data.
+        try (RandomAccessFile raf = new RandomAccessFile(compiled, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        assertNull(KeyDictionary.load(compiled, null));
+        // Not a dictionary.
+        File garbage = createKeyFile("garbage" + KeyDictionary.FILE_EXTENSION,
+                "A0A1A2A3A4A5");
+        assertNull(KeyDictionary.load(garbage, null));
+
+        // The broken dictionary is compiled again.
+        assertEquals(2, KeyDictionary.get(new File[] {keys}, mDictDir).size());
+    }
+
+    @Test
+    public void emptyKeyFile() throws IOException {
+        File keys = createKeyFile("empty.keys", "# No keys.");
+        KeyDictionary dict = KeyDictionary.get(new File[] {keys}, mDictDir);
+        assertEquals(0, dict.size());
+    }
+
+    private File createKeyFile(String name, String content)
+            throws IOException {
+        File file = mTmp.newFile(name);
+        writeFile(file, content);
+        assertTrue(file.setLastModified(MTIME));
+        return file;
+    }
+
+    private static void writeFile(File file, String content)
+            throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private File[] listCompiled() {
+        File[] files = mDictDir.listFiles(
+                (dir, name) -> name.endsWith(KeyDictionary.FILE_EXTENSION));
+        return (files != null) ? files : new File[0];
+    }
+}
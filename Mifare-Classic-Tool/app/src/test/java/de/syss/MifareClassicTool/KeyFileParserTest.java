@@ -0,0 +1,165 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unit tests for {@link KeyFileParser}.
+ * @author agent
+ */
+public class KeyFileParserTest {
+
+    @Test
+    public void parseKeysWithCommentsAndWhitespaces() {
+        KeyFileParser parser = new KeyFileParser(false);
+        parser.parse("# Comment\n"
+                + "FFFFFFFFFFFF\n"
+                + "  a0a1a2a3a4a5  # Key with comment\n"
+                + "\n"
+                + "\tD3F7D3F7D3F7\t\n"
+                + "000000000000");
+        parser.endOfFile();
+        assertEquals(0, parser.getError());
+        assertEquals(0, parser.getErrorLine());
+        assertEquals(4, parser.getKeyCount());
+        assertEquals(4, parser.size());
+        assertEquals(0xFFFFFFFFFFFFL, parser.getKey(0));
+        assertEquals(0xA0A1A2A3A4A5L, parser.getKey(1));
+        assertEquals(0xD3F7D3F7D3F7L, parser.getKey(2));
+        assertEquals(0L, parser.getKey(3));
+        byte[] key = new byte[8];
+        parser.getKey(1, key, 1);
+        assertArrayEquals(new byte[] {0, (byte) 0xA0, (byte) 0xA1,
+                (byte) 0xA2, (byte) 0xA3, (byte) 0xA4, (byte) 0xA5, 0}, key);
+    }
+
+    @Test
+    public void parseLineBreaks() {
+        KeyFileParser parser = new KeyFileParser(false);
+        parser.parse("111111111111\r\n222222222222\r333333333333\n");
+        parser.endOfFile();
+        assertEquals(0, parser.getError());
+        assertEquals(3, parser.size());
+        assertEquals(0x333333333333L, parser.getKey(2));
+    }
+
+    @Test
+    public void parseChunks() throws IOException {
+        // Keys and line breaks split across chunks.
+        byte[] data = "FFFFFF".getBytes(StandardCharsets.US_ASCII);
+        KeyFileParser parser = new KeyFileParser(false);
+        parser.parse(data, 0, data.length);
+        parser.parse("FFFFFF\r");
+        parser.parse("\nA0A1A2A3A4A5");
+        parser.endOfFile();
+        assertEquals(0, parser.getError());
+        assertEquals(2, parser.size());
+        assertEquals(0xFFFFFFFFFFFFL, parser.getKey(0));
+
+        parser = new KeyFileParser(false);
+        parser.parse(new ByteArrayInputStream(
+                "A0A1A2A3A4A5\nB0B1B2B3B4B5".getBytes(
+                        StandardCharsets.US_ASCII)));
+        assertEquals(2, parser.size());
+        assertEquals(0xB0B1B2B3B4B5L, parser.getKey(1));
+    }
+
+    @Test
+    public void removeDuplicates() {
+        KeyFileParser parser = new KeyFileParser(true);
+        parser.parse("FFFFFFFFFFFF\nffffffffffff\nA0A1A2A3A4A5\n");
+        assertEquals(3, parser.getKeyCount());
+        assertEquals(2, parser.size());
+        // Duplicates of dropped keys are still removed.
+        parser.clearKeys();
+        parser.parse("A0A1A2A3A4A5\nB0B1B2B3B4B5\n");
+        assertEquals(5, parser.getKeyCount());
+        assertEquals(1, parser.size());
+        assertEquals(0xB0B1B2B3B4B5L, parser.getKey(0));
+
+        // Many keys (rehashing).
+        parser = new KeyFileParser(true);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append(String.format("%012X\n", i % 3000));
+        }
+        parser.parse(sb);
+        assertEquals(5000, parser.getKeyCount());
+        assertEquals(3000, parser.size());
+
+        parser = new KeyFileParser(false);
+        parser.parse("FFFFFFFFFFFF\nFFFFFFFFFFFF\n");
+        assertEquals(2, parser.size());
+    }
+
+    @Test
+    public void noKey() {
+        KeyFileParser parser = new KeyFileParser(false);
+        parser.parse("# Only a comment\n\n   \n");
+        parser.endOfFile();
+        assertEquals(1, parser.getError());
+        assertEquals(0, parser.getErrorLine());
+    }
+
+    @Test
+    public void invalidChars() {
+        KeyFileParser parser = new KeyFileParser(false);
+        parser.parse("FFFFFFFFFFFF\nFFFFFFFFFFFG\nFFFF\nA0A1A2A3A4A5");
+        parser.endOfFile();
+        // The first error is reported, valid lines are still parsed.
+        assertEquals(2, parser.getError());
+        assertEquals(2, parser.getErrorLine());
+        assertEquals(2, parser.size());
+
+        // Whitespaces are only allowed around the key.
+        parser = new KeyFileParser(false);
+        parser.parseLine("FFFFFF FFFFFF");
+        assertEquals(2, parser.getError());
+        assertEquals(1, parser.getErrorLine());
+    }
+
+    @Test
+    public void invalidLength() {
+        KeyFileParser parser = new KeyFileParser(false);
+        parser.parseLine("# Comment");
+        parser.parseLine("FFFFFFFFFFFF");
+        parser.parseLine("FFFFFFFFFFFFFF");
+        parser.parseLine("FFFFFFFFFFFG");
+        assertEquals(3, parser.getError());
+        assertEquals(3, parser.getErrorLine());
+        assertEquals(1, parser.size());
+    }
+
+    @Test
+    public void matchesValidKeyFile() {
+        assertEquals(0, Common.isValidKeyFile(
+                new String[] {"# Keys", "FFFFFFFFFFFF"}));
+        assertEquals(1, Common.isValidKeyFile(new String[] {"# Keys"}));
+        assertEquals(2, Common.isValidKeyFile(new String[] {"FFFFFFFFFFFX"}));
+        assertEquals(3, Common.isValidKeyFile(new String[] {"FFFFFFFFFFF"}));
+    }
+}
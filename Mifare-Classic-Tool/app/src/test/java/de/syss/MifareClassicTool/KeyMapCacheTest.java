@@ -0,0 +1,184 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.nfc.tech.MifareClassic;
+import android.util.SparseArray;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Unit tests for {@link KeyMapCache}.
+ * @author agent
+ */
+@RunWith(RobolectricTestRunner.class)
+public class KeyMapCacheTest {
+
+    private static final String UID = "01020304";
+    private static final String UID_7 = "04112233445566";
+    private static final byte[] KEY_A = Common.hex2Bytes("A0A1A2A3A4A5");
+    private static final byte[] KEY_B = Common.hex2Bytes("B0B1B2B3B4B5");
+
+    @Rule
+    public TemporaryFolder mTmp = new TemporaryFolder();
+
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mFile = new File(mTmp.getRoot(), "cache/key-map-cache.bin");
+    }
+
+    @Test
+    public void putAndGet() {
+        KeyMapCache cache = new KeyMapCache(mFile);
+        SparseArray<byte[][]> keyMap = createKeyMap();
+        cache.put(UID, MifareClassic.SIZE_1K, 0, 15, keyMap);
+        // The key map is copied.
+        keyMap.remove(0);
+
+        KeyMapCache.Entry e = cache.get(UID, MifareClassic.SIZE_1K);
+        assertNotNull(e);
+        assertEquals(MifareClassic.SIZE_1K, e.getSize());
+        assertEquals(0, e.getFirstSector());
+        assertEquals(15, e.getLastSector());
+        assertKeyMap(e.getKeyMap());
+        e.getKeyMap().remove(0);
+        assertKeyMap(e.getKeyMap());
+
+        // Other size or unknown UID.
+        assertNull(cache.get(UID, MifareClassic.SIZE_4K));
+        assertNull(cache.get(UID_7, MifareClassic.SIZE_1K));
+        assertNull(cache.get(null, MifareClassic.SIZE_1K));
+
+        cache.remove(UID);
+        assertNull(cache.get(UID, MifareClassic.SIZE_1K));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void saveAndLoad() {
+        KeyMapCache cache = new KeyMapCache(mFile);
+        cache.put(UID, MifareClassic.SIZE_1K, 0, 15, createKeyMap());
+        SparseArray<byte[][]> keyMap4k = new SparseArray<>();
+        keyMap4k.put(39, new byte[][] {null, KEY_B});
+        cache.put(UID_7, MifareClassic.SIZE_4K, 32, 39, keyMap4k);
+        assertTrue(cache.save());
+        assertTrue(mFile.exists());
+
+        KeyMapCache loaded = KeyMapCache.load(mFile);
+        assertEquals(2, loaded.size());
+        KeyMapCache.Entry e = loaded.get(UID, MifareClassic.SIZE_1K);
+        assertNotNull(e);
+        assertEquals(15, e.getLastSector());
+        assertKeyMap(e.getKeyMap());
+        e = loaded.get(UID_7, MifareClassic.SIZE_4K);
+        assertNotNull(e);
+        assertEquals(32, e.getFirstSector());
+        assertEquals(39, e.getLastSector());
+        assertEquals(1, e.getKeyMap().size());
+        assertNull(e.getKeyMap().get(39)[0]);
+        assertArrayEquals(KEY_B, e.getKeyMap().get(39)[1]);
+    }
+
+    @Test
+    public void saveOnlyIfModified() {
+        KeyMapCache cache = new KeyMapCache(mFile);
+        assertTrue(cache.save());
+        assertFalse(mFile.exists());
+        cache.put(UID, MifareClassic.SIZE_1K, 0, 15, createKeyMap());
+        assertTrue(cache.save());
+        assertTrue(mFile.delete());
+        assertTrue(cache.save());
+        assertFalse(mFile.exists());
+        // A lookup changes the LRU order.
+        assertNotNull(cache.get(UID, MifareClassic.SIZE_1K));
+        assertTrue(cache.save());
+        assertTrue(mFile.exists());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsDropped() {
+        KeyMapCache cache = new KeyMapCache(mFile);
+        for (int i = 0; i < KeyMapCache.MAX_ENTRIES; i++) {
+            cache.put(toUid(i), MifareClassic.SIZE_1K, 0, 15,
+                    createKeyMap());
+        }
+        // Use the oldest entry, so the second one is the least recently
+        // used one.
+        assertNotNull(cache.get(toUid(0), MifareClassic.SIZE_1K));
+        cache.put(UID_7, MifareClassic.SIZE_1K, 0, 15, createKeyMap());
+        assertEquals(KeyMapCache.MAX_ENTRIES, cache.size());
+        assertNull(cache.get(toUid(1), MifareClassic.SIZE_1K));
+
+        // The LRU order is saved.
+        assertTrue(cache.save());
+        KeyMapCache loaded = KeyMapCache.load(mFile);
+        loaded.put(UID, MifareClassic.SIZE_1K, 0, 15, createKeyMap());
+        assertNull(loaded.get(toUid(2), MifareClassic.SIZE_1K));
+        assertNotNull(loaded.get(toUid(0), MifareClassic.SIZE_1K));
+    }
+
+    @Test
+    public void loadMissingOrInvalidFile() throws IOException {
+        assertEquals(0, KeyMapCache.load(mFile).size());
+        File invalid = mTmp.newFile("invalid.bin");
+        try (OutputStream out = new FileOutputStream(invalid)) {
+            out.write(new byte[] {'M', 'C', 'K', 'C', 0, 0, 0, 1, 0, 0});
+        }
+        assertEquals(0, KeyMapCache.load(invalid).size());
+    }
+
+    private static SparseArray<byte[][]> createKeyMap() {
+        SparseArray<byte[][]> keyMap = new SparseArray<>();
+        keyMap.put(0, new byte[][] {KEY_A, KEY_B});
+        keyMap.put(5, new byte[][] {KEY_A, null});
+        return keyMap;
+    }
+
+    private static void assertKeyMap(SparseArray<byte[][]> keyMap) {
+        assertEquals(2, keyMap.size());
+        assertArrayEquals(KEY_A, keyMap.get(0)[0]);
+        assertArrayEquals(KEY_B, keyMap.get(0)[1]);
+        assertArrayEquals(KEY_A, keyMap.get(5)[0]);
+        assertNull(keyMap.get(5)[1]);
+    }
+
+    private static String toUid(int i) {
+        return String.format(Locale.ROOT, "%08X", i);
+    }
+}
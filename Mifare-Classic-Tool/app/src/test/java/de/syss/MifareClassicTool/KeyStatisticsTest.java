@@ -0,0 +1,178 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Unit tests for {@link KeyStatistics}.
+ * @author agent
+ */
+@RunWith(RobolectricTestRunner.class)
+public class KeyStatisticsTest {
+
+    private static final String[] KEYS = {
+            "A0A1A2A3A4A5", "B0B1B2B3B4B5", "C0C1C2C3C4C5",
+            "D0D1D2D3D4D5", "E0E1E2E3E4E5" };
+
+    @Rule
+    public TemporaryFolder mTmp = new TemporaryFolder();
+
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mFile = new File(mTmp.getRoot(), "stats/key-stats.bin");
+    }
+
+    @Test
+    public void sortByScore() {
+        KeyStatistics stats = new KeyStatistics(mFile);
+        stats.recordHit(KEYS[1], false);
+        stats.recordHit(KEYS[1], false);
+        stats.recordHit(KEYS[2], false);
+        // Case insensitive.
+        stats.recordHit(KEYS[3].toLowerCase(Locale.ROOT), true);
+        stats.recordHit(KEYS[3], true);
+        stats.recordHit(KEYS[0], true);
+        assertEquals(4, stats.size());
+
+        KeyCandidateList keysA = createList();
+        stats.sort(keysA, false);
+        // Keys without a score keep their order.
+        assertOrder(keysA, 1, 2, 0, 3, 4);
+        KeyCandidateList keysB = createList();
+        stats.sort(keysB, true);
+        assertOrder(keysB, 3, 0, 1, 2, 4);
+    }
+
+    @Test
+    public void scoresDecay() {
+        long now = System.currentTimeMillis();
+        KeyStatistics stats = new KeyStatistics(mFile);
+        // 3 hits two half-lives ago (score 0.75).
+        for (int i = 0; i < 3; i++) {
+            stats.recordHit(KEYS[0], false,
+                    now - 2 * KeyStatistics.HALF_LIFE);
+        }
+        // 1 hit now (score 1).
+        stats.recordHit(KEYS[1], false, now);
+        // 3 hits one half-life ago (score 1.5).
+        for (int i = 0; i < 3; i++) {
+            stats.recordHit(KEYS[2], false, now - KeyStatistics.HALF_LIFE);
+        }
+        KeyCandidateList keys = createList();
+        stats.sort(keys, false);
+        assertOrder(keys, 2, 1, 0, 3, 4);
+    }
+
+    @Test
+    public void saveAndLoad() {
+        KeyStatistics stats = new KeyStatistics(mFile);
+        stats.recordHit(KEYS[4], false);
+        stats.recordHit(KEYS[4], false);
+        stats.recordHit(KEYS[2], false);
+        stats.recordHit(KEYS[2], true);
+        assertTrue(stats.save());
+        assertTrue(mFile.exists());
+
+        KeyStatistics loaded = KeyStatistics.load(mFile);
+        assertEquals(2, loaded.size());
+        KeyCandidateList keysA = createList();
+        loaded.sort(keysA, false);
+        assertOrder(keysA, 4, 2, 0, 1, 3);
+        KeyCandidateList keysB = createList();
+        loaded.sort(keysB, true);
+        assertOrder(keysB, 2, 0, 1, 3, 4);
+    }
+
+    @Test
+    public void saveOnlyIfModified() {
+        KeyStatistics stats = new KeyStatistics(mFile);
+        assertTrue(stats.save());
+        assertFalse(mFile.exists());
+        stats.recordHit(KEYS[0], false);
+        assertTrue(stats.save());
+        assertTrue(mFile.delete());
+        assertTrue(stats.save());
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void dropLowestScores() {
+        long now = System.currentTimeMillis();
+        KeyStatistics stats = new KeyStatistics(mFile);
+        for (int i = 0; i < KeyStatistics.MAX_ENTRIES + 10; i++) {
+            stats.recordHit(String.format(Locale.ROOT, "%012X", i), false,
+                    now - KeyStatistics.HALF_LIFE);
+        }
+        stats.recordHit(KEYS[0], false, now);
+        assertTrue(stats.save());
+        assertEquals(KeyStatistics.MAX_ENTRIES, stats.size());
+        KeyStatistics loaded = KeyStatistics.load(mFile);
+        assertEquals(KeyStatistics.MAX_ENTRIES, loaded.size());
+        // The key with the highest score was kept.
+        KeyCandidateList keys = createList();
+        loaded.sort(keys, false);
+        assertEquals(0, keys.first());
+    }
+
+    @Test
+    public void loadMissingOrInvalidFile() throws IOException {
+        assertEquals(0, KeyStatistics.load(mFile).size());
+        File invalid = mTmp.newFile("invalid.bin");
+        try (OutputStream out = new FileOutputStream(invalid)) {
+            out.write(new byte[] {'M', 'C', 'K', 'S', 0, 0});
+        }
+        assertEquals(0, KeyStatistics.load(invalid).size());
+    }
+
+    private static KeyCandidateList createList() {
+        KeyCandidateList list = new KeyCandidateList(KEYS.length);
+        for (String key : KEYS) {
+            list.add(KeyCandidateList.toLong(key));
+        }
+        return list;
+    }
+
+    private static void assertOrder(KeyCandidateList list, int... nodes) {
+        int[] actual = new int[list.size()];
+        int i = 0;
+        for (int node = list.first(); node != -1; node = list.next(node)) {
+            actual[i++] = node;
+        }
+        assertArrayEquals(nodes, actual);
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.nfc.TagLostException;
+import android.nfc.tech.MifareClassic;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link MCSimulatedCard}.
+ * @author agent
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MCSimulatedCardTest {
+
+    private static final byte[] DEFAULT_KEY =
+            Common.hex2Bytes(MCReader.DEFAULT_KEY);
+    private static final byte[] KEY_A = Common.hex2Bytes("A0A1A2A3A4A5");
+    private static final byte[] KEY_B = Common.hex2Bytes("B0B1B2B3B4B5");
+    private static final byte[] DATA =
+            Common.hex2Bytes("00112233445566778899AABBCCDDEEFF");
+    /**
+     * Transport configuration: Data blocks with key A or B,
+     * sector trailer 011 (key B is not readable).
+     */
+    private static final byte[] TRANSPORT_AC = Common.hex2Bytes("7F0788");
+
+    private MCSimulatedCard mCard;
+
+    @Before
+    public void setUp() throws IOException {
+        mCard = new MCSimulatedCard(MifareClassic.SIZE_1K);
+        mCard.connect();
+    }
+
+    @Test
+    public void geometry() {
+        assertEquals(16, mCard.getSectorCount());
+        assertEquals(64, mCard.getBlockCount());
+        MCSimulatedCard card4k = new MCSimulatedCard(MifareClassic.SIZE_4K);
+        assertEquals(40, card4k.getSectorCount());
+        assertEquals(256, card4k.getBlockCount());
+        assertEquals(16, card4k.getBlockCountInSector(32));
+        assertEquals(144, card4k.sectorToBlock(33));
+        assertEquals(5, new MCSimulatedCard(
+                MifareClassic.SIZE_MINI).getSectorCount());
+    }
+
+    @Test
+    public void factoryDefault() {
+        assertArrayEquals(Common.hex2Bytes("01020304"), mCard.getUid());
+        assertArrayEquals(Common.hex2Bytes("01020304040804000000000000000000"),
+                mCard.getBlock(0));
+        assertArrayEquals(Common.hex2Bytes("FFFFFFFFFFFFFF078069FFFFFFFFFFFF"),
+                mCard.getBlock(63));
+    }
+
+    @Test
+    public void authenticate() throws IOException {
+        assertTrue(mCard.authenticateSectorWithKeyA(0, DEFAULT_KEY));
+        assertFalse(mCard.authenticateSectorWithKeyA(0, KEY_A));
+        assertTrue(mCard.authenticateSectorWithKeyB(0, DEFAULT_KEY));
+        mCard.setSectorKeys(1, KEY_A, KEY_B);
+        assertFalse(mCard.authenticateSectorWithKeyA(1, KEY_B));
+        assertTrue(mCard.authenticateSectorWithKeyA(1, KEY_A));
+        assertTrue(mCard.authenticateSectorWithKeyB(1, KEY_B));
+        assertEquals(6, mCard.getAuthCount());
+    }
+
+    @Test
+    public void failedAuthenticationResetsState() throws IOException {
+        assertTrue(mCard.authenticateSectorWithKeyA(0, DEFAULT_KEY));
+        mCard.readBlock(1);
+        assertFalse(mCard.authenticateSectorWithKeyA(0, KEY_A));
+        assertDenied(() -> mCard.readBlock(1));
+    }
+
+    @Test
+    public void readWithoutAuthentication() throws IOException {
+        assertDenied(() -> mCard.readBlock(1));
+        assertTrue(mCard.authenticateSectorWithKeyA(0, DEFAULT_KEY));
+        // Authenticated to another sector.
+        assertDenied(() -> mCard.readBlock(4));
+    }
+
+    @Test
+    public void readSectorTrailer() throws IOException {
+        mCard.setSectorKeys(1, KEY_A, KEY_B);
+        assertTrue(mCard.authenticateSectorWithKeyA(1, KEY_A));
+        // Key A is never readable, key B is readable (FF0780).
+        assertArrayEquals(Common.hex2Bytes("000000000000FF078069B0B1B2B3B4B5"),
+                mCard.readBlock(7));
+
+        mCard.setAccessConditions(1, TRANSPORT_AC);
+        assertTrue(mCard.authenticateSectorWithKeyB(1, KEY_B));
+        // Key B is not readable (7F0788).
+        assertArrayEquals(Common.hex2Bytes("0000000000007F078869000000000000"),
+                mCard.readBlock(7));
+    }
+
+    @Test
+    public void readableKeyBCanNotBeUsed() throws IOException {
+        assertTrue(mCard.authenticateSectorWithKeyB(1, DEFAULT_KEY));
+        assertDenied(() -> mCard.readBlock(4));
+        assertTrue(mCard.authenticateSectorWithKeyB(1, DEFAULT_KEY));
+        assertDenied(() -> mCard.writeBlock(4, DATA));
+    }
+
+    @Test
+    public void writeDataBlock() throws IOException {
+        assertTrue(mCard.authenticateSectorWithKeyA(1, DEFAULT_KEY));
+        mCard.writeBlock(5, DATA);
+        assertArrayEquals(DATA, mCard.readBlock(5));
+        assertArrayEquals(DATA, mCard.getBlock(5));
+    }
+
+    @Test
+    public void writeDeniedByAccessConditions() throws IOException {
+        // Block 0: 100 (read A|B, write B). Trailer: 011.
+        // (C1 of block 0, C2 and C3 of the sector trailer.)
+        int index = (1 << 0) | (1 << 7) | (1 << 11);
+        byte[] ac = AccessConditions.toACBytes(index);
+        assertEquals(0b100, AccessConditions.getACBits(index, 0));
+        assertEquals(0b011, AccessConditions.getACBits(
+                index, AccessConditions.SECTOR_TRAILER));
+        mCard.setSectorKeys(2, KEY_A, KEY_B);
+        mCard.setAccessConditions(2, ac);
+
+        assertTrue(mCard.authenticateSectorWithKeyA(2, KEY_A));
+        mCard.readBlock(8);
+        assertDenied(() -> mCard.writeBlock(8, DATA));
+        assertTrue(mCard.authenticateSectorWithKeyB(2, KEY_B));
+        mCard.writeBlock(8, DATA);
+        assertArrayEquals(DATA, mCard.getBlock(8));
+    }
+
+    @Test
+    public void writeBlock0() throws IOException {
+        assertTrue(mCard.authenticateSectorWithKeyA(0, DEFAULT_KEY));
+        assertDenied(() -> mCard.writeBlock(0, DATA));
+        mCard.setBlock0Writable(true);
+        assertTrue(mCard.authenticateSectorWithKeyA(0, DEFAULT_KEY));
+        mCard.writeBlock(0, DATA);
+        assertArrayEquals(DATA, mCard.getBlock(0));
+    }
+
+    @Test
+    public void writeSectorTrailer() throws IOException {
+        byte[] trailer = Common.hex2Bytes("A0A1A2A3A4A57F078869B0B1B2B3B4B5");
+        assertTrue(mCard.authenticateSectorWithKeyA(3, DEFAULT_KEY));
+        mCard.writeBlock(15, trailer);
+        assertArrayEquals(trailer, mCard.getBlock(15));
+        assertFalse(mCard.authenticateSectorWithKeyA(3, DEFAULT_KEY));
+        assertTrue(mCard.authenticateSectorWithKeyA(3, KEY_A));
+        // 011: The trailer can only be written with key B.
+        assertDenied(() -> mCard.writeBlock(15, trailer));
+    }
+
+    @Test
+    public void writeSectorTrailerPartially() throws IOException {
+        // Trailer 100 (C1 of the sector trailer): Keys can be written
+        // with key B, the Access Conditions can not be written.
+        int index = 1 << 3;
+        mCard.setSectorKeys(3, KEY_A, KEY_B);
+        mCard.setAccessConditions(3, AccessConditions.toACBytes(index));
+        byte[] before = mCard.getBlock(15);
+        byte[] trailer = Common.hex2Bytes("111111111111FF078069222222222222");
+        assertTrue(mCard.authenticateSectorWithKeyB(3, KEY_B));
+        mCard.writeBlock(15, trailer);
+        byte[] after = mCard.getBlock(15);
+        assertArrayEquals(Common.hex2Bytes("111111111111"),
+                Arrays.copyOfRange(after, 0, 6));
+        assertArrayEquals(Arrays.copyOfRange(before, 6, 10),
+                Arrays.copyOfRange(after, 6, 10));
+        assertArrayEquals(Common.hex2Bytes("222222222222"),
+                Arrays.copyOfRange(after, 10, 16));
+    }
+
+    @Test
+    public void invalidAccessConditionsLockSector() throws IOException {
+        mCard.setAccessConditions(4, Common.hex2Bytes("FF0781"));
+        assertTrue(mCard.authenticateSectorWithKeyA(4, DEFAULT_KEY));
+        assertDenied(() -> mCard.readBlock(16));
+        assertTrue(mCard.authenticateSectorWithKeyA(4, DEFAULT_KEY));
+        assertDenied(() -> mCard.writeBlock(19, mCard.getBlock(19)));
+    }
+
+    @Test
+    public void valueBlock() throws IOException {
+        // Value 10 at address 5.
+        byte[] value = Common.hex2Bytes("0A000000F5FFFFFF0A00000005FA05FA");
+        mCard.setBlock(5, value);
+        assertTrue(mCard.authenticateSectorWithKeyA(1, DEFAULT_KEY));
+        mCard.increment(5, 5);
+        mCard.transfer(5);
+        assertArrayEquals(Common.hex2Bytes("0F000000F0FFFFFF0F00000005FA05FA"),
+                mCard.getBlock(5));
+        mCard.decrement(5, 15);
+        mCard.transfer(6);
+        assertArrayEquals(Common.hex2Bytes("00000000FFFFFFFF0000000005FA05FA"),
+                mCard.getBlock(6));
+        // Not a Value Block.
+        assertDenied(() -> mCard.increment(4, 1));
+    }
+
+    @Test
+    public void outOfRange() throws IOException {
+        mCard.setInRange(false);
+        try {
+            mCard.authenticateSectorWithKeyA(0, DEFAULT_KEY);
+            fail();
+        } catch (TagLostException e) {
+            // Expected.
+        }
+        assertFalse(mCard.isConnected());
+        try {
+            mCard.connect();
+            fail();
+        } catch (TagLostException e) {
+            // Expected.
+        }
+        mCard.setInRange(true);
+        mCard.connect();
+        assertTrue(mCard.authenticateSectorWithKeyA(0, DEFAULT_KEY));
+    }
+
+    @Test
+    public void notConnected() {
+        mCard.close();
+        assertDenied(() -> mCard.authenticateSectorWithKeyA(0, DEFAULT_KEY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSize() {
+        new MCSimulatedCard(123);
+    }
+
+    private interface CardOperation {
+        void run() throws IOException;
+    }
+
+    private static void assertDenied(CardOperation op) {
+        try {
+            op.run();
+            fail("Operation was not denied.");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TagImage}.
+ * @author agent
+ */
+public class TagImageTest {
+
+    private static final String DATA = "00112233445566778899AABBCCDDEEFF";
+    private static final String TRAILER = "A0A1A2A3A4A5FF078069B0B1B2B3B4B5";
+    private static final String[] DUMP = {
+            "+Sector: 0",
+            "01020304040804000000000000000000",
+            DATA,
+            MCReader.NO_DATA,
+            TRAILER,
+            "+Sector: 1",
+            "*No keys found or dead sector",
+            "+Sector: 2",
+            DATA,
+            DATA,
+            DATA,
+            "------------FF078069B0B1B2B3B4B5" };
+
+    @Test
+    public void geometry() {
+        assertEquals(4, TagImage.getBlockCountInSector(0));
+        assertEquals(4, TagImage.getBlockCountInSector(31));
+        assertEquals(16, TagImage.getBlockCountInSector(32));
+        assertEquals(0, TagImage.sectorToBlock(0));
+        assertEquals(124, TagImage.sectorToBlock(31));
+        assertEquals(128, TagImage.sectorToBlock(32));
+        assertEquals(240, TagImage.sectorToBlock(39));
+        assertTrue(TagImage.isTrailer(0, 3));
+        assertFalse(TagImage.isTrailer(32, 3));
+        assertTrue(TagImage.isTrailer(32, 15));
+        assertEquals(256 * TagImage.BLOCK_SIZE,
+                new TagImage(40).getData().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManySectors() {
+        new TagImage(41);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noSectors() {
+        new TagImage(0);
+    }
+
+    @Test
+    public void dumpRoundTrip() {
+        TagImage image = TagImage.fromDump(DUMP);
+        assertEquals(3, image.getSectorCount());
+        assertEquals(2, image.getSectorsInImage());
+        assertEquals(0b101L, image.getSectors());
+        assertArrayEquals(DUMP, image.toDump(0, 2));
+    }
+
+    @Test
+    public void unknownDataAndKeys() {
+        TagImage image = TagImage.fromDump(DUMP);
+        assertTrue(image.isBlockValid(0, 1));
+        assertFalse(image.isBlockValid(0, 2));
+        assertFalse(image.isBlockComplete(2, 3));
+        assertTrue(image.isBlockComplete(0, 3));
+        assertNull(image.getBlock(0, 2));
+        assertArrayEquals(Common.hex2Bytes(DATA), image.getBlock(0, 1));
+        assertTrue(image.isKeyKnown(0, false));
+        assertTrue(image.isKeyKnown(0, true));
+        assertFalse(image.isKeyKnown(2, false));
+        assertTrue(image.isKeyKnown(2, true));
+
+        image.clearKey(0, true);
+        assertEquals("A0A1A2A3A4A5FF078069------------",
+                image.getBlockHex(0, 3));
+        image.setKey(2, false, Common.hex2Bytes("A0A1A2A3A4A5"), 0);
+        assertEquals("A0A1A2A3A4A5FF078069B0B1B2B3B4B5",
+                image.getBlockHex(2, 3));
+    }
+
+    @Test
+    public void setAndRemoveSector() {
+        TagImage image = new TagImage(16);
+        assertNull(image.getSectorHex(5));
+        String[] blocks = {DATA, MCReader.NO_DATA, DATA, TRAILER};
+        image.setSectorHex(5, blocks);
+        assertTrue(image.hasSector(5));
+        assertArrayEquals(blocks, image.getSectorHex(5));
+        image.removeSector(5);
+        assertFalse(image.hasSector(5));
+        assertFalse(image.isBlockValid(5, 0));
+        assertFalse(image.isKeyKnown(5, false));
+        assertEquals(0, image.getSectorsInImage());
+    }
+
+    @Test
+    public void blockDiff() {
+        TagImage image1 = TagImage.fromDump(DUMP);
+        TagImage image2 = TagImage.fromDump(DUMP);
+        assertEquals(0, image1.getBlockDiff(image2, 0, 1));
+        assertTrue(image1.blockEquals(image2, 0, 1));
+
+        // Hex char 1 (low nibble of byte 0) and 31 (low nibble of byte 15).
+        image2.setBlock(0, 1,
+                Common.hex2Bytes("01112233445566778899AABBCCDDEEFE"), 0);
+        assertEquals((1L << 1) | (1L << 31),
+                image1.getBlockDiff(image2, 0, 1));
+        assertFalse(image1.blockEquals(image2, 0, 1));
+
+        // Known and unknown data always differ.
+        assertEquals(0xFFFFFFFFL, image1.getBlockDiff(
+                TagImage.fromDump(new String[] {"+Sector: 0"}), 0, 1));
+        // Unknown key A (chars 0-11) against known key A.
+        assertEquals(0xFFFL, image1.getBlockDiff(
+                TagImage.fromDump(new String[] {"+Sector: 0",
+                        DATA, DATA, DATA,
+                        "------------FF078069B0B1B2B3B4B5"}), 0, 3));
+    }
+
+    @Test
+    public void mergeSectorKeyATakesPrecedence() {
+        byte[] keyA = Common.hex2Bytes("A0A1A2A3A4A5");
+        byte[] keyB = Common.hex2Bytes("B0B1B2B3B4B5");
+        byte[] readWithA = Common.hex2Bytes("11111111111111111111111111111111"
+                + "22222222222222222222222222222222"
+                + "33333333333333333333333333333333"
+                + "000000000000FF078069B0B1B2B3B4B5");
+        byte[] readWithB = Common.hex2Bytes("AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA"
+                + "BBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBB"
+                + "CCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCC"
+                + "0000000000007F078869000000000000");
+        // Key A could not read block 1.
+        int validWithA = 0b1101;
+        int validWithB = 0b1111;
+
+        TagImage first = new TagImage(1);
+        first.mergeSector(0, readWithA, validWithA, keyA, false, true);
+        first.mergeSector(0, readWithB, validWithB, keyB, true, false);
+        TagImage second = new TagImage(1);
+        second.mergeSector(0, readWithB, validWithB, keyB, true, false);
+        second.mergeSector(0, readWithA, validWithA, keyA, false, true);
+
+        String[] expected = {
+                "11111111111111111111111111111111",
+                "BBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBB",
+                "33333333333333333333333333333333",
+                "A0A1A2A3A4A5FF078069B0B1B2B3B4B5" };
+        assertArrayEquals(expected, first.getSectorHex(0));
+        assertArrayEquals(expected, second.getSectorHex(0));
+    }
+
+    @Test
+    public void addMissingAndCopySectors() {
+        TagImage image = TagImage.fromDump(DUMP);
+        TagImage other = new TagImage(3);
+        other.setSectorHex(1, new String[] {DATA, DATA, DATA, TRAILER});
+        other.setSectorHex(2, new String[] {DATA, DATA, DATA, TRAILER});
+        image.addMissingSectors(other);
+        assertTrue(image.hasSector(1));
+        // Sector 2 was already part of the image.
+        assertEquals("------------FF078069B0B1B2B3B4B5",
+                image.getBlockHex(2, 3));
+        image.copySector(other, 2);
+        assertEquals(TRAILER, image.getBlockHex(2, 3));
+        image.copySector(new TagImage(3), 0);
+        assertFalse(image.hasSector(0));
+    }
+
+    @Test
+    public void contentHash() {
+        TagImage image1 = TagImage.fromDump(DUMP);
+        // Same content, different formatting.
+        String[] lowerCase = new String[DUMP.length];
+        for (int i = 0; i < DUMP.length; i++) {
+            lowerCase[i] = DUMP[i].startsWith("+")
+                    ? DUMP[i] : DUMP[i].toLowerCase();
+        }
+        TagImage image2 = TagImage.fromDump(lowerCase);
+        assertEquals(image1.getContentHash(), image2.getContentHash());
+        assertEquals(image1.getContentHash(), image1.copy().getContentHash());
+
+        image2.setBlock(2, 0, Common.hex2Bytes(MCReader.DEFAULT_KEY
+                + MCReader.DEFAULT_KEY + "00000000"), 0);
+        assertNotEquals(image1.getContentHash(), image2.getContentHash());
+        image2 = TagImage.fromDump(DUMP);
+        image2.clearKey(2, true);
+        assertNotEquals(image1.getContentHash(), image2.getContentHash());
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Unit tests for {@link UidLog}.
+ * @author agent
+ */
+@RunWith(RobolectricTestRunner.class)
+public class UidLogTest {
+
+    // 2023-01-31 13:37:00 (local time, full seconds).
+    private static final long START = new GregorianCalendar(
+            2023, 0, 31, 13, 37, 0).getTimeInMillis();
+
+    @Rule
+    public TemporaryFolder mTmp = new TemporaryFolder();
+
+    private File mDir;
+
+    @Before
+    public void setUp() {
+        mDir = new File(mTmp.getRoot(), "uid-log");
+    }
+
+    @Test
+    public void logAndPage() {
+        UidLog log = new UidLog(mDir, null);
+        log.log("04A1B2C3", START);
+        log.log("04D4E5F6", START + 1000);
+        log.log("04A1B2C3", START + 2000);
+        assertEquals(3, log.size());
+
+        List<UidLog.Entry> page = log.getEntries(0, 2);
+        assertEquals(2, page.size());
+        assertEquals(START + 2000, page.get(0).getTime());
+        assertEquals("04D4E5F6", page.get(1).getUid());
+        page = log.getEntries(2, 10);
+        assertEquals(1, page.size());
+        assertEquals(START, page.get(0).getTime());
+        assertTrue(log.getEntries(3, 10).isEmpty());
+        assertEquals(0, log.getDroppedCount());
+    }
+
+    @Test
+    public void format() {
+        UidLog log = new UidLog(mDir, null);
+        assertEquals("2023-01-31_13-37-05: 04A1B2C3",
+                log.format(START + 5000, "04A1B2C3"));
+    }
+
+    @Test
+    public void queryByUidAndTime() {
+        UidLog log = new UidLog(mDir, null);
+        for (int i = 0; i < 10; i++) {
+            log.log((i % 2 == 0) ? "04A1B2C3" : "04D4E5F6", START + i * 1000);
+        }
+        // Case insensitive, newest first.
+        List<UidLog.Entry> result = log.query("04a1b2c3", 0, Long.MAX_VALUE,
+                100);
+        assertEquals(5, result.size());
+        assertEquals(START + 8000, result.get(0).getTime());
+        // Time range (end exclusive) and limit.
+        result = log.query(null, START + 2000, START + 5000, 100);
+        assertEquals(3, result.size());
+        assertEquals(START + 4000, result.get(0).getTime());
+        assertEquals(2, log.query(null, START, START + 10000, 2).size());
+        assertTrue(log.query("CAFEBABE", 0, Long.MAX_VALUE, 100).isEmpty());
+    }
+
+    @Test
+    public void segmentRotation() {
+        UidLog log = new UidLog(mDir, null);
+        // One line has 30 bytes ("yyyy-MM-dd_HH-mm-ss: " + 8 + "\n").
+        int perSegment = (UidLog.SEGMENT_SIZE + 29) / 30;
+        int count = 2 * perSegment + 100;
+        logSequence(log, count);
+        assertEquals(count, log.size());
+        assertEquals(3, getSegmentFiles().length);
+        for (File segment : getSegmentFiles()) {
+            assertTrue(segment.length() < UidLog.SEGMENT_SIZE + 30);
+        }
+
+        // A page across the segment border.
+        List<UidLog.Entry> page = log.getEntries(count - perSegment - 1, 2);
+        assertEquals(2, page.size());
+        assertEquals(START + perSegment * 1000L, page.get(0).getTime());
+        assertEquals(START + (perSegment - 1) * 1000L, page.get(1).getTime());
+
+        // UIDs of the first and the last segment.
+        assertUid(log, 0);
+        assertUid(log, count - 1);
+        assertTrue(log.query("FFFFFFFF", 0, Long.MAX_VALUE, 1).isEmpty());
+    }
+
+    @Test
+    public void reopen() {
+        UidLog log = new UidLog(mDir, null);
+        int count = (UidLog.SEGMENT_SIZE / 30) + 500;
+        logSequence(log, count);
+        // Entries of the newest segment are not in the saved index.
+        log.log("04A1B2C3", START + count * 1000L);
+        log.flush();
+
+        UidLog reopened = new UidLog(mDir, null);
+        assertEquals(count + 1, reopened.size());
+        assertUid(reopened, 0);
+        assertUid(reopened, count - 1);
+        assertEquals(1, reopened.query("04A1B2C3", 0, Long.MAX_VALUE, 10)
+                .size());
+        assertTrue(new File(mDir, "uid-log-index.bin").exists());
+    }
+
+    @Test
+    public void migrateLegacyFile() throws IOException {
+        File legacy = mTmp.newFile("uid-log.txt");
+        // The old log file does not end with a new line.
+        try (OutputStream out = new FileOutputStream(legacy)) {
+            out.write(("2023-01-31_13-37-00: 04A1B2C3\n"
+                    + "2023-01-31_13-37-01: 04D4E5F6")
+                    .getBytes(StandardCharsets.US_ASCII));
+        }
+        UidLog log = new UidLog(mDir, legacy);
+        log.log("04A1B2C3", START + 2000);
+        assertEquals(3, log.size());
+        assertFalse(legacy.exists());
+        List<UidLog.Entry> entries = log.getEntries(0, 10);
+        assertEquals("04D4E5F6", entries.get(1).getUid());
+        assertEquals(START, entries.get(2).getTime());
+    }
+
+    @Test
+    public void clear() {
+        UidLog log = new UidLog(mDir, null);
+        logSequence(log, 10);
+        log.clear();
+        assertEquals(0, log.size());
+        assertEquals(0, getSegmentFiles().length);
+        log.log("04A1B2C3", START);
+        assertEquals(1, log.size());
+    }
+
+    /**
+     * Log entries with the UIDs 00000000, 00000001, ... (one per second).
+     * The log is flushed regularly, so no entry is dropped.
+     */
+    private static void logSequence(UidLog log, int count) {
+        for (int i = 0; i < count; i++) {
+            log.log(toUid(i), START + i * 1000L);
+            if (i % (UidLog.BUFFER_SIZE / 2) == 0) {
+                log.flush();
+            }
+        }
+        log.flush();
+        assertEquals(0, log.getDroppedCount());
+    }
+
+    private static void assertUid(UidLog log, int i) {
+        List<UidLog.Entry> result = log.query(toUid(i), 0, Long.MAX_VALUE,
+                10);
+        assertEquals(1, result.size());
+        assertEquals(START + i * 1000L, result.get(0).getTime());
+    }
+
+    private static String toUid(int i) {
+        return String.format(Locale.ROOT, "%08X", i);
+    }
+
+    private File[] getSegmentFiles() {
+        File[] files = mDir.listFiles((dir, name) -> name.endsWith(".txt"));
+        return (files != null) ? files : new File[0];
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.nfc.tech.MifareClassic;
+import android.util.SparseArray;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Unit tests for {@link WritePlan}. The order matters: If the sector
+ * trailer (new keys or Access Conditions) is written before the other
+ * blocks of its sector, the remaining blocks can not be written anymore.
+ * @author agent
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WritePlanTest {
+
+    private static final byte[] DEFAULT_KEY =
+            Common.hex2Bytes(MCReader.DEFAULT_KEY);
+    private static final byte[] KEY_A = Common.hex2Bytes("A0A1A2A3A4A5");
+    private static final byte[] KEY_B = Common.hex2Bytes("B0B1B2B3B4B5");
+    private static final byte[] DATA =
+            Common.hex2Bytes("00112233445566778899AABBCCDDEEFF");
+    private static final byte[] NEW_TRAILER =
+            Common.hex2Bytes("A0A1A2A3A4A5FF078069B0B1B2B3B4B5");
+
+    private HashMap<Integer, HashMap<Integer, byte[]>> mData;
+    private HashMap<Integer, HashMap<Integer, Integer>> mWriteOnPos;
+    private SparseArray<byte[][]> mKeyMap;
+
+    @Before
+    public void setUp() {
+        mData = new HashMap<>();
+        mWriteOnPos = new HashMap<>();
+        mKeyMap = new SparseArray<>();
+    }
+
+    @Test
+    public void oneGroupPerSectorAndKey() {
+        // Sector 3: Blocks with key B and key A (added out of order).
+        addBlock(3, 2, DATA, 2);
+        addBlock(3, 0, DATA, 1);
+        addBlock(3, 1, DATA, 5);
+        // Sector 1: All blocks with key A.
+        addBlock(1, 2, DATA, 4);
+        addBlock(1, 0, DATA, 1);
+        addBlock(1, 1, DATA, 1);
+        mKeyMap.put(1, new byte[][] {KEY_A, KEY_B});
+        mKeyMap.put(3, new byte[][] {KEY_A, KEY_B});
+
+        WritePlan plan = WritePlan.create(mData, mWriteOnPos, mKeyMap);
+        assertNotNull(plan);
+        assertEquals(3, plan.getAuthenticationCount());
+        assertEquals(6, plan.getBlockCount());
+        List<WritePlan.Group> groups = plan.getGroups();
+        assertGroup(groups.get(0), 1, false, 0, 1, 2);
+        assertSame(KEY_A, groups.get(0).getKey());
+        assertGroup(groups.get(1), 3, false, 0);
+        assertGroup(groups.get(2), 3, true, 1, 2);
+        assertSame(KEY_B, groups.get(2).getKey());
+        assertSame(DATA, groups.get(2).getData()[0]);
+        assertEquals("Sector 1, key A: blocks 0, 1, 2\n"
+                + "Sector 3, key A: blocks 0\n"
+                + "Sector 3, key B: blocks 1, 2", plan.toString());
+    }
+
+    @Test
+    public void sectorTrailerLast() {
+        // Trailer with key A, data blocks with key B.
+        addBlock(0, 3, NEW_TRAILER, 1);
+        addBlock(0, 1, DATA, 2);
+        addBlock(0, 2, DATA, 1);
+        // Trailer with key B, data blocks with key A.
+        addBlock(1, 3, NEW_TRAILER, 6);
+        addBlock(1, 0, DATA, 1);
+        addBlock(1, 1, DATA, 6);
+        // Only key A.
+        addBlock(2, 3, NEW_TRAILER, 1);
+        addBlock(2, 0, DATA, 1);
+        addBlock(2, 2, DATA, 1);
+        for (int sector = 0; sector < 3; sector++) {
+            mKeyMap.put(sector, new byte[][] {KEY_A, KEY_B});
+        }
+
+        WritePlan plan = WritePlan.create(mData, mWriteOnPos, mKeyMap);
+        assertNotNull(plan);
+        List<WritePlan.Group> groups = plan.getGroups();
+        assertEquals(5, groups.size());
+        assertGroup(groups.get(0), 0, true, 1);
+        assertGroup(groups.get(1), 0, false, 2, 3);
+        assertGroup(groups.get(2), 1, false, 0);
+        assertGroup(groups.get(3), 1, true, 1, 3);
+        assertGroup(groups.get(4), 2, false, 0, 2, 3);
+        assertSame(NEW_TRAILER, groups.get(4).getData()[2]);
+    }
+
+    @Test
+    public void sectorTrailerLast4k() {
+        // 16 block sector: The sector trailer is block 15.
+        for (int block = 15; block >= 0; block -= 3) {
+            addBlock(35, block, DATA, 1);
+        }
+        mKeyMap.put(35, new byte[][] {KEY_A, null});
+        WritePlan plan = WritePlan.create(mData, mWriteOnPos, mKeyMap);
+        assertNotNull(plan);
+        assertEquals(1, plan.getAuthenticationCount());
+        assertGroup(plan.getGroups().get(0), 35, false, 0, 3, 6, 9, 12, 15);
+    }
+
+    @Test
+    public void missingKeyOrData() {
+        addBlock(0, 1, DATA, 2);
+        mKeyMap.put(0, new byte[][] {KEY_A, null});
+        assertNull(WritePlan.create(mData, mWriteOnPos, mKeyMap));
+
+        mKeyMap.clear();
+        assertNull(WritePlan.create(mData, mWriteOnPos, mKeyMap));
+
+        mKeyMap.put(0, new byte[][] {KEY_A, KEY_B});
+        assertNotNull(WritePlan.create(mData, mWriteOnPos, mKeyMap));
+        mWriteOnPos.get(0).put(2, 1);
+        assertNull(WritePlan.create(mData, mWriteOnPos, mKeyMap));
+    }
+
+    @Test
+    public void unfilteredWriteInfo() {
+        // 0 (not writable), 3 (key A or B, not filtered) and -1 (error).
+        for (int writeInfo : new int[] {0, 3, -1}) {
+            setUp();
+            mKeyMap.put(0, new byte[][] {KEY_A, KEY_B});
+            addBlock(0, 1, DATA, writeInfo);
+            assertNull(WritePlan.create(mData, mWriteOnPos, mKeyMap));
+        }
+    }
+
+    @Test
+    public void emptyPlan() {
+        WritePlan plan = WritePlan.create(mData, mWriteOnPos, mKeyMap);
+        assertNotNull(plan);
+        assertEquals(0, plan.getAuthenticationCount());
+        assertEquals(0, plan.getBlockCount());
+        assertEquals("", plan.toString());
+    }
+
+    @Test
+    public void executeChangesKeysLast() throws IOException {
+        RecordingCard card = new RecordingCard();
+        // New keys for sector 1 and 2, written with the default key A.
+        for (int sector = 1; sector <= 2; sector++) {
+            for (int block = 3; block >= 0; block--) {
+                addBlock(sector, block,
+                        (block == 3) ? NEW_TRAILER : DATA, 1);
+            }
+            mKeyMap.put(sector, new byte[][] {DEFAULT_KEY, DEFAULT_KEY});
+        }
+        WritePlan plan = WritePlan.create(mData, mWriteOnPos, mKeyMap);
+        assertNotNull(plan);
+        MCReader reader = MCReader.get(card);
+        assertEquals(0, plan.execute(reader));
+        assertEquals(8, plan.getWrittenCount());
+        assertEquals(2, card.getAuthCount());
+        assertEquals(Arrays.asList(4, 5, 6, 7, 8, 9, 10, 11), card.mWrites);
+        for (int block = 4; block < 12; block++) {
+            assertArrayEquals((block % 4 == 3) ? NEW_TRAILER : DATA,
+                    card.getBlock(block));
+        }
+        assertTrue(card.authenticateSectorWithKeyA(1, KEY_A));
+        assertFalse(card.authenticateSectorWithKeyA(2, DEFAULT_KEY));
+    }
+
+    @Test
+    public void executeDifferentialAndVerify() throws IOException {
+        RecordingCard card = new RecordingCard();
+        card.setBlock(5, DATA);
+        addBlock(1, 0, DATA, 1);
+        addBlock(1, 1, DATA, 1);
+        addBlock(1, 2, DATA, 1);
+        mKeyMap.put(1, new byte[][] {DEFAULT_KEY, null});
+        WritePlan plan = WritePlan.create(mData, mWriteOnPos, mKeyMap);
+        assertNotNull(plan);
+        MCReader reader = MCReader.get(card);
+        assertEquals(0, plan.execute(reader, true, true));
+        assertEquals(2, plan.getWrittenCount());
+        assertEquals(1, plan.getSkippedCount());
+        assertTrue(plan.getVerifyErrors().isEmpty());
+        assertTrue(plan.getUnverified().isEmpty());
+        assertEquals(Arrays.asList(4, 6), card.mWrites);
+
+        // Everything is on the tag now.
+        assertEquals(0, plan.execute(reader, true, false));
+        assertEquals(0, plan.getWrittenCount());
+        assertEquals(3, plan.getSkippedCount());
+    }
+
+    @Test
+    public void executeStopsOnError() throws IOException {
+        RecordingCard card = new RecordingCard();
+        addBlock(0, 1, DATA, 1);
+        addBlock(1, 1, DATA, 1);
+        mKeyMap.put(0, new byte[][] {KEY_A, null});
+        mKeyMap.put(1, new byte[][] {DEFAULT_KEY, null});
+        WritePlan plan = WritePlan.create(mData, mWriteOnPos, mKeyMap);
+        assertNotNull(plan);
+        // Authentication error (sector 0) before sector 1 is written.
+        assertEquals(4, plan.execute(MCReader.get(card)));
+        assertEquals(0, plan.getWrittenCount());
+        assertTrue(card.mWrites.isEmpty());
+    }
+
+    private void addBlock(int sector, int block, byte[] data,
+            int writeInfo) {
+        HashMap<Integer, byte[]> sectorData = mData.get(sector);
+        if (sectorData == null) {
+            sectorData = new HashMap<>();
+            mData.put(sector, sectorData);
+            mWriteOnPos.put(sector, new HashMap<>());
+        }
+        sectorData.put(block, data);
+        mWriteOnPos.get(sector).put(block, writeInfo);
+    }
+
+    private static void assertGroup(WritePlan.Group group, int sector,
+            boolean isKeyB, int... blocks) {
+        assertEquals(sector, group.getSector());
+        assertEquals(isKeyB, group.isKeyB());
+        assertArrayEquals(blocks, group.getBlocks());
+        assertEquals(blocks.length, group.getData().length);
+    }
+
+    /**
+     * A connected 1K card that records the blocks that were written.
+     */
+    private static class RecordingCard extends MCSimulatedCard {
+        private final ArrayList<Integer> mWrites = new ArrayList<>();
+
+        RecordingCard() throws IOException {
+            super(MifareClassic.SIZE_1K);
+            connect();
+        }
+
+        @Override
+        public void writeBlock(int blockIndex, byte[] data)
+                throws IOException {
+            super.writeBlock(blockIndex, data);
+            mWrites.add(blockIndex);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool.benchmark;
+
+import android.util.SparseArray;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+
+import de.syss.MifareClassicTool.Common;
+
+/**
+ * Deterministic test data for the benchmarks: realistic MCT dumps
+ * (manufacturer block, data blocks, value blocks, sector trailers with
+ * different keys and Access Conditions) and the bundled key files.
+ * The same seed always creates the same data, so results are comparable
+ * between runs.
+ * @author agent
+ */
+public final class BenchmarkData {
+
+    /**
+     * Sector count of a MIFARE Classic 1K tag.
+     */
+    public static final int SECTORS_1K = 16;
+    /**
+     * Sector count of a MIFARE Classic 4K tag.
+     */
+    public static final int SECTORS_4K = 40;
+
+    private static final String[] KEYS = {
+            "FFFFFFFFFFFF", "A0A1A2A3A4A5", "D3F7D3F7D3F7", "000000000000",
+            "B0B1B2B3B4B5", "4D3A99C351DD", "1A982C7E459A", "AABBCCDDEEFF" };
+
+    private BenchmarkData() {}
+
+    /**
+     * Get the sector count for a size parameter.
+     * @param size "1K" or "4K".
+     * @return The sector count.
+     */
+    public static int sectorCount(String size) {
+        return "4K".equals(size) ? SECTORS_4K : SECTORS_1K;
+    }
+
+    /**
+     * Create a dump in the MCT format ("+Sector: X" headers followed
+     * by the blocks as hex strings).
+     * @param sectorCount Number of sectors (16 = 1K, 40 = 4K).
+     * @param seed The seed for the random data.
+     * @return The dump lines.
+     */
+    public static String[] createDump(int sectorCount, long seed) {
+        Random rnd = new Random(seed);
+        ArrayList<String> lines = new ArrayList<>();
+        for (int sector = 0; sector < sectorCount; sector++) {
+            lines.add("+Sector: " + sector);
+            int blocks = (sector < 32) ? 4 : 16;
+            for (int block = 0; block < blocks - 1; block++) {
+                byte[] data = new byte[16];
+                if (sector == 0 && block == 0) {
+                    rnd.nextBytes(data);
+                    data[4] = (byte) (data[0] ^ data[1] ^ data[2] ^ data[3]);
+                    data[5] = 0x08;
+                    data[6] = 0x04;
+                    data[7] = 0x00;
+                } else {
+                    int type = rnd.nextInt(10);
+                    if (type < 5) {
+                        // Empty block (most common).
+                        data = new byte[16];
+                    } else if (type < 7) {
+                        createValueBlock(data, rnd.nextInt(100000),
+                                (byte) block);
+                    } else {
+                        rnd.nextBytes(data);
+                    }
+                }
+                lines.add(Common.bytes2Hex(data));
+            }
+            lines.add(createTrailer(rnd));
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    /**
+     * Create a copy of a dump where some of the data blocks differ.
+     * @param dump The dump in MCT format.
+     * @param changeRate Probability (0-1) for each data block to change.
+     * @param seed The seed for the random data.
+     * @return The modified dump.
+     */
+    public static String[] modifyDump(String[] dump, double changeRate,
+            long seed) {
+        Random rnd = new Random(seed);
+        String[] ret = dump.clone();
+        for (int i = 0; i < ret.length; i++) {
+            if (!ret[i].startsWith("+") && rnd.nextDouble() < changeRate) {
+                byte[] data = Common.hex2Bytes(ret[i]);
+                data[rnd.nextInt(16)] ^= (byte) (1 + rnd.nextInt(255));
+                ret[i] = Common.bytes2Hex(data);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Convert a dump in MCT format to the sector representation used
+     * by the dump editor and the diff tool.
+     * @param dump The dump in MCT format.
+     * @return The sectors (key = sector number, value = blocks).
+     */
+    public static SparseArray<String[]> toSectors(String[] dump) {
+        SparseArray<String[]> ret = new SparseArray<>();
+        ArrayList<String> blocks = new ArrayList<>();
+        int sector = -1;
+        for (String line : dump) {
+            if (line.startsWith("+")) {
+                if (sector != -1) {
+                    ret.put(sector, blocks.toArray(new String[0]));
+                }
+                sector = Integer.parseInt(line.split(": ")[1]);
+                blocks.clear();
+            } else {
+                blocks.add(line);
+            }
+        }
+        if (sector != -1) {
+            ret.put(sector, blocks.toArray(new String[0]));
+        }
+        return ret;
+    }
+
+    /**
+     * Convert a dump in MCT format to the .eml format (one block per line).
+     * @param dump The dump in MCT format.
+     * @return The dump in .eml format.
+     */
+    public static String[] toEml(String[] dump) {
+        ArrayList<String> ret = new ArrayList<>();
+        for (String line : dump) {
+            if (!line.startsWith("+")) {
+                ret.add(line);
+            }
+        }
+        return ret.toArray(new String[0]);
+    }
+
+    /**
+     * Read a bundled key file (from the assets of the app) line by line.
+     * @param name File name (e.g. {@link Common#STD_KEYS_EXTENDED}).
+     * @return All lines of the file (incl. comments).
+     */
+    public static String[] readKeyFile(String name) {
+        ArrayList<String> lines = new ArrayList<>();
+        InputStream in = BenchmarkData.class.getResourceAsStream("/" + name);
+        if (in == null) {
+            throw new IllegalStateException("Key file not found: " + name);
+        }
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                lines.add(line);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    /**
+     * Get only the keys (no comments, no empty lines) of a key file.
+     * @param lines The lines of the key file.
+     * @return The keys.
+     */
+    public static ArrayList<String> filterKeys(String[] lines) {
+        ArrayList<String> keys = new ArrayList<>();
+        for (String line : lines) {
+            line = line.split("#")[0].trim();
+            if (line.length() == 12 && line.matches("[0-9A-Fa-f]+")) {
+                keys.add(line);
+            }
+        }
+        return keys;
+    }
+
+    private static void createValueBlock(byte[] data, int value, byte addr) {
+        for (int i = 0; i < 4; i++) {
+            byte b = (byte) (value >>> (8 * i));
+            data[i] = b;
+            data[4 + i] = (byte) (b ^ 0xFF);
+            data[8 + i] = b;
+        }
+        data[12] = addr;
+        data[13] = (byte) (addr ^ 0xFF);
+        data[14] = addr;
+        data[15] = (byte) (addr ^ 0xFF);
+    }
+
+    private static String createTrailer(Random rnd) {
+        byte[][] acMatrix = new byte[3][4];
+        if (rnd.nextInt(3) != 0) {
+            // Transport configuration for most of the sectors.
+            acMatrix[2][3] = 1;
+        } else {
+            for (int i = 0; i < 3; i++) {
+                for (int j = 0; j < 4; j++) {
+                    acMatrix[i][j] = (byte) rnd.nextInt(2);
+                }
+            }
+        }
+        byte[] ac = Common.acMatrixToACBytes(acMatrix);
+        return KEYS[rnd.nextInt(KEYS.length)] + Common.bytes2Hex(ac) + "69"
+                + KEYS[rnd.nextInt(KEYS.length)];
+    }
+}
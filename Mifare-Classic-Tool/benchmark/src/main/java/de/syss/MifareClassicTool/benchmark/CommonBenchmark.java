@@ -0,0 +1,207 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import de.syss.MifareClassicTool.AccessConditions;
+import de.syss.MifareClassicTool.Common;
+import de.syss.MifareClassicTool.Common.Operation;
+import de.syss.MifareClassicTool.HexCodec;
+
+/**
+ * Benchmarks of the per-block and per-key helper functions of
+ * {@link Common} (hex codec, dump/key file validation and
+ * Access Condition handling). Each invocation processes a whole dump
+ * (1K or 4K) or the whole extended standard key file.
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class CommonBenchmark {
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    @Param({"1K", "4K"})
+    public String size;
+
+    private String[] mDump;
+    private String[] mBlocks;
+    private byte[][] mBlockBytes;
+    private byte[][] mACs;
+    private String[] mKeyFile;
+    private final char[] mHexBuffer = new char[32];
+    private final byte[] mByteBuffer = new byte[16];
+
+    @Setup
+    public void setup() {
+        mDump = BenchmarkData.createDump(
+                BenchmarkData.sectorCount(size), 42);
+        mBlocks = BenchmarkData.toEml(mDump);
+        mBlockBytes = new byte[mBlocks.length][];
+        ArrayList<byte[]> acs = new ArrayList<>();
+        for (int i = 0; i < mBlocks.length; i++) {
+            mBlockBytes[i] = Common.hex2Bytes(mBlocks[i]);
+        }
+        for (int i = 0; i < mDump.length; i++) {
+            // Sector trailers are the lines before a header (and the last).
+            if (i + 1 == mDump.length || mDump[i + 1].startsWith("+")) {
+                acs.add(Common.hex2Bytes(mDump[i].substring(12, 18)));
+            }
+        }
+        mACs = acs.toArray(new byte[0][]);
+        mKeyFile = BenchmarkData.readKeyFile(Common.STD_KEYS_EXTENDED);
+    }
+
+    @Benchmark
+    public void bytes2Hex(Blackhole bh) {
+        for (byte[] block : mBlockBytes) {
+            bh.consume(Common.bytes2Hex(block));
+        }
+    }
+
+    @Benchmark
+    public void hex2Bytes(Blackhole bh) {
+        for (String block : mBlocks) {
+            bh.consume(Common.hex2Bytes(block));
+        }
+    }
+
+    /**
+     * Encode all blocks into a reused char array (no allocations).
+     */
+    @Benchmark
+    public int encodeIntoBuffer() {
+        int sum = 0;
+        for (byte[] block : mBlockBytes) {
+            HexCodec.encode(block, 0, block.length, mHexBuffer, 0);
+            sum += mHexBuffer[31];
+        }
+        return sum;
+    }
+
+    /**
+     * Decode all blocks into a reused byte array (no allocations).
+     */
+    @Benchmark
+    public int decodeIntoBuffer() {
+        int sum = 0;
+        for (String block : mBlocks) {
+            sum += HexCodec.decode(block, 0, block.length(), mByteBuffer, 0);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void hex2Ascii(Blackhole bh) {
+        for (String block : mBlocks) {
+            bh.consume(Common.hex2Ascii(block));
+        }
+    }
+
+    @Benchmark
+    public void hex2Bin(Blackhole bh) {
+        for (String block : mBlocks) {
+            bh.consume(Common.hex2Bin(block));
+        }
+    }
+
+    @Benchmark
+    public int isValidDump() {
+        return Common.isValidDump(mDump, false);
+    }
+
+    @Benchmark
+    public int isValidKeyFile() {
+        return Common.isValidKeyFile(mKeyFile);
+    }
+
+    @Benchmark
+    public void acBytesToACMatrix(Blackhole bh) {
+        for (byte[] ac : mACs) {
+            bh.consume(Common.acBytesToACMatrix(ac));
+        }
+    }
+
+    /**
+     * Resolve all operations for all blocks of all sectors of the dump,
+     * like the dump editor and the write tool do.
+     */
+    @Benchmark
+    public int getOperationRequirements() {
+        int sum = 0;
+        for (byte[] ac : mACs) {
+            byte[][] acMatrix = Common.acBytesToACMatrix(ac);
+            if (acMatrix == null) {
+                continue;
+            }
+            boolean isKeyBReadable = Common.isKeyBReadable(
+                    acMatrix[0][3], acMatrix[1][3], acMatrix[2][3]);
+            for (int block = 0; block < 4; block++) {
+                for (Operation op : OPERATIONS) {
+                    sum += Common.getOperationRequirements(
+                            acMatrix[0][block], acMatrix[1][block],
+                            acMatrix[2][block], op, block == 3,
+                            isKeyBReadable);
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Same as {@link #getOperationRequirements()} but with the
+     * precomputed table of {@link AccessConditions}.
+     */
+    @Benchmark
+    public int getOperationRequirementsTable() {
+        int sum = 0;
+        for (byte[] ac : mACs) {
+            int acIndex = AccessConditions.getIndex(ac);
+            if (acIndex == -1) {
+                continue;
+            }
+            for (int block = 0; block < 4; block++) {
+                for (Operation op : OPERATIONS) {
+                    sum += AccessConditions.getOperationRequirements(
+                            acIndex, block, op);
+                }
+            }
+        }
+        return sum;
+    }
+}
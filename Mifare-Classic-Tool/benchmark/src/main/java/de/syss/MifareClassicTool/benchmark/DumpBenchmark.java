@@ -0,0 +1,153 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool.benchmark;
+
+import android.util.SparseArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import de.syss.MifareClassicTool.Activities.ImportExportTool;
+import de.syss.MifareClassicTool.Activities.ImportExportTool.FileType;
+import de.syss.MifareClassicTool.DumpParser;
+import de.syss.MifareClassicTool.MCDiffUtils;
+import de.syss.MifareClassicTool.TagImage;
+
+/**
+ * Benchmarks of whole-dump operations: parsing a dump
+ * ({@link DumpParser}), diffing two dumps ({@link MCDiffUtils}) and
+ * converting dumps between the supported file formats
+ * ({@link ImportExportTool}).
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class DumpBenchmark {
+
+    @Param({"1K", "4K"})
+    public String size;
+
+    private String[] mDump;
+    private String[] mEml;
+    private String[] mJson;
+    private String[] mBin;
+    private byte[] mDumpFile;
+    private SparseArray<String[]> mSectors;
+    private SparseArray<String[]> mModifiedSectors;
+    private TagImage mImage;
+    private TagImage mModifiedImage;
+
+    @Setup
+    public void setup() {
+        mDump = BenchmarkData.createDump(
+                BenchmarkData.sectorCount(size), 42);
+        mEml = BenchmarkData.toEml(mDump);
+        mDumpFile = (String.join("\n", mDump) + "\n").getBytes(
+                StandardCharsets.US_ASCII);
+        mSectors = BenchmarkData.toSectors(mDump);
+        mModifiedSectors = BenchmarkData.toSectors(
+                BenchmarkData.modifyDump(mDump, 0.05, 7));
+        mImage = TagImage.fromDump(mDump);
+        mModifiedImage = TagImage.fromDump(
+                BenchmarkData.modifyDump(mDump, 0.05, 7));
+        mJson = ImportExportTool.convertDump(
+                mDump, FileType.MCT, FileType.JSON, null);
+        mBin = ImportExportTool.convertDump(
+                mDump, FileType.MCT, FileType.BIN, null);
+        if (mJson == null || mBin == null) {
+            throw new IllegalStateException("Invalid benchmark dump.");
+        }
+    }
+
+    /**
+     * Parse a dump that is already split into lines.
+     */
+    @Benchmark
+    public TagImage parseDumpLines() {
+        DumpParser parser = new DumpParser(false);
+        parser.parse(mDump);
+        return parser.getImage();
+    }
+
+    /**
+     * Parse a dump file (raw bytes incl. line breaks) in one pass.
+     */
+    @Benchmark
+    public TagImage parseDump() {
+        DumpParser parser = new DumpParser(false);
+        parser.parse(mDumpFile, 0, mDumpFile.length);
+        return parser.getImage();
+    }
+
+    @Benchmark
+    public SparseArray<Integer[][]> diffIndices() {
+        return MCDiffUtils.diffIndices(mSectors, mModifiedSectors);
+    }
+
+    @Benchmark
+    public SparseArray<Integer[][]> diffIndicesTagImage() {
+        return MCDiffUtils.diffIndices(mImage, mModifiedImage);
+    }
+
+    @Benchmark
+    public String[] convertMctToJson() {
+        return ImportExportTool.convertDump(
+                mDump, FileType.MCT, FileType.JSON, null);
+    }
+
+    @Benchmark
+    public String[] convertMctToBin() {
+        return ImportExportTool.convertDump(
+                mDump, FileType.MCT, FileType.BIN, null);
+    }
+
+    @Benchmark
+    public String[] convertJsonToMct() {
+        return ImportExportTool.convertDump(
+                mJson, FileType.JSON, FileType.MCT, null);
+    }
+
+    @Benchmark
+    public String[] convertBinToMct() {
+        return ImportExportTool.convertDump(
+                mBin, FileType.BIN, FileType.MCT, null);
+    }
+
+    @Benchmark
+    public String[] convertEmlToMct() {
+        return ImportExportTool.convertDump(
+                mEml, FileType.EML, FileType.MCT, null);
+    }
+}
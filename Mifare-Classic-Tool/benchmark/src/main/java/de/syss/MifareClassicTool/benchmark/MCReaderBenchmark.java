@@ -0,0 +1,144 @@
+/*
+ * Copyright 2026 agent
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.syss.MifareClassicTool.benchmark;
+
+import android.nfc.tech.MifareClassic;
+import android.util.SparseArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import de.syss.MifareClassicTool.Common;
+import de.syss.MifareClassicTool.MCReader;
+import de.syss.MifareClassicTool.MCSimulatedCard;
+import de.syss.MifareClassicTool.TagImage;
+
+/**
+ * Benchmarks of the key mapping ({@link MCReader#buildNextKeyMapPart()})
+ * and reading ({@link MCReader#readAsMuchAsPossible(SparseArray)} and
+ * {@link MCReader#readTagImage(SparseArray)}) with a
+ * {@link MCSimulatedCard} (no latency, so only the CPU time and
+ * allocations of the reader are measured). The card uses keys from the
+ * end of the extended standard key file, so the mapping has to try
+ * (almost) the whole dictionary for the first sector, like on a real tag
+ * with non-default keys.
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class MCReaderBenchmark {
+
+    @Param({"1K", "4K"})
+    public String size;
+
+    private MCSimulatedCard mCard;
+    private ArrayList<String> mKeys;
+    private SparseArray<byte[][]> mKeyMap;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        int sectorCount = BenchmarkData.sectorCount(size);
+        mCard = new MCSimulatedCard("4K".equals(size)
+                ? MifareClassic.SIZE_4K : MifareClassic.SIZE_1K);
+        mKeys = BenchmarkData.filterKeys(
+                BenchmarkData.readKeyFile(Common.STD_KEYS_EXTENDED));
+        // Use two keys of the end of the key file for all sectors and
+        // a few sectors with distinct keys.
+        byte[] keyA = Common.hex2Bytes(mKeys.get(mKeys.size() - 1));
+        byte[] keyB = Common.hex2Bytes(mKeys.get(mKeys.size() - 2));
+        for (int i = 0; i < sectorCount; i++) {
+            if (i % 8 == 7) {
+                mCard.setSectorKeys(i,
+                        Common.hex2Bytes(mKeys.get(mKeys.size() - 3 - i)),
+                        Common.hex2Bytes(mKeys.get(mKeys.size() - 4 - i)));
+            } else {
+                mCard.setSectorKeys(i, keyA, keyB);
+            }
+            // Key B not readable (so it can be used for reading).
+            mCard.setAccessConditions(i, Common.hex2Bytes("7F078869"));
+        }
+        // Fill the card with the data of a benchmark dump.
+        String[] dump = BenchmarkData.toEml(
+                BenchmarkData.createDump(sectorCount, 42));
+        for (int i = 1; i < dump.length; i++) {
+            if (!isTrailer(i)) {
+                mCard.setBlock(i, Common.hex2Bytes(dump[i]));
+            }
+        }
+        mCard.connect();
+        MCReader reader = createReader();
+        while (reader.buildNextKeyMapPart() < sectorCount - 1);
+        mKeyMap = reader.getKeyMap();
+        if (mKeyMap == null || mKeyMap.size() != sectorCount) {
+            throw new IllegalStateException("Key mapping failed.");
+        }
+    }
+
+    @Benchmark
+    public SparseArray<byte[][]> buildKeyMap() {
+        MCReader reader = createReader();
+        int sectorCount = reader.getSectorCount();
+        while (reader.buildNextKeyMapPart() < sectorCount - 1);
+        return reader.getKeyMap();
+    }
+
+    @Benchmark
+    public SparseArray<String[]> readAsMuchAsPossible() {
+        MCReader reader = MCReader.get(mCard);
+        return reader.readAsMuchAsPossible(mKeyMap);
+    }
+
+    @Benchmark
+    public TagImage readTagImage() {
+        MCReader reader = MCReader.get(mCard);
+        return reader.readTagImage(mKeyMap);
+    }
+
+    private MCReader createReader() {
+        MCReader reader = MCReader.get(mCard);
+        reader.setKeys(mKeys);
+        reader.setMappingRange(0, reader.getSectorCount() - 1);
+        return reader;
+    }
+
+    private static boolean isTrailer(int block) {
+        if (block < 32 * 4) {
+            return block % 4 == 3;
+        }
+        return (block - 32 * 4) % 16 == 15;
+    }
+}